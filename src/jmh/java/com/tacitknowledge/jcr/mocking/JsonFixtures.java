@@ -0,0 +1,76 @@
+package com.tacitknowledge.jcr.mocking;
+
+import com.tacitknowledge.jcr.testing.NodeFactory;
+import com.tacitknowledge.jcr.testing.impl.InMemoryNodeFactory;
+import com.tacitknowledge.jcr.testing.impl.MockNodeFactory;
+
+import java.util.List;
+
+/**
+ * Generates JSON node structures of a given shape for the benchmarks.
+ */
+public final class JsonFixtures {
+
+    private JsonFixtures() {
+    }
+
+    /**
+     * @param shape Depth and fan out of the tree written as "depth x fanOut", e.g. "3x10"
+     * @return {depth, fanOut}
+     */
+    public static int[] parseShape(String shape) {
+        String[] parts = shape.split("x");
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+
+    /**
+     * Builds a tree where every node but the leaves has fanOut children named node0, node1... and every node has
+     * a string, a long and a date property.
+     * @param depth Number of levels below the root
+     * @param fanOut Children per node
+     * @param nodePaths If not null, receives the relative path of every node
+     * @return JSON node structure
+     */
+    public static String tree(int depth, int fanOut, List<String> nodePaths) {
+        StringBuilder json = new StringBuilder();
+        json.append('{');
+        appendChildren(json, depth, fanOut, "", nodePaths);
+        json.append('}');
+        return json.toString();
+    }
+
+    private static void appendChildren(StringBuilder json, int depth, int fanOut, String path, List<String> nodePaths) {
+        for (int i = 0; i < fanOut; i++) {
+            String name = "node" + i;
+            String childPath = path.length() == 0 ? name : path + "/" + name;
+            if (nodePaths != null) {
+                nodePaths.add(childPath);
+            }
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(name).append(":{")
+                    .append("'jcr:primaryType':'nt:unstructured',")
+                    .append("title:'Title of ").append(childPath).append("',")
+                    .append("views:'type:Long, value:").append(i).append("',")
+                    .append("created:'type:Date, value:12/24/2012'");
+            if (depth > 1) {
+                json.append(',');
+                appendChildren(json, depth - 1, fanOut, childPath, nodePaths);
+            }
+            json.append('}');
+        }
+    }
+
+    /**
+     * @param factory "mock" or "inMemory"
+     */
+    public static NodeFactory newNodeFactory(String factory) {
+        if ("mock".equals(factory)) {
+            return new MockNodeFactory();
+        } else if ("inMemory".equals(factory)) {
+            return new InMemoryNodeFactory();
+        }
+        throw new IllegalArgumentException("Unknown node factory: " + factory);
+    }
+}
@@ -0,0 +1,41 @@
+package com.tacitknowledge.jcr.mocking.domain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of parsing the property definitions found in JSON fixtures.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PropertyDefinitionMapBenchmark {
+
+    @Param({"plain value", "type:Long", "type:Date, value:12/24/2012", "type:Binary,value:/files/air_jordan.jpg"})
+    public String definition;
+
+    @Benchmark
+    public int parse() {
+        PropertyDefinitionMap propertyDefinitionMap = new PropertyDefinitionMap(definition);
+        return propertyDefinitionMap.getType() + propertyDefinitionMap.getValue().length();
+    }
+
+    @Benchmark
+    public int parseDefinition() {
+        ParsedPropertyDefinition propertyDefinition = ParsedPropertyDefinition.parse(definition);
+        return propertyDefinition.getType() + propertyDefinition.getValue().length();
+    }
+}
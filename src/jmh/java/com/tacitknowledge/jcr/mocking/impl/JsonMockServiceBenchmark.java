@@ -0,0 +1,57 @@
+package com.tacitknowledge.jcr.mocking.impl;
+
+import com.tacitknowledge.jcr.mocking.JsonFixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time and allocation to build a whole fixture, for trees of different depth and fan out.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonMockServiceBenchmark {
+
+    /**
+     * depth x fan out: 930, 1110 and 5460 nodes
+     */
+    @Param({"2x30", "3x10", "6x4"})
+    public String shape;
+
+    @Param({"mock", "inMemory"})
+    public String factory;
+
+    @Param({"false", "true"})
+    public boolean streaming;
+
+    private String json;
+
+    @Setup
+    public void setUp() {
+        int[] shape = JsonFixtures.parseShape(this.shape);
+        json = JsonFixtures.tree(shape[0], shape[1], null);
+    }
+
+    @Benchmark
+    public Node fromString() throws RepositoryException {
+        JsonMockService mockService = new JsonMockService(JsonFixtures.newNodeFactory(factory));
+        mockService.setStreaming(streaming);
+        return mockService.fromString(json);
+    }
+}
@@ -0,0 +1,95 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import com.tacitknowledge.jcr.mocking.JsonFixtures;
+import com.tacitknowledge.jcr.mocking.impl.JsonMockService;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap retained by a fixture of about 1,000 nodes traversed over and over, with mocks recording the calls made to
+ * them and with stub-only mocks. The bytes retained per node are reported as the retainedBytesPerNode counter; the
+ * time, which includes the collections run to measure the heap, isn't meaningful.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FixtureFootprintBenchmark {
+
+    private static final int TRAVERSALS = 50;
+
+    @Param({"false", "true"})
+    private boolean stubOnly;
+
+    private String json;
+
+    private Node root;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+
+        public long retainedBytesPerNode;
+    }
+
+    @Setup(Level.Trial)
+    public void setUpJson() {
+        json = JsonFixtures.tree(3, 10, null);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() throws RepositoryException {
+        MockNodeFactory nodeFactory = new MockNodeFactory();
+        nodeFactory.setStubOnly(stubOnly);
+        root = new JsonMockService(nodeFactory).fromString(json);
+    }
+
+    @Benchmark
+    public Node traverse(Footprint footprint) throws RepositoryException {
+        long before = usedHeapAfterGc();
+        int nodes = 0;
+        for (int i = 0; i < TRAVERSALS; i++) {
+            nodes = traverse(root);
+        }
+        footprint.retainedBytesPerNode = (usedHeapAfterGc() - before) / nodes;
+        return root;
+    }
+
+    private static int traverse(Node node) throws RepositoryException {
+        int count = 1;
+        for (NodeIterator children = node.getNodes(); children.hasNext(); ) {
+            Node child = children.nextNode();
+            if (child.hasProperty("title")) {
+                child.getProperty("title").getString();
+            }
+            count += traverse(node.getNode(child.getName()));
+        }
+        return count;
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
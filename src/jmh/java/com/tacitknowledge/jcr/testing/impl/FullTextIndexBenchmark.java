@@ -0,0 +1,79 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import com.tacitknowledge.jcr.mocking.JsonFixtures;
+import com.tacitknowledge.jcr.mocking.impl.JsonMockService;
+import com.tacitknowledge.jcr.testing.NodeFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full-text lookups over a fixture of about 100,000 nodes: a term found in part of the nodes, a term found in
+ * every node, and a CONTAINS query over the index.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FullTextIndexBenchmark {
+
+    private static final String CONTAINS =
+            "SELECT * FROM [nt:base] AS n WHERE CONTAINS(n.title, '\"node1 node2 node3 node4\"')";
+
+    @Param({"mock", "inMemory"})
+    public String factory;
+
+    private InvertedFullTextIndex index;
+
+    private QueryManager queryManager;
+
+    @Setup
+    public void setUp() throws RepositoryException {
+        NodeFactory nodeFactory = JsonFixtures.newNodeFactory(factory);
+        index = new InvertedFullTextIndex();
+        if (nodeFactory instanceof MockNodeFactory) {
+            ((MockNodeFactory) nodeFactory).setFullTextIndex(index);
+        } else {
+            ((InMemoryNodeFactory) nodeFactory).setFullTextIndex(index);
+        }
+        queryManager = new JsonMockService(nodeFactory).fromString(JsonFixtures.tree(5, 10, null))
+                .getNode("node0").getSession().getWorkspace().getQueryManager();
+    }
+
+    @Benchmark
+    public int rareTerm() {
+        return index.getNodes("node9").size();
+    }
+
+    @Benchmark
+    public int commonTerm() {
+        return index.getNodes("title").size();
+    }
+
+    @Benchmark
+    public int containsQuery() throws RepositoryException {
+        NodeIterator nodes = queryManager.createQuery(CONTAINS, Query.JCR_SQL2).execute().getNodes();
+        int count = 0;
+        while (nodes.hasNext()) {
+            nodes.nextNode();
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,77 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Full traversal and skipping through the iterators handed out by getNodes() and getProperties().
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IteratorAdapterBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int size;
+
+    private List<Node> nodes;
+    private List<Property> properties;
+
+    @Setup
+    public void setUp() {
+        nodes = new ArrayList<Node>(size);
+        properties = new ArrayList<Property>(size);
+        Node node = mock(Node.class);
+        Property property = mock(Property.class);
+        for (int i = 0; i < size; i++) {
+            nodes.add(node);
+            properties.add(property);
+        }
+    }
+
+    @Benchmark
+    public void traverseNodes(Blackhole blackhole) {
+        NodeIterator iterator = new NodeIteratorAdapter(nodes.iterator());
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.nextNode());
+        }
+    }
+
+    @Benchmark
+    public void traverseProperties(Blackhole blackhole) {
+        PropertyIterator iterator = new PropertyIteratorAdapter(properties.iterator());
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.nextProperty());
+        }
+    }
+
+    @Benchmark
+    public Node skipToLastNode() {
+        NodeIterator iterator = new NodeIteratorAdapter(nodes.iterator());
+        iterator.skip(size - 1);
+        return iterator.nextNode();
+    }
+}
@@ -0,0 +1,90 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import com.tacitknowledge.jcr.mocking.JsonFixtures;
+import com.tacitknowledge.jcr.mocking.impl.JsonMockService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relative and absolute lookups of every node and property of a fixture, cycling through their paths.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NodeLookupBenchmark {
+
+    @Param({"3x10", "6x4"})
+    public String shape;
+
+    @Param({"mock", "inMemory"})
+    public String factory;
+
+    private Node root;
+    private Session session;
+    private String[] nodePaths;
+    private String[] propertyPaths;
+    private String[] absoluteNodePaths;
+    private int next;
+
+    @Setup
+    public void setUp() throws RepositoryException {
+        int[] shape = JsonFixtures.parseShape(this.shape);
+        List<String> paths = new ArrayList<String>();
+        String json = JsonFixtures.tree(shape[0], shape[1], paths);
+        root = new JsonMockService(JsonFixtures.newNodeFactory(factory)).fromString(json);
+        session = root.getNode(paths.get(0)).getSession();
+
+        nodePaths = paths.toArray(new String[paths.size()]);
+        propertyPaths = new String[nodePaths.length];
+        absoluteNodePaths = new String[nodePaths.length];
+        for (int i = 0; i < nodePaths.length; i++) {
+            propertyPaths[i] = nodePaths[i] + "/title";
+            absoluteNodePaths[i] = "/" + nodePaths[i];
+        }
+    }
+
+    private int nextIndex() {
+        next = next + 1 == nodePaths.length ? 0 : next + 1;
+        return next;
+    }
+
+    @Benchmark
+    public Node getNode() throws RepositoryException {
+        return root.getNode(nodePaths[nextIndex()]);
+    }
+
+    @Benchmark
+    public Property getProperty() throws RepositoryException {
+        return root.getProperty(propertyPaths[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean hasNode() throws RepositoryException {
+        return root.hasNode(nodePaths[nextIndex()]);
+    }
+
+    @Benchmark
+    public Node sessionGetNode() throws RepositoryException {
+        return session.getNode(absoluteNodePaths[nextIndex()]);
+    }
+}
@@ -0,0 +1,103 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import com.tacitknowledge.jcr.mocking.JsonFixtures;
+import com.tacitknowledge.jcr.mocking.impl.JsonMockService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bursts of 50,000 property changes saved at once on a writable fixture of about 10,000 nodes: the time the saving
+ * thread takes, and the time until a listener got every event.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ObservationBenchmark {
+
+    private static final int BURST = 50000;
+
+    @Param({"1024", "50000"})
+    public int maxBatchSize;
+
+    private Node[] nodes;
+
+    private Session session;
+
+    private BatchingObservationManager observationManager;
+
+    private final AtomicLong delivered = new AtomicLong();
+
+    @Setup
+    public void setUp() throws RepositoryException {
+        MockNodeFactory nodeFactory = new MockNodeFactory();
+        nodeFactory.setWritable(true);
+        List<String> paths = new ArrayList<String>();
+        Node root = new JsonMockService(nodeFactory).fromString(JsonFixtures.tree(4, 10, paths));
+        nodes = new Node[paths.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = root.getNode(paths.get(i));
+        }
+        session = root.getSession();
+        observationManager = (BatchingObservationManager) session.getWorkspace().getObservationManager();
+        observationManager.setMaxBatchSize(maxBatchSize);
+        observationManager.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(EventIterator events) {
+                delivered.addAndGet(events.getSize());
+            }
+        }, Event.PROPERTY_CHANGED, "/", true, null, null, false);
+    }
+
+    /**
+     * Delivery left over from a burst isn't timed.
+     */
+    @TearDown(Level.Invocation)
+    public void waitForDelivery() throws InterruptedException {
+        observationManager.waitForDelivery(1, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public void saveBurst() throws RepositoryException {
+        burst();
+    }
+
+    @Benchmark
+    public long deliverBurst() throws Exception {
+        long expected = delivered.get() + BURST;
+        burst();
+        observationManager.waitForDelivery(1, TimeUnit.MINUTES);
+        return delivered.get() - expected;
+    }
+
+    private void burst() throws RepositoryException {
+        for (int i = 0; i < BURST; i++) {
+            nodes[i % nodes.length].setProperty("title", "Title " + i);
+        }
+        session.save();
+    }
+}
@@ -0,0 +1,71 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import com.tacitknowledge.jcr.mocking.JsonFixtures;
+import com.tacitknowledge.jcr.mocking.impl.JsonMockService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolling a writable fixture of about 100,000 nodes back after a test step changed it: restoring a snapshot, and
+ * building the fixture again from JSON.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+
+    private String json;
+
+    private MockNodeFactory nodeFactory;
+
+    private Node root;
+
+    private MockNodeFactory.Snapshot loaded;
+
+    @Setup
+    public void setUp() throws RepositoryException {
+        json = JsonFixtures.tree(5, 10, null);
+        nodeFactory = new MockNodeFactory();
+        nodeFactory.setWritable(true);
+        root = new JsonMockService(nodeFactory).fromString(json);
+        loaded = nodeFactory.snapshot(root);
+    }
+
+    @Benchmark
+    public Node restoreSnapshot() throws RepositoryException {
+        change(root);
+        nodeFactory.restore(loaded);
+        return root;
+    }
+
+    @Benchmark
+    public Node rebuildFromJson() throws RepositoryException {
+        MockNodeFactory rebuilt = new MockNodeFactory();
+        rebuilt.setWritable(true);
+        Node rebuiltRoot = new JsonMockService(rebuilt).fromString(json);
+        change(rebuiltRoot);
+        return rebuiltRoot;
+    }
+
+    private static void change(Node root) throws RepositoryException {
+        Node node = root.getNode("node1/node2");
+        node.addNode("added").setProperty("title", "Added");
+        node.setProperty("views", 42L);
+        root.getNode("node3").remove();
+    }
+}
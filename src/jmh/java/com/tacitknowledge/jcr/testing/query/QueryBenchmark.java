@@ -0,0 +1,119 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import com.tacitknowledge.jcr.mocking.JsonFixtures;
+import com.tacitknowledge.jcr.mocking.impl.JsonMockService;
+import com.tacitknowledge.jcr.testing.NodeFactory;
+import com.tacitknowledge.jcr.testing.PropertyIndex;
+import com.tacitknowledge.jcr.testing.impl.HashPropertyIndex;
+import com.tacitknowledge.jcr.testing.impl.InMemoryNodeFactory;
+import com.tacitknowledge.jcr.testing.impl.MockNodeFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JCR-SQL2 queries over a fixture: a property match over the whole tree, the same match scoped to one subtree, the
+ * first match only, a string equality that is looked up in a property index when the fixture has one, and a page
+ * of ordered results, sorted in full or kept in a bounded heap.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+
+    private static final String WHOLE_TREE = "SELECT * FROM [nt:unstructured] AS n WHERE n.views = 1";
+    private static final String SUBTREE =
+            "SELECT * FROM [nt:unstructured] AS n WHERE ISDESCENDANTNODE(n, '/node1') AND n.views = 1";
+    private static final String ORDERED = "SELECT * FROM [nt:unstructured] AS n ORDER BY n.title DESC";
+    private static final String TITLE = "SELECT * FROM [nt:unstructured] AS n WHERE n.title = 'Title of node1/node1'";
+
+    @Param({"3x10", "6x4"})
+    public String shape;
+
+    @Param({"mock", "inMemory"})
+    public String factory;
+
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    private QueryManager queryManager;
+
+    @Setup
+    public void setUp() throws RepositoryException {
+        int[] shape = JsonFixtures.parseShape(this.shape);
+        String json = JsonFixtures.tree(shape[0], shape[1], null);
+        NodeFactory nodeFactory = JsonFixtures.newNodeFactory(factory);
+        if (indexed) {
+            PropertyIndex index = new HashPropertyIndex("title");
+            if (nodeFactory instanceof MockNodeFactory) {
+                ((MockNodeFactory) nodeFactory).setPropertyIndex(index);
+            } else {
+                ((InMemoryNodeFactory) nodeFactory).setPropertyIndex(index);
+            }
+        }
+        queryManager = new JsonMockService(nodeFactory).fromString(json)
+                .getNode("node0").getSession().getWorkspace().getQueryManager();
+    }
+
+    @Benchmark
+    public int wholeTree() throws RepositoryException {
+        return count(queryManager.createQuery(WHOLE_TREE, Query.JCR_SQL2));
+    }
+
+    @Benchmark
+    public int subtree() throws RepositoryException {
+        return count(queryManager.createQuery(SUBTREE, Query.JCR_SQL2));
+    }
+
+    @Benchmark
+    public int firstMatch() throws RepositoryException {
+        Query query = queryManager.createQuery(WHOLE_TREE, Query.JCR_SQL2);
+        query.setLimit(1);
+        return count(query);
+    }
+
+    @Benchmark
+    public int titleEquality() throws RepositoryException {
+        return count(queryManager.createQuery(TITLE, Query.JCR_SQL2));
+    }
+
+    @Benchmark
+    public int orderedAll() throws RepositoryException {
+        return count(queryManager.createQuery(ORDERED, Query.JCR_SQL2));
+    }
+
+    @Benchmark
+    public int orderedPage() throws RepositoryException {
+        Query query = queryManager.createQuery(ORDERED, Query.JCR_SQL2);
+        query.setOffset(20);
+        query.setLimit(10);
+        return count(query);
+    }
+
+    private static int count(Query query) throws RepositoryException {
+        NodeIterator nodes = query.execute().getNodes();
+        int count = 0;
+        while (nodes.hasNext()) {
+            nodes.nextNode();
+            count++;
+        }
+        return count;
+    }
+}
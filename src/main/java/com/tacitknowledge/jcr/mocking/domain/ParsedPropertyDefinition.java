@@ -0,0 +1,260 @@
+package com.tacitknowledge.jcr.mocking.domain;
+
+import javax.jcr.PropertyType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Immutable result of parsing a property definition found in a JSON fixture, e.g.
+ * <pre>
+ *     'type:Date, value:12/24/2012'
+ *     'type:String, required:true, multiple:true, mixins:mix:title mix:language, value:The value'
+ *     'A plain string value'
+ * </pre>
+ * Attributes are separated by commas and {@code value} must come last: everything after {@code value:} is the
+ * value, commas included. A definition with neither a {@code type} nor a {@code value} attribute is a plain
+ * string value. Mixins are separated by spaces.
+ * <p>
+ * Definitions are parsed in a single pass without regular expressions. Some typed definitions repeat all over a
+ * fixture ({@code type:Boolean, value:true}), so the ones used last are cached and shared. Definitions holding
+ * unique values, such as ids or timestamps, only pass through the cache and leave the repeating ones in it.
+ */
+public final class ParsedPropertyDefinition {
+
+    public static final String TYPE = "type";
+    public static final String VALUE = "value";
+    public static final String REQUIRED = "required";
+    public static final String MULTIPLE = "multiple";
+    public static final String MIXINS = "mixins";
+
+    static final int MAX_CACHED_DEFINITIONS = 1024;
+    static final int MAX_CACHED_DEFINITION_LENGTH = 256;
+
+    private static final int INVALID_TYPE = -1;
+    private static final String[] NO_MIXINS = new String[0];
+    private static final char ATTRIBUTE_SEPARATOR = ',';
+    private static final char KEY_VALUE_SEPARATOR = ':';
+
+    private static final Map<String, ParsedPropertyDefinition> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<String, ParsedPropertyDefinition>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ParsedPropertyDefinition> eldest) {
+                    return size() > MAX_CACHED_DEFINITIONS;
+                }
+            });
+
+    private final String typeName;
+    private final int type;
+    private final String value;
+    private final boolean required;
+    private final boolean multiple;
+    private final String[] mixins;
+
+    private ParsedPropertyDefinition(String typeName, int type, String value, boolean required, boolean multiple,
+                                     String[] mixins) {
+        this.typeName = typeName;
+        this.type = type;
+        this.value = value;
+        this.required = required;
+        this.multiple = multiple;
+        this.mixins = mixins;
+    }
+
+    /**
+     * @param propertyDefinition Property definition from a JSON fixture
+     * @return Parsed definition, shared with every other caller passing the same typed definition
+     */
+    public static ParsedPropertyDefinition parse(String propertyDefinition) {
+        if (propertyDefinition == null) {
+            throw new RuntimeException("Property definition must not be null");
+        }
+        ParsedPropertyDefinition definition = CACHE.get(propertyDefinition);
+        if (definition == null) {
+            definition = tokenize(propertyDefinition);
+            if (definition.typeName != null && propertyDefinition.length() <= MAX_CACHED_DEFINITION_LENGTH) {
+                CACHE.put(propertyDefinition, definition);
+            }
+        }
+        return definition;
+    }
+
+    /**
+     * Drops every cached definition.
+     */
+    static void clearCache() {
+        CACHE.clear();
+    }
+
+    static int cacheSize() {
+        return CACHE.size();
+    }
+
+    private static ParsedPropertyDefinition tokenize(String definition) {
+        int length = definition.length();
+        String typeName = null;
+        int type = PropertyType.STRING;
+        String value = null;
+        boolean required = false;
+        boolean multiple = false;
+        String[] mixins = NO_MIXINS;
+
+        int position = 0;
+        while (position < length) {
+            int keyStart = skipWhitespace(definition, position, length);
+            int separator = definition.indexOf(KEY_VALUE_SEPARATOR, keyStart);
+            if (separator < 0) {
+                break;
+            }
+            int keyEnd = trimEnd(definition, keyStart, separator);
+            if (isKey(definition, keyStart, keyEnd, VALUE)) {
+                // A value following other attributes is kept as is, a value on its own is trimmed
+                value = position == 0
+                        ? definition.substring(skipWhitespace(definition, separator + 1, length),
+                                trimEnd(definition, separator + 1, length))
+                        : definition.substring(separator + 1);
+                break;
+            }
+            int attributeEnd = definition.indexOf(ATTRIBUTE_SEPARATOR, separator + 1);
+            if (attributeEnd < 0) {
+                attributeEnd = length;
+            }
+            int valueStart = skipWhitespace(definition, separator + 1, attributeEnd);
+            int valueEnd = trimEnd(definition, valueStart, attributeEnd);
+
+            if (isKey(definition, keyStart, keyEnd, TYPE)) {
+                type = typeFromName(definition, valueStart, valueEnd);
+                typeName = type == INVALID_TYPE
+                        ? definition.substring(valueStart, valueEnd) : PropertyType.nameFromValue(type);
+            } else if (isKey(definition, keyStart, keyEnd, REQUIRED)) {
+                required = isTrue(definition, valueStart, valueEnd);
+            } else if (isKey(definition, keyStart, keyEnd, MULTIPLE)) {
+                multiple = isTrue(definition, valueStart, valueEnd);
+            } else if (isKey(definition, keyStart, keyEnd, MIXINS)) {
+                mixins = splitMixins(definition, valueStart, valueEnd);
+            } else {
+                break;
+            }
+            position = attributeEnd + 1;
+        }
+
+        if (typeName == null && value == null) {
+            return new ParsedPropertyDefinition(null, PropertyType.STRING, definition, false, false, NO_MIXINS);
+        }
+        return new ParsedPropertyDefinition(typeName, type, value == null ? StringUtils.EMPTY : value,
+                required, multiple, mixins);
+    }
+
+    private static int skipWhitespace(String text, int from, int to) {
+        while (from < to && Character.isWhitespace(text.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd(String text, int from, int to) {
+        while (to > from && Character.isWhitespace(text.charAt(to - 1))) {
+            to--;
+        }
+        return to;
+    }
+
+    private static boolean isKey(String text, int from, int to, String key) {
+        return to - from == key.length() && text.regionMatches(from, key, 0, key.length());
+    }
+
+    private static boolean isTrue(String text, int from, int to) {
+        return to - from == 4 && text.regionMatches(true, from, "true", 0, 4);
+    }
+
+    private static int typeFromName(String text, int from, int to) {
+        for (int type = PropertyType.STRING; type <= PropertyType.DECIMAL; type++) {
+            String name = PropertyType.nameFromValue(type);
+            if (isKey(text, from, to, name)) {
+                return type;
+            }
+        }
+        return INVALID_TYPE;
+    }
+
+    private static String[] splitMixins(String text, int from, int to) {
+        List<String> names = new ArrayList<String>();
+        int position = from;
+        while (position < to) {
+            int nameStart = skipWhitespace(text, position, to);
+            int nameEnd = nameStart;
+            while (nameEnd < to && !Character.isWhitespace(text.charAt(nameEnd))) {
+                nameEnd++;
+            }
+            if (nameEnd > nameStart) {
+                names.add(text.substring(nameStart, nameEnd));
+            }
+            position = nameEnd;
+        }
+        return names.isEmpty() ? NO_MIXINS : names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * @return Name of the type given in the definition, or null if there was none
+     */
+    public String getTypeName() {
+        return typeName;
+    }
+
+    /**
+     * @return One of the {@link PropertyType} constants, {@link PropertyType#STRING} if no type was given
+     * @throws IllegalArgumentException If the definition names an unknown type
+     */
+    public int getType() {
+        if (type == INVALID_TYPE) {
+            throw new IllegalArgumentException("unknown type: " + typeName);
+        }
+        return type;
+    }
+
+    /**
+     * @return Value of the property, empty if the definition has a type but no value
+     */
+    public String getValue() {
+        return value;
+    }
+
+    public boolean isRequired() {
+        return required;
+    }
+
+    public boolean isMultiple() {
+        return multiple;
+    }
+
+    /**
+     * @return Mixin names, never null
+     */
+    public String[] getMixins() {
+        return mixins.length == 0 ? mixins : mixins.clone();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        if (typeName != null) {
+            builder.append(TYPE).append(KEY_VALUE_SEPARATOR).append(typeName).append(", ");
+        }
+        if (required) {
+            builder.append(REQUIRED).append(KEY_VALUE_SEPARATOR).append(true).append(", ");
+        }
+        if (multiple) {
+            builder.append(MULTIPLE).append(KEY_VALUE_SEPARATOR).append(true).append(", ");
+        }
+        if (mixins.length > 0) {
+            builder.append(MIXINS).append(KEY_VALUE_SEPARATOR).append(StringUtils.join(mixins, ' ')).append(", ");
+        }
+        return builder.append(VALUE).append(KEY_VALUE_SEPARATOR).append(value).toString();
+    }
+}
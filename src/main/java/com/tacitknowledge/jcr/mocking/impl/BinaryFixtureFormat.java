@@ -0,0 +1,70 @@
+package com.tacitknowledge.jcr.mocking.impl;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Layout of the binary fixture snapshots written by {@link BinaryFixtureWriter} and read by
+ * {@link BinaryFixtureLoader}:
+ * <pre>
+ * snapshot   := MAGIC VERSION stringTable node
+ * stringTable:= count:varint (length:varint utf8Bytes)*
+ * node       := name:string primaryType:optionalString propertyCount:varint property* childCount:varint node*
+ * property   := name:string type:byte multiple:byte (value | count:varint value*)
+ * value      := LONG as zig-zag varint, DOUBLE as 8 bytes, BOOLEAN as a byte, each followed by
+ *               lexicalForm:optionalString; anything else as a string
+ * string     := index into the string table as a varint, optionalString is index + 1 with 0 for none
+ * </pre>
+ * The lexical form of a LONG, DOUBLE or BOOLEAN value is only stored if it isn't the one {@code toString()} gives,
+ * e.g. for {@code 1e3} or {@code 007}, so values read back have the string form they were written with.
+ * Binaries are stored by reference, as the classpath location of their content.
+ */
+final class BinaryFixtureFormat {
+
+    static final int MAGIC = 0x4A43524D; // "JCRM"
+    static final int VERSION = 2;
+
+    private BinaryFixtureFormat() {
+    }
+
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static void writeZigZag(DataOutput out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift > 63) {
+                throw new IOException("Malformed variable length number in fixture snapshot");
+            }
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    static long readZigZag(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,168 @@
+package com.tacitknowledge.jcr.mocking.impl;
+
+import com.tacitknowledge.jcr.testing.NodeFactory;
+import com.tacitknowledge.jcr.testing.TypedNodeFactory;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds nodes from a snapshot written by {@link BinaryFixtureWriter}. Types are read as they were written, so
+ * no JSON nor property definition parsing is needed, which makes loading a large fixture much faster than
+ * {@link JsonMockService#fromString(String)}. Node factories implementing {@link TypedNodeFactory} get the Long,
+ * Double and Boolean values as they were read and don't parse them again.
+ */
+public class BinaryFixtureLoader {
+
+    private final NodeFactory nodeFactory;
+
+    public BinaryFixtureLoader(NodeFactory nodeFactory) {
+        this.nodeFactory = nodeFactory;
+    }
+
+    /**
+     * Builds the snapshot under a new root node. The stream is read up to the end of the snapshot and not closed.
+     * It is read as is, so a stream reading from a file or a socket is best buffered by the caller.
+     * @param inputStream Snapshot
+     * @return Root node
+     * @throws IOException If the snapshot can't be read or isn't a fixture snapshot
+     * @throws RepositoryException If a repository error happens
+     */
+    public Node load(InputStream inputStream) throws IOException, RepositoryException {
+        return load(null, inputStream);
+    }
+
+    /**
+     * Builds the children and properties of the snapshot root under the given node. The stream is read up to the
+     * end of the snapshot and not closed.
+     * @param parentNode Node to add to, a root node is created if null
+     * @param inputStream Snapshot
+     * @return Parent node
+     * @throws IOException If the snapshot can't be read or isn't a fixture snapshot
+     * @throws RepositoryException If a repository error happens
+     */
+    public Node load(Node parentNode, InputStream inputStream) throws IOException, RepositoryException {
+        DataInputStream in = new DataInputStream(inputStream);
+        if (in.readInt() != BinaryFixtureFormat.MAGIC) {
+            throw new IOException("Not a fixture snapshot");
+        }
+        int version = in.readUnsignedByte();
+        if (version != BinaryFixtureFormat.VERSION) {
+            throw new IOException("Unsupported fixture snapshot version " + version);
+        }
+        String[] strings = readStringTable(in);
+
+        if (parentNode == null) {
+            parentNode = nodeFactory.createNode(StringUtils.EMPTY);
+        }
+        readString(in, strings);
+        BinaryFixtureFormat.readVarInt(in);
+        readNodeContent(in, strings, parentNode);
+        return parentNode;
+    }
+
+    private String[] readStringTable(DataInput in) throws IOException {
+        String[] strings = new String[BinaryFixtureFormat.readVarInt(in)];
+        byte[] buffer = new byte[64];
+        for (int i = 0; i < strings.length; i++) {
+            int length = BinaryFixtureFormat.readVarInt(in);
+            if (length > buffer.length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            in.readFully(buffer, 0, length);
+            strings[i] = new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private void readNodeContent(DataInput in, String[] strings, Node node) throws IOException, RepositoryException {
+        int propertyCount = BinaryFixtureFormat.readVarInt(in);
+        List<Property> properties = new ArrayList<Property>(propertyCount);
+        for (int i = 0; i < propertyCount; i++) {
+            properties.add(readProperty(in, strings, node));
+        }
+
+        int childCount = BinaryFixtureFormat.readVarInt(in);
+        List<Node> childNodes = new ArrayList<Node>(childCount);
+        for (int i = 0; i < childCount; i++) {
+            String name = readString(in, strings);
+            int primaryType = BinaryFixtureFormat.readVarInt(in);
+            Node childNode = primaryType == 0
+                    ? nodeFactory.createNode(node, name)
+                    : nodeFactory.createNode(node, name, strings[primaryType - 1]);
+            childNodes.add(childNode);
+            readNodeContent(in, strings, childNode);
+        }
+
+        nodeFactory.createIteratorFor(node, childNodes);
+        nodeFactory.createPropertyIteratorFor(node, properties);
+    }
+
+    private Property readProperty(DataInput in, String[] strings, Node node) throws IOException, RepositoryException {
+        String name = readString(in, strings);
+        int type = in.readUnsignedByte();
+        boolean multiple = in.readUnsignedByte() != 0;
+        if (multiple) {
+            String[] values = new String[BinaryFixtureFormat.readVarInt(in)];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readLexicalForm(in, strings, readTypedValue(in, type));
+            }
+            return nodeFactory.createMultiValuedProperty(node, name, values);
+        }
+        Object typedValue = readTypedValue(in, type);
+        String lexicalValue = readLexicalForm(in, strings, typedValue);
+        if (typedValue != null && nodeFactory instanceof TypedNodeFactory) {
+            return ((TypedNodeFactory) nodeFactory).createProperty(node, name, lexicalValue, typedValue, type);
+        }
+        return nodeFactory.createProperty(node, name, lexicalValue, type);
+    }
+
+    /**
+     * @return The value of a type written in binary form, null for the types written as strings
+     */
+    private Object readTypedValue(DataInput in, int type) throws IOException {
+        switch (type) {
+            case PropertyType.LONG:
+                return BinaryFixtureFormat.readZigZag(in);
+            case PropertyType.DOUBLE:
+                return in.readDouble();
+            case PropertyType.BOOLEAN:
+                return in.readBoolean();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param typedValue Value read in binary form, null to read a value written as a string
+     * @return String form of the value, as it was written
+     */
+    private String readLexicalForm(DataInput in, String[] strings, Object typedValue) throws IOException {
+        if (typedValue == null) {
+            return readString(in, strings);
+        }
+        int lexicalForm = BinaryFixtureFormat.readVarInt(in);
+        return lexicalForm == 0 ? typedValue.toString() : stringAt(strings, lexicalForm - 1);
+    }
+
+    private String readString(DataInput in, String[] strings) throws IOException {
+        return stringAt(strings, BinaryFixtureFormat.readVarInt(in));
+    }
+
+    private String stringAt(String[] strings, int index) throws IOException {
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("Invalid string reference " + index + " in fixture snapshot");
+        }
+        return strings[index];
+    }
+}
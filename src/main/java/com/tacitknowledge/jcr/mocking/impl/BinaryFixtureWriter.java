@@ -0,0 +1,158 @@
+package com.tacitknowledge.jcr.mocking.impl;
+
+import com.tacitknowledge.jcr.testing.NodeFactory;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a node structure, for example one built from a JSON fixture, as a compact binary snapshot which
+ * {@link BinaryFixtureLoader} turns back into nodes without any JSON or property definition parsing.
+ * Names, types, values and the order of children and properties are kept, see {@link BinaryFixtureFormat}.
+ */
+public class BinaryFixtureWriter {
+
+    private final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+    private final List<String> strings = new ArrayList<String>();
+
+    /**
+     * Writes the given node, its properties and all its descendants. The stream is flushed but not closed.
+     * @param root Node to write
+     * @param outputStream Destination of the snapshot
+     * @throws RepositoryException If the nodes can't be read
+     * @throws IOException If the snapshot can't be written
+     */
+    public void write(Node root, OutputStream outputStream) throws RepositoryException, IOException {
+        stringIndexes.clear();
+        strings.clear();
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream bodyOut = new DataOutputStream(body);
+        writeNode(bodyOut, root);
+        bodyOut.flush();
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(BinaryFixtureFormat.MAGIC);
+        out.writeByte(BinaryFixtureFormat.VERSION);
+        BinaryFixtureFormat.writeVarInt(out, strings.size());
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            BinaryFixtureFormat.writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+        body.writeTo(out);
+        out.flush();
+    }
+
+    private void writeNode(DataOutput out, Node node) throws RepositoryException, IOException {
+        writeString(out, node.getName());
+        if (node.hasProperty(NodeFactory.JCR_PRIMARY_TYPE)) {
+            BinaryFixtureFormat.writeVarInt(out,
+                    indexOf(node.getProperty(NodeFactory.JCR_PRIMARY_TYPE).getString()) + 1);
+        } else {
+            BinaryFixtureFormat.writeVarInt(out, 0);
+        }
+
+        List<Property> properties = new ArrayList<Property>();
+        PropertyIterator propertyIterator = node.getProperties();
+        while (propertyIterator != null && propertyIterator.hasNext()) {
+            properties.add(propertyIterator.nextProperty());
+        }
+        BinaryFixtureFormat.writeVarInt(out, properties.size());
+        for (Property property : properties) {
+            writeProperty(out, property);
+        }
+
+        List<Node> childNodes = new ArrayList<Node>();
+        NodeIterator nodeIterator = node.getNodes();
+        while (nodeIterator != null && nodeIterator.hasNext()) {
+            childNodes.add(nodeIterator.nextNode());
+        }
+        BinaryFixtureFormat.writeVarInt(out, childNodes.size());
+        for (Node childNode : childNodes) {
+            writeNode(out, childNode);
+        }
+    }
+
+    private void writeProperty(DataOutput out, Property property) throws RepositoryException, IOException {
+        writeString(out, property.getName());
+        int type = property.getType();
+        out.writeByte(type);
+        if (property.isMultiple()) {
+            out.writeByte(1);
+            Value[] values = property.getValues();
+            BinaryFixtureFormat.writeVarInt(out, values.length);
+            for (Value value : values) {
+                writeValue(out, type, value, value.getString());
+            }
+        } else {
+            out.writeByte(0);
+            writeValue(out, type, property.getValue(), property.getString());
+        }
+    }
+
+    /**
+     * Types which are read back without parsing are written in binary form, the rest as their string form.
+     */
+    private void writeValue(DataOutput out, int type, Value value, String stringValue)
+            throws RepositoryException, IOException {
+        switch (type) {
+            case PropertyType.LONG:
+                long longValue = value.getLong();
+                BinaryFixtureFormat.writeZigZag(out, longValue);
+                writeLexicalForm(out, stringValue, Long.toString(longValue));
+                break;
+            case PropertyType.DOUBLE:
+                double doubleValue = value.getDouble();
+                out.writeDouble(doubleValue);
+                writeLexicalForm(out, stringValue, Double.toString(doubleValue));
+                break;
+            case PropertyType.BOOLEAN:
+                boolean booleanValue = value.getBoolean();
+                out.writeBoolean(booleanValue);
+                writeLexicalForm(out, stringValue, Boolean.toString(booleanValue));
+                break;
+            default:
+                writeString(out, stringValue == null ? "" : stringValue);
+                break;
+        }
+    }
+
+    /**
+     * Writes the string form of a value written in binary form, or 0 if it's the one the loader gives it anyway.
+     */
+    private void writeLexicalForm(DataOutput out, String stringValue, String canonicalValue) throws IOException {
+        boolean canonical = stringValue == null || stringValue.equals(canonicalValue);
+        BinaryFixtureFormat.writeVarInt(out, canonical ? 0 : indexOf(stringValue) + 1);
+    }
+
+    private void writeString(DataOutput out, String string) throws IOException {
+        BinaryFixtureFormat.writeVarInt(out, indexOf(string));
+    }
+
+    private int indexOf(String string) {
+        Integer index = stringIndexes.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.add(string);
+            stringIndexes.put(string, index);
+        }
+        return index;
+    }
+}
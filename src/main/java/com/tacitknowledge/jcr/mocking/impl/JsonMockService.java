@@ -2,60 +2,228 @@ package com.tacitknowledge.jcr.mocking.impl;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
 import com.tacitknowledge.jcr.mocking.JcrMockService;
-import com.tacitknowledge.jcr.mocking.domain.PropertyDefinitionMap;
+import com.tacitknowledge.jcr.mocking.domain.ParsedPropertyDefinition;
 import com.tacitknowledge.jcr.testing.NodeFactory;
+import com.tacitknowledge.jcr.testing.TypedNodeFactory;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.jcr.Node;
 import javax.jcr.Property;
+import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * @author Daniel Valencia (daniel@tacitknowledge.com)
  */
 public class JsonMockService implements JcrMockService {
 
+    /**
+     * Member holding the property type name in the object form of a typed value
+     */
+    public static final String TYPE_MEMBER = "$type";
+
+    /**
+     * Member holding the value in the object form of a typed value
+     */
+    public static final String VALUE_MEMBER = "$value";
+
     private final NodeFactory nodeFactory;
 
+    private boolean streaming;
+
+    private boolean nativeTypes;
+
+    /**
+     * Default number of JSON members a subtree must have to be built on its own fork/join task
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1000;
+
+    private boolean parallel;
+
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    private ForkJoinPool forkJoinPool;
+
     public JsonMockService(NodeFactory nodeFactory){
         this.nodeFactory = nodeFactory;
     }
 
+    /**
+     * When streaming is on the JSON is read token by token and nodes and properties are handed to the
+     * node factory as soon as they are read, instead of parsing the whole document into a JsonObject
+     * tree first. Off by default.
+     * @param streaming true to read the JSON with a pull parser
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * When native types are on, JSON values are typed without going through the string property definitions:
+     * <ul>
+     *     <li>Whole numbers are Long properties, or Decimal ones if they don't fit in a long, other numbers are
+     *     Double properties.</li>
+     *     <li>true and false are Boolean properties.</li>
+     *     <li>Objects starting with a $type or $value member are typed values rather than nodes, e.g.
+     *     <code>{"$type": "Date", "$value": 1356307200000}</code>. Dates may be given in milliseconds.</li>
+     * </ul>
+     * Node factories implementing {@link TypedNodeFactory} get the parsed value and don't parse it again.
+     * Off by default, numbers and booleans are then String properties.
+     * @param nativeTypes true to type properties from their JSON values
+     */
+    public void setNativeTypes(boolean nativeTypes) {
+        this.nativeTypes = nativeTypes;
+    }
+
+    public boolean isNativeTypes() {
+        return nativeTypes;
+    }
+
+    /**
+     * When parallel building is on, sibling subtrees with at least {@link #setParallelThreshold(int) threshold}
+     * JSON members are built on fork/join tasks, and node and property iterators are linked at the end on the
+     * calling thread. The node factory must allow disjoint subtrees to be built concurrently, as
+     * {@link com.tacitknowledge.jcr.testing.impl.InMemoryNodeFactory} and
+     * {@link com.tacitknowledge.jcr.testing.impl.MockNodeFactory} do. Only applies to the tree mode,
+     * streaming reads the JSON on a single thread. Off by default.
+     * @param parallel true to build large subtrees in parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * @param parallelThreshold Number of JSON members, counted over the whole subtree, below which a subtree is
+     *                          built on the task of its parent
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * @param forkJoinPool Pool for parallel building, the common pool if not set
+     */
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
     @Override
     public Node fromString(Node parentNode, String jsonNodeStructure) throws RepositoryException {
+        if(streaming){
+            return streamChildNodes(new StringReader(jsonNodeStructure), parentNode);
+        }
         JsonObject object = parseJson(jsonNodeStructure);
-        return buildChildNodes(object, parentNode);
+        return buildTree(object, parentNode);
     }
 
     @Override
     public Node fromString(String jsonNodeStructure) throws RepositoryException {
+        if(streaming){
+            return streamChildNodes(new StringReader(jsonNodeStructure), null);
+        }
         JsonObject jsonNodeObject = parseJson(jsonNodeStructure);
-        return buildChildNodes(jsonNodeObject, null);
+        return buildTree(jsonNodeObject, null);
+    }
+
+    /**
+     * Builds the node structure read from the given reader as children of the given parent. The reader is
+     * consumed but not closed.
+     */
+    public Node fromReader(Node parentNode, Reader jsonNodeStructure) throws RepositoryException, IOException {
+        if(streaming){
+            return streamChildNodes(jsonNodeStructure, parentNode);
+        }
+        JsonObject object = parseJson(jsonNodeStructure);
+        return buildTree(object, parentNode);
+    }
+
+    /**
+     * Builds the node structure read from the given reader under a new root node. The reader is consumed but
+     * not closed.
+     */
+    public Node fromReader(Reader jsonNodeStructure) throws RepositoryException, IOException {
+        return fromReader(null, jsonNodeStructure);
+    }
+
+    /**
+     * Builds nodes from the given JSON object as children of the given parent, in parallel if enabled
+     * @param jsonObject JsonObject to create the children from
+     * @param parent Parent node, a root node is created if null
+     * @return Parent node
+     * @throws RepositoryException If a repository error happens
+     */
+    private Node buildTree(JsonObject jsonObject, Node parent) throws RepositoryException {
+        if(parent == null){
+            parent = nodeFactory.createNode(StringUtils.EMPTY);
+        }
+        if(!parallel || countMembers(jsonObject, parallelThreshold) < parallelThreshold){
+            return buildChildNodes(jsonObject, parent, null, false);
+        }
+        SubtreeTask rootTask = new SubtreeTask(jsonObject, parent);
+        ForkJoinPool pool = forkJoinPool == null ? ForkJoinPool.commonPool() : forkJoinPool;
+        try {
+            pool.invoke(rootTask);
+        } catch (RepositoryFailure e) {
+            throw e.getCause();
+        }
+        for(NodeLinks links : rootTask.links){
+            nodeFactory.createIteratorFor(links.node, links.childNodes);
+            nodeFactory.createPropertyIteratorFor(links.node, links.properties);
+        }
+        return parent;
     }
 
     /**
      * Builds nodes from the given JSON object as children of the given parent
      * @param parentJsonObject JsonObject to create the children from
      * @param parent Parent node
+     * @param task Task building the subtree when building in parallel, which links the iterators later; null to
+     *             link them right away
+     * @param forking true if large child subtrees are to be forked to their own task
      * @return Parent node
      * @throws RepositoryException If a repository error happens
      */
-    private Node buildChildNodes(JsonObject parentJsonObject, Node parent) throws RepositoryException {
+    private Node buildChildNodes(JsonObject parentJsonObject, Node parent, SubtreeTask task, boolean forking)
+            throws RepositoryException {
         Node childNode;
         List<Node> childNodes = new ArrayList<Node>();
 	    List<Property> properties = new ArrayList<Property>();
-        if(parent == null){
-            parent = nodeFactory.createNode(StringUtils.EMPTY);
-        }
         Set<Map.Entry<String, JsonElement>> childElements = parentJsonObject.entrySet();
 
         for(Map.Entry<String, JsonElement> childEntry: childElements){
             String childElementName = childEntry.getKey();
             JsonElement childElement = childEntry.getValue();
-            if(childElement.isJsonObject()){
+            if(nativeTypes && isTypedValueObject(childElement)){
+                TypedValue typedValue = readTypedValue(childElement.getAsJsonObject());
+                properties.add(createProperty(parent, childElementName, typedValue));
+            }else if(childElement.isJsonObject()){
                 JsonObject childJsonObject = childElement.getAsJsonObject();
                 JsonElement nodeTypeElement = childJsonObject.get(NodeFactory.JCR_PRIMARY_TYPE);
                 if(nodeTypeElement != null ){
@@ -65,25 +233,52 @@ public class JsonMockService implements JcrMockService {
                     childNode = nodeFactory.createNode(parent, childElementName);
                 }
                 childNodes.add(childNode);
-                buildChildNodes(childJsonObject, childNode);
+                if(forking && countMembers(childJsonObject, parallelThreshold) >= parallelThreshold){
+                    task.fork(childJsonObject, childNode);
+                }else{
+                    // A subtree too small to fork has no child subtree large enough either
+                    buildChildNodes(childJsonObject, childNode, task, false);
+                }
             }else if(childElement.isJsonPrimitive()){
-                String childElementValue = childElement.getAsString();
-                PropertyDefinitionMap propertyDefinitionMap = new PropertyDefinitionMap(childElementValue);
-                int propertyType = propertyDefinitionMap.getType();
-                String propertyValue = propertyDefinitionMap.getValue();
-                Property property = nodeFactory.createProperty(parent, childElementName, propertyValue, propertyType);
-	            properties.add(property);
+                Object childElementValue = nativeTypes
+                        ? readNativeValue(childElement.getAsJsonPrimitive())
+                        : childElement.getAsString();
+	            properties.add(createProperty(parent, childElementName, childElementValue));
             }else if(childElement.isJsonArray()){
 	            String[] values = readMultiValuedProperty(childElement);
 	            Property property = nodeFactory.createMultiValuedProperty(parent, childElementName, values);
 	            properties.add(property);
             }
         }
-        nodeFactory.createIteratorFor(parent, childNodes);
-	    nodeFactory.createPropertyIteratorFor(parent, properties);
+        if(task == null){
+            nodeFactory.createIteratorFor(parent, childNodes);
+            nodeFactory.createPropertyIteratorFor(parent, properties);
+        }else{
+            task.links.add(new NodeLinks(parent, childNodes, properties));
+        }
         return parent;
     }
 
+    /**
+     * Counts the members of a JSON object and of its descendants, stopping at the given limit.
+     */
+    private static int countMembers(JsonObject jsonObject, int limit) {
+        int count = 0;
+        for(Map.Entry<String, JsonElement> member : jsonObject.entrySet()){
+            count++;
+            if(count >= limit){
+                return count;
+            }
+            if(member.getValue().isJsonObject()){
+                count += countMembers(member.getValue().getAsJsonObject(), limit - count);
+                if(count >= limit){
+                    return count;
+                }
+            }
+        }
+        return count;
+    }
+
 	private String[] readMultiValuedProperty(JsonElement propertyElement) {
 		List<String> childElementValues = new ArrayList<String>();
 		JsonArray jsonArray = propertyElement.getAsJsonArray();
@@ -98,6 +293,395 @@ public class JsonMockService implements JcrMockService {
 		return childElementValues.toArray(new String[childElementValues.size()]);
 	}
 
+    /**
+     * Reads the JSON object available from the given reader and builds its nodes as children of the given parent.
+     * @param jsonReader Reader positioned before the top level JSON object
+     * @param parent Parent node, a root node is created if null
+     * @return Parent node
+     * @throws RepositoryException If a repository error happens
+     */
+    private Node streamChildNodes(Reader jsonReader, Node parent) throws RepositoryException {
+        JsonReader reader = new JsonReader(jsonReader);
+        reader.setLenient(true);
+        try {
+            if(parent == null){
+                parent = nodeFactory.createNode(StringUtils.EMPTY);
+            }
+            reader.beginObject();
+            readNodeContent(reader, null, null, parent, null);
+            return parent;
+        } catch (MalformedJsonException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    /**
+     * Reads the members of the JSON object the reader is in, up to and including its closing brace.
+     * <p>
+     * If the node isn't created yet, it's created as soon as its jcr:primaryType is read. Scalar properties read
+     * before that are held back, so the pending data is never more than the leading properties of the nodes on the
+     * current path. A node without a jcr:primaryType ahead of its first child, or without one at all, is created
+     * untyped and gets its type applied if one turns up later.
+     *
+     * @param reader JSON reader, just past the opening brace of the object
+     * @param parent Parent of the node to create, only used if node is null
+     * @param name Name of the node to create, only used if node is null
+     * @param node Node to add children and properties to, or null to create it from the given parent and name
+     * @param firstName Name of the first member if it was already read, null otherwise
+     * @return Node holding the read children and properties
+     * @throws IOException If the JSON can't be read
+     * @throws RepositoryException If a repository error happens
+     */
+    private Node readNodeContent(JsonReader reader, Node parent, String name, Node node, String firstName)
+            throws IOException, RepositoryException {
+        boolean typeable = node == null;
+        List<String> pendingNames = new ArrayList<String>();
+        List<Object> pendingValues = new ArrayList<Object>();
+        List<Node> childNodes = new ArrayList<Node>();
+        Set<String> childNames = new HashSet<String>();
+        List<Property> properties = new ArrayList<Property>();
+
+        String childElementName = firstName;
+        while(childElementName != null || reader.hasNext()){
+            if(childElementName == null){
+                childElementName = reader.nextName();
+            }
+            JsonToken token = reader.peek();
+            Object childElementValue = null;
+            if(token == JsonToken.BEGIN_OBJECT){
+                reader.beginObject();
+                String firstMemberName = nativeTypes && reader.hasNext() ? reader.nextName() : null;
+                if(isTypedValueMember(firstMemberName)){
+                    childElementValue = readTypedValue(reader, firstMemberName);
+                }else{
+                    if(node == null){
+                        node = createNode(parent, name, null, pendingNames, pendingValues, properties);
+                    }
+                    Node childNode = readNodeContent(reader, node, childElementName, null, firstMemberName);
+                    // A repeated key reads into the node already created, which is listed once as in the tree mode
+                    if(childNames.add(childElementName) || !childNodes.contains(childNode)){
+                        childNodes.add(childNode);
+                    }
+                }
+            }else if(token == JsonToken.BEGIN_ARRAY){
+                if(node == null){
+                    node = createNode(parent, name, null, pendingNames, pendingValues, properties);
+                }
+                String[] values = readMultiValuedProperty(reader);
+                properties.add(nodeFactory.createMultiValuedProperty(node, childElementName, values));
+            }else if(token == JsonToken.NULL){
+                reader.nextNull();
+            }else{
+                childElementValue = readScalarValue(reader, token);
+            }
+
+            if(childElementValue != null){
+                if(typeable && NodeFactory.JCR_PRIMARY_TYPE.equals(childElementName)
+                        && childElementValue instanceof String){
+                    node = createNode(parent, name, (String) childElementValue, pendingNames, pendingValues,
+                            properties);
+                }
+                if(node == null){
+                    pendingNames.add(childElementName);
+                    pendingValues.add(childElementValue);
+                }else{
+                    properties.add(createProperty(node, childElementName, childElementValue));
+                }
+            }
+            childElementName = null;
+        }
+        reader.endObject();
+
+        if(node == null){
+            node = createNode(parent, name, null, pendingNames, pendingValues, properties);
+        }
+        nodeFactory.createIteratorFor(node, childNodes);
+        nodeFactory.createPropertyIteratorFor(node, properties);
+        return node;
+    }
+
+    /**
+     * Creates a node, typed if a node type is given, and the properties held back until it existed.
+     */
+    private Node createNode(Node parent, String name, String nodeType, List<String> pendingNames,
+                            List<Object> pendingValues, List<Property> properties) throws RepositoryException {
+        Node node = nodeType == null
+                ? nodeFactory.createNode(parent, name)
+                : nodeFactory.createNode(parent, name, nodeType);
+        for(int i = 0; i < pendingNames.size(); i++){
+            properties.add(createProperty(node, pendingNames.get(i), pendingValues.get(i)));
+        }
+        pendingNames.clear();
+        pendingValues.clear();
+        return node;
+    }
+
+    /**
+     * @param value Either a property definition string or a {@link TypedValue}
+     */
+    private Property createProperty(Node node, String name, Object value) throws RepositoryException {
+        if(value instanceof TypedValue){
+            TypedValue typedValue = (TypedValue) value;
+            if(nodeFactory instanceof TypedNodeFactory){
+                return ((TypedNodeFactory) nodeFactory).createProperty(node, name, typedValue.lexicalValue,
+                        typedValue.typedValue, typedValue.type);
+            }
+            return nodeFactory.createProperty(node, name, typedValue.lexicalValue, typedValue.type);
+        }
+        ParsedPropertyDefinition propertyDefinition = ParsedPropertyDefinition.parse((String) value);
+        int propertyType = propertyDefinition.getType();
+        String propertyValue = propertyDefinition.getValue();
+        return nodeFactory.createProperty(node, name, propertyValue, propertyType);
+    }
+
+    /**
+     * @return The value as a string, or as a {@link TypedValue} for numbers and booleans with native types on
+     */
+    private Object readScalarValue(JsonReader reader, JsonToken token) throws IOException {
+        if(token == JsonToken.BOOLEAN){
+            boolean value = reader.nextBoolean();
+            return nativeTypes ? TypedValue.of(value) : String.valueOf(value);
+        }
+        if(token == JsonToken.NUMBER && nativeTypes){
+            return TypedValue.ofNumber(reader.nextString());
+        }
+        return reader.nextString();
+    }
+
+    private Object readNativeValue(JsonPrimitive primitive) {
+        if(primitive.isBoolean()){
+            return TypedValue.of(primitive.getAsBoolean());
+        }
+        if(primitive.isNumber()){
+            return TypedValue.ofNumber(primitive.getAsString());
+        }
+        return primitive.getAsString();
+    }
+
+    private static boolean isTypedValueMember(String memberName) {
+        return TYPE_MEMBER.equals(memberName) || VALUE_MEMBER.equals(memberName);
+    }
+
+    private static boolean isTypedValueObject(JsonElement element) {
+        if(!element.isJsonObject()){
+            return false;
+        }
+        Iterator<Map.Entry<String, JsonElement>> members = element.getAsJsonObject().entrySet().iterator();
+        return members.hasNext() && isTypedValueMember(members.next().getKey());
+    }
+
+    /**
+     * Reads the rest of a typed value object, the reader being just past the given first member name.
+     */
+    private static TypedValue readTypedValue(JsonReader reader, String firstName) throws IOException {
+        String typeName = null;
+        String lexicalValue = null;
+        String memberName = firstName;
+        while(memberName != null || reader.hasNext()){
+            if(memberName == null){
+                memberName = reader.nextName();
+            }
+            String memberValue = reader.peek() == JsonToken.BOOLEAN
+                    ? String.valueOf(reader.nextBoolean())
+                    : reader.nextString();
+            if(TYPE_MEMBER.equals(memberName)){
+                typeName = memberValue;
+            }else if(VALUE_MEMBER.equals(memberName)){
+                lexicalValue = memberValue;
+            }else{
+                throw new JsonSyntaxException("Unexpected member " + memberName + " in typed value");
+            }
+            memberName = null;
+        }
+        reader.endObject();
+        return TypedValue.of(typeName, lexicalValue);
+    }
+
+    private static TypedValue readTypedValue(JsonObject object) {
+        String typeName = null;
+        String lexicalValue = null;
+        for(Map.Entry<String, JsonElement> member : object.entrySet()){
+            if(TYPE_MEMBER.equals(member.getKey())){
+                typeName = member.getValue().getAsString();
+            }else if(VALUE_MEMBER.equals(member.getKey())){
+                lexicalValue = member.getValue().getAsString();
+            }else{
+                throw new JsonSyntaxException("Unexpected member " + member.getKey() + " in typed value");
+            }
+        }
+        return TypedValue.of(typeName, lexicalValue);
+    }
+
+    private String[] readMultiValuedProperty(JsonReader reader) throws IOException {
+        List<String> childElementValues = new ArrayList<String>();
+        boolean primitivesOnly = true;
+        reader.beginArray();
+        while(reader.hasNext()){
+            JsonToken token = reader.peek();
+            if(token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY || token == JsonToken.NULL){
+                primitivesOnly = false;
+                reader.skipValue();
+            }else if(token == JsonToken.BOOLEAN){
+                childElementValues.add(String.valueOf(reader.nextBoolean()));
+            }else{
+                childElementValues.add(reader.nextString());
+            }
+        }
+        reader.endArray();
+        if(!primitivesOnly){
+            return new String[] {};
+        }
+        return childElementValues.toArray(new String[childElementValues.size()]);
+    }
+
+    /**
+     * Builds a subtree, forking a task for each large child subtree. Iterators aren't linked by the task, the
+     * nodes and their children are recorded to be linked once the whole tree is built.
+     */
+    private class SubtreeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final JsonObject jsonObject;
+        private final Node node;
+        private final List<NodeLinks> links = new ArrayList<NodeLinks>();
+        private final List<SubtreeTask> forkedTasks = new ArrayList<SubtreeTask>();
+
+        SubtreeTask(JsonObject jsonObject, Node node) {
+            this.jsonObject = jsonObject;
+            this.node = node;
+        }
+
+        void fork(JsonObject childJsonObject, Node childNode) {
+            SubtreeTask childTask = new SubtreeTask(childJsonObject, childNode);
+            childTask.fork();
+            forkedTasks.add(childTask);
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                buildChildNodes(jsonObject, node, this, true);
+            } catch (RepositoryException e) {
+                throw new RepositoryFailure(e);
+            }
+            for(SubtreeTask forkedTask : forkedTasks){
+                forkedTask.join();
+                links.addAll(forkedTask.links);
+            }
+        }
+    }
+
+    /**
+     * Node with the children and properties its iterators are to be created for.
+     */
+    private static final class NodeLinks {
+
+        private final Node node;
+        private final List<Node> childNodes;
+        private final List<Property> properties;
+
+        NodeLinks(Node node, List<Node> childNodes, List<Property> properties) {
+            this.node = node;
+            this.childNodes = childNodes;
+            this.properties = properties;
+        }
+    }
+
+    /**
+     * Carries a repository error out of a fork/join task.
+     */
+    private static final class RepositoryFailure extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        RepositoryFailure(RepositoryException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized RepositoryException getCause() {
+            return (RepositoryException) super.getCause();
+        }
+    }
+
+    /**
+     * Property value read from a JSON literal or typed value object, with its string form and, where the type
+     * has one, the parsed value.
+     */
+    private static final class TypedValue {
+
+        private static final TypedValue TRUE = new TypedValue("true", Boolean.TRUE, PropertyType.BOOLEAN);
+        private static final TypedValue FALSE = new TypedValue("false", Boolean.FALSE, PropertyType.BOOLEAN);
+
+        private final String lexicalValue;
+        private final Object typedValue;
+        private final int type;
+
+        private TypedValue(String lexicalValue, Object typedValue, int type) {
+            this.lexicalValue = lexicalValue;
+            this.typedValue = typedValue;
+            this.type = type;
+        }
+
+        static TypedValue of(boolean value) {
+            return value ? TRUE : FALSE;
+        }
+
+        static TypedValue ofNumber(String number) {
+            if(number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0){
+                try {
+                    return new TypedValue(number, Long.parseLong(number), PropertyType.LONG);
+                } catch (NumberFormatException e) {
+                    return new TypedValue(number, new BigDecimal(number), PropertyType.DECIMAL);
+                }
+            }
+            return new TypedValue(number, Double.parseDouble(number), PropertyType.DOUBLE);
+        }
+
+        /**
+         * @throws JsonSyntaxException If the type is missing
+         * @throws IllegalArgumentException If the type is unknown
+         */
+        static TypedValue of(String typeName, String lexicalValue) {
+            if(typeName == null){
+                throw new JsonSyntaxException("Missing " + TYPE_MEMBER + " in typed value");
+            }
+            int type = PropertyType.valueFromName(typeName);
+            if(lexicalValue == null){
+                lexicalValue = StringUtils.EMPTY;
+            }
+            return new TypedValue(lexicalValue, parse(lexicalValue, type), type);
+        }
+
+        /**
+         * @return Value of the given type, or null if the node factory should parse the string form itself
+         */
+        private static Object parse(String lexicalValue, int type) {
+            switch (type) {
+                case PropertyType.LONG:
+                    return Long.parseLong(lexicalValue);
+                case PropertyType.DOUBLE:
+                    return Double.parseDouble(lexicalValue);
+                case PropertyType.DECIMAL:
+                    return new BigDecimal(lexicalValue);
+                case PropertyType.BOOLEAN:
+                    return Boolean.valueOf(lexicalValue);
+                case PropertyType.DATE:
+                    if(StringUtils.isNumeric(lexicalValue)){
+                        Calendar calendar = Calendar.getInstance();
+                        calendar.setTimeInMillis(Long.parseLong(lexicalValue));
+                        return calendar;
+                    }
+                    return null;
+                default:
+                    return null;
+            }
+        }
+    }
+
     /**
      * Parses a given String as JSON
      * @param jsonString - JSON object as String
@@ -107,4 +691,14 @@ public class JsonMockService implements JcrMockService {
         com.google.gson.JsonParser parser = new com.google.gson.JsonParser();
         return parser.parse(jsonString).getAsJsonObject();
     }
+
+    /**
+     * Parses the JSON available from the given reader
+     * @param jsonReader - JSON object source
+     * @return JsonObject
+     */
+    private JsonObject parseJson(Reader jsonReader) {
+        com.google.gson.JsonParser parser = new com.google.gson.JsonParser();
+        return parser.parse(jsonReader).getAsJsonObject();
+    }
 }
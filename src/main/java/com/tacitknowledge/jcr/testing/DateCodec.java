@@ -0,0 +1,16 @@
+package com.tacitknowledge.jcr.testing;
+
+import java.util.Calendar;
+
+/**
+ * Parses the values of Date properties.
+ */
+public interface DateCodec {
+
+    /**
+     * @param value String form of the date
+     * @return Calendar owned by the caller, never shared with other callers
+     * @throws IllegalArgumentException If the value isn't in a supported format
+     */
+    Calendar parse(String value);
+}
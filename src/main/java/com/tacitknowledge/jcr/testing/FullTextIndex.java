@@ -0,0 +1,36 @@
+package com.tacitknowledge.jcr.testing;
+
+import javax.jcr.Node;
+import java.util.List;
+
+/**
+ * Inverted index of the words of string properties, kept up to date by the node factory as properties are created,
+ * changed and removed. Each word, or term, maps to the nodes having it in the value of any of their string
+ * properties.
+ */
+public interface FullTextIndex {
+
+    /**
+     * Records the words of a property value.
+     * @param node Node owning the property
+     * @param propertyName Property name
+     * @param text Value of the property
+     */
+    void add(Node node, String propertyName, String text);
+
+    /**
+     * Forgets the words of a property value recorded by {@link #add}, e.g. once the property is changed or removed.
+     * A node stays indexed under the words its other properties still have.
+     * @param node Node owning the property
+     * @param propertyName Property name
+     * @param text Value of the property
+     */
+    void remove(Node node, String propertyName, String text);
+
+    /**
+     * @param term Single word, in any case
+     * @return Nodes with the word in one of their string properties, in the order they were indexed; empty if there
+     *         are none
+     */
+    List<Node> getNodes(String term);
+}
@@ -0,0 +1,42 @@
+package com.tacitknowledge.jcr.testing;
+
+import javax.jcr.Node;
+import java.util.List;
+
+/**
+ * Index of nodes by the values of some of their properties, kept up to date by the node factory as properties are
+ * created, changed and removed. Values are indexed by their string form, every value of a multi-valued property.
+ */
+public interface PropertyIndex {
+
+    /**
+     * @param propertyName Property name
+     * @return true if values of properties with this name are indexed
+     */
+    boolean isIndexed(String propertyName);
+
+    /**
+     * Records that a node has a property value. Values of properties which aren't indexed are ignored.
+     * @param node Node owning the property
+     * @param propertyName Property name
+     * @param value String form of the value
+     */
+    void add(Node node, String propertyName, String value);
+
+    /**
+     * Records that a node no longer has a property value it was added with, e.g. once the property is changed or
+     * removed. A value added several times stays indexed until it is removed as many times.
+     * @param node Node owning the property
+     * @param propertyName Property name
+     * @param value String form of the value
+     */
+    void remove(Node node, String propertyName, String value);
+
+    /**
+     * @param propertyName Name of an indexed property
+     * @param value String form of the value
+     * @return Nodes with a property of that name and value, in the order they were indexed; empty if there are none
+     * @throws IllegalArgumentException If the property isn't indexed
+     */
+    List<Node> getNodes(String propertyName, String value);
+}
@@ -0,0 +1,26 @@
+package com.tacitknowledge.jcr.testing;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+
+/**
+ * Node factory which can take property values that are already typed, so values read as numbers or booleans
+ * don't need to be parsed again from their string form.
+ */
+public interface TypedNodeFactory extends NodeFactory {
+
+    /**
+     * Creates a single valued property from a typed value
+     * @param parent Parent node
+     * @param name Property name
+     * @param lexicalValue String form of the value
+     * @param typedValue Value matching the property type: a Long, Double, BigDecimal, Boolean or Calendar, or
+     *                   null to parse it from its string form
+     * @param propertyType One of the {@link javax.jcr.PropertyType} constants
+     * @return Property
+     * @throws RepositoryException If a repository error happens
+     */
+    Property createProperty(Node parent, String name, String lexicalValue, Object typedValue, int propertyType)
+            throws RepositoryException;
+}
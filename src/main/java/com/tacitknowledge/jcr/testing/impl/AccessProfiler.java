@@ -0,0 +1,271 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.listeners.InvocationListener;
+import org.mockito.listeners.MethodInvocationReport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the calls made to the nodes and properties of a {@link MockNodeFactory}, by path of the item called, to
+ * find code looking the same items up over and over:
+ * <pre>
+ *     AccessProfiler profiler = new AccessProfiler();
+ *     nodeFactory.setAccessProfiler(profiler);
+ *     ... build the fixture ...
+ *     profiler.reset();
+ *     ... run the code under test ...
+ *     JcrTestingUtils.assertMaxLookups(profiler, "/content/home", 3);
+ * </pre>
+ * Lookups, the calls getting or testing children and properties, are counted by name or pattern looked up, e.g.
+ * {@code getNode(jcr:content)}; other calls by method name. Counters are striped, so items called by several
+ * threads don't contend on one counter. Calls made by the factory while it builds the fixture are counted too,
+ * hence the reset.
+ */
+public class AccessProfiler {
+
+    private static final Set<String> LOOKUP_METHODS = new HashSet<String>(Arrays.asList("getNode", "getNodes",
+            "getProperty", "getProperties", "hasNode", "hasNodes", "hasProperty", "hasProperties"));
+
+    private static final Comparator<Access> MOST_CALLED_FIRST = new Comparator<Access>() {
+        @Override
+        public int compare(Access first, Access second) {
+            int comparison = Long.compare(second.count, first.count);
+            return comparison != 0 ? comparison : first.toString().compareTo(second.toString());
+        }
+    };
+
+    private final ConcurrentMap<Object, String> paths = new ConcurrentHashMap<Object, String>();
+
+    private final ConcurrentMap<String, ConcurrentMap<String, LongAdder>> counts =
+            new ConcurrentHashMap<String, ConcurrentMap<String, LongAdder>>();
+
+    private final InvocationListener listener = new InvocationListener() {
+        @Override
+        public void reportInvocation(MethodInvocationReport report) {
+            InvocationOnMock invocation = (InvocationOnMock) report.getInvocation();
+            String path = paths.get(invocation.getMock());
+            if (path != null) {
+                record(path, call(invocation.getMethod().getName(), invocation.getArguments()));
+            }
+        }
+    };
+
+    /**
+     * @return Listener of the mocks to profile
+     */
+    InvocationListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Starts counting the calls made to an item.
+     */
+    void track(Object item, String path) {
+        paths.put(item, path);
+    }
+
+    /**
+     * @return true if the calls of the method are counted per name or pattern looked up
+     */
+    public static boolean isLookup(String methodName) {
+        return LOOKUP_METHODS.contains(methodName);
+    }
+
+    private static String call(String methodName, Object[] arguments) {
+        if (!isLookup(methodName) || arguments.length != 1) {
+            return methodName;
+        }
+        Object argument = arguments[0];
+        if (argument instanceof String[]) {
+            argument = Arrays.toString((String[]) argument);
+        }
+        return methodName + "(" + argument + ")";
+    }
+
+    private void record(String path, String call) {
+        ConcurrentMap<String, LongAdder> calls = counts.get(path);
+        if (calls == null) {
+            calls = new ConcurrentHashMap<String, LongAdder>();
+            ConcurrentMap<String, LongAdder> existing = counts.putIfAbsent(path, calls);
+            if (existing != null) {
+                calls = existing;
+            }
+        }
+        LongAdder counter = calls.get(call);
+        if (counter == null) {
+            counter = new LongAdder();
+            LongAdder existing = calls.putIfAbsent(call, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        counter.increment();
+    }
+
+    /**
+     * Forgets the calls counted so far.
+     */
+    public void reset() {
+        counts.clear();
+    }
+
+    /**
+     * @return Number of calls made to the item at the path
+     */
+    public long getInvocationCount(String path) {
+        long count = 0;
+        for (Access access : getCalls(path)) {
+            count += access.count;
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of calls of a method made to the item at the path, whatever they looked up
+     */
+    public long getInvocationCount(String path, String methodName) {
+        long count = 0;
+        for (Access access : getCalls(path)) {
+            if (access.getMethodName().equals(methodName)) {
+                count += access.count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of lookups made from the item at the path
+     */
+    public long getLookupCount(String path) {
+        long count = 0;
+        for (Access access : getCalls(path)) {
+            if (isLookup(access.getMethodName())) {
+                count += access.count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Calls made to the item at the path, most made first
+     */
+    public List<Access> getCalls(String path) {
+        List<Access> calls = new ArrayList<Access>();
+        ConcurrentMap<String, LongAdder> counters = counts.get(path);
+        if (counters != null) {
+            for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+                calls.add(new Access(path, counter.getKey(), counter.getValue().sum()));
+            }
+        }
+        Collections.sort(calls, MOST_CALLED_FIRST);
+        return calls;
+    }
+
+    /**
+     * @param limit Maximum number of paths to return
+     * @return Paths of the items called the most, with no call and their number of calls, most called first
+     */
+    public List<Access> getHotPaths(int limit) {
+        List<Access> hotPaths = new ArrayList<Access>();
+        for (String path : counts.keySet()) {
+            hotPaths.add(new Access(path, null, getInvocationCount(path)));
+        }
+        return top(hotPaths, limit);
+    }
+
+    /**
+     * @param minCount Number of times a lookup must have been made to be returned, at least 2
+     * @return Lookups made that many times or more from the same item, most made first
+     */
+    public List<Access> getRepeatedLookups(int minCount) {
+        List<Access> repeated = new ArrayList<Access>();
+        for (String path : counts.keySet()) {
+            for (Access access : getCalls(path)) {
+                if (access.count >= Math.max(minCount, 2) && isLookup(access.getMethodName())) {
+                    repeated.add(access);
+                }
+            }
+        }
+        return top(repeated, Integer.MAX_VALUE);
+    }
+
+    private static List<Access> top(List<Access> accesses, int limit) {
+        Collections.sort(accesses, MOST_CALLED_FIRST);
+        return accesses.size() > limit ? new ArrayList<Access>(accesses.subList(0, limit)) : accesses;
+    }
+
+    /**
+     * @param limit Maximum number of paths and lookups to list
+     * @return Hot paths and repeated lookups, one per line
+     */
+    public String report(int limit) {
+        StringBuilder report = new StringBuilder("Hot paths:");
+        for (Access access : getHotPaths(limit)) {
+            report.append("\n  ").append(access);
+        }
+        report.append("\nRepeated lookups:");
+        List<Access> repeated = getRepeatedLookups(2);
+        for (Access access : repeated.subList(0, Math.min(limit, repeated.size()))) {
+            report.append("\n  ").append(access);
+        }
+        return report.toString();
+    }
+
+    /**
+     * Number of calls made to an item, or to one of its methods.
+     */
+    public static final class Access {
+
+        private final String path;
+        private final String call;
+        private final long count;
+
+        Access(String path, String call, long count) {
+            this.path = path;
+            this.call = call;
+            this.count = count;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return Method called, followed by what it looked up for lookups; null for every call made to the item
+         */
+        public String getCall() {
+            return call;
+        }
+
+        /**
+         * @return Method called, null for every call made to the item
+         */
+        public String getMethodName() {
+            if (call == null) {
+                return null;
+            }
+            int parenthesis = call.indexOf('(');
+            return parenthesis < 0 ? call : call.substring(0, parenthesis);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return (call == null ? path : path + " " + call) + ": " + count;
+        }
+    }
+}
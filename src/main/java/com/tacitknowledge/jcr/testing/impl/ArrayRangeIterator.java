@@ -0,0 +1,104 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import javax.jcr.RangeIterator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Range iterator over a slice of an array. The array is never copied nor changed, so a single snapshot of the
+ * items can be shared by any number of iterators, and stepping, skipping and sizing are all O(1).
+ */
+public class ArrayRangeIterator implements RangeIterator {
+
+    private final Object[] items;
+    private final int start;
+    private final int end;
+    private int index;
+
+    /**
+     * @param items Items to iterate over, which must not be changed while iterating
+     * @param from Index of the first item to return
+     * @param to Index after the last item to return
+     */
+    public ArrayRangeIterator(Object[] items, int from, int to) {
+        if (from < 0 || to > items.length || from > to) {
+            throw new IndexOutOfBoundsException("Invalid range " + from + " to " + to + " of " + items.length);
+        }
+        this.items = items;
+        this.start = from;
+        this.end = to;
+        this.index = from;
+    }
+
+    public ArrayRangeIterator(Object[] items) {
+        this(items, 0, items.length);
+    }
+
+    /**
+     * Takes a snapshot of the remaining items of the given iterator.
+     */
+    public ArrayRangeIterator(Iterator<?> iterator) {
+        this(toArray(iterator));
+    }
+
+    private static Object[] toArray(Iterator<?> iterator) {
+        Object[] items = new Object[8];
+        int size = 0;
+        while (iterator.hasNext()) {
+            if (size == items.length) {
+                Object[] grown = new Object[size * 2];
+                System.arraycopy(items, 0, grown, 0, size);
+                items = grown;
+            }
+            items[size++] = iterator.next();
+        }
+        if (size == items.length) {
+            return items;
+        }
+        Object[] trimmed = new Object[size];
+        System.arraycopy(items, 0, trimmed, 0, size);
+        return trimmed;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return index < end;
+    }
+
+    @Override
+    public Object next() {
+        if (index >= end) {
+            throw new NoSuchElementException();
+        }
+        return items[index++];
+    }
+
+    @Override
+    public void skip(long skipNum) {
+        if (skipNum < 0 || skipNum > end - index) {
+            throw new NoSuchElementException("Can't skip " + skipNum + " items, " + (end - index) + " left");
+        }
+        index += (int) skipNum;
+    }
+
+    /**
+     * @return Number of items left
+     */
+    @Override
+    public long getSize() {
+        return end - index;
+    }
+
+    @Override
+    public long getPosition() {
+        return index - start;
+    }
+
+    /**
+     * Items can't be removed from the snapshot, the current item is skipped instead.
+     */
+    @Override
+    public void remove() {
+        skip(1);
+    }
+}
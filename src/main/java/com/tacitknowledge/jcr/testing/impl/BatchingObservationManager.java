@@ -0,0 +1,280 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.UnsupportedRepositoryOperationException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventJournal;
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.EventListenerIterator;
+import javax.jcr.observation.ObservationManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Observation manager of a mocked session. Listeners are registered with the filters of
+ * {@link ObservationManager#addEventListener}, and the events of each save are handed to an executor which filters
+ * them for each listener and calls it with batches of at most {@link #setMaxBatchSize(int) maxBatchSize} events, so
+ * saving never waits for the listeners:
+ * <pre>
+ *     ObservationManager observationManager = session.getWorkspace().getObservationManager();
+ *     observationManager.addEventListener(listener, Event.NODE_ADDED, "/content", true, null, null, false);
+ *     ... change and save the fixture ...
+ *     ((BatchingObservationManager) observationManager).waitForDelivery(5, TimeUnit.SECONDS);
+ * </pre>
+ * The default executor is a daemon thread of the manager, stopped while idle, so each listener gets the events in
+ * the order they were saved. Every event comes from the session of the manager: listeners registered with noLocal
+ * get none. Event journals aren't supported.
+ */
+public class BatchingObservationManager implements ObservationManager {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1024;
+
+    private final Executor executor;
+
+    private final List<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+
+    private volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    private volatile String userData;
+
+    private int pendingDeliveries;
+
+    public BatchingObservationManager() {
+        this(newDeliveryThread());
+    }
+
+    /**
+     * @param executor Executor delivering the events; listeners get them out of order if it runs several tasks at
+     *                 a time
+     */
+    public BatchingObservationManager(Executor executor) {
+        this.executor = executor;
+    }
+
+    private static Executor newDeliveryThread() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "jcr-mock-observation");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @param maxBatchSize Largest number of events a listener gets in one call, the events of a save being split
+     *                     in as many batches as needed
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch size " + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    @Override
+    public void addEventListener(EventListener listener, int eventTypes, String absPath, boolean isDeep,
+                                 String[] uuid, String[] nodeTypeName, boolean noLocal) {
+        registrations.add(new Registration(listener, eventTypes, absPath, isDeep, uuid, nodeTypeName, noLocal));
+    }
+
+    @Override
+    public void removeEventListener(EventListener listener) {
+        for (Registration registration : registrations) {
+            if (registration.listener == listener) {
+                registration.removed = true;
+                registrations.remove(registration);
+            }
+        }
+    }
+
+    @Override
+    public EventListenerIterator getRegisteredEventListeners() {
+        List<EventListener> listeners = new ArrayList<EventListener>();
+        for (Registration registration : registrations) {
+            listeners.add(registration.listener);
+        }
+        return new EventListenerIteratorAdapter(listeners.toArray(new EventListener[listeners.size()]));
+    }
+
+    @Override
+    public void setUserData(String userData) {
+        this.userData = userData;
+    }
+
+    String getUserData() {
+        return userData;
+    }
+
+    @Override
+    public EventJournal getEventJournal() throws RepositoryException {
+        throw new UnsupportedRepositoryOperationException("Event journals are not supported by mocked sessions");
+    }
+
+    @Override
+    public EventJournal getEventJournal(int eventTypes, String absPath, boolean isDeep, String[] uuid,
+                                        String[] nodeTypeName) throws RepositoryException {
+        return getEventJournal();
+    }
+
+    /**
+     * Hands the events of a save to the executor, once for every listener registered.
+     * @param events Events in the order the changes were made
+     */
+    void dispatch(List<Event> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        final Event[] saved = events.toArray(new Event[events.size()]);
+        for (final Registration registration : registrations) {
+            submit(new Runnable() {
+                @Override
+                public void run() {
+                    registration.deliver(saved, maxBatchSize);
+                }
+            });
+        }
+    }
+
+    private void submit(final Runnable delivery) {
+        synchronized (this) {
+            pendingDeliveries++;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        delivery.run();
+                    } finally {
+                        delivered();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            delivered();
+            throw e;
+        }
+    }
+
+    private synchronized void delivered() {
+        if (--pendingDeliveries == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the listeners got the events of every save made so far.
+     * @return false if the events were still being delivered after the timeout
+     */
+    public synchronized boolean waitForDelivery(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (pendingDeliveries > 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Listener with the filters it was registered with.
+     */
+    private static final class Registration {
+
+        private final EventListener listener;
+        private final int eventTypes;
+        private final String absPath;
+        private final boolean isDeep;
+        private final String[] uuid;
+        private final String[] nodeTypeName;
+        private final boolean noLocal;
+        private volatile boolean removed;
+
+        Registration(EventListener listener, int eventTypes, String absPath, boolean isDeep, String[] uuid,
+                     String[] nodeTypeName, boolean noLocal) {
+            this.listener = listener;
+            this.eventTypes = eventTypes;
+            this.absPath = absPath;
+            this.isDeep = isDeep;
+            this.uuid = uuid;
+            this.nodeTypeName = nodeTypeName;
+            this.noLocal = noLocal;
+        }
+
+        void deliver(Event[] events, int maxBatchSize) {
+            if (noLocal) {
+                return;
+            }
+            Event[] accepted = new Event[events.length];
+            int count = 0;
+            for (Event event : events) {
+                if (accepts((RepositoryEvent) event)) {
+                    accepted[count++] = event;
+                }
+            }
+            for (int from = 0; from < count && !removed; from += maxBatchSize) {
+                listener.onEvent(new EventIteratorAdapter(accepted, from, Math.min(count, from + maxBatchSize)));
+            }
+        }
+
+        private boolean accepts(RepositoryEvent event) {
+            if ((event.getType() & eventTypes) == 0) {
+                return false;
+            }
+            Node parent = event.getParent();
+            try {
+                if (absPath != null && !isUnderPath(parent.getPath())) {
+                    return false;
+                }
+                return (uuid == null || contains(uuid, parent.getIdentifier()))
+                        && (nodeTypeName == null || isNodeType(parent));
+            } catch (RepositoryException e) {
+                throw new RuntimeException("Unable to filter " + event, e);
+            }
+        }
+
+        private boolean isUnderPath(String parentPath) {
+            if (parentPath.equals(absPath)) {
+                return true;
+            }
+            return isDeep && parentPath.startsWith("/".equals(absPath) ? absPath : absPath + "/");
+        }
+
+        private boolean isNodeType(Node parent) throws RepositoryException {
+            for (String name : nodeTypeName) {
+                if (parent.isNodeType(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean contains(String[] values, String value) {
+            for (String candidate : values) {
+                if (candidate.equals(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
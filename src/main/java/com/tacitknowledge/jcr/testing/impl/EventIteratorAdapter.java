@@ -0,0 +1,23 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+
+public class EventIteratorAdapter extends ArrayRangeIterator implements EventIterator {
+
+    /**
+     * @param events Snapshot of the events to iterate over, shared and never changed
+     */
+    public EventIteratorAdapter(Event[] events) {
+        super(events);
+    }
+
+    public EventIteratorAdapter(Event[] events, int from, int to) {
+        super(events, from, to);
+    }
+
+    @Override
+    public Event nextEvent() {
+        return (Event) next();
+    }
+}
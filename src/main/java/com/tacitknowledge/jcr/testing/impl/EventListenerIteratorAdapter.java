@@ -0,0 +1,16 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.EventListenerIterator;
+
+public class EventListenerIteratorAdapter extends ArrayRangeIterator implements EventListenerIterator {
+
+    public EventListenerIteratorAdapter(EventListener[] listeners) {
+        super(listeners);
+    }
+
+    @Override
+    public EventListener nextEventListener() {
+        return (EventListener) next();
+    }
+}
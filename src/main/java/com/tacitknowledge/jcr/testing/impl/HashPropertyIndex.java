@@ -0,0 +1,123 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import com.tacitknowledge.jcr.testing.PropertyIndex;
+
+import javax.jcr.Node;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Hash index of the values of a fixed set of property names, so finding every node whose property has a given value
+ * costs in the number of matches instead of the size of the tree:
+ * <pre>
+ *     PropertyIndex index = new HashPropertyIndex("sling:resourceType", "cq:template");
+ *     nodeFactory.setPropertyIndex(index);
+ *     ... build the fixture ...
+ *     List&lt;Node&gt; pages = index.getNodes("sling:resourceType", "site/page");
+ * </pre>
+ * Each node is counted per value, so a value added twice, e.g. by a property created again, must be removed twice
+ * to be forgotten. Callers needing an exact answer, like the query layer, test the nodes found. The index may be
+ * updated from several threads.
+ */
+public class HashPropertyIndex implements PropertyIndex {
+
+    /**
+     * Properties indexed by default: the ones code under test looks nodes up by most often.
+     */
+    public static final String[] DEFAULT_PROPERTY_NAMES = {"sling:resourceType", "jcr:primaryType", "cq:template"};
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Map<Node, Integer>>> index =
+            new ConcurrentHashMap<String, ConcurrentMap<String, Map<Node, Integer>>>();
+
+    /**
+     * Indexes the {@link #DEFAULT_PROPERTY_NAMES}.
+     */
+    public HashPropertyIndex() {
+        this(DEFAULT_PROPERTY_NAMES);
+    }
+
+    /**
+     * @param propertyNames Names of the properties to index
+     */
+    public HashPropertyIndex(String... propertyNames) {
+        this(Arrays.asList(propertyNames));
+    }
+
+    /**
+     * @param propertyNames Names of the properties to index
+     */
+    public HashPropertyIndex(Iterable<String> propertyNames) {
+        for (String propertyName : propertyNames) {
+            index.put(propertyName, new ConcurrentHashMap<String, Map<Node, Integer>>());
+        }
+    }
+
+    @Override
+    public boolean isIndexed(String propertyName) {
+        return index.containsKey(propertyName);
+    }
+
+    @Override
+    public void add(Node node, String propertyName, String value) {
+        ConcurrentMap<String, Map<Node, Integer>> values = index.get(propertyName);
+        if (values == null || value == null) {
+            return;
+        }
+        Map<Node, Integer> nodes = values.get(value);
+        if (nodes == null) {
+            nodes = Collections.synchronizedMap(new LinkedHashMap<Node, Integer>());
+            Map<Node, Integer> existing = values.putIfAbsent(value, nodes);
+            if (existing != null) {
+                nodes = existing;
+            }
+        }
+        synchronized (nodes) {
+            Integer count = nodes.get(node);
+            nodes.put(node, count == null ? 1 : count + 1);
+        }
+    }
+
+    @Override
+    public void remove(Node node, String propertyName, String value) {
+        ConcurrentMap<String, Map<Node, Integer>> values = index.get(propertyName);
+        Map<Node, Integer> nodes = values == null || value == null ? null : values.get(value);
+        if (nodes != null) {
+            decrement(nodes, node);
+        }
+    }
+
+    /**
+     * Counts one value less for a node, forgetting the node once it has none left.
+     */
+    static void decrement(Map<Node, Integer> nodes, Node node) {
+        synchronized (nodes) {
+            Integer count = nodes.get(node);
+            if (count == null || count == 1) {
+                nodes.remove(node);
+            } else {
+                nodes.put(node, count - 1);
+            }
+        }
+    }
+
+    @Override
+    public List<Node> getNodes(String propertyName, String value) {
+        ConcurrentMap<String, Map<Node, Integer>> values = index.get(propertyName);
+        if (values == null) {
+            throw new IllegalArgumentException("Property is not indexed: " + propertyName);
+        }
+        Map<Node, Integer> nodes = value == null ? null : values.get(value);
+        if (nodes == null) {
+            return Collections.emptyList();
+        }
+        synchronized (nodes) {
+            return new ArrayList<Node>(nodes.keySet());
+        }
+    }
+}
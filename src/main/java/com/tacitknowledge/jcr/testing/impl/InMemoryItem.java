@@ -0,0 +1,117 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import javax.jcr.Item;
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.UnsupportedRepositoryOperationException;
+
+/**
+ * Base class for the plain Java items created by {@link InMemoryNodeFactory}.
+ * Name, parent and path are plain fields, so reading them is a field access rather than a
+ * stubbed invocation.
+ */
+public abstract class InMemoryItem implements Item {
+
+    protected final String name;
+    protected final InMemoryNode parent;
+    protected final InMemorySession session;
+    private final String path;
+
+    InMemoryItem(InMemorySession session, InMemoryNode parent, String name) {
+        this.session = session;
+        this.parent = parent;
+        this.name = name;
+        this.path = buildPath(parent, name);
+    }
+
+    private static String buildPath(InMemoryNode parent, String name) {
+        if (parent == null) {
+            return "/" + name;
+        }
+        String parentPath = parent.getPath();
+        return "/".equals(parentPath) ? parentPath + name : parentPath + "/" + name;
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Item getAncestor(int depth) throws RepositoryException {
+        int myDepth = getDepth();
+        if (depth < 0 || depth > myDepth) {
+            throw new ItemNotFoundException("No ancestor at depth " + depth + " for " + path);
+        }
+        Item ancestor = this;
+        for (int i = myDepth; i > depth; i--) {
+            ancestor = ancestor.getParent();
+        }
+        return ancestor;
+    }
+
+    @Override
+    public Node getParent() throws RepositoryException {
+        if (parent == null) {
+            throw new ItemNotFoundException("Item has no parent: " + path);
+        }
+        return parent;
+    }
+
+    @Override
+    public int getDepth() {
+        return parent == null ? 0 : parent.getDepth() + 1;
+    }
+
+    @Override
+    public Session getSession() {
+        return session;
+    }
+
+    @Override
+    public boolean isNew() {
+        return false;
+    }
+
+    @Override
+    public boolean isModified() {
+        return false;
+    }
+
+    @Override
+    public boolean isSame(Item otherItem) throws RepositoryException {
+        return this == otherItem
+                || (otherItem != null && otherItem.isNode() == isNode() && path.equals(otherItem.getPath()));
+    }
+
+    @Override
+    public void save() throws RepositoryException {
+        // Nothing to persist, the in memory tree is the repository
+    }
+
+    @Override
+    public void refresh(boolean keepChanges) throws RepositoryException {
+        // Nothing to refresh, the in memory tree is the repository
+    }
+
+    @Override
+    public void remove() throws RepositoryException {
+        throw unsupported("remove");
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+    static UnsupportedRepositoryOperationException unsupported(String operation) {
+        return new UnsupportedRepositoryOperationException(operation + " is not supported by in memory items");
+    }
+}
@@ -0,0 +1,596 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import javax.jcr.*;
+import javax.jcr.lock.Lock;
+import javax.jcr.nodetype.NodeDefinition;
+import javax.jcr.nodetype.NodeType;
+import javax.jcr.version.Version;
+import javax.jcr.version.VersionHistory;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plain Java {@link Node} backed by ordered maps of child nodes and properties.
+ * Nodes are read only through the JCR API, the tree is built through {@link InMemoryNodeFactory}.
+ */
+public class InMemoryNode extends InMemoryItem implements Node {
+
+    private static final NodeType[] NO_NODE_TYPES = new NodeType[0];
+    private static final Node[] NO_NODES = new Node[0];
+    private static final Property[] NO_PROPERTIES = new Property[0];
+
+    private NodeType primaryNodeType;
+    private Map<String, InMemoryNode> childNodes;
+    private Map<String, InMemoryProperty> properties;
+    private InMemoryNode template;
+    private Node[] childNodeSnapshot;
+    private Property[] propertySnapshot;
+
+    InMemoryNode(InMemorySession session, InMemoryNode parent, String name, NodeType primaryNodeType) {
+        super(session, parent, name);
+        this.primaryNodeType = primaryNodeType;
+    }
+
+    /**
+     * Makes this node a fork of the given node. Children and properties of the template are copied the first
+     * time they are needed, one level at a time, so a fork only pays for the part of the tree it reads and
+     * items added to it never show in the template.
+     */
+    void forkFrom(InMemoryNode template) {
+        this.template = template;
+    }
+
+    private void materialize() {
+        if (template == null) {
+            return;
+        }
+        InMemoryNode source = template;
+        template = null;
+        for (InMemoryNode sourceNode : source.childNodeList()) {
+            InMemoryNode childNode = new InMemoryNode(session, this, sourceNode.getName(), sourceNode.primaryNodeType);
+            childNode.forkFrom(sourceNode);
+            addChildNode(childNode);
+        }
+        for (InMemoryProperty sourceProperty : source.propertyList()) {
+            addChildProperty(sourceProperty.copyTo(session, this));
+        }
+    }
+
+    void setPrimaryNodeType(NodeType primaryNodeType) {
+        this.primaryNodeType = primaryNodeType;
+    }
+
+    InMemoryNode getChildNode(String childName) {
+        materialize();
+        return childNodes == null ? null : childNodes.get(childName);
+    }
+
+    InMemoryProperty getChildProperty(String propertyName) {
+        materialize();
+        return properties == null ? null : properties.get(propertyName);
+    }
+
+    void addChildNode(InMemoryNode childNode) {
+        materialize();
+        if (childNodes == null) {
+            childNodes = new LinkedHashMap<String, InMemoryNode>();
+        }
+        childNodes.put(childNode.getName(), childNode);
+        childNodeSnapshot = null;
+    }
+
+    void addChildProperty(InMemoryProperty property) {
+        materialize();
+        if (properties == null) {
+            properties = new LinkedHashMap<String, InMemoryProperty>();
+        }
+        properties.put(property.getName(), property);
+        propertySnapshot = null;
+    }
+
+    /**
+     * Walks the given path one segment at a time starting from this node.
+     * @param relPath Relative path, or absolute path starting with "/"
+     * @return The node at the given path or null if there is none
+     */
+    InMemoryNode resolveNode(String relPath) {
+        InMemoryNode current = this;
+        int start = 0;
+        if (relPath.startsWith("/")) {
+            current = session.getRoot();
+            start = 1;
+        }
+        int length = relPath.length();
+        while (current != null && start < length) {
+            int end = relPath.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            current = current.step(relPath.substring(start, end));
+            start = end + 1;
+        }
+        return current;
+    }
+
+    /**
+     * Resolves a property path, where every segment but the last one is a node.
+     * @param relPath Relative path, or absolute path starting with "/"
+     * @return The property at the given path or null if there is none
+     */
+    InMemoryProperty resolveProperty(String relPath) {
+        int lastSeparator = relPath.lastIndexOf('/');
+        if (lastSeparator < 0) {
+            return getChildProperty(relPath);
+        }
+        String nodePath = lastSeparator == 0 ? "/" : relPath.substring(0, lastSeparator);
+        InMemoryNode node = resolveNode(nodePath);
+        return node == null ? null : node.getChildProperty(relPath.substring(lastSeparator + 1));
+    }
+
+    private InMemoryNode step(String segment) {
+        if (segment.length() == 0 || ".".equals(segment)) {
+            return this;
+        }
+        if ("..".equals(segment)) {
+            return parent;
+        }
+        return getChildNode(segment);
+    }
+
+    @Override
+    public Node getNode(String relPath) throws RepositoryException {
+        InMemoryNode node = resolveNode(relPath);
+        if (node == null) {
+            throw new PathNotFoundException(relPath + " not found under " + getPath());
+        }
+        return node;
+    }
+
+    @Override
+    public NodeIterator getNodes() throws RepositoryException {
+        if (childNodeSnapshot == null) {
+            Collection<InMemoryNode> nodes = childNodeList();
+            childNodeSnapshot = nodes.isEmpty() ? NO_NODES : nodes.toArray(new Node[nodes.size()]);
+        }
+        return new NodeIteratorAdapter(childNodeSnapshot);
+    }
+
+    @Override
+    public NodeIterator getNodes(String namePattern) throws RepositoryException {
+        return getNodes(namePattern.split("\\|"));
+    }
+
+    @Override
+    public NodeIterator getNodes(String[] nameGlobs) throws RepositoryException {
+        List<Node> matches = new ArrayList<Node>();
+        for (InMemoryNode childNode : childNodeList()) {
+            if (matchesAny(childNode.getName(), nameGlobs)) {
+                matches.add(childNode);
+            }
+        }
+        return new NodeIteratorAdapter(matches.iterator());
+    }
+
+    @Override
+    public Property getProperty(String relPath) throws RepositoryException {
+        InMemoryProperty property = resolveProperty(relPath);
+        if (property == null) {
+            throw new PathNotFoundException(relPath + " not found under " + getPath());
+        }
+        return property;
+    }
+
+    @Override
+    public PropertyIterator getProperties() throws RepositoryException {
+        if (propertySnapshot == null) {
+            Collection<InMemoryProperty> nodeProperties = propertyList();
+            propertySnapshot = nodeProperties.isEmpty()
+                    ? NO_PROPERTIES : nodeProperties.toArray(new Property[nodeProperties.size()]);
+        }
+        return new PropertyIteratorAdapter(propertySnapshot);
+    }
+
+    @Override
+    public PropertyIterator getProperties(String namePattern) throws RepositoryException {
+        return getProperties(namePattern.split("\\|"));
+    }
+
+    @Override
+    public PropertyIterator getProperties(String[] nameGlobs) throws RepositoryException {
+        List<Property> matches = new ArrayList<Property>();
+        for (InMemoryProperty property : propertyList()) {
+            if (matchesAny(property.getName(), nameGlobs)) {
+                matches.add(property);
+            }
+        }
+        return new PropertyIteratorAdapter(matches.iterator());
+    }
+
+    private Collection<InMemoryNode> childNodeList() {
+        materialize();
+        if (childNodes == null) {
+            return Collections.emptyList();
+        }
+        return childNodes.values();
+    }
+
+    private Collection<InMemoryProperty> propertyList() {
+        materialize();
+        if (properties == null) {
+            return Collections.emptyList();
+        }
+        return properties.values();
+    }
+
+    private static boolean matchesAny(String itemName, String[] nameGlobs) {
+        for (String glob : nameGlobs) {
+            if (matchesGlob(itemName, glob.trim(), 0, 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesGlob(String itemName, String glob, int nameIndex, int globIndex) {
+        if (globIndex == glob.length()) {
+            return nameIndex == itemName.length();
+        }
+        char globChar = glob.charAt(globIndex);
+        if (globChar == '*') {
+            for (int i = nameIndex; i <= itemName.length(); i++) {
+                if (matchesGlob(itemName, glob, i, globIndex + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return nameIndex < itemName.length()
+                && itemName.charAt(nameIndex) == globChar
+                && matchesGlob(itemName, glob, nameIndex + 1, globIndex + 1);
+    }
+
+    @Override
+    public Item getPrimaryItem() throws RepositoryException {
+        throw new ItemNotFoundException("No primary item defined for " + getPath());
+    }
+
+    @Override
+    public String getUUID() throws RepositoryException {
+        InMemoryProperty uuid = getChildProperty(Property.JCR_UUID);
+        if (uuid == null) {
+            throw new UnsupportedRepositoryOperationException(getPath() + " is not referenceable");
+        }
+        return uuid.getString();
+    }
+
+    @Override
+    public String getIdentifier() throws RepositoryException {
+        InMemoryProperty uuid = getChildProperty(Property.JCR_UUID);
+        return uuid == null ? getPath() : uuid.getString();
+    }
+
+    @Override
+    public int getIndex() {
+        return 1;
+    }
+
+    @Override
+    public PropertyIterator getReferences() throws RepositoryException {
+        return emptyPropertyIterator();
+    }
+
+    @Override
+    public PropertyIterator getReferences(String name) throws RepositoryException {
+        return emptyPropertyIterator();
+    }
+
+    @Override
+    public PropertyIterator getWeakReferences() throws RepositoryException {
+        return emptyPropertyIterator();
+    }
+
+    @Override
+    public PropertyIterator getWeakReferences(String name) throws RepositoryException {
+        return emptyPropertyIterator();
+    }
+
+    private static PropertyIterator emptyPropertyIterator() {
+        return new PropertyIteratorAdapter(NO_PROPERTIES);
+    }
+
+    @Override
+    public boolean hasNode(String relPath) {
+        return resolveNode(relPath) != null;
+    }
+
+    @Override
+    public boolean hasProperty(String relPath) {
+        return resolveProperty(relPath) != null;
+    }
+
+    @Override
+    public boolean hasNodes() {
+        materialize();
+        return childNodes != null && !childNodes.isEmpty();
+    }
+
+    @Override
+    public boolean hasProperties() {
+        materialize();
+        return properties != null && !properties.isEmpty();
+    }
+
+    @Override
+    public NodeType getPrimaryNodeType() {
+        return primaryNodeType;
+    }
+
+    @Override
+    public NodeType[] getMixinNodeTypes() {
+        return NO_NODE_TYPES;
+    }
+
+    @Override
+    public boolean isNodeType(String nodeTypeName) {
+        return primaryNodeType != null && primaryNodeType.isNodeType(nodeTypeName);
+    }
+
+    @Override
+    public boolean canAddMixin(String mixinName) {
+        return false;
+    }
+
+    @Override
+    public NodeDefinition getDefinition() throws RepositoryException {
+        throw unsupported("getDefinition");
+    }
+
+    @Override
+    public boolean isNode() {
+        return true;
+    }
+
+    @Override
+    public void accept(ItemVisitor visitor) throws RepositoryException {
+        visitor.visit(this);
+    }
+
+    @Override
+    public boolean isCheckedOut() {
+        return true;
+    }
+
+    @Override
+    public boolean holdsLock() {
+        return false;
+    }
+
+    @Override
+    public boolean isLocked() {
+        return false;
+    }
+
+    @Override
+    public NodeIterator getSharedSet() throws RepositoryException {
+        List<Node> sharedSet = new ArrayList<Node>();
+        sharedSet.add(this);
+        return new NodeIteratorAdapter(sharedSet.iterator());
+    }
+
+    @Override
+    public String getCorrespondingNodePath(String workspaceName) throws RepositoryException {
+        return getPath();
+    }
+
+    @Override
+    public Node addNode(String relPath) throws RepositoryException {
+        throw unsupported("addNode");
+    }
+
+    @Override
+    public Node addNode(String relPath, String primaryNodeTypeName) throws RepositoryException {
+        throw unsupported("addNode");
+    }
+
+    @Override
+    public void orderBefore(String srcChildRelPath, String destChildRelPath) throws RepositoryException {
+        throw unsupported("orderBefore");
+    }
+
+    @Override
+    public Property setProperty(String name, Value value) throws RepositoryException {
+        throw unsupported("setProperty");
+    }
+
+    @Override
+    public Property setProperty(String name, Value value, int type) throws RepositoryException {
+        throw unsupported("setProperty");
+    }
+
+    @Override
+    public Property setProperty(String name, Value[] values) throws RepositoryException {
+        throw unsupported("setProperty");
+    }
+
+    @Override
+    public Property setProperty(String name, Value[] values, int type) throws RepositoryException {
+        throw unsupported("setProperty");
+    }
+
+    @Override
+    public Property setProperty(String name, String[] values) throws RepositoryException {
+        throw unsupported("setProperty");
+    }
+
+    @Override
+    public Property setProperty(String name, String[] values, int type) throws RepositoryException {
+        throw unsupported("setProperty");
+    }
+
+    @Override
+    public Property setProperty(String name, String value) throws RepositoryException {
+        throw unsupported("setProperty");
+    }
+
+    @Override
+    public Property setProperty(String name, String value, int type) throws RepositoryException {
+        throw unsupported("setProperty");
+    }
+
+    @Override
+    public Property setProperty(String name, InputStream value) throws RepositoryException {
+        throw unsupported("setProperty");
+    }
+
+    @Override
+    public Property setProperty(String name, Binary value) throws RepositoryException {
+        throw unsupported("setProperty");
+    }
+
+    @Override
+    public Property setProperty(String name, boolean value) throws RepositoryException {
+        throw unsupported("setProperty");
+    }
+
+    @Override
+    public Property setProperty(String name, double value) throws RepositoryException {
+        throw unsupported("setProperty");
+    }
+
+    @Override
+    public Property setProperty(String name, BigDecimal value) throws RepositoryException {
+        throw unsupported("setProperty");
+    }
+
+    @Override
+    public Property setProperty(String name, long value) throws RepositoryException {
+        throw unsupported("setProperty");
+    }
+
+    @Override
+    public Property setProperty(String name, Calendar value) throws RepositoryException {
+        throw unsupported("setProperty");
+    }
+
+    @Override
+    public Property setProperty(String name, Node value) throws RepositoryException {
+        throw unsupported("setProperty");
+    }
+
+    @Override
+    public void setPrimaryType(String nodeTypeName) throws RepositoryException {
+        throw unsupported("setPrimaryType");
+    }
+
+    @Override
+    public void addMixin(String mixinName) throws RepositoryException {
+        throw unsupported("addMixin");
+    }
+
+    @Override
+    public void removeMixin(String mixinName) throws RepositoryException {
+        throw unsupported("removeMixin");
+    }
+
+    @Override
+    public Version checkin() throws RepositoryException {
+        throw unsupported("checkin");
+    }
+
+    @Override
+    public void checkout() throws RepositoryException {
+        throw unsupported("checkout");
+    }
+
+    @Override
+    public void doneMerge(Version version) throws RepositoryException {
+        throw unsupported("doneMerge");
+    }
+
+    @Override
+    public void cancelMerge(Version version) throws RepositoryException {
+        throw unsupported("cancelMerge");
+    }
+
+    @Override
+    public void update(String srcWorkspace) throws RepositoryException {
+        throw unsupported("update");
+    }
+
+    @Override
+    public NodeIterator merge(String srcWorkspace, boolean bestEffort) throws RepositoryException {
+        throw unsupported("merge");
+    }
+
+    @Override
+    public void removeSharedSet() throws RepositoryException {
+        throw unsupported("removeSharedSet");
+    }
+
+    @Override
+    public void removeShare() throws RepositoryException {
+        throw unsupported("removeShare");
+    }
+
+    @Override
+    public void restore(String versionName, boolean removeExisting) throws RepositoryException {
+        throw unsupported("restore");
+    }
+
+    @Override
+    public void restore(Version version, boolean removeExisting) throws RepositoryException {
+        throw unsupported("restore");
+    }
+
+    @Override
+    public void restore(Version version, String relPath, boolean removeExisting) throws RepositoryException {
+        throw unsupported("restore");
+    }
+
+    @Override
+    public void restoreByLabel(String versionLabel, boolean removeExisting) throws RepositoryException {
+        throw unsupported("restoreByLabel");
+    }
+
+    @Override
+    public VersionHistory getVersionHistory() throws RepositoryException {
+        throw unsupported("getVersionHistory");
+    }
+
+    @Override
+    public Version getBaseVersion() throws RepositoryException {
+        throw unsupported("getBaseVersion");
+    }
+
+    @Override
+    public Lock lock(boolean isDeep, boolean isSessionScoped) throws RepositoryException {
+        throw unsupported("lock");
+    }
+
+    @Override
+    public Lock getLock() throws RepositoryException {
+        throw unsupported("getLock");
+    }
+
+    @Override
+    public void unlock() throws RepositoryException {
+        throw unsupported("unlock");
+    }
+
+    @Override
+    public void followLifecycleTransition(String transition) throws RepositoryException {
+        throw unsupported("followLifecycleTransition");
+    }
+
+    @Override
+    public String[] getAllowedLifecycleTransistions() throws RepositoryException {
+        throw unsupported("getAllowedLifecycleTransistions");
+    }
+}
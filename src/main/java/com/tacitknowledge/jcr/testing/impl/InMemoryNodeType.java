@@ -0,0 +1,155 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import javax.jcr.Value;
+import javax.jcr.nodetype.NodeDefinition;
+import javax.jcr.nodetype.NodeType;
+import javax.jcr.nodetype.NodeTypeIterator;
+import javax.jcr.nodetype.PropertyDefinition;
+
+/**
+ * Node type that only knows its own name. Every node type is considered a subtype of nt:base and
+ * no constraints are enforced. Names in the nt namespace match in both their expanded
+ * ({@code {http://www.jcp.org/jcr/nt/1.0}base}) and prefixed ({@code nt:base}) forms.
+ */
+public class InMemoryNodeType implements NodeType {
+
+    private static final NodeType[] NO_NODE_TYPES = new NodeType[0];
+    private static final PropertyDefinition[] NO_PROPERTY_DEFINITIONS = new PropertyDefinition[0];
+    private static final NodeDefinition[] NO_NODE_DEFINITIONS = new NodeDefinition[0];
+    private static final String NT_NAMESPACE = "{http://www.jcp.org/jcr/nt/1.0}";
+    private static final String NT_PREFIX = "nt:";
+
+    private final String name;
+    private final String prefixedName;
+
+    public InMemoryNodeType(String name) {
+        this.name = name;
+        this.prefixedName = toPrefixed(name);
+    }
+
+    private static String toPrefixed(String nodeTypeName) {
+        return nodeTypeName != null && nodeTypeName.startsWith(NT_NAMESPACE)
+                ? NT_PREFIX + nodeTypeName.substring(NT_NAMESPACE.length()) : nodeTypeName;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isNodeType(String nodeTypeName) {
+        String prefixed = toPrefixed(nodeTypeName);
+        return prefixedName.equals(prefixed) || toPrefixed(NT_BASE).equals(prefixed);
+    }
+
+    @Override
+    public NodeType[] getSupertypes() {
+        return NO_NODE_TYPES;
+    }
+
+    @Override
+    public NodeType[] getDeclaredSupertypes() {
+        return NO_NODE_TYPES;
+    }
+
+    @Override
+    public NodeTypeIterator getSubtypes() {
+        return null;
+    }
+
+    @Override
+    public NodeTypeIterator getDeclaredSubtypes() {
+        return null;
+    }
+
+    @Override
+    public PropertyDefinition[] getPropertyDefinitions() {
+        return NO_PROPERTY_DEFINITIONS;
+    }
+
+    @Override
+    public NodeDefinition[] getChildNodeDefinitions() {
+        return NO_NODE_DEFINITIONS;
+    }
+
+    @Override
+    public boolean canSetProperty(String propertyName, Value value) {
+        return true;
+    }
+
+    @Override
+    public boolean canSetProperty(String propertyName, Value[] values) {
+        return true;
+    }
+
+    @Override
+    public boolean canAddChildNode(String childNodeName) {
+        return true;
+    }
+
+    @Override
+    public boolean canAddChildNode(String childNodeName, String nodeTypeName) {
+        return true;
+    }
+
+    @Override
+    public boolean canRemoveItem(String itemName) {
+        return true;
+    }
+
+    @Override
+    public boolean canRemoveNode(String nodeName) {
+        return true;
+    }
+
+    @Override
+    public boolean canRemoveProperty(String propertyName) {
+        return true;
+    }
+
+    @Override
+    public String[] getDeclaredSupertypeNames() {
+        return new String[0];
+    }
+
+    @Override
+    public boolean isAbstract() {
+        return false;
+    }
+
+    @Override
+    public boolean isMixin() {
+        return false;
+    }
+
+    @Override
+    public boolean hasOrderableChildNodes() {
+        return true;
+    }
+
+    @Override
+    public boolean isQueryable() {
+        return true;
+    }
+
+    @Override
+    public String getPrimaryItemName() {
+        return null;
+    }
+
+    @Override
+    public PropertyDefinition[] getDeclaredPropertyDefinitions() {
+        return NO_PROPERTY_DEFINITIONS;
+    }
+
+    @Override
+    public NodeDefinition[] getDeclaredChildNodeDefinitions() {
+        return NO_NODE_DEFINITIONS;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
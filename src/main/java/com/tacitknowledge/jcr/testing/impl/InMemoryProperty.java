@@ -0,0 +1,238 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import javax.jcr.*;
+import javax.jcr.nodetype.PropertyDefinition;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.Calendar;
+
+/**
+ * Plain Java {@link Property} holding its values in an array.
+ */
+public class InMemoryProperty extends InMemoryItem implements Property {
+
+    private final int type;
+    private final boolean multiple;
+    private final Value[] values;
+    private PropertyDefinition definition;
+
+    InMemoryProperty(InMemorySession session, InMemoryNode parent, String name, int type, Value value) {
+        super(session, parent, name);
+        this.type = type;
+        this.multiple = false;
+        this.values = new Value[]{value};
+    }
+
+    InMemoryProperty(InMemorySession session, InMemoryNode parent, String name, int type, Value[] values) {
+        super(session, parent, name);
+        this.type = type;
+        this.multiple = true;
+        this.values = values;
+    }
+
+    private InMemoryProperty(InMemorySession session, InMemoryNode parent, InMemoryProperty source) {
+        super(session, parent, source.getName());
+        this.type = source.type;
+        this.multiple = source.multiple;
+        this.values = source.values;
+    }
+
+    /**
+     * Copies this property to another node. Values are immutable, so they are shared with the copy.
+     */
+    InMemoryProperty copyTo(InMemorySession session, InMemoryNode parent) {
+        return new InMemoryProperty(session, parent, this);
+    }
+
+    @Override
+    public Value getValue() throws RepositoryException {
+        if (multiple) {
+            throw new ValueFormatException(getPath() + " is multi-valued");
+        }
+        return values[0];
+    }
+
+    @Override
+    public Value[] getValues() throws RepositoryException {
+        if (!multiple) {
+            throw new ValueFormatException(getPath() + " is single-valued");
+        }
+        Value[] copy = new Value[values.length];
+        System.arraycopy(values, 0, copy, 0, values.length);
+        return copy;
+    }
+
+    @Override
+    public String getString() throws RepositoryException {
+        return getValue().getString();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public InputStream getStream() throws RepositoryException {
+        return getValue().getStream();
+    }
+
+    @Override
+    public Binary getBinary() throws RepositoryException {
+        return getValue().getBinary();
+    }
+
+    @Override
+    public long getLong() throws RepositoryException {
+        return getValue().getLong();
+    }
+
+    @Override
+    public double getDouble() throws RepositoryException {
+        return getValue().getDouble();
+    }
+
+    @Override
+    public BigDecimal getDecimal() throws RepositoryException {
+        return getValue().getDecimal();
+    }
+
+    @Override
+    public Calendar getDate() throws RepositoryException {
+        return getValue().getDate();
+    }
+
+    @Override
+    public boolean getBoolean() throws RepositoryException {
+        return getValue().getBoolean();
+    }
+
+    @Override
+    public Node getNode() throws RepositoryException {
+        String target = getString();
+        switch (type) {
+            case PropertyType.REFERENCE:
+            case PropertyType.WEAKREFERENCE:
+                return session.getNodeByIdentifier(target);
+            case PropertyType.PATH:
+            case PropertyType.STRING:
+                return parent.getNode(target);
+            default:
+                throw new ValueFormatException(getPath() + " can not be converted to a node");
+        }
+    }
+
+    @Override
+    public Property getProperty() throws RepositoryException {
+        if (type != PropertyType.PATH && type != PropertyType.STRING) {
+            throw new ValueFormatException(getPath() + " can not be converted to a property");
+        }
+        return parent.getProperty(getString());
+    }
+
+    @Override
+    public long getLength() throws RepositoryException {
+        return lengthOf(getValue());
+    }
+
+    @Override
+    public long[] getLengths() throws RepositoryException {
+        Value[] multipleValues = getValues();
+        long[] lengths = new long[multipleValues.length];
+        for (int i = 0; i < multipleValues.length; i++) {
+            lengths[i] = lengthOf(multipleValues[i]);
+        }
+        return lengths;
+    }
+
+    private long lengthOf(Value value) throws RepositoryException {
+        if (value.getType() == PropertyType.BINARY) {
+            return value.getBinary().getSize();
+        }
+        return value.getString().length();
+    }
+
+    @Override
+    public PropertyDefinition getDefinition() {
+        if (definition == null) {
+            definition = new InMemoryPropertyDefinition(name, type, multiple, parent.getPrimaryNodeType());
+        }
+        return definition;
+    }
+
+    @Override
+    public int getType() {
+        return type;
+    }
+
+    @Override
+    public boolean isMultiple() {
+        return multiple;
+    }
+
+    @Override
+    public boolean isNode() {
+        return false;
+    }
+
+    @Override
+    public void accept(ItemVisitor visitor) throws RepositoryException {
+        visitor.visit(this);
+    }
+
+    @Override
+    public void setValue(Value value) throws RepositoryException {
+        throw unsupported("setValue");
+    }
+
+    @Override
+    public void setValue(Value[] values) throws RepositoryException {
+        throw unsupported("setValue");
+    }
+
+    @Override
+    public void setValue(String value) throws RepositoryException {
+        throw unsupported("setValue");
+    }
+
+    @Override
+    public void setValue(String[] values) throws RepositoryException {
+        throw unsupported("setValue");
+    }
+
+    @Override
+    public void setValue(InputStream value) throws RepositoryException {
+        throw unsupported("setValue");
+    }
+
+    @Override
+    public void setValue(Binary value) throws RepositoryException {
+        throw unsupported("setValue");
+    }
+
+    @Override
+    public void setValue(long value) throws RepositoryException {
+        throw unsupported("setValue");
+    }
+
+    @Override
+    public void setValue(double value) throws RepositoryException {
+        throw unsupported("setValue");
+    }
+
+    @Override
+    public void setValue(BigDecimal value) throws RepositoryException {
+        throw unsupported("setValue");
+    }
+
+    @Override
+    public void setValue(Calendar value) throws RepositoryException {
+        throw unsupported("setValue");
+    }
+
+    @Override
+    public void setValue(boolean value) throws RepositoryException {
+        throw unsupported("setValue");
+    }
+
+    @Override
+    public void setValue(Node value) throws RepositoryException {
+        throw unsupported("setValue");
+    }
+}
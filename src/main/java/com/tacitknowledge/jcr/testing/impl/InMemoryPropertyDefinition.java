@@ -0,0 +1,89 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import javax.jcr.Value;
+import javax.jcr.nodetype.NodeType;
+import javax.jcr.nodetype.PropertyDefinition;
+import javax.jcr.version.OnParentVersionAction;
+
+/**
+ * Property definition derived from the property it describes.
+ */
+public class InMemoryPropertyDefinition implements PropertyDefinition {
+
+    private final String name;
+    private final int requiredType;
+    private final boolean multiple;
+    private final NodeType declaringNodeType;
+
+    InMemoryPropertyDefinition(String name, int requiredType, boolean multiple, NodeType declaringNodeType) {
+        this.name = name;
+        this.requiredType = requiredType;
+        this.multiple = multiple;
+        this.declaringNodeType = declaringNodeType;
+    }
+
+    @Override
+    public int getRequiredType() {
+        return requiredType;
+    }
+
+    @Override
+    public String[] getValueConstraints() {
+        return new String[0];
+    }
+
+    @Override
+    public Value[] getDefaultValues() {
+        return null;
+    }
+
+    @Override
+    public boolean isMultiple() {
+        return multiple;
+    }
+
+    @Override
+    public String[] getAvailableQueryOperators() {
+        return new String[0];
+    }
+
+    @Override
+    public boolean isFullTextSearchable() {
+        return true;
+    }
+
+    @Override
+    public boolean isQueryOrderable() {
+        return true;
+    }
+
+    @Override
+    public NodeType getDeclaringNodeType() {
+        return declaringNodeType;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isAutoCreated() {
+        return false;
+    }
+
+    @Override
+    public boolean isMandatory() {
+        return false;
+    }
+
+    @Override
+    public int getOnParentVersion() {
+        return OnParentVersionAction.COPY;
+    }
+
+    @Override
+    public boolean isProtected() {
+        return false;
+    }
+}
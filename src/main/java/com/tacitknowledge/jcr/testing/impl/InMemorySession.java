@@ -0,0 +1,301 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import com.tacitknowledge.jcr.testing.FullTextIndex;
+import com.tacitknowledge.jcr.testing.PropertyIndex;
+import org.xml.sax.ContentHandler;
+
+import javax.jcr.*;
+import javax.jcr.retention.RetentionManager;
+import javax.jcr.security.AccessControlManager;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Session shared by all the items created by an {@link InMemoryNodeFactory}. Absolute paths are
+ * resolved by walking the tree from the root node.
+ */
+public class InMemorySession implements Session {
+
+    private final InMemoryWorkspace workspace = new InMemoryWorkspace(this);
+    private InMemoryNode root;
+    private boolean live = true;
+    private volatile PropertyIndex propertyIndex;
+    private volatile FullTextIndex fullTextIndex;
+
+    InMemoryNode getRoot() {
+        return root;
+    }
+
+    void setRoot(InMemoryNode root) {
+        this.root = root;
+    }
+
+    /**
+     * @return Index used by the queries run over this session, null if they walk the tree
+     */
+    PropertyIndex getPropertyIndex() {
+        return propertyIndex;
+    }
+
+    void setPropertyIndex(PropertyIndex propertyIndex) {
+        this.propertyIndex = propertyIndex;
+    }
+
+    /**
+     * @return Index used by the full-text searches run over this session, null if they test every candidate
+     */
+    FullTextIndex getFullTextIndex() {
+        return fullTextIndex;
+    }
+
+    void setFullTextIndex(FullTextIndex fullTextIndex) {
+        this.fullTextIndex = fullTextIndex;
+    }
+
+    @Override
+    public Node getRootNode() throws RepositoryException {
+        if (root == null) {
+            throw new ItemNotFoundException("No root node has been created for this session");
+        }
+        return root;
+    }
+
+    @Override
+    public Node getNode(String absPath) throws RepositoryException {
+        InMemoryNode node = resolveNode(absPath);
+        if (node == null) {
+            throw new PathNotFoundException(absPath);
+        }
+        return node;
+    }
+
+    @Override
+    public Property getProperty(String absPath) throws RepositoryException {
+        InMemoryProperty property = resolveProperty(absPath);
+        if (property == null) {
+            throw new PathNotFoundException(absPath);
+        }
+        return property;
+    }
+
+    @Override
+    public Item getItem(String absPath) throws RepositoryException {
+        InMemoryNode node = resolveNode(absPath);
+        if (node != null) {
+            return node;
+        }
+        return getProperty(absPath);
+    }
+
+    @Override
+    public boolean itemExists(String absPath) throws RepositoryException {
+        return nodeExists(absPath) || propertyExists(absPath);
+    }
+
+    @Override
+    public boolean nodeExists(String absPath) throws RepositoryException {
+        return resolveNode(absPath) != null;
+    }
+
+    @Override
+    public boolean propertyExists(String absPath) throws RepositoryException {
+        return resolveProperty(absPath) != null;
+    }
+
+    private InMemoryNode resolveNode(String absPath) throws RepositoryException {
+        checkAbsolute(absPath);
+        return root == null ? null : root.resolveNode(absPath);
+    }
+
+    private InMemoryProperty resolveProperty(String absPath) throws RepositoryException {
+        checkAbsolute(absPath);
+        return root == null ? null : root.resolveProperty(absPath);
+    }
+
+    private static void checkAbsolute(String absPath) throws RepositoryException {
+        if (absPath == null || !absPath.startsWith("/")) {
+            throw new RepositoryException("Not an absolute path: " + absPath);
+        }
+    }
+
+    @Override
+    public Node getNodeByIdentifier(String id) throws RepositoryException {
+        if (id != null && id.startsWith("/")) {
+            return getNode(id);
+        }
+        throw new ItemNotFoundException("No node with identifier " + id);
+    }
+
+    @Override
+    public Node getNodeByUUID(String uuid) throws RepositoryException {
+        return getNodeByIdentifier(uuid);
+    }
+
+    @Override
+    public Repository getRepository() {
+        return null;
+    }
+
+    @Override
+    public String getUserID() {
+        return null;
+    }
+
+    @Override
+    public String[] getAttributeNames() {
+        return new String[0];
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return null;
+    }
+
+    @Override
+    public Workspace getWorkspace() {
+        return workspace;
+    }
+
+    @Override
+    public Session impersonate(Credentials credentials) throws RepositoryException {
+        throw unsupported("impersonate");
+    }
+
+    @Override
+    public void move(String srcAbsPath, String destAbsPath) throws RepositoryException {
+        throw unsupported("move");
+    }
+
+    @Override
+    public void removeItem(String absPath) throws RepositoryException {
+        throw unsupported("removeItem");
+    }
+
+    @Override
+    public void save() throws RepositoryException {
+        // Nothing to persist, the in memory tree is the repository
+    }
+
+    @Override
+    public void refresh(boolean keepChanges) throws RepositoryException {
+        // Nothing to refresh, the in memory tree is the repository
+    }
+
+    @Override
+    public boolean hasPendingChanges() throws RepositoryException {
+        return false;
+    }
+
+    @Override
+    public ValueFactory getValueFactory() throws RepositoryException {
+        throw unsupported("getValueFactory");
+    }
+
+    @Override
+    public boolean hasPermission(String absPath, String actions) throws RepositoryException {
+        return true;
+    }
+
+    @Override
+    public void checkPermission(String absPath, String actions) throws RepositoryException {
+        // Every action is permitted
+    }
+
+    @Override
+    public boolean hasCapability(String methodName, Object target, Object[] arguments) throws RepositoryException {
+        return true;
+    }
+
+    @Override
+    public ContentHandler getImportContentHandler(String parentAbsPath, int uuidBehavior) throws RepositoryException {
+        throw unsupported("getImportContentHandler");
+    }
+
+    @Override
+    public void importXML(String parentAbsPath, InputStream in, int uuidBehavior) throws RepositoryException {
+        throw unsupported("importXML");
+    }
+
+    @Override
+    public void exportSystemView(String absPath, ContentHandler contentHandler, boolean skipBinary, boolean noRecurse)
+            throws RepositoryException {
+        throw unsupported("exportSystemView");
+    }
+
+    @Override
+    public void exportSystemView(String absPath, OutputStream out, boolean skipBinary, boolean noRecurse)
+            throws RepositoryException {
+        throw unsupported("exportSystemView");
+    }
+
+    @Override
+    public void exportDocumentView(String absPath, ContentHandler contentHandler, boolean skipBinary,
+                                   boolean noRecurse) throws RepositoryException {
+        throw unsupported("exportDocumentView");
+    }
+
+    @Override
+    public void exportDocumentView(String absPath, OutputStream out, boolean skipBinary, boolean noRecurse)
+            throws RepositoryException {
+        throw unsupported("exportDocumentView");
+    }
+
+    @Override
+    public void setNamespacePrefix(String prefix, String uri) throws RepositoryException {
+        throw unsupported("setNamespacePrefix");
+    }
+
+    @Override
+    public String[] getNamespacePrefixes() throws RepositoryException {
+        return new String[0];
+    }
+
+    @Override
+    public String getNamespaceURI(String prefix) throws RepositoryException {
+        throw new NamespaceException("Unknown prefix " + prefix);
+    }
+
+    @Override
+    public String getNamespacePrefix(String uri) throws RepositoryException {
+        throw new NamespaceException("Unknown namespace " + uri);
+    }
+
+    @Override
+    public void logout() {
+        live = false;
+    }
+
+    @Override
+    public boolean isLive() {
+        return live;
+    }
+
+    @Override
+    public void addLockToken(String lockToken) {
+        // Locking is not supported
+    }
+
+    @Override
+    public String[] getLockTokens() {
+        return new String[0];
+    }
+
+    @Override
+    public void removeLockToken(String lockToken) {
+        // Locking is not supported
+    }
+
+    @Override
+    public AccessControlManager getAccessControlManager() throws RepositoryException {
+        throw unsupported("getAccessControlManager");
+    }
+
+    @Override
+    public RetentionManager getRetentionManager() throws RepositoryException {
+        throw unsupported("getRetentionManager");
+    }
+
+    private static UnsupportedRepositoryOperationException unsupported(String operation) {
+        return InMemoryItem.unsupported(operation);
+    }
+}
@@ -0,0 +1,179 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import javax.jcr.Binary;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.ValueFormatException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.util.Calendar;
+
+/**
+ * Immutable {@link Value} keeping the lexical form it was created from together with the typed
+ * value parsed once at creation time.
+ */
+public class InMemoryValue implements Value {
+
+    private final int type;
+    private final String lexicalValue;
+    private final Object typedValue;
+
+    /**
+     * @param type One of the {@link PropertyType} constants
+     * @param lexicalValue String form of the value
+     * @param typedValue The value in its type: a Long, Double, BigDecimal, Boolean, Calendar or Binary, or the
+     *                   lexical value for the string based types
+     */
+    public InMemoryValue(int type, String lexicalValue, Object typedValue) {
+        this.type = type;
+        this.lexicalValue = lexicalValue;
+        this.typedValue = typedValue;
+    }
+
+    @Override
+    public String getString() {
+        return lexicalValue;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public InputStream getStream() throws RepositoryException {
+        return getBinary().getStream();
+    }
+
+    @Override
+    public Binary getBinary() throws RepositoryException {
+        if (typedValue instanceof Binary) {
+            return (Binary) typedValue;
+        }
+        try {
+            return new InMemoryBinary(lexicalValue.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    @Override
+    public long getLong() throws RepositoryException {
+        if (typedValue instanceof Number) {
+            return ((Number) typedValue).longValue();
+        }
+        if (typedValue instanceof Calendar) {
+            return ((Calendar) typedValue).getTimeInMillis();
+        }
+        try {
+            return Long.parseLong(lexicalValue);
+        } catch (NumberFormatException e) {
+            throw conversionError(PropertyType.LONG, e);
+        }
+    }
+
+    @Override
+    public double getDouble() throws RepositoryException {
+        if (typedValue instanceof Number) {
+            return ((Number) typedValue).doubleValue();
+        }
+        if (typedValue instanceof Calendar) {
+            return ((Calendar) typedValue).getTimeInMillis();
+        }
+        try {
+            return Double.parseDouble(lexicalValue);
+        } catch (NumberFormatException e) {
+            throw conversionError(PropertyType.DOUBLE, e);
+        }
+    }
+
+    @Override
+    public BigDecimal getDecimal() throws RepositoryException {
+        if (typedValue instanceof BigDecimal) {
+            return (BigDecimal) typedValue;
+        }
+        if (typedValue instanceof Calendar) {
+            return BigDecimal.valueOf(((Calendar) typedValue).getTimeInMillis());
+        }
+        try {
+            return new BigDecimal(lexicalValue);
+        } catch (NumberFormatException e) {
+            throw conversionError(PropertyType.DECIMAL, e);
+        }
+    }
+
+    @Override
+    public Calendar getDate() throws RepositoryException {
+        if (typedValue instanceof Calendar) {
+            return (Calendar) ((Calendar) typedValue).clone();
+        }
+        if (typedValue instanceof Number) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(((Number) typedValue).longValue());
+            return calendar;
+        }
+        throw conversionError(PropertyType.DATE, null);
+    }
+
+    @Override
+    public boolean getBoolean() throws RepositoryException {
+        if (typedValue instanceof Boolean) {
+            return (Boolean) typedValue;
+        }
+        if (type == PropertyType.STRING) {
+            return Boolean.valueOf(lexicalValue);
+        }
+        throw conversionError(PropertyType.BOOLEAN, null);
+    }
+
+    @Override
+    public int getType() {
+        return type;
+    }
+
+    private ValueFormatException conversionError(int targetType, Exception cause) {
+        return new ValueFormatException("Can not convert " + PropertyType.nameFromValue(type) + " value '"
+                + lexicalValue + "' to " + PropertyType.nameFromValue(targetType), cause);
+    }
+
+    @Override
+    public String toString() {
+        return lexicalValue;
+    }
+
+    /**
+     * Binary over an in memory byte array, used when a non binary value is read as a stream.
+     */
+    private static class InMemoryBinary implements Binary {
+
+        private final byte[] content;
+
+        InMemoryBinary(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public InputStream getStream() {
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public int read(byte[] buffer, long position) {
+            if (position >= content.length) {
+                return -1;
+            }
+            int length = (int) Math.min(buffer.length, content.length - position);
+            System.arraycopy(content, (int) position, buffer, 0, length);
+            return length;
+        }
+
+        @Override
+        public long getSize() {
+            return content.length;
+        }
+
+        @Override
+        public void dispose() {
+            // Nothing to release
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import com.tacitknowledge.jcr.testing.query.Sql2QueryManager;
+import org.xml.sax.ContentHandler;
+
+import javax.jcr.NamespaceRegistry;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Workspace;
+import javax.jcr.lock.LockManager;
+import javax.jcr.nodetype.NodeTypeManager;
+import javax.jcr.observation.ObservationManager;
+import javax.jcr.query.QueryManager;
+import javax.jcr.version.Version;
+import javax.jcr.version.VersionManager;
+import java.io.InputStream;
+
+/**
+ * Workspace of an {@link InMemorySession}. Only queries are supported: JCR-SQL2 statements are run over the tree
+ * of the session by a {@link Sql2QueryManager}, with the property and full-text indexes of the session if it has
+ * them.
+ */
+public class InMemoryWorkspace implements Workspace {
+
+    static final String DEFAULT_WORKSPACE_NAME = "default";
+
+    private final InMemorySession session;
+
+    InMemoryWorkspace(InMemorySession session) {
+        this.session = session;
+    }
+
+    @Override
+    public Session getSession() {
+        return session;
+    }
+
+    @Override
+    public String getName() {
+        return DEFAULT_WORKSPACE_NAME;
+    }
+
+    @Override
+    public QueryManager getQueryManager() {
+        return new Sql2QueryManager(session, session.getPropertyIndex(), session.getFullTextIndex());
+    }
+
+    @Override
+    public String[] getAccessibleWorkspaceNames() {
+        return new String[]{DEFAULT_WORKSPACE_NAME};
+    }
+
+    @Override
+    public void copy(String srcAbsPath, String destAbsPath) throws RepositoryException {
+        throw unsupported("copy");
+    }
+
+    @Override
+    public void copy(String srcWorkspace, String srcAbsPath, String destAbsPath) throws RepositoryException {
+        throw unsupported("copy");
+    }
+
+    @Override
+    public void clone(String srcWorkspace, String srcAbsPath, String destAbsPath, boolean removeExisting)
+            throws RepositoryException {
+        throw unsupported("clone");
+    }
+
+    @Override
+    public void move(String srcAbsPath, String destAbsPath) throws RepositoryException {
+        throw unsupported("move");
+    }
+
+    @Override
+    public void restore(Version[] versions, boolean removeExisting) throws RepositoryException {
+        throw unsupported("restore");
+    }
+
+    @Override
+    public LockManager getLockManager() throws RepositoryException {
+        throw unsupported("getLockManager");
+    }
+
+    @Override
+    public NamespaceRegistry getNamespaceRegistry() throws RepositoryException {
+        throw unsupported("getNamespaceRegistry");
+    }
+
+    @Override
+    public NodeTypeManager getNodeTypeManager() throws RepositoryException {
+        throw unsupported("getNodeTypeManager");
+    }
+
+    @Override
+    public ObservationManager getObservationManager() throws RepositoryException {
+        throw unsupported("getObservationManager");
+    }
+
+    @Override
+    public VersionManager getVersionManager() throws RepositoryException {
+        throw unsupported("getVersionManager");
+    }
+
+    @Override
+    public ContentHandler getImportContentHandler(String parentAbsPath, int uuidBehavior) throws RepositoryException {
+        throw unsupported("getImportContentHandler");
+    }
+
+    @Override
+    public void importXML(String parentAbsPath, InputStream in, int uuidBehavior) throws RepositoryException {
+        throw unsupported("importXML");
+    }
+
+    @Override
+    public void createWorkspace(String name) throws RepositoryException {
+        throw unsupported("createWorkspace");
+    }
+
+    @Override
+    public void createWorkspace(String name, String srcWorkspace) throws RepositoryException {
+        throw unsupported("createWorkspace");
+    }
+
+    @Override
+    public void deleteWorkspace(String name) throws RepositoryException {
+        throw unsupported("deleteWorkspace");
+    }
+
+    private static RepositoryException unsupported(String operation) {
+        return InMemoryItem.unsupported(operation);
+    }
+}
@@ -0,0 +1,88 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import com.tacitknowledge.jcr.testing.FullTextIndex;
+import com.tacitknowledge.jcr.testing.query.FullTextTokenizer;
+
+import javax.jcr.Node;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Full-text index keeping, for every term, the list of nodes it was found in, so looking up a term costs in the
+ * number of matches instead of the size of the tree:
+ * <pre>
+ *     FullTextIndex index = new InvertedFullTextIndex();
+ *     nodeFactory.setFullTextIndex(index);
+ *     ... build the fixture ...
+ *     List&lt;Node&gt; results = index.getNodes("jackrabbit");
+ * </pre>
+ * Text is split into terms by {@link #tokenize(String)}. Each node is counted per term, so removing the words of
+ * one property keeps the node indexed under the words its other properties still have; the query layer tests the
+ * nodes found. The index may be updated from several threads.
+ */
+public class InvertedFullTextIndex implements FullTextIndex {
+
+    private final ConcurrentMap<String, Map<Node, Integer>> postings =
+            new ConcurrentHashMap<String, Map<Node, Integer>>();
+
+    /**
+     * Splits text into terms the way full-text searches do, see {@link FullTextTokenizer#tokenize(String)}.
+     * @param text Text to split
+     * @return Terms of the text, in order and with repetitions
+     */
+    public static List<String> tokenize(String text) {
+        return FullTextTokenizer.tokenize(text);
+    }
+
+    @Override
+    public void add(Node node, String propertyName, String text) {
+        for (String term : tokenize(text)) {
+            Map<Node, Integer> nodes = postings.get(term);
+            if (nodes == null) {
+                nodes = Collections.synchronizedMap(new LinkedHashMap<Node, Integer>());
+                Map<Node, Integer> existing = postings.putIfAbsent(term, nodes);
+                if (existing != null) {
+                    nodes = existing;
+                }
+            }
+            synchronized (nodes) {
+                Integer count = nodes.get(node);
+                nodes.put(node, count == null ? 1 : count + 1);
+            }
+        }
+    }
+
+    @Override
+    public void remove(Node node, String propertyName, String text) {
+        for (String term : tokenize(text)) {
+            Map<Node, Integer> nodes = postings.get(term);
+            if (nodes != null) {
+                HashPropertyIndex.decrement(nodes, node);
+            }
+        }
+    }
+
+    @Override
+    public List<Node> getNodes(String term) {
+        Map<Node, Integer> nodes = term == null ? null : postings.get(term.toLowerCase(Locale.ENGLISH));
+        if (nodes == null) {
+            return Collections.emptyList();
+        }
+        synchronized (nodes) {
+            return new ArrayList<Node>(nodes.keySet());
+        }
+    }
+
+    /**
+     * @return Number of distinct terms indexed
+     */
+    public int getTermCount() {
+        return postings.size();
+    }
+}
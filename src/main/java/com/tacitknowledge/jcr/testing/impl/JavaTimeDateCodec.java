@@ -0,0 +1,137 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import com.tacitknowledge.jcr.testing.DateCodec;
+import org.apache.commons.lang3.StringUtils;
+
+import java.text.ParsePosition;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Thread safe {@link DateCodec} trying a list of {@link DateTimeFormatter}s in order. Values without a time zone
+ * are read in the codec's zone, values without a time are read as the start of the day and values made of digits
+ * only are read as milliseconds since the epoch.
+ * <p>
+ * Each codec keeps the dates it parsed last, so a timestamp repeated across a fixture is parsed once and every
+ * caller gets its own copy of it. Timestamps unique to a node, such as {@code jcr:lastModified}, push the least
+ * recently used dates out instead of staying for the life of the codec.
+ */
+public class JavaTimeDateCodec implements DateCodec {
+
+    /**
+     * Format used by fixtures before ISO-8601 dates were supported, MM/dd/yyyy. It is as lenient as the
+     * SimpleDateFormat it replaces: fields may have any number of digits and roll over, e.g. 13/45/2013 is
+     * 2014-02-14, and text after the date is ignored.
+     */
+    public static final DateTimeFormatter LEGACY_FORMAT = new DateTimeFormatterBuilder()
+            .appendValue(ChronoField.MONTH_OF_YEAR).appendLiteral('/')
+            .appendValue(ChronoField.DAY_OF_MONTH).appendLiteral('/')
+            .appendValue(ChronoField.YEAR_OF_ERA)
+            .toFormatter().withResolverStyle(ResolverStyle.LENIENT);
+
+    /**
+     * ISO-8601 with offset, as in JCR, e.g. 2012-12-24T10:15:30.123+01:00; then without offset, then the date
+     * only; then the legacy format
+     */
+    public static final DateTimeFormatter[] DEFAULT_FORMATS = {
+            DateTimeFormatter.ISO_OFFSET_DATE_TIME,
+            DateTimeFormatter.ISO_LOCAL_DATE_TIME,
+            DateTimeFormatter.ISO_LOCAL_DATE,
+            LEGACY_FORMAT
+    };
+
+    static final int MAX_CACHED_DATES = 4096;
+
+    private static final JavaTimeDateCodec DEFAULT = new JavaTimeDateCodec(ZoneId.systemDefault(), DEFAULT_FORMATS);
+
+    private final ZoneId zone;
+    private final DateTimeFormatter[] formats;
+    private final Map<String, Calendar> cache = Collections.synchronizedMap(
+            new LinkedHashMap<String, Calendar>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Calendar> eldest) {
+                    return size() > MAX_CACHED_DATES;
+                }
+            });
+
+    /**
+     * @param zone Zone of the values which don't give one
+     * @param formats Formats to try, in order
+     */
+    public JavaTimeDateCodec(ZoneId zone, DateTimeFormatter... formats) {
+        this.zone = zone;
+        this.formats = formats.clone();
+    }
+
+    /**
+     * @return Codec with the {@link #DEFAULT_FORMATS} in the system time zone
+     */
+    public static JavaTimeDateCodec getDefault() {
+        return DEFAULT;
+    }
+
+    @Override
+    public Calendar parse(String value) {
+        Calendar prototype = cache.get(value);
+        if (prototype == null) {
+            ZonedDateTime dateTime = toDateTime(value);
+            prototype = Calendar.getInstance(TimeZone.getTimeZone(dateTime.getZone()));
+            prototype.setTimeInMillis(dateTime.toInstant().toEpochMilli());
+            cache.put(value, prototype);
+        }
+        return (Calendar) prototype.clone();
+    }
+
+    int cacheSize() {
+        return cache.size();
+    }
+
+    boolean isCached(String value) {
+        return cache.containsKey(value);
+    }
+
+    private ZonedDateTime toDateTime(String value) {
+        if (StringUtils.isNumeric(value)) {
+            return Instant.ofEpochMilli(Long.parseLong(value)).atZone(zone);
+        }
+        for (DateTimeFormatter format : formats) {
+            ParsePosition position = new ParsePosition(0);
+            if (format.parseUnresolved(value, position) == null || position.getErrorIndex() >= 0
+                    || position.getIndex() != value.length() && format != LEGACY_FORMAT) {
+                continue;
+            }
+            try {
+                return toDateTime(format.parse(value.substring(0, position.getIndex())));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid format for date value: " + value, e);
+            }
+        }
+        throw new IllegalArgumentException("Invalid format for date value: " + value);
+    }
+
+    private ZonedDateTime toDateTime(TemporalAccessor parsed) {
+        if (parsed.isSupported(ChronoField.OFFSET_SECONDS)) {
+            return ZonedDateTime.from(parsed);
+        }
+        if (parsed.isSupported(ChronoField.NANO_OF_DAY)) {
+            return LocalDateTime.from(parsed).atZone(zone);
+        }
+        return LocalDate.from(parsed).atStartOfDay(zone);
+    }
+}
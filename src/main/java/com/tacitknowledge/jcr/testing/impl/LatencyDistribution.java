@@ -0,0 +1,70 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distribution of the latency of a repository operation, sampled by a {@link LatencyInjector} for every call.
+ * Latencies given by percentiles follow a log-normal distribution, the usual shape of remote call latencies: most
+ * calls take about the median, and a long tail takes much longer.
+ */
+public abstract class LatencyDistribution {
+
+    /**
+     * Number of standard deviations of the 99th percentile of a normal distribution.
+     */
+    private static final double P99_DEVIATIONS = 2.326;
+
+    public static final LatencyDistribution NONE = fixed(0, TimeUnit.NANOSECONDS);
+
+    /**
+     * @return Nanoseconds a call takes
+     */
+    public abstract long sample(Random random);
+
+    /**
+     * @return Distribution whose every sample is the latency
+     */
+    public static LatencyDistribution fixed(long latency, TimeUnit unit) {
+        final long nanos = unit.toNanos(latency);
+        if (nanos < 0) {
+            throw new IllegalArgumentException("Invalid latency " + latency);
+        }
+        return new LatencyDistribution() {
+            @Override
+            public long sample(Random random) {
+                return nanos;
+            }
+
+            @Override
+            public String toString() {
+                return nanos + "ns";
+            }
+        };
+    }
+
+    /**
+     * @param p50 Median latency
+     * @param p99 Latency of the 99th percentile, at least the median
+     * @return Log-normal distribution with these percentiles
+     */
+    public static LatencyDistribution percentiles(long p50, long p99, TimeUnit unit) {
+        final long median = unit.toNanos(p50);
+        final long tail = unit.toNanos(p99);
+        if (median <= 0 || tail < median) {
+            throw new IllegalArgumentException("Invalid percentiles p50 " + p50 + ", p99 " + p99);
+        }
+        final double sigma = Math.log((double) tail / median) / P99_DEVIATIONS;
+        return new LatencyDistribution() {
+            @Override
+            public long sample(Random random) {
+                return (long) (median * Math.exp(sigma * random.nextGaussian()));
+            }
+
+            @Override
+            public String toString() {
+                return "p50 " + median + "ns, p99 " + tail + "ns";
+            }
+        };
+    }
+}
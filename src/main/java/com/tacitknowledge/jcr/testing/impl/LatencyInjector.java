@@ -0,0 +1,314 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import javax.jcr.Item;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Workspace;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wraps the nodes of a fixture, built by any node factory, so their calls take as long as they would against a
+ * remote repository:
+ * <pre>
+ *     LatencyInjector latencyInjector = new LatencyInjector();
+ *     latencyInjector.setLatency("getNode", LatencyDistribution.percentiles(50, 2000, TimeUnit.MICROSECONDS));
+ *     latencyInjector.setColdLatency(LatencyDistribution.fixed(1, TimeUnit.MILLISECONDS));
+ *     latencyInjector.setNanosPerMegabyte(TimeUnit.MILLISECONDS.toNanos(10));
+ *     Node rootNode = latencyInjector.wrap(JcrMockingUtils.createNodesFromJsonString(json, nodeFactory));
+ * </pre>
+ * Every call of a wrapped object waits for a latency sampled from the distribution of its method, none unless set,
+ * and everything it returns from the JCR API is wrapped too, so the nodes reached from a wrapped node, their
+ * session, iterators, values and binaries all have latency. The first call returning an item at a path also waits
+ * for the cold latency, as a repository would fetch an item missing from its cache; streams wait for the cost of
+ * the bytes they read.
+ * <p>
+ * A wrapped item is always wrapped by the same object, so wrapped items can be compared with ==. Wrappers only
+ * delegate to the items they wrap, which a fixture may still be changed through.
+ */
+public class LatencyInjector {
+
+    private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    /**
+     * Waits shorter than this are spun, as parking a thread takes about as long.
+     */
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final Map<String, LatencyDistribution> latencies = new ConcurrentHashMap<String, LatencyDistribution>();
+
+    private volatile LatencyDistribution defaultLatency = LatencyDistribution.NONE;
+
+    private volatile LatencyDistribution coldLatency = LatencyDistribution.NONE;
+
+    private volatile long nanosPerMegabyte;
+
+    private final Set<String> warmPaths = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final ConcurrentMap<Object, Object> wrappers = new ConcurrentHashMap<Object, Object>();
+
+    private final ConcurrentMap<Class<?>, Class<?>[]> interfaces = new ConcurrentHashMap<Class<?>, Class<?>[]>();
+
+    private final LongAdder injectedNanos = new LongAdder();
+
+    /**
+     * @param methodName Name of the JCR method, e.g. getNode
+     * @param latency Latency of every call of the method, whatever its interface and arguments
+     */
+    public void setLatency(String methodName, LatencyDistribution latency) {
+        latencies.put(methodName, latency);
+    }
+
+    /**
+     * @param defaultLatency Latency of the methods without one of their own, none if not set
+     */
+    public void setDefaultLatency(LatencyDistribution defaultLatency) {
+        this.defaultLatency = defaultLatency;
+    }
+
+    /**
+     * @param coldLatency Latency added to the first call returning an item at a path, none if not set
+     */
+    public void setColdLatency(LatencyDistribution coldLatency) {
+        this.coldLatency = coldLatency;
+    }
+
+    /**
+     * @param nanosPerMegabyte Time streams take to read a megabyte, none if not set
+     */
+    public void setNanosPerMegabyte(long nanosPerMegabyte) {
+        this.nanosPerMegabyte = nanosPerMegabyte;
+    }
+
+    /**
+     * Makes every path cold again, as if the cache of the repository was flushed.
+     */
+    public void clearWarmPaths() {
+        warmPaths.clear();
+    }
+
+    /**
+     * @return Total time injected so far, in nanoseconds
+     */
+    public long getInjectedNanos() {
+        return injectedNanos.sum();
+    }
+
+    /**
+     * @param target Node, session or any other object of the JCR API
+     * @return Wrapper of the target implementing its JCR interfaces, the same for every call with an item, a
+     *         session or a workspace
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T wrap(T target) {
+        if (target == null || Proxy.isProxyClass(target.getClass())
+                && Proxy.getInvocationHandler(target) instanceof LatentHandler) {
+            return target;
+        }
+        boolean shared = target instanceof Item || target instanceof Session || target instanceof Workspace;
+        Object wrapper = shared ? wrappers.get(target) : null;
+        if (wrapper == null) {
+            wrapper = Proxy.newProxyInstance(LatencyInjector.class.getClassLoader(),
+                    getJcrInterfaces(target.getClass()), new LatentHandler(target));
+            if (shared) {
+                Object existing = wrappers.putIfAbsent(target, wrapper);
+                if (existing != null) {
+                    wrapper = existing;
+                }
+            }
+        }
+        return (T) wrapper;
+    }
+
+    private Class<?>[] getJcrInterfaces(Class<?> type) {
+        Class<?>[] jcrInterfaces = interfaces.get(type);
+        if (jcrInterfaces == null) {
+            List<Class<?>> found = new ArrayList<Class<?>>();
+            for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+                addJcrInterfaces(current.getInterfaces(), found);
+            }
+            jcrInterfaces = found.toArray(new Class<?>[found.size()]);
+            interfaces.put(type, jcrInterfaces);
+        }
+        return jcrInterfaces;
+    }
+
+    private static void addJcrInterfaces(Class<?>[] candidates, List<Class<?>> found) {
+        for (Class<?> candidate : candidates) {
+            if (isJcrType(candidate) && !found.contains(candidate)) {
+                found.add(candidate);
+            }
+            addJcrInterfaces(candidate.getInterfaces(), found);
+        }
+    }
+
+    private static boolean isJcrType(Class<?> type) {
+        return type.getName().startsWith("javax.jcr.");
+    }
+
+    private boolean isJcrObject(Object result) {
+        return getJcrInterfaces(result.getClass()).length > 0;
+    }
+
+    private Object wrapResult(Object result) throws RepositoryException {
+        if (result == null) {
+            return null;
+        }
+        if (result instanceof InputStream) {
+            return new LatentInputStream((InputStream) result);
+        }
+        Class<?> type = result.getClass();
+        if (type.isArray() && type.getComponentType().isInterface() && isJcrType(type.getComponentType())) {
+            int length = Array.getLength(result);
+            Object wrapped = Array.newInstance(type.getComponentType(), length);
+            for (int i = 0; i < length; i++) {
+                Array.set(wrapped, i, wrapResult(Array.get(result, i)));
+            }
+            return wrapped;
+        }
+        if (!isJcrObject(result)) {
+            return result;
+        }
+        if (result instanceof Item && warmPaths.add(((Item) result).getPath())) {
+            pause(coldLatency.sample(ThreadLocalRandom.current()));
+        }
+        return wrap(result);
+    }
+
+    private static Object[] unwrap(Object[] arguments) {
+        if (arguments == null) {
+            return null;
+        }
+        Object[] unwrapped = arguments;
+        for (int i = 0; i < arguments.length; i++) {
+            Object argument = arguments[i];
+            if (argument != null && Proxy.isProxyClass(argument.getClass())
+                    && Proxy.getInvocationHandler(argument) instanceof LatentHandler) {
+                if (unwrapped == arguments) {
+                    unwrapped = arguments.clone();
+                }
+                unwrapped[i] = ((LatentHandler) Proxy.getInvocationHandler(argument)).target;
+            }
+        }
+        return unwrapped;
+    }
+
+    private void pause(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        injectedNanos.add(nanos);
+        long deadline = System.nanoTime() + nanos;
+        long remaining = nanos;
+        while (remaining > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            }
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Calls the wrapped object, then waits for the latency of the method.
+     */
+    private final class LatentHandler implements InvocationHandler {
+
+        private final Object target;
+
+        LatentHandler(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] arguments) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return invokeObjectMethod(proxy, method, arguments);
+            }
+            LatencyDistribution latency = latencies.get(method.getName());
+            Object result;
+            try {
+                result = method.invoke(target, unwrap(arguments));
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                pause((latency != null ? latency : defaultLatency).sample(ThreadLocalRandom.current()));
+            }
+            return wrapResult(result);
+        }
+
+        private Object invokeObjectMethod(Object proxy, Method method, Object[] arguments) {
+            if ("equals".equals(method.getName())) {
+                Object other = unwrap(arguments)[0];
+                return proxy == arguments[0] || target.equals(other);
+            } else if ("hashCode".equals(method.getName())) {
+                return target.hashCode();
+            }
+            return target.toString();
+        }
+    }
+
+    /**
+     * Stream waiting for the cost of the bytes read, once it adds up to a wait worth making.
+     */
+    private final class LatentInputStream extends FilterInputStream {
+
+        private long pendingBytes;
+
+        LatentInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            charge(read < 0 ? 0 : 1, read < 0);
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            charge(Math.max(read, 0), read < 0);
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(count);
+            charge(skipped, false);
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            charge(0, true);
+            super.close();
+        }
+
+        private void charge(long bytes, boolean flush) {
+            pendingBytes += bytes;
+            long pendingNanos = pendingBytes * nanosPerMegabyte / BYTES_PER_MEGABYTE;
+            if (pendingNanos >= SPIN_NANOS || (flush && pendingNanos > 0)) {
+                pause(pendingNanos);
+                pendingBytes = 0;
+            }
+        }
+    }
+}
@@ -1,37 +1,220 @@
 package com.tacitknowledge.jcr.testing.impl;
 
-import com.tacitknowledge.jcr.testing.NodeFactory;
+import com.tacitknowledge.jcr.testing.DateCodec;
+import com.tacitknowledge.jcr.testing.FullTextIndex;
+import com.tacitknowledge.jcr.testing.PropertyIndex;
+import com.tacitknowledge.jcr.testing.TypedNodeFactory;
+import com.tacitknowledge.jcr.testing.query.Sql2QueryManager;
 import org.apache.commons.lang3.StringUtils;
+import org.mockito.MockSettings;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import javax.jcr.*;
 import javax.jcr.nodetype.NodeType;
 import javax.jcr.nodetype.PropertyDefinition;
-import java.io.InputStream;
+import javax.jcr.observation.Event;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
 import java.math.BigDecimal;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 
 /**
  * Factory for Mock nodes and properties
+ * <p>
+ * The factory may be shared by threads building different fixtures, or different subtrees of one fixture. By default
+ * all the nodes share one session, whose root is the last root node created. With a session per root, every root
+ * node gets its own session and path index, so fixtures built from the same factory by different tests never see
+ * each other's nodes.
+ * <p>
+ * Nodes are read only unless the factory is writable. Then {@code addNode}, {@code setProperty} and {@code remove}
+ * change the tree at once, so paths, iterators, {@code hasNode} and {@code hasProperty} reflect them, and each change
+ * is appended to the change log of the session: {@code save()} keeps the changes and {@code refresh(false)} undoes
+ * them, newest first. {@link #snapshot(Node)} marks a point in the log which {@link #restore(Snapshot)} rolls the
+ * fixture back to, so tests can share a fixture built once:
+ * <pre>
+ *     Snapshot loaded = nodeFactory.snapshot(rootNode);
+ *     ... run a test changing the fixture ...
+ *     nodeFactory.restore(loaded);
+ *     ... once no test needs it any more ...
+ *     nodeFactory.release(loaded);
+ * </pre>
+ * Saved changes stay in the log while a snapshot taken before them is in use, and are dropped once every such
+ * snapshot is released or no longer referenced.
+ * Saved changes are observed as events by the listeners of the {@link BatchingObservationManager} of the workspace;
+ * changes undone by a refresh or a restore are not.
  *
  * @author Daniel Valencia (daniel@tacitknowledge.com)
  */
-public class MockNodeFactory implements NodeFactory {
+public class MockNodeFactory implements TypedNodeFactory {
 
-    private Session session = mock(Session.class);
+    /**
+     * States of the nodes, held by their fixtures and only weakly referenced from here, so fixtures nobody uses any
+     * more are collected, with their nodes, even though the factory lives on.
+     */
+    private final Map<Node, Reference<MockNodeState>> nodeStates =
+            Collections.synchronizedMap(new WeakHashMap<Node, Reference<MockNodeState>>());
+
+    private final Answer<Object> nodeLookupAnswer = new NodeLookupAnswer();
+
+    private final Fixture sharedFixture = new Fixture(null, null, false);
+
+    private volatile boolean sessionPerRoot;
+
+    private volatile boolean writable;
+
+    private final Answer<Object> propertyWriteAnswer = new PropertyWriteAnswer();
+
+    private volatile PropertyIndex propertyIndex;
+
+    private volatile FullTextIndex fullTextIndex;
+
+    private volatile AccessProfiler accessProfiler;
+
+    private volatile boolean stubOnly;
+
+    private DateCodec dateCodec = JavaTimeDateCodec.getDefault();
+
+    /**
+     * @param sessionPerRoot true to give every root node, and the nodes created under it, a session of its own
+     */
+    public void setSessionPerRoot(boolean sessionPerRoot) {
+        this.sessionPerRoot = sessionPerRoot;
+    }
+
+    public boolean isSessionPerRoot() {
+        return sessionPerRoot;
+    }
+
+    /**
+     * Set before the fixture is built: nodes and properties created while read only aren't writable, and their
+     * iterators are snapshots.
+     * @param writable true to let nodes and properties created from now on be added, set and removed
+     */
+    public void setWritable(boolean writable) {
+        this.writable = writable;
+    }
+
+    public boolean isWritable() {
+        return writable;
+    }
+
+    /**
+     * Takes a snapshot of the fixture of a node in O(1), whatever the size of the fixture. The changes made after it,
+     * saved or not, are kept in memory until it is restored, released or no longer referenced.
+     * @param node Any node of the fixture, usually its root
+     * @return Snapshot to {@link #restore(Snapshot)}
+     */
+    public Snapshot snapshot(Node node) throws RepositoryException {
+        return getNodeState(node).fixture.snapshot();
+    }
+
+    /**
+     * Restores a fixture to a snapshot by undoing the changes made since, newest first. It costs O(changes), the
+     * number of changes undone, not the size of the fixture. A snapshot may be restored many times, until an earlier
+     * one is or it is released.
+     * @param snapshot Snapshot of the fixture
+     * @throws IllegalArgumentException If the snapshot was released, or an earlier snapshot of the fixture was
+     * restored since it was taken
+     */
+    public void restore(Snapshot snapshot) throws RepositoryException {
+        snapshot.fixture.restore(snapshot);
+    }
+
+    /**
+     * Releases a snapshot which won't be restored any more, so the saved changes only it kept are dropped.
+     * @param snapshot Snapshot of the fixture
+     */
+    public void release(Snapshot snapshot) {
+        snapshot.fixture.release(snapshot);
+    }
+
+    int loggedChanges(Node node) throws RepositoryException {
+        return getNodeState(node).fixture.loggedChanges();
+    }
+
+    /**
+     * @param propertyIndex Index kept up to date as properties are created, and used by the queries run over the
+     *                      nodes of this factory; null for none
+     */
+    public void setPropertyIndex(PropertyIndex propertyIndex) {
+        this.propertyIndex = propertyIndex;
+        sharedFixture.propertyIndex = propertyIndex;
+    }
+
+    public PropertyIndex getPropertyIndex() {
+        return propertyIndex;
+    }
+
+    /**
+     * @param fullTextIndex Index the words of String properties are added to as they are created, and used by the
+     *                      full-text searches run over the nodes of this factory; null for none
+     */
+    public void setFullTextIndex(FullTextIndex fullTextIndex) {
+        this.fullTextIndex = fullTextIndex;
+        sharedFixture.fullTextIndex = fullTextIndex;
+    }
+
+    public FullTextIndex getFullTextIndex() {
+        return fullTextIndex;
+    }
+
+    /**
+     * Set before the fixture is built: only the mocks created from then on are stub only, and the session of a
+     * fixture is created with its first node. Mocks which are only stubbed don't record the calls made to them, so a
+     * fixture traversed over and over doesn't grow, but they can't be verified.
+     * @param stubOnly true to create mocks which can't be verified, false by default
+     */
+    public void setStubOnly(boolean stubOnly) {
+        this.stubOnly = stubOnly;
+        sharedFixture.stubOnly = stubOnly;
+    }
+
+    public boolean isStubOnly() {
+        return stubOnly;
+    }
+
+    /**
+     * Set before the fixture is built: only the nodes and properties created from then on are profiled.
+     * @param accessProfiler Profiler counting the calls made to the nodes and properties created; null for none
+     */
+    public void setAccessProfiler(AccessProfiler accessProfiler) {
+        this.accessProfiler = accessProfiler;
+    }
+
+    public AccessProfiler getAccessProfiler() {
+        return accessProfiler;
+    }
+
+    /**
+     * @param dateCodec Codec parsing the values of Date properties, {@link JavaTimeDateCodec#getDefault()} if not set
+     */
+    public void setDateCodec(DateCodec dateCodec) {
+        this.dateCodec = dateCodec;
+    }
 
     public Node createNode(Node parentNode, String nodeName, String nodeTypeName) throws RepositoryException {
 
-        NodeType nodeType = mock(NodeType.class);
+        NodeType nodeType = newMock(NodeType.class, RETURNS_DEFAULTS, false);
         when(nodeType.getName()).thenReturn(nodeTypeName);
 
         Node childNode = createNode(parentNode, nodeName, nodeType);
@@ -41,21 +224,28 @@ public class MockNodeFactory implements NodeFactory {
 
     @Override
     public Property createProperty(Node parent, String name, String propertyValue, int propertyType) throws RepositoryException {
-        Property property = parent.getProperty(name);
+        return createProperty(parent, name, propertyValue, null, propertyType);
+    }
+
+    @Override
+    public Property createProperty(Node parent, String name, String lexicalValue, Object typedValue, int propertyType)
+            throws RepositoryException {
+        Property property = getChildProperty(parent, name);
         if (property == null) {
-            property = mock(Property.class);
-            Value value = createValueFor(property, propertyValue, propertyType);
+            property = newProperty();
+            Value value = createValueFor(property, lexicalValue, typedValue, propertyType);
             when(property.getValue()).thenReturn(value);
-            when(property.getString()).thenReturn(propertyValue);
+            when(property.getString()).thenReturn(lexicalValue);
             when(property.getName()).thenReturn(name);
             when(property.getType()).thenReturn(propertyType);
 	        when(property.isMultiple()).thenReturn(false);
-            when(parent.getProperty(name)).thenReturn(property);
         } else if (property.getValue() == null) {
-            createValue(property, propertyValue, propertyType);
+            Value value = createValueFor(property, lexicalValue, typedValue, propertyType);
+            when(property.getValue()).thenReturn(value);
         }
 
         mockCommonMethods(property, parent, name);
+        index(parent, name, lexicalValue, propertyType);
 	    return property;
     }
 
@@ -66,24 +256,31 @@ public class MockNodeFactory implements NodeFactory {
             when(childNode.isNodeType(nodeType.getName())).thenReturn(true); // Default node type
             when(childNode.getPrimaryNodeType()).thenReturn(nodeType);
         }
-        when(childNode.getSession()).thenReturn(session);
         return childNode;
     }
 
     @Override
     public Node createNode(Node parent, String name) throws RepositoryException {
         Node childNode = null;
+        Fixture fixture = sharedFixture;
         if (parent != null) {
-            childNode = parent.getNode(name);
+            childNode = getChildNode(parent, name);
+            fixture = getNodeState(parent).fixture;
         }
         if (childNode == null) {
-            childNode = createNode(name);
+            childNode = createNode(name, fixture);
             when(childNode.getParent()).thenReturn(parent);
-            buildParentHierarchy(parent, childNode, name);
         }
-	    String path = buildPathForNode(childNode);
+        if (parent != null) {
+            getNodeState(parent).addNode(name, childNode);
+        }
+	    String parentPath = parent == null ? null : parent.getPath();
+	    String path = parentPath == null ? buildPathForNode(childNode) : childPath(parentPath, name);
 	    when(childNode.getPath()).thenReturn(path);
 	    when(childNode.toString()).thenReturn(path);
+	    track(childNode, path);
+        fixture.itemsByPath.put(path, childNode);
+        Session session = fixture.getSession();
         when(childNode.getSession()).thenReturn(session);
         return childNode;
     }
@@ -91,29 +288,40 @@ public class MockNodeFactory implements NodeFactory {
     @Override
     public Node createNode(String name) throws RepositoryException
     {
-        Node childNode = mock(Node.class);
+        boolean root = StringUtils.EMPTY.equals(name);
+        return createNode(name,
+                root && sessionPerRoot ? new Fixture(propertyIndex, fullTextIndex, stubOnly) : sharedFixture);
+    }
+
+    private Node createNode(String name, Fixture fixture) throws RepositoryException
+    {
+        Node childNode = newNode();
+        putNodeState(childNode, new MockNodeState(fixture, writable));
         when(childNode.getName()).thenReturn(name);
         if(StringUtils.EMPTY.equals(name))
         {
             when(childNode.getPath()).thenReturn("/");
 	        when(childNode.toString()).thenReturn("/");
-	        when(session.getRootNode()).thenReturn(childNode);
+	        track(childNode, "/");
+            fixture.itemsByPath.put("/", childNode);
         }
 
         when(childNode.isNode()).thenReturn(true);
+        Session session = fixture.getSession();
+        when(childNode.getSession()).thenReturn(session);
         return childNode;
     }
 
 	@Override
 	public Property createMultiValuedProperty(Node parent, String name, String[] propertyValues) throws RepositoryException {
-		Property property = parent.getProperty(name);
+		Property property = getChildProperty(parent, name);
 		if (property == null) {
-			property = mock(Property.class);
+			property = newProperty();
 		}
 		if (property.getValue() == null) {
 			Value[] values = new Value[propertyValues.length];
 			for(int i = 0; i < values.length; i++) {
-				Value value = mock(Value.class);
+				Value value = newMock(Value.class, RETURNS_DEFAULTS, false);
 				when(value.getString()).thenReturn(propertyValues[i]);
 				when(value.getType()).thenReturn(PropertyType.STRING);
 				values[i] = value;
@@ -122,25 +330,78 @@ public class MockNodeFactory implements NodeFactory {
 			when(property.getName()).thenReturn(name);
 			when(property.getType()).thenReturn(PropertyType.STRING);
 			when(property.isMultiple()).thenReturn(true);
-			when(parent.getProperty(name)).thenReturn(property);
 		}
 		mockCommonMethods(property, parent, name);
+		for (String propertyValue : propertyValues) {
+			index(parent, name, propertyValue, PropertyType.STRING);
+		}
 		return property;
 	}
 
+	private void index(Node parent, String name, String value, int propertyType) {
+		PropertyIndex index = propertyIndex;
+		if (index != null) {
+			index.add(parent, name, value);
+		}
+		FullTextIndex textIndex = fullTextIndex;
+		if (textIndex != null && propertyType == PropertyType.STRING) {
+			textIndex.add(parent, name, value);
+		}
+	}
+
+	private void unindex(Node parent, String name, String value, int propertyType) {
+		PropertyIndex index = propertyIndex;
+		if (index != null) {
+			index.remove(parent, name, value);
+		}
+		FullTextIndex textIndex = fullTextIndex;
+		if (textIndex != null && propertyType == PropertyType.STRING) {
+			textIndex.remove(parent, name, value);
+		}
+	}
+
+	/**
+	 * Puts the values of a property of a writable node back in the indexes, or takes them out.
+	 */
+	private void reindex(Node parent, Property property, boolean indexed) throws RepositoryException {
+		if (propertyIndex == null && fullTextIndex == null) {
+			return;
+		}
+		String name = property.getName();
+		int propertyType = property.getType();
+		if (property.isMultiple()) {
+			for (Value value : property.getValues()) {
+				reindex(parent, name, value.getString(), propertyType, indexed);
+			}
+		} else {
+			reindex(parent, name, property.getString(), propertyType, indexed);
+		}
+	}
+
+	private void reindex(Node parent, String name, String value, int propertyType, boolean indexed) {
+		if (indexed) {
+			index(parent, name, value, propertyType);
+		} else {
+			unindex(parent, name, value, propertyType);
+		}
+	}
+
 	private void mockCommonMethods(Property property, Node parent, String name) throws RepositoryException {
+		MockNodeState parentState = getNodeState(parent);
+		Session session = parentState.fixture.getSession();
 		when(property.getParent()).thenReturn(parent);
 		when(property.getSession()).thenReturn(session);
 		when(parent.getSession()).thenReturn(session);
-		when(parent.hasProperty(name)).thenReturn(true);
-		when(parent.hasProperties()).thenReturn(true);
+		parentState.addProperty(name, property);
 
-		String propertyPath = parent.getPath() + "/" + name;
+		String propertyPath = childPath(parent.getPath(), name);
 		when(property.getPath()).thenReturn(propertyPath);
 		when(property.toString()).thenReturn(propertyPath);
+		track(property, propertyPath);
+		parentState.fixture.itemsByPath.put(propertyPath, property);
 
 		//adding support for getPropertyDefinition()
-		PropertyDefinition propertyDefinition = mock(PropertyDefinition.class);
+		PropertyDefinition propertyDefinition = newMock(PropertyDefinition.class, RETURNS_DEFAULTS, false);
 		when(property.getDefinition()).thenReturn(propertyDefinition);
 
 		boolean isMultiple = property.isMultiple();
@@ -148,37 +409,93 @@ public class MockNodeFactory implements NodeFactory {
 
 		int propertyType = property.getType();
 		when(propertyDefinition.getRequiredType()).thenReturn(propertyType);
-
-		buildParentHierarchy(parent, property, name);
 	}
 
+    private static String childPath(String parentPath, String name) {
+        return "/".equals(parentPath) ? "/" + name : parentPath + "/" + name;
+    }
+
+    private Node newNode() {
+        return newMock(Node.class, nodeLookupAnswer, true);
+    }
+
+    private Property newProperty() {
+        return newMock(Property.class, writable ? propertyWriteAnswer : RETURNS_DEFAULTS, true);
+    }
+
+    /**
+     * @param profiled true to let the access profiler, if any, count the calls of the mock
+     */
+    private <T> T newMock(Class<T> type, Answer<?> defaultAnswer, boolean profiled) {
+        MockSettings settings = settings(defaultAnswer, stubOnly);
+        AccessProfiler profiler = accessProfiler;
+        if (profiled && profiler != null) {
+            settings.invocationListeners(profiler.getListener());
+        }
+        return mock(type, settings);
+    }
+
+    private static MockSettings settings(Answer<?> defaultAnswer, boolean stubOnly) {
+        MockSettings settings = withSettings().defaultAnswer(defaultAnswer);
+        return stubOnly ? settings.stubOnly() : settings;
+    }
+
+    private void track(Item item, String path) {
+        AccessProfiler profiler = accessProfiler;
+        if (profiler != null) {
+            profiler.track(item, path);
+        }
+    }
+
+	/**
+	 * Writable nodes aren't stubbed with a snapshot, their iterators are taken from their current children.
+	 */
 	@Override
-    public void createIteratorFor(Node parent, final List<Node> childNodes) throws RepositoryException {
+    public void createIteratorFor(Node parent, List<Node> childNodes) throws RepositoryException {
+        Session session = getNodeState(parent).fixture.getSession();
+        when(parent.getSession()).thenReturn(session);
+        if (isWritable(parent)) {
+            return;
+        }
+        final Node[] snapshot = childNodes.toArray(new Node[childNodes.size()]);
         when(parent.getNodes()).thenAnswer(new Answer<NodeIterator>()
         {
             @Override
             public NodeIterator answer(InvocationOnMock invocationOnMock) throws Throwable
             {
-                return new NodeIteratorAdapter(childNodes.iterator());
+                return new NodeIteratorAdapter(snapshot);
             }
         });
-
-        when(parent.getSession()).thenReturn(session);
     }
 
 	@Override
-	public void createPropertyIteratorFor(Node parent, final List<Property> propertyList) throws RepositoryException {
+	public void createPropertyIteratorFor(Node parent, List<Property> propertyList) throws RepositoryException {
+		if (isWritable(parent)) {
+			return;
+		}
+		final Property[] snapshot = propertyList.toArray(new Property[propertyList.size()]);
 		when(parent.getProperties()).thenAnswer(new Answer<PropertyIteratorAdapter>() {
 			@Override
 			public PropertyIteratorAdapter answer(InvocationOnMock invocationOnMock) throws Throwable {
-				return new PropertyIteratorAdapter(propertyList.iterator());
+				return new PropertyIteratorAdapter(snapshot);
 			}
 		});
 	}
 
     @Override
     public Value createValueFor(Property property, String valueStr, int valueType) throws RepositoryException {
-        Value returnValue = mock(Value.class);
+        Value value = createValueFor(property, valueStr, null, valueType);
+        // Properties created by this factory already have the session of their fixture
+        if (property.getSession() == null) {
+            Session session = sharedFixture.getSession();
+            when(property.getSession()).thenReturn(session);
+        }
+        return value;
+    }
+
+    private Value createValueFor(Property property, String valueStr, Object typedValue, int valueType)
+            throws RepositoryException {
+        Value returnValue = newMock(Value.class, RETURNS_DEFAULTS, false);
         when(returnValue.getType()).thenReturn(valueType);
 
         switch (valueType) {
@@ -189,26 +506,30 @@ public class MockNodeFactory implements NodeFactory {
                 createBinaryValueFor(property, returnValue, valueStr);
                 break;
             case PropertyType.BOOLEAN:
-                createBooleanValueFor(property, returnValue, valueStr);
+                createBooleanValueFor(property, returnValue,
+                        typedValue == null ? Boolean.valueOf(valueStr) : (Boolean) typedValue);
                 break;
             case PropertyType.DOUBLE:
-                createDoubleValueFor(property, returnValue, valueStr);
+                createDoubleValueFor(property, returnValue,
+                        typedValue == null ? Double.parseDouble(valueStr) : ((Number) typedValue).doubleValue());
                 break;
             case PropertyType.DECIMAL:
-                createDecimalValueFor(property, returnValue, valueStr);
+                createDecimalValueFor(property, returnValue,
+                        typedValue == null ? new BigDecimal(valueStr) : (BigDecimal) typedValue);
                 break;
             case PropertyType.LONG:
-                createLongValueFor(property, returnValue, valueStr);
+                createLongValueFor(property, returnValue,
+                        typedValue == null ? Long.parseLong(valueStr) : ((Number) typedValue).longValue());
                 break;
             case PropertyType.DATE:
-                createDateValueFor(property, returnValue, valueStr);
+                createDateValueFor(property, returnValue,
+                        typedValue == null ? dateCodec.parse(valueStr) : (Calendar) typedValue);
                 // There is no break on purpose here so that Date creates also a string property
             default:
                 createStringValueFor(property, returnValue, valueStr);
                 break;
         }
 
-        when(property.getSession()).thenReturn(session);
         return returnValue;
     }
 
@@ -222,34 +543,28 @@ public class MockNodeFactory implements NodeFactory {
         return StringUtils.EMPTY;
     }
 
-    private void createDateValueFor(Property property, Value returnValue, String valueStr) throws RepositoryException {
-        Calendar calendar;
-        try {
-            SimpleDateFormat simpleDateFormat = new SimpleDateFormat("MM/dd/yyyy");
-            Date date = simpleDateFormat.parse(valueStr);
-            calendar = Calendar.getInstance();
-            calendar.setTime(date);
-        } catch (ParseException e) {
-            throw new RuntimeException("Invalid format for date value: " + valueStr, e);
-        }
-        when(property.getDate()).thenReturn(calendar);
-        when(returnValue.getDate()).thenReturn(calendar);
+    private void createDateValueFor(Property property, Value returnValue, final Calendar calendar) throws RepositoryException {
+        Answer<Calendar> copy = new Answer<Calendar>() {
+            @Override
+            public Calendar answer(InvocationOnMock invocationOnMock) throws Throwable {
+                return (Calendar) calendar.clone();
+            }
+        };
+        when(property.getDate()).thenAnswer(copy);
+        when(returnValue.getDate()).thenAnswer(copy);
     }
 
-    private void createLongValueFor(Property property, Value returnValue, String valueStr) throws RepositoryException {
-        long longVal = Long.parseLong(valueStr);
+    private void createLongValueFor(Property property, Value returnValue, long longVal) throws RepositoryException {
         when(property.getLong()).thenReturn(longVal);
         when(returnValue.getLong()).thenReturn(longVal);
     }
 
-    private void createDecimalValueFor(Property property, Value returnValue, String valueStr) throws RepositoryException {
-        BigDecimal decimalValue = new BigDecimal(valueStr);
+    private void createDecimalValueFor(Property property, Value returnValue, BigDecimal decimalValue) throws RepositoryException {
         when(property.getDecimal()).thenReturn(decimalValue);
         when(returnValue.getDecimal()).thenReturn(decimalValue);
     }
 
-    private void createDoubleValueFor(Property property, Value returnValue, String valueStr) throws RepositoryException {
-        double doubleVal = Double.parseDouble(valueStr);
+    private void createDoubleValueFor(Property property, Value returnValue, double doubleVal) throws RepositoryException {
         when(property.getDouble()).thenReturn(doubleVal);
         when(returnValue.getDouble()).thenReturn(doubleVal);
     }
@@ -259,51 +574,845 @@ public class MockNodeFactory implements NodeFactory {
         when(returnValue.getString()).thenReturn(valueStr);
     }
 
-    private void createBooleanValueFor(Property property, Value returnValue, String valueStr) throws RepositoryException {
-        Boolean booleanVal = Boolean.valueOf(valueStr);
+    private void createBooleanValueFor(Property property, Value returnValue, Boolean booleanVal) throws RepositoryException {
         when(property.getBoolean()).thenReturn(booleanVal);
         when(returnValue.getBoolean()).thenReturn(booleanVal);
     }
 
-    private void createValue(Property property, String propertyValue, int propertyType) throws RepositoryException {
-        Value value = createValueFor(property, propertyValue, propertyType);
-        when(property.getValue()).thenReturn(value);
+    private void createBinaryValueFor(Property property, Value valueObject, String propertyValue) throws RepositoryException {
+        Binary binary = new ResourceBinary(propertyValue);
+        when(property.getBinary()).thenReturn(binary);
+        when(valueObject.getBinary()).thenReturn(binary);
     }
 
-    private void createBinaryValueFor(Property property, Value valueObject, String propertyValue) throws RepositoryException {
-        InputStream binaryInputStream = getClass().getResourceAsStream(propertyValue);
+    /**
+     * Session and path index shared by the nodes of a fixture, and the property and full-text indexes its queries
+     * use.
+     */
+    private static class Fixture {
 
-        if (binaryInputStream == null)
-            throw new IllegalArgumentException("Path to binary doesn't exist: " + propertyValue);
+        private final Map<String, Item> itemsByPath = new ConcurrentHashMap<String, Item>();
 
-        Binary binary = mock(Binary.class);
-        when(property.getBinary()).thenReturn(binary);
-        when(binary.getStream()).thenReturn(binaryInputStream);
-        when(valueObject.getBinary()).thenReturn(binary);
+        /**
+         * Keeps the states of the nodes of the fixture for as long as the fixture is used: every node holds its
+         * session, which holds the fixture.
+         */
+        private final Map<Node, MockNodeState> nodeStates = new ConcurrentHashMap<Node, MockNodeState>();
+
+        private volatile boolean stubOnly;
+
+        private Session session;
+
+        private volatile PropertyIndex propertyIndex;
+
+        private volatile FullTextIndex fullTextIndex;
+
+        /**
+         * Changes which can still be undone, oldest first: those not saved yet and the saved ones made after a
+         * snapshot still in use. Changes are only ever appended until they are dropped or undone.
+         */
+        private final List<Change> changes = new ArrayList<Change>();
+
+        /**
+         * Number of changes saved; those after it are pending.
+         */
+        private int saved;
+
+        /**
+         * Number of saved changes dropped from the head of the log; the positions of snapshots count them.
+         */
+        private int dropped;
+
+        /**
+         * Snapshots which can still be restored, forgotten once released, dropped or no longer referenced.
+         */
+        private final Map<Snapshot, Boolean> snapshots = new WeakHashMap<Snapshot, Boolean>();
+
+        private BatchingObservationManager observationManager;
+
+        Fixture(PropertyIndex propertyIndex, FullTextIndex fullTextIndex, boolean stubOnly) {
+            this.propertyIndex = propertyIndex;
+            this.fullTextIndex = fullTextIndex;
+            this.stubOnly = stubOnly;
+        }
+
+        /**
+         * The session is only mocked when the first node of the fixture is created, as stub only or not then.
+         */
+        synchronized Session getSession() {
+            if (session == null) {
+                session = mock(Session.class, settings(new SessionLookupAnswer(this), stubOnly));
+            }
+            return session;
+        }
+
+        synchronized void record(Change change) {
+            changes.add(change);
+        }
+
+        synchronized boolean hasChanges() {
+            return changes.size() > saved;
+        }
+
+        synchronized BatchingObservationManager getObservationManager() {
+            if (observationManager == null) {
+                observationManager = new BatchingObservationManager();
+            }
+            return observationManager;
+        }
+
+        synchronized void save() throws RepositoryException {
+            if (observationManager != null) {
+                dispatchEvents();
+            }
+            saved = changes.size();
+            dropSavedChanges();
+        }
+
+        /**
+         * Drops the saved changes no snapshot in use can be restored to a point before.
+         */
+        private void dropSavedChanges() {
+            int count = saved;
+            for (Snapshot snapshot : snapshots.keySet()) {
+                count = Math.min(count, snapshot.position - dropped);
+            }
+            List<Change> droppedChanges = changes.subList(0, count);
+            for (Change change : droppedChanges) {
+                change.save();
+            }
+            droppedChanges.clear();
+            saved -= count;
+            dropped += count;
+        }
+
+        private void dispatchEvents() throws RepositoryException {
+            String userID = session.getUserID();
+            String userData = observationManager.getUserData();
+            long date = System.currentTimeMillis();
+            int[] eventTypes = netEventTypes();
+            List<Event> events = new ArrayList<Event>(eventTypes.length);
+            for (int i = 0; i < eventTypes.length; i++) {
+                Change change = changes.get(saved + i);
+                if (eventTypes[i] != 0) {
+                    events.add(new RepositoryEvent(eventTypes[i], change.path, change.parent, userID, userData,
+                            date));
+                }
+            }
+            observationManager.dispatch(events);
+        }
+
+        /**
+         * Types of the events the pending changes are observed as, by their net effect, 0 for none. An item added
+         * and removed again isn't observed, nor is anything done under a node added and removed again. A property
+         * added then changed is only added, one changed twice is changed once, and one removed and added again is
+         * changed.
+         */
+        private int[] netEventTypes() {
+            int[] eventTypes = new int[changes.size() - saved];
+            Map<String, Integer> nodesAdded = new HashMap<String, Integer>();
+            Map<String, Integer> propertyEvents = new HashMap<String, Integer>();
+            for (int i = 0; i < eventTypes.length; i++) {
+                Change change = changes.get(saved + i);
+                eventTypes[i] = change.eventType;
+                if (change.eventType == Event.NODE_ADDED) {
+                    nodesAdded.put(change.path, i);
+                } else if (change.eventType == Event.NODE_REMOVED) {
+                    Integer added = nodesAdded.remove(change.path);
+                    for (int j = added == null ? i : added; added != null && j <= i; j++) {
+                        String path = changes.get(saved + j).path;
+                        if (path.equals(change.path) || path.startsWith(change.path + "/")) {
+                            eventTypes[j] = 0;
+                        }
+                    }
+                } else if (change.eventType != 0) {
+                    Integer previous = propertyEvents.get(change.path);
+                    if (previous != null && eventTypes[previous] != 0) {
+                        collapse(eventTypes, previous, i);
+                    }
+                    if (eventTypes[i] != 0) {
+                        propertyEvents.put(change.path, i);
+                    }
+                }
+            }
+            return eventTypes;
+        }
+
+        private static void collapse(int[] eventTypes, int previous, int next) {
+            if (eventTypes[previous] == Event.PROPERTY_ADDED) {
+                if (eventTypes[next] == Event.PROPERTY_REMOVED) {
+                    eventTypes[previous] = 0;
+                }
+                eventTypes[next] = 0;
+            } else if (eventTypes[previous] == Event.PROPERTY_REMOVED) {
+                eventTypes[previous] = 0;
+                eventTypes[next] = Event.PROPERTY_CHANGED;
+            } else {
+                eventTypes[previous] = 0;
+            }
+        }
+
+        /**
+         * Undoes the pending changes.
+         */
+        synchronized void undo() throws RepositoryException {
+            undo(saved);
+        }
+
+        synchronized Snapshot snapshot() {
+            Snapshot snapshot = new Snapshot(this, dropped + changes.size());
+            snapshots.put(snapshot, Boolean.TRUE);
+            return snapshot;
+        }
+
+        synchronized void restore(Snapshot snapshot) throws RepositoryException {
+            if (!snapshots.containsKey(snapshot)) {
+                throw new IllegalArgumentException(
+                        "The snapshot was released or dropped by restoring an earlier one");
+            }
+            undo(snapshot.position - dropped);
+        }
+
+        synchronized void release(Snapshot snapshot) {
+            if (snapshots.remove(snapshot) != null) {
+                dropSavedChanges();
+            }
+        }
+
+        synchronized int loggedChanges() {
+            return changes.size();
+        }
+
+        /**
+         * Undoes the changes after an index of the log, newest first, and drops the snapshots taken after it.
+         */
+        private void undo(int index) throws RepositoryException {
+            for (int i = changes.size() - 1; i >= index; i--) {
+                changes.get(i).undo();
+            }
+            changes.subList(index, changes.size()).clear();
+            saved = Math.min(saved, index);
+            for (Iterator<Snapshot> i = snapshots.keySet().iterator(); i.hasNext(); ) {
+                if (i.next().position > dropped + index) {
+                    i.remove();
+                }
+            }
+        }
     }
 
-    private void buildParentHierarchy(Node parent, Item childItem, String itemPath) throws RepositoryException
-    {
-        if (parent != null)
-        {
-            if(childItem.isNode())
-            {
-                when(parent.getNode(itemPath)).thenReturn((Node)childItem);
-	            when(parent.hasNode(itemPath)).thenReturn(true);
-	            when(parent.hasNodes()).thenReturn(true);
+    /**
+     * State of a fixture at the time it was taken, which the fixture can be restored to.
+     */
+    public static final class Snapshot {
+
+        private final Fixture fixture;
+        private final int position;
+
+        private Snapshot(Fixture fixture, int position) {
+            this.fixture = fixture;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Answers the absolute path lookups of a session from the index of the items of its fixture, its root node and
+     * its workspace, and saves or undoes the changes of its fixture; every other session method gets the default
+     * answer.
+     */
+    private static class SessionLookupAnswer implements Answer<Object> {
+
+        private final Fixture fixture;
+        private final Map<String, Item> itemsByPath;
+        private Workspace workspace;
+
+        SessionLookupAnswer(Fixture fixture) {
+            this.fixture = fixture;
+            this.itemsByPath = fixture.itemsByPath;
+        }
+
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+            String methodName = invocation.getMethod().getName();
+            Object[] arguments = invocation.getArguments();
+            if ("getRootNode".equals(methodName)) {
+                return itemsByPath.get("/");
             }
-            else
-            {
-                when(parent.getProperty(itemPath)).thenReturn((Property)childItem);
-	            when(parent.hasProperty(itemPath)).thenReturn(true);
-	            when(parent.hasProperties()).thenReturn(true);
+            if ("getWorkspace".equals(methodName)) {
+                return getWorkspace((Session) invocation.getMock());
+            }
+            if ("save".equals(methodName)) {
+                fixture.save();
+                return null;
+            } else if ("refresh".equals(methodName)) {
+                if (!(Boolean) arguments[0]) {
+                    fixture.undo();
+                }
+                return null;
+            } else if ("hasPendingChanges".equals(methodName)) {
+                return fixture.hasChanges();
+            }
+            if (arguments.length != 1 || !(arguments[0] instanceof String)) {
+                return RETURNS_DEFAULTS.answer(invocation);
+            }
+            String absPath = (String) arguments[0];
+            Item item = itemsByPath.get(absPath);
+
+            if ("getItem".equals(methodName)) {
+                return found(item, absPath);
+            } else if ("getNode".equals(methodName)) {
+                return found(item != null && item.isNode() ? item : null, absPath);
+            } else if ("getProperty".equals(methodName)) {
+                return found(item != null && !item.isNode() ? item : null, absPath);
+            } else if ("itemExists".equals(methodName)) {
+                return item != null;
+            } else if ("nodeExists".equals(methodName)) {
+                return item != null && item.isNode();
+            } else if ("propertyExists".equals(methodName)) {
+                return item != null && !item.isNode();
+            }
+            return RETURNS_DEFAULTS.answer(invocation);
+        }
+
+        /**
+         * The workspace is only mocked the first time it's asked for, most fixtures never run a query.
+         */
+        private synchronized Workspace getWorkspace(Session session) {
+            if (workspace == null) {
+                workspace = mock(Workspace.class, settings(new WorkspaceAnswer(session, fixture), fixture.stubOnly));
+            }
+            return workspace;
+        }
+
+        private Item found(Item item, String absPath) throws PathNotFoundException {
+            if (item == null) {
+                throw new PathNotFoundException(absPath);
+            }
+            return item;
+        }
+    }
+
+    private boolean isWritable(Node node) {
+        MockNodeState state = stateOf(node);
+        return state != null && state.writable;
+    }
+
+    private Node addNode(final Node node, String relPath, String nodeTypeName) throws RepositoryException {
+        int lastSlash = relPath.lastIndexOf('/');
+        final Node parent = lastSlash < 0 ? node : resolveNode(node, relPath.substring(0, lastSlash));
+        if (parent == null) {
+            throw new PathNotFoundException(relPath);
+        }
+        final String name = relPath.substring(lastSlash + 1);
+        if (getChildNode(parent, name) != null) {
+            throw new ItemExistsException(childPath(parent.getPath(), name));
+        }
+        // A node taking the place of a removed sibling gives it back when undone
+        final boolean replacesRemoved = getNodeState(parent).isNodeRemoved(name);
+        final Node child = nodeTypeName == null ? createNode(parent, name) : createNode(parent, name, nodeTypeName);
+        getNodeState(parent).fixture.record(new Change(Event.NODE_ADDED, child.getPath(), parent) {
+            @Override
+            void undo() throws RepositoryException {
+                detachNode(parent, name, child, replacesRemoved);
+            }
+        });
+        return child;
+    }
+
+    private Property setProperty(final Node node, final String name, Object value, int type)
+            throws RepositoryException {
+        final MockNodeState state = getNodeState(node);
+        final Property previous = state.getProperty(name);
+        final boolean keepPlace = previous != null || state.isPropertyRemoved(name);
+        if (previous != null) {
+            detachProperty(node, name, previous, true);
+        }
+        final Property property = value == null ? null : createProperty(node, name, value, type);
+        int eventType = previous == null ? (property == null ? 0 : Event.PROPERTY_ADDED)
+                : (property == null ? Event.PROPERTY_REMOVED : Event.PROPERTY_CHANGED);
+        state.fixture.record(new Change(eventType, childPath(node.getPath(), name), node) {
+            @Override
+            void undo() throws RepositoryException {
+                if (property != null) {
+                    detachProperty(node, name, property, keepPlace);
+                }
+                if (previous != null) {
+                    attachProperty(node, name, previous);
+                }
+            }
+
+            @Override
+            void save() {
+                state.forgetProperty(name);
+            }
+        });
+        return property;
+    }
+
+    /**
+     * Creates a property from one of the values {@link Node#setProperty} takes.
+     */
+    private Property createProperty(Node node, String name, Object value, int type) throws RepositoryException {
+        if (value instanceof String[] || value instanceof Value[]) {
+            Object[] items = (Object[]) value;
+            String[] strings = new String[items.length];
+            for (int i = 0; i < items.length; i++) {
+                strings[i] = items[i] instanceof Value ? ((Value) items[i]).getString() : (String) items[i];
+            }
+            return createMultiValuedProperty(node, name, strings);
+        } else if (value instanceof String) {
+            return createProperty(node, name, (String) value,
+                    type == PropertyType.UNDEFINED ? PropertyType.STRING : type);
+        } else if (value instanceof Value) {
+            Value jcrValue = (Value) value;
+            return createProperty(node, name, jcrValue.getString(),
+                    type == PropertyType.UNDEFINED ? jcrValue.getType() : type);
+        } else if (value instanceof Calendar) {
+            Calendar calendar = (Calendar) ((Calendar) value).clone();
+            String lexicalValue = OffsetDateTime.ofInstant(calendar.toInstant(), calendar.getTimeZone().toZoneId())
+                    .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+            return createProperty(node, name, lexicalValue, calendar, PropertyType.DATE);
+        } else if (value instanceof Boolean) {
+            return createProperty(node, name, value.toString(), value, PropertyType.BOOLEAN);
+        } else if (value instanceof Long) {
+            return createProperty(node, name, value.toString(), value, PropertyType.LONG);
+        } else if (value instanceof Double) {
+            return createProperty(node, name, value.toString(), value, PropertyType.DOUBLE);
+        } else if (value instanceof BigDecimal) {
+            return createProperty(node, name, value.toString(), value, PropertyType.DECIMAL);
+        }
+        throw new UnsupportedRepositoryOperationException("Can't set property " + name + " to a "
+                + value.getClass().getName());
+    }
+
+    private void removeNode(final Node node) throws RepositoryException {
+        final Node parent = node.getParent();
+        if (parent == null) {
+            throw new RepositoryException("The root node can't be removed");
+        }
+        final String name = node.getName();
+        final MockNodeState parentState = getNodeState(parent);
+        String path = node.getPath();
+        detachNode(parent, name, node, true);
+        parentState.fixture.record(new Change(Event.NODE_REMOVED, path, parent) {
+            @Override
+            void undo() throws RepositoryException {
+                attachNode(parent, name, node);
             }
 
-            String parentName = parent.getName();
+            @Override
+            void save() {
+                parentState.forgetNode(name);
+            }
+        });
+    }
 
-            if (parentName != null) {
-                buildParentHierarchy(parent.getParent(), childItem, parentName + "/" + itemPath);
+    private void removeProperty(final Property property) throws RepositoryException {
+        final Node parent = property.getParent();
+        final String name = property.getName();
+        final MockNodeState parentState = getNodeState(parent);
+        detachProperty(parent, name, property, true);
+        parentState.fixture.record(new Change(Event.PROPERTY_REMOVED, property.getPath(), parent) {
+            @Override
+            void undo() throws RepositoryException {
+                attachProperty(parent, name, property);
             }
+
+            @Override
+            void save() {
+                parentState.forgetProperty(name);
+            }
+        });
+    }
+
+    /**
+     * Takes a node out of its parent, and the paths and property values of its subtree out of the session and the
+     * indexes.
+     */
+    private void detachNode(Node parent, String name, Node node, boolean keepPlace) throws RepositoryException {
+        MockNodeState parentState = getNodeState(parent);
+        parentState.removeNode(name, keepPlace);
+        unregister(node, parentState.fixture.itemsByPath);
+    }
+
+    private void attachNode(Node parent, String name, Node node) throws RepositoryException {
+        MockNodeState parentState = getNodeState(parent);
+        parentState.addNode(name, node);
+        register(node, parentState.fixture.itemsByPath);
+    }
+
+    private void detachProperty(Node parent, String name, Property property, boolean keepPlace)
+            throws RepositoryException {
+        MockNodeState parentState = getNodeState(parent);
+        parentState.removeProperty(name, keepPlace);
+        parentState.fixture.itemsByPath.remove(property.getPath());
+        reindex(parent, property, false);
+    }
+
+    private void attachProperty(Node parent, String name, Property property) throws RepositoryException {
+        MockNodeState parentState = getNodeState(parent);
+        parentState.addProperty(name, property);
+        parentState.fixture.itemsByPath.put(property.getPath(), property);
+        reindex(parent, property, true);
+    }
+
+    private void unregister(Node node, Map<String, Item> itemsByPath) throws RepositoryException {
+        itemsByPath.remove(node.getPath());
+        MockNodeState state = stateOf(node);
+        if (state != null) {
+            for (Property property : state.getProperties()) {
+                itemsByPath.remove(property.getPath());
+                reindex(node, property, false);
+            }
+            for (Node child : state.getNodes()) {
+                unregister(child, itemsByPath);
+            }
+        }
+    }
+
+    private void register(Node node, Map<String, Item> itemsByPath) throws RepositoryException {
+        itemsByPath.put(node.getPath(), node);
+        MockNodeState state = stateOf(node);
+        if (state != null) {
+            for (Property property : state.getProperties()) {
+                itemsByPath.put(property.getPath(), property);
+                reindex(node, property, true);
+            }
+            for (Node child : state.getNodes()) {
+                register(child, itemsByPath);
+            }
+        }
+    }
+
+    private MockNodeState stateOf(Node node) {
+        Reference<MockNodeState> state = nodeStates.get(node);
+        return state == null ? null : state.get();
+    }
+
+    private void putNodeState(Node node, MockNodeState state) {
+        state.fixture.nodeStates.put(node, state);
+        nodeStates.put(node, new WeakReference<MockNodeState>(state));
+    }
+
+    private Node getChildNode(Node parent, String name) throws RepositoryException {
+        MockNodeState state = stateOf(parent);
+        return state != null ? state.getNode(name) : parent.getNode(name);
+    }
+
+    private Property getChildProperty(Node parent, String name) throws RepositoryException {
+        MockNodeState state = stateOf(parent);
+        return state != null ? state.getProperty(name) : parent.getProperty(name);
+    }
+
+    /**
+     * Returns the children and properties added to the given node. A node which wasn't created by this factory
+     * gets its relative lookups answered from them from now on.
+     */
+    private MockNodeState getNodeState(Node node) throws RepositoryException {
+        MockNodeState state = stateOf(node);
+        if (state == null) {
+            state = new MockNodeState(sharedFixture, false);
+            putNodeState(node, state);
+            doAnswer(nodeLookupAnswer).when(node).getNode(anyString());
+            doAnswer(nodeLookupAnswer).when(node).hasNode(anyString());
+            doAnswer(nodeLookupAnswer).when(node).getProperty(anyString());
+            doAnswer(nodeLookupAnswer).when(node).hasProperty(anyString());
+            doAnswer(nodeLookupAnswer).when(node).hasNodes();
+            doAnswer(nodeLookupAnswer).when(node).hasProperties();
+        }
+        return state;
+    }
+
+    /**
+     * Resolves a path relative to the given node one segment at a time. Once a node not created by this factory
+     * is reached, the rest of the path is left to that node.
+     */
+    private Node resolveNode(Node node, String relPath) throws RepositoryException {
+        if (relPath.startsWith("/")) {
+            Item item = stateOf(node).fixture.itemsByPath.get(relPath);
+            return item != null && item.isNode() ? (Node) item : null;
+        }
+        Node current = node;
+        String[] segments = StringUtils.split(relPath, '/');
+        for (int i = 0; i < segments.length && current != null; i++) {
+            MockNodeState state = stateOf(current);
+            if (state == null) {
+                return current.getNode(StringUtils.join(segments, '/', i, segments.length));
+            }
+            if ("..".equals(segments[i])) {
+                current = current.getParent();
+            } else if (!".".equals(segments[i])) {
+                current = state.getNode(segments[i]);
+            }
+        }
+        return current;
+    }
+
+    private Property resolveProperty(Node node, String relPath) throws RepositoryException {
+        if (relPath.startsWith("/")) {
+            Item item = stateOf(node).fixture.itemsByPath.get(relPath);
+            return item != null && !item.isNode() ? (Property) item : null;
+        }
+        int lastSlash = relPath.lastIndexOf('/');
+        Node parent = lastSlash < 0 ? node : resolveNode(node, relPath.substring(0, lastSlash));
+        if (parent == null) {
+            return null;
+        }
+        String name = relPath.substring(lastSlash + 1);
+        MockNodeState state = stateOf(parent);
+        return state != null ? state.getProperty(name) : parent.getProperty(name);
+    }
+
+    /**
+     * Answers the query manager of a workspace, which runs JCR-SQL2 queries over the tree of its session with the
+     * property and full-text indexes of its fixture, and the observation manager of its fixture.
+     */
+    private static class WorkspaceAnswer implements Answer<Object> {
+
+        private final Session session;
+        private final Fixture fixture;
+
+        WorkspaceAnswer(Session session, Fixture fixture) {
+            this.session = session;
+            this.fixture = fixture;
+        }
+
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+            String methodName = invocation.getMethod().getName();
+            if ("getQueryManager".equals(methodName)) {
+                return new Sql2QueryManager(session, fixture.propertyIndex, fixture.fullTextIndex);
+            } else if ("getObservationManager".equals(methodName)) {
+                return fixture.getObservationManager();
+            } else if ("getSession".equals(methodName)) {
+                return session;
+            }
+            return RETURNS_DEFAULTS.answer(invocation);
+        }
+    }
+
+    /**
+     * Default answer of the nodes created by this factory. Relative lookups are resolved when they are made,
+     * from the children and properties added to each node, so no node is stubbed with the paths of its
+     * descendants. Writable nodes also get their children and properties iterated, added, set and removed.
+     */
+    private class NodeLookupAnswer implements Answer<Object> {
+
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+            MockNodeState state = stateOf((Node) invocation.getMock());
+            if (state == null) {
+                return RETURNS_DEFAULTS.answer(invocation);
+            }
+            Node node = (Node) invocation.getMock();
+            String methodName = invocation.getMethod().getName();
+            Object[] arguments = invocation.getArguments();
+
+            if (arguments.length == 0) {
+                if ("hasNodes".equals(methodName)) {
+                    return state.hasNodes();
+                } else if ("hasProperties".equals(methodName)) {
+                    return state.hasProperties();
+                } else if (state.writable && "getNodes".equals(methodName)) {
+                    return new NodeIteratorAdapter(state.getNodes());
+                } else if (state.writable && "getProperties".equals(methodName)) {
+                    return new PropertyIteratorAdapter(state.getProperties());
+                } else if (state.writable && "remove".equals(methodName)) {
+                    removeNode(node);
+                    return null;
+                }
+            } else if (state.writable && "addNode".equals(methodName)) {
+                return addNode(node, (String) arguments[0], arguments.length > 1 ? (String) arguments[1] : null);
+            } else if (state.writable && "setProperty".equals(methodName)) {
+                int type = arguments.length > 2 ? (Integer) arguments[2] : PropertyType.UNDEFINED;
+                return setProperty(node, (String) arguments[0], arguments[1], type);
+            } else if (arguments.length == 1 && arguments[0] instanceof String) {
+                String relPath = (String) arguments[0];
+                if ("getNode".equals(methodName)) {
+                    return resolveNode(node, relPath);
+                } else if ("hasNode".equals(methodName)) {
+                    return resolveNode(node, relPath) != null;
+                } else if ("getProperty".equals(methodName)) {
+                    return resolveProperty(node, relPath);
+                } else if ("hasProperty".equals(methodName)) {
+                    return resolveProperty(node, relPath) != null;
+                }
+            }
+            return RETURNS_DEFAULTS.answer(invocation);
+        }
+    }
+
+    /**
+     * Default answer of the properties of writable nodes, which removes them from their node. Their values are
+     * changed with {@link Node#setProperty}.
+     */
+    private class PropertyWriteAnswer implements Answer<Object> {
+
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+            if ("remove".equals(invocation.getMethod().getName()) && invocation.getArguments().length == 0) {
+                removeProperty((Property) invocation.getMock());
+                return null;
+            }
+            return RETURNS_DEFAULTS.answer(invocation);
+        }
+    }
+
+    /**
+     * Children and properties added to a node, by name. Only the thread building the node changes them.
+     * <p>
+     * An item removed from a writable node leaves a null under its name until the removal is saved, so the item
+     * gets its place back if the removal is undone.
+     */
+    private static class MockNodeState {
+
+        private final Fixture fixture;
+        private final boolean writable;
+        private Map<String, Node> childNodes;
+        private Map<String, Property> properties;
+        private int nodeCount;
+        private int propertyCount;
+
+        MockNodeState(Fixture fixture, boolean writable) {
+            this.fixture = fixture;
+            this.writable = writable;
+        }
+
+        Node getNode(String name) {
+            return childNodes == null ? null : childNodes.get(name);
+        }
+
+        Property getProperty(String name) {
+            return properties == null ? null : properties.get(name);
+        }
+
+        void addNode(String name, Node node) {
+            if (childNodes == null) {
+                childNodes = new LinkedHashMap<String, Node>();
+            }
+            if (childNodes.put(name, node) == null) {
+                nodeCount++;
+            }
+        }
+
+        void addProperty(String name, Property property) {
+            if (properties == null) {
+                properties = new LinkedHashMap<String, Property>();
+            }
+            if (properties.put(name, property) == null) {
+                propertyCount++;
+            }
+        }
+
+        /**
+         * @param keepPlace true to leave a null in the place of the node, false to forget its place
+         */
+        void removeNode(String name, boolean keepPlace) {
+            Node removed = keepPlace ? childNodes.put(name, null) : childNodes.remove(name);
+            if (removed != null) {
+                nodeCount--;
+            }
+        }
+
+        /**
+         * @param keepPlace true to leave a null in the place of the property, false to forget its place
+         */
+        void removeProperty(String name, boolean keepPlace) {
+            Property removed = keepPlace ? properties.put(name, null) : properties.remove(name);
+            if (removed != null) {
+                propertyCount--;
+            }
+        }
+
+        /**
+         * @return true if a removed node left its place under that name
+         */
+        boolean isNodeRemoved(String name) {
+            return childNodes != null && childNodes.containsKey(name) && childNodes.get(name) == null;
+        }
+
+        /**
+         * @return true if a removed property left its place under that name
+         */
+        boolean isPropertyRemoved(String name) {
+            return properties != null && properties.containsKey(name) && properties.get(name) == null;
+        }
+
+        /**
+         * Forgets the place of a removed node once the removal is saved.
+         */
+        void forgetNode(String name) {
+            if (isNodeRemoved(name)) {
+                childNodes.remove(name);
+            }
+        }
+
+        /**
+         * Forgets the place of a removed property once the removal is saved.
+         */
+        void forgetProperty(String name) {
+            if (isPropertyRemoved(name)) {
+                properties.remove(name);
+            }
+        }
+
+        Node[] getNodes() {
+            Node[] nodes = new Node[nodeCount];
+            if (childNodes != null) {
+                int i = 0;
+                for (Node node : childNodes.values()) {
+                    if (node != null) {
+                        nodes[i++] = node;
+                    }
+                }
+            }
+            return nodes;
+        }
+
+        Property[] getProperties() {
+            Property[] snapshot = new Property[propertyCount];
+            if (properties != null) {
+                int i = 0;
+                for (Property property : properties.values()) {
+                    if (property != null) {
+                        snapshot[i++] = property;
+                    }
+                }
+            }
+            return snapshot;
+        }
+
+        boolean hasNodes() {
+            return nodeCount > 0;
+        }
+
+        boolean hasProperties() {
+            return propertyCount > 0;
+        }
+    }
+
+    /**
+     * Change made to a writable fixture, which can be undone until it is saved, and the event it is observed as.
+     */
+    private abstract static class Change {
+
+        private final int eventType;
+        private final String path;
+        private final Node parent;
+
+        /**
+         * @param eventType Type of the event observed when the change is saved, 0 for none
+         * @param path Path of the item changed
+         * @param parent Node holding the item changed
+         */
+        Change(int eventType, String path, Node parent) {
+            this.eventType = eventType;
+            this.path = path;
+            this.parent = parent;
+        }
+
+        abstract void undo() throws RepositoryException;
+
+        void save() {
         }
     }
 
@@ -1,11 +1,8 @@
 package com.tacitknowledge.jcr.testing.impl;
 
-import org.apache.commons.collections.IteratorUtils;
-
 import javax.jcr.Property;
 import javax.jcr.PropertyIterator;
 import java.util.Iterator;
-import java.util.List;
 
 /**
  * Created with IntelliJ IDEA.
@@ -14,60 +11,30 @@ import java.util.List;
  * Time: 10:59 AM
  * To change this template use File | Settings | File Templates.
  */
-public class PropertyIteratorAdapter implements PropertyIterator {
-	private int position;
-	private Iterator<Property> iterator;
-	private List<Property> propertyList;
+public class PropertyIteratorAdapter extends ArrayRangeIterator implements PropertyIterator {
 
 	public PropertyIteratorAdapter(Iterator<Property> iterator) {
-		this.propertyList = IteratorUtils.toList(iterator);
-		this.iterator = propertyList.iterator();
-		this.position = 0;
-	}
-
-	@Override
-	public Property nextProperty() {
-		Property next = iterator.next();
-		removeFromList(1);
-		return next;
-	}
-
-	@Override
-	public void skip(long skipNum) {
-		removeFromList((int) skipNum);
-		iterator = propertyList.iterator();
+		super(iterator);
 	}
 
-	private void removeFromList(int skipNum) {
-		int size = propertyList.size();
-		propertyList = propertyList.subList(skipNum, size);
-		position += skipNum;
+	/**
+	 * @param properties Snapshot of the properties to iterate over, shared and never changed
+	 */
+	public PropertyIteratorAdapter(Property[] properties) {
+		super(properties);
 	}
 
-	@Override
-	public long getSize() {
-		return propertyList.size();
-	}
-
-	@Override
-	public long getPosition() {
-		return position;
+	public PropertyIteratorAdapter(Property[] properties, int from, int to) {
+		super(properties, from, to);
 	}
 
 	@Override
-	public boolean hasNext() {
-		return iterator.hasNext();
+	public Property nextProperty() {
+		return (Property) super.next();
 	}
 
 	@Override
 	public Property next() {
-		Property next = iterator.next();
-		removeFromList(1);
-		return next;
-	}
-
-	@Override
-	public void remove() {
-		removeFromList(1);
+		return (Property) super.next();
 	}
 }
@@ -0,0 +1,79 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Event delivered by a {@link BatchingObservationManager}, for a change saved to a mocked fixture. Items of mocked
+ * fixtures have no identifiers, so neither have their events.
+ */
+public class RepositoryEvent implements Event {
+
+    private final int type;
+    private final String path;
+    private final Node parent;
+    private final String userID;
+    private final String userData;
+    private final long date;
+
+    /**
+     * @param type One of the event types of {@link Event}
+     * @param path Absolute path of the item changed
+     * @param parent Node holding the item changed, which listeners are filtered on
+     */
+    RepositoryEvent(int type, String path, Node parent, String userID, String userData, long date) {
+        this.type = type;
+        this.path = path;
+        this.parent = parent;
+        this.userID = userID;
+        this.userData = userData;
+        this.date = date;
+    }
+
+    Node getParent() {
+        return parent;
+    }
+
+    @Override
+    public int getType() {
+        return type;
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public String getUserID() {
+        return userID;
+    }
+
+    @Override
+    public String getIdentifier() throws RepositoryException {
+        return null;
+    }
+
+    @Override
+    public Map getInfo() throws RepositoryException {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public String getUserData() throws RepositoryException {
+        return userData;
+    }
+
+    @Override
+    public long getDate() throws RepositoryException {
+        return date;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + path;
+    }
+}
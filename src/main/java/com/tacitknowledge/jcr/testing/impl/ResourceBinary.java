@@ -0,0 +1,223 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import javax.jcr.Binary;
+import javax.jcr.RepositoryException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary whose content is a classpath resource. Nothing is opened until the content is read, and a new stream
+ * is returned on every call to {@link #getStream()}.
+ * <p>
+ * Resources found on the file system are memory-mapped the first time they are read: streams, {@link #getSize()}
+ * and {@link #read(byte[], long)} are then all served from the shared mapping without copying the file. Other
+ * resources, e.g. inside a jar, are streamed from their URL.
+ */
+public class ResourceBinary implements Binary {
+
+    private final String resourcePath;
+    private final URL resource;
+    private ByteBuffer mappedContent;
+    private boolean mappingAttempted;
+
+    /**
+     * @param resourcePath Classpath location of the binary content
+     * @throws IllegalArgumentException If there is no resource at the given path
+     */
+    public ResourceBinary(String resourcePath) {
+        this.resourcePath = resourcePath;
+        this.resource = ResourceBinary.class.getResource(resourcePath);
+        if (resource == null) {
+            throw new IllegalArgumentException("Path to binary doesn't exist: " + resourcePath);
+        }
+    }
+
+    public String getResourcePath() {
+        return resourcePath;
+    }
+
+    @Override
+    public InputStream getStream() throws RepositoryException {
+        ByteBuffer content = getMappedContent();
+        if (content != null) {
+            return new ByteBufferInputStream(content.duplicate());
+        }
+        try {
+            return resource.openStream();
+        } catch (IOException e) {
+            throw new RepositoryException("Unable to open binary " + resourcePath, e);
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, long position) throws IOException, RepositoryException {
+        ByteBuffer content = getMappedContent();
+        if (content != null) {
+            if (position >= content.limit()) {
+                return -1;
+            }
+            ByteBuffer view = content.duplicate();
+            view.position((int) position);
+            int length = Math.min(buffer.length, view.remaining());
+            view.get(buffer, 0, length);
+            return length;
+        }
+
+        InputStream stream = getStream();
+        try {
+            long skipped = 0;
+            while (skipped < position) {
+                long step = stream.skip(position - skipped);
+                if (step <= 0) {
+                    return -1;
+                }
+                skipped += step;
+            }
+            return stream.read(buffer);
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Override
+    public long getSize() throws RepositoryException {
+        ByteBuffer content = getMappedContent();
+        if (content != null) {
+            return content.limit();
+        }
+        try {
+            URLConnection connection = resource.openConnection();
+            long size = connection.getContentLengthLong();
+            if (size < 0) {
+                size = countBytes(connection.getInputStream());
+            } else {
+                connection.getInputStream().close();
+            }
+            return size;
+        } catch (IOException e) {
+            throw new RepositoryException("Unable to read size of binary " + resourcePath, e);
+        }
+    }
+
+    /**
+     * Releases the mapping, the next read maps the file again.
+     */
+    @Override
+    public synchronized void dispose() {
+        mappedContent = null;
+        mappingAttempted = false;
+    }
+
+    /**
+     * Maps the resource the first time it's needed.
+     * @return Read only view of the whole file, or null if the resource isn't a file which can be mapped
+     */
+    private synchronized ByteBuffer getMappedContent() throws RepositoryException {
+        if (!mappingAttempted) {
+            mappingAttempted = true;
+            if ("file".equals(resource.getProtocol())) {
+                mappedContent = map();
+            }
+        }
+        return mappedContent;
+    }
+
+    private ByteBuffer map() throws RepositoryException {
+        try {
+            Path file = Paths.get(resource.toURI());
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    return null;
+                }
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size).asReadOnlyBuffer();
+            } finally {
+                channel.close();
+            }
+        } catch (URISyntaxException e) {
+            return null;
+        } catch (IOException e) {
+            throw new RepositoryException("Unable to map binary " + resourcePath, e);
+        }
+    }
+
+    private static long countBytes(InputStream stream) throws IOException {
+        try {
+            byte[] buffer = new byte[8192];
+            long size = 0;
+            int read;
+            while ((read = stream.read(buffer)) >= 0) {
+                size += read;
+            }
+            return size;
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Stream over its own view of a shared buffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long count) {
+            int skipped = (int) Math.max(0, Math.min(count, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            buffer.mark();
+        }
+
+        @Override
+        public synchronized void reset() {
+            buffer.reset();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.query.InvalidQueryException;
+import java.util.Map;
+
+/**
+ * Variable of a query, e.g. {@code $resourceType}, whose value is given with {@link javax.jcr.query.Query#bindValue}.
+ */
+final class BindVariable implements StaticOperand {
+
+    private final String name;
+
+    BindVariable(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    @Override
+    public StaticValue resolve(Map<String, Value> variables) throws RepositoryException {
+        Value value = variables.get(name);
+        if (value == null) {
+            throw new InvalidQueryException("No value bound to variable $" + name);
+        }
+        return StaticValue.of(value);
+    }
+
+    @Override
+    public String toString() {
+        return "$" + name;
+    }
+}
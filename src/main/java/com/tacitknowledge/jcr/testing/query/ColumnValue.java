@@ -0,0 +1,122 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import javax.jcr.Binary;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.ValueFormatException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.util.Calendar;
+
+/**
+ * Value of a column computed for a row instead of read from a property: the path of the node, or its score. Other
+ * types are read from the string form of the value.
+ */
+final class ColumnValue implements Value {
+
+    private final int type;
+    private final String lexicalValue;
+
+    /**
+     * @param type One of the {@link PropertyType} constants
+     * @param lexicalValue String form of the value
+     */
+    ColumnValue(int type, String lexicalValue) {
+        this.type = type;
+        this.lexicalValue = lexicalValue;
+    }
+
+    @Override
+    public String getString() {
+        return lexicalValue;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public InputStream getStream() throws RepositoryException {
+        return getBinary().getStream();
+    }
+
+    @Override
+    public Binary getBinary() throws RepositoryException {
+        final byte[] content;
+        try {
+            content = lexicalValue.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RepositoryException(e);
+        }
+        return new Binary() {
+            @Override
+            public InputStream getStream() {
+                return new ByteArrayInputStream(content);
+            }
+
+            @Override
+            public int read(byte[] buffer, long position) {
+                if (position >= content.length) {
+                    return -1;
+                }
+                int length = (int) Math.min(buffer.length, content.length - position);
+                System.arraycopy(content, (int) position, buffer, 0, length);
+                return length;
+            }
+
+            @Override
+            public long getSize() {
+                return content.length;
+            }
+
+            @Override
+            public void dispose() {
+                // Nothing to release
+            }
+        };
+    }
+
+    @Override
+    public long getLong() throws RepositoryException {
+        return getDecimal().longValue();
+    }
+
+    @Override
+    public double getDouble() throws RepositoryException {
+        return getDecimal().doubleValue();
+    }
+
+    @Override
+    public BigDecimal getDecimal() throws RepositoryException {
+        try {
+            return new BigDecimal(lexicalValue);
+        } catch (NumberFormatException e) {
+            throw conversionError(PropertyType.DECIMAL, e);
+        }
+    }
+
+    @Override
+    public Calendar getDate() throws RepositoryException {
+        throw conversionError(PropertyType.DATE, null);
+    }
+
+    @Override
+    public boolean getBoolean() throws RepositoryException {
+        throw conversionError(PropertyType.BOOLEAN, null);
+    }
+
+    @Override
+    public int getType() {
+        return type;
+    }
+
+    private ValueFormatException conversionError(int targetType, Exception cause) {
+        return new ValueFormatException("Can not convert " + PropertyType.nameFromValue(type) + " value '"
+                + lexicalValue + "' to " + PropertyType.nameFromValue(targetType), cause);
+    }
+
+    @Override
+    public String toString() {
+        return lexicalValue;
+    }
+}
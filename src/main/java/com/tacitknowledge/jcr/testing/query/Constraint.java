@@ -0,0 +1,30 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.util.Map;
+
+/**
+ * Condition of the WHERE clause of a query, tested against each candidate node.
+ */
+interface Constraint {
+
+    /**
+     * @param node Candidate node
+     * @return true if the node satisfies this constraint
+     */
+    boolean evaluate(Node node) throws RepositoryException;
+
+    /**
+     * @param variables Values bound to the variables of the query, by name
+     * @return This constraint with its variables replaced by their values, this constraint itself if it has none
+     * @throws RepositoryException If a variable has no value
+     */
+    Constraint bind(Map<String, Value> variables) throws RepositoryException;
+
+    /**
+     * @return Relative cost of evaluating this constraint, cheaper constraints are tested first
+     */
+    int getCost();
+}
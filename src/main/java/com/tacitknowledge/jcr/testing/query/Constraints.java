@@ -0,0 +1,485 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.nodetype.NodeType;
+import javax.jcr.query.InvalidQueryException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The constraints a query can be made of.
+ */
+final class Constraints {
+
+    static final String NT_BASE = "nt:base";
+    static final String NT_UNSTRUCTURED = "nt:unstructured";
+
+    private Constraints() {
+    }
+
+    /**
+     * Comparison operators, with the SQL2 symbol of each.
+     */
+    enum Operator {
+        EQUAL_TO("="),
+        NOT_EQUAL_TO("<>"),
+        LESS_THAN("<"),
+        LESS_THAN_OR_EQUAL_TO("<="),
+        GREATER_THAN(">"),
+        GREATER_THAN_OR_EQUAL_TO(">="),
+        LIKE("LIKE");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        static Operator fromSymbol(String symbol) {
+            for (Operator operator : values()) {
+                if (operator.symbol.equalsIgnoreCase(symbol)) {
+                    return operator;
+                }
+            }
+            return null;
+        }
+
+        boolean matches(int comparison) {
+            switch (this) {
+                case EQUAL_TO:
+                    return comparison == 0;
+                case NOT_EQUAL_TO:
+                    return comparison != 0;
+                case LESS_THAN:
+                    return comparison < 0;
+                case LESS_THAN_OR_EQUAL_TO:
+                    return comparison <= 0;
+                case GREATER_THAN:
+                    return comparison > 0;
+                default:
+                    return comparison >= 0;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return symbol;
+        }
+    }
+
+    /**
+     * Both constraints.
+     */
+    static final class And implements Constraint {
+
+        private final Constraint left;
+        private final Constraint right;
+
+        And(Constraint left, Constraint right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * @return The constraints joined by this one and any nested AND, in the order they were written
+         */
+        List<Constraint> getConjuncts() {
+            List<Constraint> conjuncts = new ArrayList<Constraint>();
+            addConjuncts(this, conjuncts);
+            return conjuncts;
+        }
+
+        private static void addConjuncts(Constraint constraint, List<Constraint> conjuncts) {
+            if (constraint instanceof And) {
+                addConjuncts(((And) constraint).left, conjuncts);
+                addConjuncts(((And) constraint).right, conjuncts);
+            } else {
+                conjuncts.add(constraint);
+            }
+        }
+
+        @Override
+        public boolean evaluate(Node node) throws RepositoryException {
+            return left.evaluate(node) && right.evaluate(node);
+        }
+
+        @Override
+        public Constraint bind(Map<String, Value> variables) throws RepositoryException {
+            return new And(left.bind(variables), right.bind(variables));
+        }
+
+        @Override
+        public int getCost() {
+            return left.getCost() + right.getCost();
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " AND " + right + ")";
+        }
+    }
+
+    /**
+     * Either constraint.
+     */
+    static final class Or implements Constraint {
+
+        private final Constraint left;
+        private final Constraint right;
+
+        Or(Constraint left, Constraint right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean evaluate(Node node) throws RepositoryException {
+            return left.evaluate(node) || right.evaluate(node);
+        }
+
+        @Override
+        public Constraint bind(Map<String, Value> variables) throws RepositoryException {
+            return new Or(left.bind(variables), right.bind(variables));
+        }
+
+        @Override
+        public int getCost() {
+            return left.getCost() + right.getCost();
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " OR " + right + ")";
+        }
+    }
+
+    /**
+     * The opposite of a constraint.
+     */
+    static final class Not implements Constraint {
+
+        private final Constraint constraint;
+
+        Not(Constraint constraint) {
+            this.constraint = constraint;
+        }
+
+        @Override
+        public boolean evaluate(Node node) throws RepositoryException {
+            return !constraint.evaluate(node);
+        }
+
+        @Override
+        public Constraint bind(Map<String, Value> variables) throws RepositoryException {
+            return new Not(constraint.bind(variables));
+        }
+
+        @Override
+        public int getCost() {
+            return constraint.getCost();
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + constraint;
+        }
+    }
+
+    /**
+     * Comparison of an operand with a literal or variable. It holds if any of the values of a multi-valued property
+     * does.
+     */
+    static final class Comparison implements Constraint {
+
+        private final DynamicOperand operand;
+        private final Operator operator;
+        private final StaticOperand value;
+
+        Comparison(DynamicOperand operand, Operator operator, StaticOperand value) {
+            this.operand = operand;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        DynamicOperand getOperand() {
+            return operand;
+        }
+
+        Operator getOperator() {
+            return operator;
+        }
+
+        StaticOperand getValue() {
+            return value;
+        }
+
+        /**
+         * @return true if this compares a property for equality with a literal or variable
+         */
+        boolean isPropertyEquality() {
+            return operator == Operator.EQUAL_TO && operand.getPropertyName() != null;
+        }
+
+        @Override
+        public boolean evaluate(Node node) throws RepositoryException {
+            StaticValue literal = (StaticValue) value;
+            for (Object item : operand.evaluate(node)) {
+                if (operator == Operator.LIKE) {
+                    if (literal.matchesLike(item)) {
+                        return true;
+                    }
+                } else {
+                    Integer comparison = literal.compareWith(item);
+                    if (comparison != null && operator.matches(comparison)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Constraint bind(Map<String, Value> variables) throws RepositoryException {
+            StaticValue resolved = value.resolve(variables);
+            return resolved == value ? this : new Comparison(operand, operator, resolved);
+        }
+
+        @Override
+        public int getCost() {
+            if (isPropertyEquality()) {
+                return 2;
+            }
+            return operator == Operator.LIKE ? 4 : 3;
+        }
+
+        @Override
+        public String toString() {
+            return operand + " " + operator + " " + value;
+        }
+    }
+
+    /**
+     * The node has a property.
+     */
+    static final class PropertyExistence implements Constraint {
+
+        private final String selectorName;
+        private final String propertyName;
+
+        PropertyExistence(String selectorName, String propertyName) {
+            this.selectorName = selectorName;
+            this.propertyName = propertyName;
+        }
+
+        @Override
+        public boolean evaluate(Node node) throws RepositoryException {
+            return node.hasProperty(propertyName);
+        }
+
+        @Override
+        public Constraint bind(Map<String, Value> variables) {
+            return this;
+        }
+
+        @Override
+        public int getCost() {
+            return 2;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + selectorName + "].[" + propertyName + "] IS NOT NULL";
+        }
+    }
+
+    /**
+     * CONTAINS: the words of a String property of the node, or of any of its String properties, match a full-text
+     * search expression.
+     */
+    static final class FullTextSearch implements Constraint {
+
+        private final String selectorName;
+        private final String propertyName;
+        private final StaticOperand expression;
+        private final FullTextExpression parsed;
+
+        /**
+         * @param propertyName Property searched, null to search every property
+         * @throws InvalidQueryException If the expression is a literal which isn't a valid full-text expression
+         */
+        FullTextSearch(String selectorName, String propertyName, StaticOperand expression)
+                throws InvalidQueryException {
+            this.selectorName = selectorName;
+            this.propertyName = propertyName;
+            this.expression = expression;
+            this.parsed = expression instanceof StaticValue
+                    ? FullTextExpression.parse(((StaticValue) expression).getLexicalValue()) : null;
+        }
+
+        /**
+         * @return Parsed expression, null until the variable it is bound to has a value
+         */
+        FullTextExpression getExpression() {
+            return parsed;
+        }
+
+        @Override
+        public boolean evaluate(Node node) throws RepositoryException {
+            List<List<String>> texts = new ArrayList<List<String>>();
+            if (propertyName == null) {
+                PropertyIterator properties = node.getProperties();
+                while (properties != null && properties.hasNext()) {
+                    addTerms(properties.nextProperty(), texts);
+                }
+            } else if (node.hasProperty(propertyName)) {
+                addTerms(node.getProperty(propertyName), texts);
+            }
+            return parsed.matches(texts);
+        }
+
+        private static void addTerms(Property property, List<List<String>> texts) throws RepositoryException {
+            if (property.getType() != PropertyType.STRING) {
+                return;
+            }
+            Value[] values = property.isMultiple() ? property.getValues() : new Value[]{property.getValue()};
+            if (values != null) {
+                for (Value value : values) {
+                    if (value != null) {
+                        texts.add(FullTextTokenizer.tokenize(value.getString()));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public Constraint bind(Map<String, Value> variables) throws RepositoryException {
+            StaticValue resolved = expression.resolve(variables);
+            return resolved == expression ? this : new FullTextSearch(selectorName, propertyName, resolved);
+        }
+
+        @Override
+        public int getCost() {
+            return 5;
+        }
+
+        @Override
+        public String toString() {
+            return "CONTAINS([" + selectorName + "]." + (propertyName == null ? "*" : "[" + propertyName + "]") + ", "
+                    + expression + ")";
+        }
+    }
+
+    /**
+     * ISSAMENODE, ISCHILDNODE or ISDESCENDANTNODE: the node is at, directly under or anywhere under a path.
+     */
+    static final class PathConstraint implements Constraint {
+
+        enum Axis { SAME, CHILD, DESCENDANT }
+
+        private final Axis axis;
+        private final String path;
+        private final String prefix;
+
+        PathConstraint(Axis axis, String path) {
+            this.axis = axis;
+            this.path = path;
+            this.prefix = "/".equals(path) ? path : path + "/";
+        }
+
+        Axis getAxis() {
+            return axis;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        @Override
+        public boolean evaluate(Node node) throws RepositoryException {
+            String nodePath = node.getPath();
+            switch (axis) {
+                case SAME:
+                    return path.equals(nodePath);
+                case CHILD:
+                    return nodePath.startsWith(prefix) && nodePath.length() > prefix.length()
+                            && nodePath.indexOf('/', prefix.length()) < 0;
+                default:
+                    return nodePath.startsWith(prefix) && nodePath.length() > prefix.length();
+            }
+        }
+
+        @Override
+        public Constraint bind(Map<String, Value> variables) {
+            return this;
+        }
+
+        @Override
+        public int getCost() {
+            return 1;
+        }
+
+        @Override
+        public String toString() {
+            return "IS" + axis + "NODE(" + path + ")";
+        }
+    }
+
+    /**
+     * The node is of the type the query selects. Every node is an nt:base, and nodes without a primary type are
+     * taken to be nt:unstructured, as nodes built by an {@link com.tacitknowledge.jcr.testing.impl.InMemoryNodeFactory}
+     * are.
+     */
+    static final class NodeTypeConstraint implements Constraint {
+
+        private final String nodeTypeName;
+
+        NodeTypeConstraint(String nodeTypeName) {
+            this.nodeTypeName = nodeTypeName;
+        }
+
+        @Override
+        public boolean evaluate(Node node) throws RepositoryException {
+            if (node.isNodeType(nodeTypeName)) {
+                return true;
+            }
+            NodeType primaryNodeType = node.getPrimaryNodeType();
+            return primaryNodeType == null && NT_UNSTRUCTURED.equals(nodeTypeName);
+        }
+
+        @Override
+        public Constraint bind(Map<String, Value> variables) {
+            return this;
+        }
+
+        @Override
+        public int getCost() {
+            return 2;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + nodeTypeName + "]";
+        }
+    }
+
+    /**
+     * @param constraint WHERE clause of a query, may be null
+     * @return The constraints ANDed at the top level of the clause
+     */
+    static List<Constraint> conjunctsOf(Constraint constraint) {
+        if (constraint == null) {
+            return Collections.emptyList();
+        }
+        if (constraint instanceof And) {
+            return ((And) constraint).getConjuncts();
+        }
+        return Collections.singletonList(constraint);
+    }
+}
@@ -0,0 +1,82 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Puts nodes found in an index back in document order, the order a walk of the tree finds them in, so a query gives
+ * the same results in the same order whether it uses an index or not. A node's position is the index of each of its
+ * ancestors among their siblings; the children of every parent met are read once.
+ */
+final class DocumentOrder implements Comparator<Node> {
+
+    private static final int[] ROOT = new int[0];
+
+    private final Map<Node, int[]> positions = new HashMap<Node, int[]>();
+
+    private DocumentOrder() {
+    }
+
+    /**
+     * @param nodes Nodes of a session's tree, in any order
+     * @return The nodes in document order
+     */
+    static List<Node> sort(Iterator<Node> nodes) throws RepositoryException {
+        DocumentOrder order = new DocumentOrder();
+        List<Node> sorted = new ArrayList<Node>();
+        while (nodes.hasNext()) {
+            Node node = nodes.next();
+            order.positionOf(node);
+            sorted.add(node);
+        }
+        Collections.sort(sorted, order);
+        return sorted;
+    }
+
+    private int[] positionOf(Node node) throws RepositoryException {
+        int[] position = positions.get(node);
+        if (position != null) {
+            return position;
+        }
+        Node parent = "/".equals(node.getPath()) ? null : node.getParent();
+        if (parent == null) {
+            positions.put(node, ROOT);
+            return ROOT;
+        }
+        int[] parentPosition = positionOf(parent);
+        int index = 0;
+        for (Iterator<Node> children = TreeTraversal.children(parent); children.hasNext(); index++) {
+            int[] childPosition = Arrays.copyOf(parentPosition, parentPosition.length + 1);
+            childPosition[parentPosition.length] = index;
+            positions.put(children.next(), childPosition);
+        }
+        position = positions.get(node);
+        if (position == null) {
+            position = Arrays.copyOf(parentPosition, parentPosition.length + 1);
+            position[parentPosition.length] = Integer.MAX_VALUE;
+            positions.put(node, position);
+        }
+        return position;
+    }
+
+    @Override
+    public int compare(Node first, Node second) {
+        int[] firstPosition = positions.get(first);
+        int[] secondPosition = positions.get(second);
+        int length = Math.min(firstPosition.length, secondPosition.length);
+        for (int i = 0; i < length; i++) {
+            if (firstPosition[i] != secondPosition[i]) {
+                return firstPosition[i] < secondPosition[i] ? -1 : 1;
+            }
+        }
+        return firstPosition.length - secondPosition.length;
+    }
+}
@@ -0,0 +1,125 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.util.Locale;
+
+/**
+ * Left hand side of a comparison, evaluated against each candidate node: a property, the name of the node, or one
+ * of them lower or upper cased.
+ */
+abstract class DynamicOperand {
+
+    static final Object[] NO_ITEMS = new Object[0];
+
+    /**
+     * @param node Candidate node
+     * @return Values of the property, or Strings computed from the node; empty if the node has no such property
+     */
+    abstract Object[] evaluate(Node node) throws RepositoryException;
+
+    /**
+     * @return Name of the property this operand reads as is, or null if it computes its value
+     */
+    String getPropertyName() {
+        return null;
+    }
+
+    /**
+     * Value of a property, any of the values of a multi-valued property.
+     */
+    static final class PropertyValue extends DynamicOperand {
+
+        private final String selectorName;
+        private final String propertyName;
+
+        PropertyValue(String selectorName, String propertyName) {
+            this.selectorName = selectorName;
+            this.propertyName = propertyName;
+        }
+
+        @Override
+        Object[] evaluate(Node node) throws RepositoryException {
+            if (!node.hasProperty(propertyName)) {
+                return NO_ITEMS;
+            }
+            Property property = node.getProperty(propertyName);
+            if (property.isMultiple()) {
+                Value[] values = property.getValues();
+                return values == null ? NO_ITEMS : values;
+            }
+            Value value = property.getValue();
+            return value == null ? NO_ITEMS : new Object[]{value};
+        }
+
+        @Override
+        String getPropertyName() {
+            return propertyName;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + selectorName + "].[" + propertyName + "]";
+        }
+    }
+
+    /**
+     * Name of the node, or its name without the namespace prefix.
+     */
+    static final class NodeName extends DynamicOperand {
+
+        private final String selectorName;
+        private final boolean local;
+
+        NodeName(String selectorName, boolean local) {
+            this.selectorName = selectorName;
+            this.local = local;
+        }
+
+        @Override
+        Object[] evaluate(Node node) throws RepositoryException {
+            String name = node.getName();
+            if (local) {
+                name = name.substring(name.indexOf(':') + 1);
+            }
+            return new Object[]{name};
+        }
+
+        @Override
+        public String toString() {
+            return (local ? "LOCALNAME([" : "NAME([") + selectorName + "])";
+        }
+    }
+
+    /**
+     * Another operand lower or upper cased.
+     */
+    static final class CaseConversion extends DynamicOperand {
+
+        private final DynamicOperand operand;
+        private final boolean upper;
+
+        CaseConversion(DynamicOperand operand, boolean upper) {
+            this.operand = operand;
+            this.upper = upper;
+        }
+
+        @Override
+        Object[] evaluate(Node node) throws RepositoryException {
+            Object[] items = operand.evaluate(node);
+            Object[] converted = new Object[items.length];
+            for (int i = 0; i < items.length; i++) {
+                String string = items[i] instanceof String ? (String) items[i] : ((Value) items[i]).getString();
+                converted[i] = upper ? string.toUpperCase(Locale.ENGLISH) : string.toLowerCase(Locale.ENGLISH);
+            }
+            return converted;
+        }
+
+        @Override
+        public String toString() {
+            return (upper ? "UPPER(" : "LOWER(") + operand + ")";
+        }
+    }
+}
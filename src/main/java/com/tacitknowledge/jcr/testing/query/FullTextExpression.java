@@ -0,0 +1,188 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import com.tacitknowledge.jcr.testing.FullTextIndex;
+
+import javax.jcr.Node;
+import javax.jcr.query.InvalidQueryException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Full-text search expression of CONTAINS: words and "quoted phrases" which must all be found, words prefixed with
+ * a minus which must not be, and alternatives separated by OR. Words are split into terms the way
+ * {@link FullTextTokenizer#tokenize(String)} splits indexed text, so "e-mail" is the phrase "e mail".
+ */
+final class FullTextExpression {
+
+    private static final String OR = "OR";
+
+    private final String expression;
+    private final List<Alternative> alternatives;
+
+    private FullTextExpression(String expression, List<Alternative> alternatives) {
+        this.expression = expression;
+        this.alternatives = alternatives;
+    }
+
+    /**
+     * @param expression Full-text search expression
+     * @return Parsed expression
+     * @throws InvalidQueryException If a phrase isn't closed or the expression has no term
+     */
+    static FullTextExpression parse(String expression) throws InvalidQueryException {
+        List<Alternative> alternatives = new ArrayList<Alternative>();
+        Alternative alternative = new Alternative();
+        int position = 0;
+        int length = expression.length();
+        while (position < length) {
+            char c = expression.charAt(position);
+            if (Character.isWhitespace(c)) {
+                position++;
+                continue;
+            }
+            boolean excluded = c == '-' && position + 1 < length
+                    && !Character.isWhitespace(expression.charAt(position + 1));
+            if (excluded) {
+                position++;
+            }
+            boolean quoted = expression.charAt(position) == '"';
+            StringBuilder word = new StringBuilder();
+            position = quoted ? readPhrase(expression, position + 1, word) : readWord(expression, position, word);
+            if (!quoted && !excluded && OR.equals(word.toString())) {
+                alternative = addTo(alternatives, alternative);
+                continue;
+            }
+            List<String> terms = FullTextTokenizer.tokenize(word.toString());
+            if (!terms.isEmpty()) {
+                (excluded ? alternative.excluded : alternative.required).add(terms);
+            }
+        }
+        addTo(alternatives, alternative);
+        if (alternatives.isEmpty()) {
+            throw new InvalidQueryException("Full-text search expression has no term: " + expression);
+        }
+        return new FullTextExpression(expression, alternatives);
+    }
+
+    private static Alternative addTo(List<Alternative> alternatives, Alternative alternative) {
+        if (!alternative.required.isEmpty() || !alternative.excluded.isEmpty()) {
+            alternatives.add(alternative);
+            return new Alternative();
+        }
+        return alternative;
+    }
+
+    private static int readWord(String expression, int position, StringBuilder word) {
+        while (position < expression.length() && !Character.isWhitespace(expression.charAt(position))) {
+            position = readChar(expression, position, word);
+        }
+        return position;
+    }
+
+    private static int readPhrase(String expression, int position, StringBuilder phrase)
+            throws InvalidQueryException {
+        while (position < expression.length()) {
+            if (expression.charAt(position) == '"') {
+                return position + 1;
+            }
+            position = readChar(expression, position, phrase);
+        }
+        throw new InvalidQueryException("Unclosed phrase in full-text search expression: " + expression);
+    }
+
+    private static int readChar(String expression, int position, StringBuilder text) {
+        char c = expression.charAt(position);
+        if (c == '\\' && position + 1 < expression.length()) {
+            c = expression.charAt(++position);
+        }
+        text.append(c);
+        return position + 1;
+    }
+
+    /**
+     * @param texts Terms of each text searched, e.g. of each value of the properties of a node
+     * @return true if an alternative has all its words and phrases in the texts, and none of its excluded ones
+     */
+    boolean matches(List<List<String>> texts) {
+        for (Alternative alternative : alternatives) {
+            if (alternative.matches(texts)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Candidates of a search: for each alternative, the nodes of the least frequent term it requires. They hold
+     * every match, but must still be tested as they may not hold the other terms.
+     * @param index Full-text index
+     * @return Candidate nodes, null if an alternative requires no term and every node must be tested
+     */
+    List<Node> lookup(FullTextIndex index) {
+        if (alternatives.size() == 1) {
+            return alternatives.get(0).lookup(index);
+        }
+        Set<Node> candidates = new LinkedHashSet<Node>();
+        for (Alternative alternative : alternatives) {
+            List<Node> nodes = alternative.lookup(index);
+            if (nodes == null) {
+                return null;
+            }
+            candidates.addAll(nodes);
+        }
+        return new ArrayList<Node>(candidates);
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /**
+     * Words and phrases which must all be found, and those which must not be.
+     */
+    private static final class Alternative {
+
+        private final List<List<String>> required = new ArrayList<List<String>>();
+        private final List<List<String>> excluded = new ArrayList<List<String>>();
+
+        boolean matches(List<List<String>> texts) {
+            for (List<String> phrase : required) {
+                if (!contains(texts, phrase)) {
+                    return false;
+                }
+            }
+            for (List<String> phrase : excluded) {
+                if (contains(texts, phrase)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        List<Node> lookup(FullTextIndex index) {
+            List<Node> fewest = null;
+            for (List<String> phrase : required) {
+                for (String term : phrase) {
+                    List<Node> nodes = index.getNodes(term);
+                    if (fewest == null || nodes.size() < fewest.size()) {
+                        fewest = nodes;
+                    }
+                }
+            }
+            return fewest;
+        }
+
+        private static boolean contains(List<List<String>> texts, List<String> phrase) {
+            for (List<String> terms : texts) {
+                if (Collections.indexOfSubList(terms, phrase) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits text into the terms full-text searches match: the words of CONTAINS expressions, the values they are tested
+ * against, and the text a {@link com.tacitknowledge.jcr.testing.FullTextIndex} holds, so all three agree.
+ */
+public final class FullTextTokenizer {
+
+    private FullTextTokenizer() {
+    }
+
+    /**
+     * Splits text into terms: runs of letters and digits, lower cased. Every other character separates terms.
+     * @param text Text to split
+     * @return Terms of the text, in order and with repetitions
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<String>();
+        if (text == null) {
+            return terms;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean termChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (termChar && start < 0) {
+                start = i;
+            } else if (!termChar && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ENGLISH));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+}
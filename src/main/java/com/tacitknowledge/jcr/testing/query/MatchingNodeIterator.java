@@ -0,0 +1,125 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazy iterator over the candidates of a query which satisfy all its constraints. Candidates are only read and
+ * tested as the iterator is advanced; the size is unknown until the end is reached, so {@link #getSize()} is -1,
+ * unless the iterator is over a page of nodes already matched and sorted.
+ */
+final class MatchingNodeIterator implements NodeIterator {
+
+    private final Iterator<Node> candidates;
+    private final Constraint[] filters;
+    private final long size;
+    private long toSkip;
+    private long remaining;
+    private long position;
+    private Node next;
+
+    /**
+     * @param candidates Nodes to test
+     * @param filters Constraints every returned node satisfies
+     * @param offset Number of matching nodes to skip
+     * @param limit Maximum number of nodes to return
+     */
+    MatchingNodeIterator(Iterator<Node> candidates, List<Constraint> filters, long offset, long limit) {
+        this.candidates = candidates;
+        this.filters = filters.toArray(new Constraint[filters.size()]);
+        this.toSkip = offset;
+        this.remaining = limit;
+        this.size = -1;
+    }
+
+    /**
+     * @param page Nodes already matched and sorted, which are all returned
+     */
+    MatchingNodeIterator(List<Node> page) {
+        this.candidates = page.iterator();
+        this.filters = new Constraint[0];
+        this.remaining = page.size();
+        this.size = page.size();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        if (remaining <= 0) {
+            return false;
+        }
+        while (candidates.hasNext()) {
+            Node candidate = candidates.next();
+            if (matches(candidate)) {
+                if (toSkip > 0) {
+                    toSkip--;
+                } else {
+                    next = candidate;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(Node candidate) {
+        try {
+            for (Constraint filter : filters) {
+                if (!filter.evaluate(candidate)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (RepositoryException e) {
+            throw new RuntimeException("Unable to evaluate query against " + candidate, e);
+        }
+    }
+
+    @Override
+    public Node nextNode() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Node node = next;
+        next = null;
+        remaining--;
+        position++;
+        return node;
+    }
+
+    @Override
+    public Object next() {
+        return nextNode();
+    }
+
+    @Override
+    public void skip(long skipNum) {
+        for (long i = 0; i < skipNum; i++) {
+            nextNode();
+        }
+    }
+
+    /**
+     * @return Number of nodes left in a page, -1 for matches found lazily
+     */
+    @Override
+    public long getSize() {
+        return size < 0 ? -1 : size - position;
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,106 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import com.tacitknowledge.jcr.testing.query.ParsedQuery.Column;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.query.Row;
+import java.util.List;
+
+/**
+ * Row of a query result: the selected node, with its column values read on demand. Every row has the same score.
+ */
+final class NodeRow implements Row {
+
+    static final double SCORE = 1.0;
+
+    private static final Value SCORE_VALUE = new ColumnValue(PropertyType.DOUBLE, String.valueOf(SCORE));
+
+    private final Node node;
+    private final String selectorName;
+    private final List<Column> columns;
+
+    NodeRow(Node node, String selectorName, List<Column> columns) {
+        this.node = node;
+        this.selectorName = selectorName;
+        this.columns = columns;
+    }
+
+    @Override
+    public Value[] getValues() throws RepositoryException {
+        Value[] values = new Value[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getValue(columns.get(i));
+        }
+        return values;
+    }
+
+    @Override
+    public Value getValue(String columnName) throws RepositoryException {
+        for (Column column : columns) {
+            if (column.getColumnName().equals(columnName)) {
+                return getValue(column);
+            }
+        }
+        throw new ItemNotFoundException("No column " + columnName);
+    }
+
+    private Value getValue(Column column) throws RepositoryException {
+        String propertyName = column.getPropertyName();
+        if (ParsedQuery.JCR_PATH.equals(propertyName)) {
+            String path = node.getPath();
+            return new ColumnValue(PropertyType.PATH, path);
+        }
+        if (ParsedQuery.JCR_SCORE.equals(propertyName)) {
+            return SCORE_VALUE;
+        }
+        if (!node.hasProperty(propertyName)) {
+            return null;
+        }
+        Property property = node.getProperty(propertyName);
+        return property.isMultiple() ? null : property.getValue();
+    }
+
+    @Override
+    public Node getNode() {
+        return node;
+    }
+
+    @Override
+    public Node getNode(String selectorName) throws RepositoryException {
+        checkSelector(selectorName);
+        return node;
+    }
+
+    @Override
+    public String getPath() throws RepositoryException {
+        return node.getPath();
+    }
+
+    @Override
+    public String getPath(String selectorName) throws RepositoryException {
+        checkSelector(selectorName);
+        return node.getPath();
+    }
+
+    @Override
+    public double getScore() {
+        return SCORE;
+    }
+
+    @Override
+    public double getScore(String selectorName) throws RepositoryException {
+        checkSelector(selectorName);
+        return SCORE;
+    }
+
+    private void checkSelector(String name) throws RepositoryException {
+        if (!selectorName.equals(name)) {
+            throw new RepositoryException("Unknown selector " + name);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import com.tacitknowledge.jcr.testing.query.ParsedQuery.Column;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+import java.util.List;
+
+/**
+ * Rows over the nodes of a query result, each row made as its node is reached.
+ */
+final class NodeRowIterator implements RowIterator {
+
+    private final NodeIterator nodes;
+    private final String selectorName;
+    private final List<Column> columns;
+
+    NodeRowIterator(NodeIterator nodes, String selectorName, List<Column> columns) {
+        this.nodes = nodes;
+        this.selectorName = selectorName;
+        this.columns = columns;
+    }
+
+    @Override
+    public Row nextRow() {
+        return new NodeRow(nodes.nextNode(), selectorName, columns);
+    }
+
+    @Override
+    public Object next() {
+        return nextRow();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nodes.hasNext();
+    }
+
+    @Override
+    public void skip(long skipNum) {
+        nodes.skip(skipNum);
+    }
+
+    @Override
+    public long getSize() {
+        return nodes.getSize();
+    }
+
+    @Override
+    public long getPosition() {
+        return nodes.getPosition();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,170 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import com.tacitknowledge.jcr.testing.query.ParsedQuery.Ordering;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts the matches of a query by its ORDER BY clause. Without a limit every match is sorted; with one, only the
+ * offset plus limit first matches are kept in a bounded heap as the matches are read, so a page of results costs
+ * O(n log k) and holds k nodes, however many nodes match.
+ * <p>
+ * The operands are evaluated once per match and compared in the type of the value: numbers numerically, dates
+ * chronologically, others as strings. A node without a value sorts before every node with one, the first value of a
+ * multi-valued property is used, and nodes which compare equal stay in the order they were found.
+ */
+final class NodeSorter {
+
+    /**
+     * Largest number of matches kept in a heap, beyond which every match is sorted.
+     */
+    static final int MAX_HEAP_SIZE = Integer.MAX_VALUE - 8;
+
+    private NodeSorter() {
+    }
+
+    /**
+     * @param matches Matching nodes, in the order they were found
+     * @param orderings ORDER BY clause
+     * @param offset Number of sorted nodes to skip
+     * @param limit Maximum number of sorted nodes to return
+     * @return Iterator over the page of sorted nodes
+     */
+    static NodeIterator sort(NodeIterator matches, List<Ordering> orderings, long offset, long limit)
+            throws RepositoryException {
+        Comparator<SortedNode> comparator = new SortedNodeComparator(orderings);
+        boolean bounded = limit < MAX_HEAP_SIZE && offset < MAX_HEAP_SIZE - limit;
+        List<SortedNode> sorted;
+        if (bounded) {
+            sorted = top(matches, orderings, comparator, (int) (offset + limit));
+        } else {
+            sorted = new ArrayList<SortedNode>();
+            long sequence = 0;
+            while (matches.hasNext()) {
+                sorted.add(new SortedNode(matches.nextNode(), orderings, sequence++));
+            }
+            Collections.sort(sorted, comparator);
+        }
+
+        int from = (int) Math.min(offset, sorted.size());
+        List<Node> page = new ArrayList<Node>(sorted.size() - from);
+        for (SortedNode match : sorted.subList(from, sorted.size())) {
+            page.add(match.node);
+        }
+        return new MatchingNodeIterator(page);
+    }
+
+    private static List<SortedNode> top(NodeIterator matches, List<Ordering> orderings,
+                                        Comparator<SortedNode> comparator, int size) throws RepositoryException {
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+        PriorityQueue<SortedNode> heap =
+                new PriorityQueue<SortedNode>(Math.min(size, 64), Collections.reverseOrder(comparator));
+        long sequence = 0;
+        while (matches.hasNext()) {
+            SortedNode match = new SortedNode(matches.nextNode(), orderings, sequence++);
+            if (heap.size() < size) {
+                heap.add(match);
+            } else if (comparator.compare(match, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(match);
+            }
+        }
+        SortedNode[] top = new SortedNode[heap.size()];
+        for (int i = top.length - 1; i >= 0; i--) {
+            top[i] = heap.poll();
+        }
+        return Arrays.asList(top);
+    }
+
+    /**
+     * @param item Value of a property, or a String computed from the node
+     * @return Comparable form of the item
+     */
+    private static Comparable<?> sortKey(Object item) throws RepositoryException {
+        if (item instanceof String) {
+            return (String) item;
+        }
+        Value value = (Value) item;
+        switch (value.getType()) {
+            case PropertyType.LONG:
+            case PropertyType.DOUBLE:
+            case PropertyType.DECIMAL:
+                return StaticValue.toDecimal(value);
+            case PropertyType.DATE:
+                return value.getDate().getTimeInMillis();
+            case PropertyType.BOOLEAN:
+                return value.getBoolean();
+            default:
+                return value.getString();
+        }
+    }
+
+    /**
+     * Match with the values of the ORDER BY operands, and its position among the matches.
+     */
+    private static final class SortedNode {
+
+        private final Node node;
+        private final Comparable<?>[] keys;
+        private final long sequence;
+
+        SortedNode(Node node, List<Ordering> orderings, long sequence) throws RepositoryException {
+            this.node = node;
+            this.sequence = sequence;
+            this.keys = new Comparable<?>[orderings.size()];
+            for (int i = 0; i < keys.length; i++) {
+                Object[] items = orderings.get(i).getOperand().evaluate(node);
+                keys[i] = items.length == 0 ? null : sortKey(items[0]);
+            }
+        }
+    }
+
+    private static final class SortedNodeComparator implements Comparator<SortedNode> {
+
+        private final boolean[] descending;
+
+        SortedNodeComparator(List<Ordering> orderings) {
+            descending = new boolean[orderings.size()];
+            for (int i = 0; i < descending.length; i++) {
+                descending[i] = orderings.get(i).isDescending();
+            }
+        }
+
+        @Override
+        public int compare(SortedNode first, SortedNode second) {
+            for (int i = 0; i < descending.length; i++) {
+                int comparison = compareKeys(first.keys[i], second.keys[i]);
+                if (comparison != 0) {
+                    return descending[i] ? -comparison : comparison;
+                }
+            }
+            return Long.compare(first.sequence, second.sequence);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static int compareKeys(Comparable<?> first, Comparable<?> second) {
+            if (first == null) {
+                return second == null ? 0 : -1;
+            }
+            if (second == null) {
+                return 1;
+            }
+            if (first.getClass() == second.getClass()) {
+                return ((Comparable<Object>) first).compareTo(second);
+            }
+            return first.toString().compareTo(second.toString());
+        }
+    }
+}
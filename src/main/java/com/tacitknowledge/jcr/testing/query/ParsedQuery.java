@@ -0,0 +1,113 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable result of parsing a JCR-SQL2 statement.
+ */
+final class ParsedQuery {
+
+    static final String JCR_PATH = "jcr:path";
+    static final String JCR_SCORE = "jcr:score";
+
+    private final String nodeTypeName;
+    private final String selectorName;
+    private final List<Column> columns;
+    private final Constraint constraint;
+    private final List<Ordering> orderings;
+    private final Set<String> bindVariableNames;
+
+    ParsedQuery(String nodeTypeName, String selectorName, List<Column> columns, Constraint constraint,
+                List<Ordering> orderings, Set<String> bindVariableNames) {
+        this.nodeTypeName = nodeTypeName;
+        this.selectorName = selectorName;
+        this.columns = Collections.unmodifiableList(columns);
+        this.constraint = constraint;
+        this.orderings = Collections.unmodifiableList(orderings);
+        this.bindVariableNames = Collections.unmodifiableSet(bindVariableNames);
+    }
+
+    String getNodeTypeName() {
+        return nodeTypeName;
+    }
+
+    String getSelectorName() {
+        return selectorName;
+    }
+
+    /**
+     * @return Columns of the rows, the path and score pseudo columns for {@code SELECT *}
+     */
+    List<Column> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return WHERE clause, null if there is none
+     */
+    Constraint getConstraint() {
+        return constraint;
+    }
+
+    /**
+     * @return ORDER BY clause, empty if results are in the order they are found
+     */
+    List<Ordering> getOrderings() {
+        return orderings;
+    }
+
+    Set<String> getBindVariableNames() {
+        return bindVariableNames;
+    }
+
+    /**
+     * Column of the rows of a query, the value of a property of the selected node.
+     */
+    static final class Column {
+
+        private final String propertyName;
+        private final String columnName;
+
+        Column(String propertyName, String columnName) {
+            this.propertyName = propertyName;
+            this.columnName = columnName;
+        }
+
+        String getPropertyName() {
+            return propertyName;
+        }
+
+        String getColumnName() {
+            return columnName;
+        }
+    }
+
+    /**
+     * Operand of the ORDER BY clause, and its direction.
+     */
+    static final class Ordering {
+
+        private final DynamicOperand operand;
+        private final boolean descending;
+
+        Ordering(DynamicOperand operand, boolean descending) {
+            this.operand = operand;
+            this.descending = descending;
+        }
+
+        DynamicOperand getOperand() {
+            return operand;
+        }
+
+        boolean isDescending() {
+            return descending;
+        }
+
+        @Override
+        public String toString() {
+            return descending ? operand + " DESC" : operand.toString();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import com.tacitknowledge.jcr.testing.FullTextIndex;
+import com.tacitknowledge.jcr.testing.PropertyIndex;
+import com.tacitknowledge.jcr.testing.query.Constraints.Comparison;
+import com.tacitknowledge.jcr.testing.query.Constraints.FullTextSearch;
+import com.tacitknowledge.jcr.testing.query.Constraints.PathConstraint;
+import com.tacitknowledge.jcr.testing.query.ParsedQuery.Ordering;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * How a query is executed: which nodes are candidates, and which constraints they are tested against.
+ * <p>
+ * The most selective path constraint ANDed at the top of the WHERE clause scopes the candidates, so
+ * {@code ISDESCENDANTNODE(n, '/content')} only walks the subtree under /content, {@code ISCHILDNODE} only reads the
+ * children of a node and {@code ISSAMENODE} looks up a single node. Without one the whole tree is walked. The other
+ * constraints are tested cheapest first: path constraints, then property equality and existence, then the node type
+ * and the remaining comparisons, so most candidates are rejected before any expensive test.
+ * <p>
+ * With a {@link PropertyIndex}, a string equality on an indexed property ANDed at the top of the WHERE clause takes
+ * precedence over ISCHILDNODE and ISDESCENDANTNODE: only the nodes the index holds for that value are tested, the
+ * fewest if several properties are indexed. Likewise with a {@link FullTextIndex}, a CONTAINS ANDed at the top of the
+ * WHERE clause only tests the nodes holding its least frequent term. Nodes found in an index are put back in
+ * document order by {@link DocumentOrder}, so the results come in the same order as without the index.
+ * <p>
+ * Results are lazy unless the query has an ORDER BY: then every match is read and handed to {@link NodeSorter},
+ * which only keeps the offset plus limit first ones when a limit is set.
+ * <p>
+ * Plans are immutable and may be shared between queries; {@link #bind(Map)} gives a plan with the variables of the
+ * query replaced by their values.
+ */
+final class QueryPlan {
+
+    private static final Comparator<Constraint> BY_COST = new Comparator<Constraint>() {
+        @Override
+        public int compare(Constraint first, Constraint second) {
+            return first.getCost() - second.getCost();
+        }
+    };
+
+    private final ParsedQuery query;
+    private final PathConstraint scope;
+    private final List<Constraint> filters;
+
+    private QueryPlan(ParsedQuery query, PathConstraint scope, List<Constraint> filters) {
+        this.query = query;
+        this.scope = scope;
+        this.filters = Collections.unmodifiableList(filters);
+    }
+
+    /**
+     * @param query Parsed query
+     * @return Plan for the query
+     */
+    static QueryPlan plan(ParsedQuery query) {
+        List<Constraint> filters = new ArrayList<Constraint>(Constraints.conjunctsOf(query.getConstraint()));
+        PathConstraint scope = null;
+        for (Constraint constraint : filters) {
+            if (constraint instanceof PathConstraint && isNarrower((PathConstraint) constraint, scope)) {
+                scope = (PathConstraint) constraint;
+            }
+        }
+        filters.remove(scope);
+        if (!Constraints.NT_BASE.equals(query.getNodeTypeName())) {
+            filters.add(new Constraints.NodeTypeConstraint(query.getNodeTypeName()));
+        }
+        Collections.sort(filters, BY_COST);
+        return new QueryPlan(query, scope, filters);
+    }
+
+    private static boolean isNarrower(PathConstraint candidate, PathConstraint scope) {
+        if (scope == null) {
+            return true;
+        }
+        if (candidate.getAxis() != scope.getAxis()) {
+            return candidate.getAxis().ordinal() < scope.getAxis().ordinal();
+        }
+        return candidate.getPath().length() > scope.getPath().length();
+    }
+
+    ParsedQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * @return Path constraint scoping the candidates, null if the whole tree is walked
+     */
+    PathConstraint getScope() {
+        return scope;
+    }
+
+    /**
+     * @return Constraints tested against each candidate, in the order they are tested
+     */
+    List<Constraint> getFilters() {
+        return filters;
+    }
+
+    /**
+     * @param variables Values bound to the variables of the query, by name
+     * @return This plan with the variables replaced by their values
+     * @throws RepositoryException If a variable has no value
+     */
+    QueryPlan bind(Map<String, Value> variables) throws RepositoryException {
+        if (query.getBindVariableNames().isEmpty()) {
+            return this;
+        }
+        List<Constraint> bound = new ArrayList<Constraint>(filters.size());
+        for (Constraint filter : filters) {
+            bound.add(filter.bind(variables));
+        }
+        return new QueryPlan(query, scope, bound);
+    }
+
+    /**
+     * @param session Session whose tree is queried
+     * @param index Index of property values, null to walk the tree
+     * @param fullTextIndex Index of the words of String properties, null to walk the tree
+     * @param offset Number of matching nodes to skip
+     * @param limit Maximum number of nodes to return
+     * @return Lazy iterator over the matching nodes, or over the page of sorted nodes if the query has an ORDER BY
+     */
+    NodeIterator execute(Session session, PropertyIndex index, FullTextIndex fullTextIndex, long offset, long limit)
+            throws RepositoryException {
+        List<Node> indexed = isSameNodeScope() ? null : lookup(index, fullTextIndex);
+        Iterator<Node> candidates;
+        List<Constraint> tests = filters;
+        if (indexed != null) {
+            candidates = DocumentOrder.sort(new SessionNodes(indexed, session)).iterator();
+            if (scope != null) {
+                tests = new ArrayList<Constraint>(filters.size() + 1);
+                tests.add(scope);
+                tests.addAll(filters);
+            }
+        } else {
+            candidates = candidates(session);
+        }
+        List<Ordering> orderings = query.getOrderings();
+        if (orderings.isEmpty()) {
+            return new MatchingNodeIterator(candidates, tests, offset, limit);
+        }
+        return NodeSorter.sort(new MatchingNodeIterator(candidates, tests, 0, Long.MAX_VALUE), orderings, offset, limit);
+    }
+
+    private boolean isSameNodeScope() {
+        return scope != null && scope.getAxis() == PathConstraint.Axis.SAME;
+    }
+
+    /**
+     * @return Fewest nodes the indexes hold for an equality or full-text search the query requires, null if none can
+     *         be looked up
+     */
+    private List<Node> lookup(PropertyIndex index, FullTextIndex fullTextIndex) {
+        List<Node> fewest = null;
+        for (Constraint filter : filters) {
+            List<Node> nodes = null;
+            if (filter instanceof Comparison && isIndexed((Comparison) filter, index)) {
+                Comparison comparison = (Comparison) filter;
+                nodes = index.getNodes(comparison.getOperand().getPropertyName(),
+                        ((StaticValue) comparison.getValue()).getLexicalValue());
+            } else if (filter instanceof FullTextSearch && fullTextIndex != null) {
+                nodes = ((FullTextSearch) filter).getExpression().lookup(fullTextIndex);
+            }
+            if (nodes != null && (fewest == null || nodes.size() < fewest.size())) {
+                fewest = nodes;
+            }
+        }
+        return fewest;
+    }
+
+    private static boolean isIndexed(Comparison comparison, PropertyIndex index) {
+        return index != null
+                && comparison.isPropertyEquality()
+                && comparison.getValue() instanceof StaticValue
+                && ((StaticValue) comparison.getValue()).getType() == PropertyType.STRING
+                && index.isIndexed(comparison.getOperand().getPropertyName());
+    }
+
+    private Iterator<Node> candidates(Session session) throws RepositoryException {
+        if (scope == null) {
+            return new TreeTraversal(session.getRootNode(), true);
+        }
+        if (!session.nodeExists(scope.getPath())) {
+            return Collections.<Node>emptyList().iterator();
+        }
+        Node scopeNode = session.getNode(scope.getPath());
+        switch (scope.getAxis()) {
+            case SAME:
+                return Collections.singletonList(scopeNode).iterator();
+            case CHILD:
+                return TreeTraversal.children(scopeNode);
+            default:
+                return new TreeTraversal(scopeNode, false);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        if (scope == null) {
+            builder.append("traverse /");
+        } else if (scope.getAxis() == PathConstraint.Axis.SAME) {
+            builder.append("node ").append(scope.getPath());
+        } else if (scope.getAxis() == PathConstraint.Axis.CHILD) {
+            builder.append("children of ").append(scope.getPath());
+        } else {
+            builder.append("descendants of ").append(scope.getPath());
+        }
+        for (Constraint filter : filters) {
+            builder.append(" | ").append(filter);
+        }
+        List<Ordering> orderings = query.getOrderings();
+        for (int i = 0; i < orderings.size(); i++) {
+            builder.append(i == 0 ? " | ORDER BY " : ", ").append(orderings.get(i));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Nodes found in an index which belong to the queried session: an index may be shared by the fixtures of
+     * several sessions, and keeps the nodes removed from a writable fixture.
+     */
+    private static final class SessionNodes implements Iterator<Node> {
+
+        private final Iterator<Node> nodes;
+        private final Session session;
+        private Node next;
+
+        SessionNodes(List<Node> nodes, Session session) {
+            this.nodes = nodes.iterator();
+            this.session = session;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && nodes.hasNext()) {
+                Node node = nodes.next();
+                try {
+                    if (node.getSession() == session && isAttached(node)) {
+                        next = node;
+                    }
+                } catch (RepositoryException e) {
+                    throw new RuntimeException("Unable to look up " + node, e);
+                }
+            }
+            return next != null;
+        }
+
+        private boolean isAttached(Node node) throws RepositoryException {
+            String path = node.getPath();
+            return session.nodeExists(path) && session.getNode(path) == node;
+        }
+
+        @Override
+        public Node next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node node = next;
+            next = null;
+            return node;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
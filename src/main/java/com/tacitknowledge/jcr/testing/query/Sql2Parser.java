@@ -0,0 +1,452 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import com.tacitknowledge.jcr.testing.query.Constraints.Comparison;
+import com.tacitknowledge.jcr.testing.query.Constraints.Operator;
+import com.tacitknowledge.jcr.testing.query.Constraints.PathConstraint;
+import com.tacitknowledge.jcr.testing.query.ParsedQuery.Column;
+import com.tacitknowledge.jcr.testing.query.ParsedQuery.Ordering;
+
+import javax.jcr.PropertyType;
+import javax.jcr.query.InvalidQueryException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Recursive descent parser for the subset of JCR-SQL2 queries over a single selector, e.g.
+ * <pre>
+ *     SELECT * FROM [nt:unstructured] AS n
+ *     WHERE ISDESCENDANTNODE(n, '/content') AND n.[sling:resourceType] = 'x'
+ * </pre>
+ * Supported are the property, NAME, LOCALNAME, LOWER and UPPER operands; the comparison, LIKE and IS [NOT] NULL
+ * constraints; ISSAMENODE, ISCHILDNODE, ISDESCENDANTNODE and CONTAINS; AND, OR, NOT and parentheses; string and number
+ * literals, CAST and bind variables; ORDER BY any of the operands, ASC or DESC. Keywords are case insensitive. Joins
+ * are not supported.
+ */
+final class Sql2Parser {
+
+    private static final int END = 0;
+    private static final int IDENTIFIER = 1;
+    private static final int QUOTED_NAME = 2;
+    private static final int STRING = 3;
+    private static final int NUMBER = 4;
+    private static final int SYMBOL = 5;
+
+    private final String statement;
+    private final Set<String> bindVariableNames = new LinkedHashSet<String>();
+    private int position;
+    private int tokenStart;
+    private int tokenType;
+    private String token;
+    private String selectorName;
+
+    private Sql2Parser(String statement) {
+        this.statement = statement;
+    }
+
+    /**
+     * @param statement JCR-SQL2 statement
+     * @return Parsed query
+     * @throws InvalidQueryException If the statement isn't valid or uses unsupported syntax
+     */
+    static ParsedQuery parse(String statement) throws InvalidQueryException {
+        if (statement == null) {
+            throw new InvalidQueryException("Query statement must not be null");
+        }
+        return new Sql2Parser(statement).parseQuery();
+    }
+
+    private ParsedQuery parseQuery() throws InvalidQueryException {
+        nextToken();
+        expectKeyword("SELECT");
+        List<Column> columns = new ArrayList<Column>();
+        List<String> columnSelectors = new ArrayList<String>();
+        boolean allColumns = readSymbol("*");
+        if (!allColumns) {
+            do {
+                allColumns |= parseColumn(columns, columnSelectors);
+            } while (readSymbol(","));
+        }
+
+        expectKeyword("FROM");
+        String nodeTypeName = readName("node type name");
+        selectorName = nodeTypeName;
+        if (readKeyword("AS")) {
+            selectorName = readName("selector name");
+        }
+        if (isKeyword("JOIN") || isKeyword("INNER") || isKeyword("LEFT") || isKeyword("RIGHT")) {
+            throw new InvalidQueryException("Joins are not supported: " + statement);
+        }
+        for (String columnSelector : columnSelectors) {
+            checkSelector(columnSelector);
+        }
+
+        Constraint constraint = null;
+        if (readKeyword("WHERE")) {
+            constraint = parseOr();
+        }
+        List<Ordering> orderings = new ArrayList<Ordering>();
+        if (readKeyword("ORDER")) {
+            expectKeyword("BY");
+            do {
+                DynamicOperand operand = parseDynamicOperand();
+                boolean descending = readKeyword("DESC");
+                if (!descending) {
+                    readKeyword("ASC");
+                }
+                orderings.add(new Ordering(operand, descending));
+            } while (readSymbol(","));
+        }
+        if (tokenType != END) {
+            throw error("end of statement");
+        }
+
+        if (allColumns) {
+            columns.add(0, new Column(ParsedQuery.JCR_PATH, ParsedQuery.JCR_PATH));
+            columns.add(1, new Column(ParsedQuery.JCR_SCORE, ParsedQuery.JCR_SCORE));
+        }
+        return new ParsedQuery(nodeTypeName, selectorName, columns, constraint, orderings, bindVariableNames);
+    }
+
+    /**
+     * @return true if the column is {@code selector.*}
+     */
+    private boolean parseColumn(List<Column> columns, List<String> columnSelectors) throws InvalidQueryException {
+        String propertyName = readName("column");
+        if (readSymbol(".")) {
+            columnSelectors.add(propertyName);
+            if (readSymbol("*")) {
+                return true;
+            }
+            propertyName = readName("property name");
+        }
+        String columnName = readKeyword("AS") ? readName("column name") : propertyName;
+        columns.add(new Column(propertyName, columnName));
+        return false;
+    }
+
+    private Constraint parseOr() throws InvalidQueryException {
+        Constraint constraint = parseAnd();
+        while (readKeyword("OR")) {
+            constraint = new Constraints.Or(constraint, parseAnd());
+        }
+        return constraint;
+    }
+
+    private Constraint parseAnd() throws InvalidQueryException {
+        Constraint constraint = parseNot();
+        while (readKeyword("AND")) {
+            constraint = new Constraints.And(constraint, parseNot());
+        }
+        return constraint;
+    }
+
+    private Constraint parseNot() throws InvalidQueryException {
+        if (readKeyword("NOT")) {
+            return new Constraints.Not(parseNot());
+        }
+        return parsePrimary();
+    }
+
+    private Constraint parsePrimary() throws InvalidQueryException {
+        if (readSymbol("(")) {
+            Constraint constraint = parseOr();
+            expectSymbol(")");
+            return constraint;
+        }
+        if (isFunction("ISSAMENODE")) {
+            return parsePathConstraint(PathConstraint.Axis.SAME);
+        }
+        if (isFunction("ISCHILDNODE")) {
+            return parsePathConstraint(PathConstraint.Axis.CHILD);
+        }
+        if (isFunction("ISDESCENDANTNODE")) {
+            return parsePathConstraint(PathConstraint.Axis.DESCENDANT);
+        }
+        if (isFunction("CONTAINS")) {
+            return parseFullTextSearch();
+        }
+
+        int operandStart = tokenStart;
+        DynamicOperand operand = parseDynamicOperand();
+        if (readKeyword("IS")) {
+            boolean not = readKeyword("NOT");
+            expectKeyword("NULL");
+            if (!(operand instanceof DynamicOperand.PropertyValue)) {
+                throw new InvalidQueryException("Expected a property at position " + operandStart + " in: " + statement);
+            }
+            Constraint existence = new Constraints.PropertyExistence(selectorName, operand.getPropertyName());
+            return not ? existence : new Constraints.Not(existence);
+        }
+        if (readKeyword("NOT")) {
+            expectKeyword("LIKE");
+            return new Constraints.Not(new Comparison(operand, Operator.LIKE, parseStaticOperand()));
+        }
+        Operator operator = isKeyword("LIKE") ? Operator.LIKE
+                : tokenType == SYMBOL ? Operator.fromSymbol(token) : null;
+        if (operator == null) {
+            throw error("comparison operator");
+        }
+        nextToken();
+        return new Comparison(operand, operator, parseStaticOperand());
+    }
+
+    private Constraint parsePathConstraint(PathConstraint.Axis axis) throws InvalidQueryException {
+        nextToken();
+        expectSymbol("(");
+        int pathType = tokenType;
+        String path = token;
+        if (pathType != IDENTIFIER && pathType != QUOTED_NAME && pathType != STRING) {
+            throw error("selector name or path");
+        }
+        nextToken();
+        if (readSymbol(",")) {
+            checkSelector(path);
+            pathType = tokenType;
+            path = token;
+            nextToken();
+        }
+        if ((pathType != QUOTED_NAME && pathType != STRING) || !path.startsWith("/")) {
+            throw error("absolute path");
+        }
+        expectSymbol(")");
+        if (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return new PathConstraint(axis, path);
+    }
+
+    private Constraint parseFullTextSearch() throws InvalidQueryException {
+        nextToken();
+        expectSymbol("(");
+        String propertyName = null;
+        if (!readSymbol("*")) {
+            propertyName = readName("selector or property name");
+            if (readSymbol(".")) {
+                checkSelector(propertyName);
+                propertyName = readSymbol("*") ? null : readName("property name");
+            }
+        }
+        expectSymbol(",");
+        StaticOperand expression = parseStaticOperand();
+        expectSymbol(")");
+        return new Constraints.FullTextSearch(selectorName, propertyName, expression);
+    }
+
+    private DynamicOperand parseDynamicOperand() throws InvalidQueryException {
+        if (isFunction("LOWER") || isFunction("UPPER")) {
+            boolean upper = isKeyword("UPPER");
+            nextToken();
+            expectSymbol("(");
+            DynamicOperand operand = parseDynamicOperand();
+            expectSymbol(")");
+            return new DynamicOperand.CaseConversion(operand, upper);
+        }
+        if (isFunction("NAME") || isFunction("LOCALNAME")) {
+            boolean local = isKeyword("LOCALNAME");
+            nextToken();
+            expectSymbol("(");
+            if (!isSymbol(")")) {
+                checkSelector(readName("selector name"));
+            }
+            expectSymbol(")");
+            return new DynamicOperand.NodeName(selectorName, local);
+        }
+        String propertyName = readName("property name");
+        if (readSymbol(".")) {
+            checkSelector(propertyName);
+            propertyName = readName("property name");
+        }
+        return new DynamicOperand.PropertyValue(selectorName, propertyName);
+    }
+
+    private StaticOperand parseStaticOperand() throws InvalidQueryException {
+        if (tokenType == STRING) {
+            StaticValue value = new StaticValue(token, PropertyType.STRING);
+            nextToken();
+            return value;
+        }
+        if (tokenType == NUMBER || isSymbol("-")) {
+            boolean negative = readSymbol("-");
+            if (tokenType != NUMBER) {
+                throw error("number");
+            }
+            String number = negative ? "-" + token : token;
+            boolean decimal = number.indexOf('.') >= 0 || number.indexOf('e') >= 0 || number.indexOf('E') >= 0;
+            nextToken();
+            return new StaticValue(number, decimal ? PropertyType.DOUBLE : PropertyType.LONG);
+        }
+        if (readSymbol("$")) {
+            String name = readName("variable name");
+            bindVariableNames.add(name);
+            return new BindVariable(name);
+        }
+        if (isFunction("CAST")) {
+            nextToken();
+            expectSymbol("(");
+            if (tokenType != STRING) {
+                throw error("string literal");
+            }
+            String lexicalValue = token;
+            nextToken();
+            expectKeyword("AS");
+            int type = typeFromName(readName("property type"));
+            expectSymbol(")");
+            return new StaticValue(lexicalValue, type);
+        }
+        throw error("literal or variable");
+    }
+
+    private int typeFromName(String typeName) throws InvalidQueryException {
+        for (int type = PropertyType.STRING; type <= PropertyType.DECIMAL; type++) {
+            if (PropertyType.nameFromValue(type).equalsIgnoreCase(typeName)) {
+                return type;
+            }
+        }
+        throw new InvalidQueryException("Unknown property type " + typeName + " in: " + statement);
+    }
+
+    private void checkSelector(String name) throws InvalidQueryException {
+        if (!name.equals(selectorName)) {
+            throw new InvalidQueryException("Unknown selector " + name + " in: " + statement);
+        }
+    }
+
+    private boolean isKeyword(String keyword) {
+        return tokenType == IDENTIFIER && token.equalsIgnoreCase(keyword);
+    }
+
+    private boolean readKeyword(String keyword) throws InvalidQueryException {
+        if (isKeyword(keyword)) {
+            nextToken();
+            return true;
+        }
+        return false;
+    }
+
+    private void expectKeyword(String keyword) throws InvalidQueryException {
+        if (!readKeyword(keyword)) {
+            throw error(keyword);
+        }
+    }
+
+    /**
+     * @return true if the current token is the keyword followed by an opening parenthesis
+     */
+    private boolean isFunction(String keyword) {
+        if (!isKeyword(keyword)) {
+            return false;
+        }
+        int next = position;
+        while (next < statement.length() && Character.isWhitespace(statement.charAt(next))) {
+            next++;
+        }
+        return next < statement.length() && statement.charAt(next) == '(';
+    }
+
+    private boolean isSymbol(String symbol) {
+        return tokenType == SYMBOL && token.equals(symbol);
+    }
+
+    private boolean readSymbol(String symbol) throws InvalidQueryException {
+        if (isSymbol(symbol)) {
+            nextToken();
+            return true;
+        }
+        return false;
+    }
+
+    private void expectSymbol(String symbol) throws InvalidQueryException {
+        if (!readSymbol(symbol)) {
+            throw error("'" + symbol + "'");
+        }
+    }
+
+    private String readName(String expected) throws InvalidQueryException {
+        if (tokenType != IDENTIFIER && tokenType != QUOTED_NAME) {
+            throw error(expected);
+        }
+        String name = token;
+        nextToken();
+        return name;
+    }
+
+    private InvalidQueryException error(String expected) {
+        return new InvalidQueryException("Expected " + expected + " at position " + tokenStart + " in: " + statement);
+    }
+
+    private void nextToken() throws InvalidQueryException {
+        int length = statement.length();
+        while (position < length && Character.isWhitespace(statement.charAt(position))) {
+            position++;
+        }
+        tokenStart = position;
+        if (position >= length) {
+            tokenType = END;
+            token = "";
+            return;
+        }
+
+        char c = statement.charAt(position);
+        if (c == '[') {
+            int end = statement.indexOf(']', position + 1);
+            if (end < 0) {
+                throw error("']'");
+            }
+            tokenType = QUOTED_NAME;
+            token = statement.substring(position + 1, end);
+            position = end + 1;
+        } else if (c == '\'' || c == '"') {
+            tokenType = STRING;
+            token = readString(c);
+        } else if (Character.isDigit(c)) {
+            tokenType = NUMBER;
+            int end = position;
+            while (end < length && (Character.isDigit(statement.charAt(end)) || statement.charAt(end) == '.'
+                    || statement.charAt(end) == 'e' || statement.charAt(end) == 'E')) {
+                end++;
+            }
+            token = statement.substring(position, end);
+            position = end;
+        } else if (Character.isLetter(c) || c == '_') {
+            tokenType = IDENTIFIER;
+            int end = position;
+            while (end < length && isIdentifierPart(statement.charAt(end))) {
+                end++;
+            }
+            token = statement.substring(position, end);
+            position = end;
+        } else {
+            tokenType = SYMBOL;
+            char next = position + 1 < length ? statement.charAt(position + 1) : 0;
+            boolean twoChars = (c == '<' && (next == '=' || next == '>')) || (c == '>' && next == '=');
+            token = statement.substring(position, position + (twoChars ? 2 : 1));
+            position += token.length();
+        }
+    }
+
+    private String readString(char quote) throws InvalidQueryException {
+        StringBuilder value = new StringBuilder();
+        int index = position + 1;
+        while (index < statement.length()) {
+            char c = statement.charAt(index++);
+            if (c == quote) {
+                if (index < statement.length() && statement.charAt(index) == quote) {
+                    value.append(quote);
+                    index++;
+                } else {
+                    position = index;
+                    return value.toString();
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        throw error("closing quote");
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == ':';
+    }
+}
@@ -0,0 +1,95 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import com.tacitknowledge.jcr.testing.FullTextIndex;
+import com.tacitknowledge.jcr.testing.PropertyIndex;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.UnsupportedRepositoryOperationException;
+import javax.jcr.Value;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryResult;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JCR-SQL2 query over the tree of a session. The limit, offset and variable values are read when the query is
+ * executed, so one query may be executed many times with different values.
+ */
+final class Sql2Query implements Query {
+
+    private final Session session;
+    private final PropertyIndex index;
+    private final FullTextIndex fullTextIndex;
+    private final String statement;
+    private final QueryPlan plan;
+    private final Map<String, Value> variables = new HashMap<String, Value>();
+    private long limit = Long.MAX_VALUE;
+    private long offset;
+
+    Sql2Query(Session session, PropertyIndex index, FullTextIndex fullTextIndex, String statement, QueryPlan plan) {
+        this.session = session;
+        this.index = index;
+        this.fullTextIndex = fullTextIndex;
+        this.statement = statement;
+        this.plan = plan;
+    }
+
+    @Override
+    public QueryResult execute() throws RepositoryException {
+        return new Sql2QueryResult(plan.bind(variables), session, index, fullTextIndex, offset, limit);
+    }
+
+    @Override
+    public void setLimit(long limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative: " + limit);
+        }
+        this.limit = limit;
+    }
+
+    @Override
+    public void setOffset(long offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset must not be negative: " + offset);
+        }
+        this.offset = offset;
+    }
+
+    @Override
+    public String getStatement() {
+        return statement;
+    }
+
+    @Override
+    public String getLanguage() {
+        return JCR_SQL2;
+    }
+
+    @Override
+    public String getStoredQueryPath() throws RepositoryException {
+        throw new ItemNotFoundException("Query has not been stored");
+    }
+
+    @Override
+    public Node storeAsNode(String absPath) throws RepositoryException {
+        throw new UnsupportedRepositoryOperationException("Queries can not be stored");
+    }
+
+    @Override
+    public void bindValue(String varName, Value value) {
+        if (!plan.getQuery().getBindVariableNames().contains(varName)) {
+            throw new IllegalArgumentException("Query has no variable $" + varName);
+        }
+        variables.put(varName, value);
+    }
+
+    @Override
+    public String[] getBindVariableNames() {
+        Set<String> names = plan.getQuery().getBindVariableNames();
+        return names.toArray(new String[names.size()]);
+    }
+}
@@ -0,0 +1,151 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import com.tacitknowledge.jcr.testing.FullTextIndex;
+import com.tacitknowledge.jcr.testing.PropertyIndex;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.UnsupportedRepositoryOperationException;
+import javax.jcr.query.InvalidQueryException;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.qom.QueryObjectModelFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Query manager running JCR-SQL2 queries over the nodes of a session, by walking its tree. It works with any
+ * session which resolves absolute paths, such as the sessions of the nodes built by
+ * {@link com.tacitknowledge.jcr.testing.impl.MockNodeFactory} and
+ * {@link com.tacitknowledge.jcr.testing.impl.InMemoryNodeFactory}:
+ * <pre>
+ *     QueryManager queryManager = node.getSession().getWorkspace().getQueryManager();
+ *     Query query = queryManager.createQuery("SELECT * FROM [nt:unstructured] AS n "
+ *             + "WHERE ISDESCENDANTNODE(n, '/content') AND n.[sling:resourceType] = 'x'", Query.JCR_SQL2);
+ *     NodeIterator nodes = query.execute().getNodes();
+ * </pre>
+ * Queries select from a single node type and may be scoped with ISDESCENDANTNODE, ISCHILDNODE or ISSAMENODE, which
+ * then limit the walk to that part of the tree; with a property index, equalities on indexed properties only test
+ * the nodes holding the value, and with a full-text index CONTAINS only tests the nodes holding one of its words.
+ * Tests tend to run the same statements over and over, so the plans of the statements run last are cached and
+ * shared by every query manager. Statements with their literals built in, as generated queries often are, are
+ * planned each time they come back once the statements run since have taken their place.
+ */
+public class Sql2QueryManager implements QueryManager {
+
+    static final int MAX_CACHED_PLANS = 256;
+
+    private static final Map<String, QueryPlan> PLANS = Collections.synchronizedMap(
+            new LinkedHashMap<String, QueryPlan>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, QueryPlan> eldest) {
+                    return size() > MAX_CACHED_PLANS;
+                }
+            });
+
+    /**
+     * Factory whose every method throws an {@link UnsupportedRepositoryOperationException}, getQOMFactory() itself
+     * can't throw a checked exception.
+     */
+    private static final QueryObjectModelFactory UNSUPPORTED_QOM_FACTORY = (QueryObjectModelFactory)
+            Proxy.newProxyInstance(Sql2QueryManager.class.getClassLoader(),
+                    new Class<?>[]{QueryObjectModelFactory.class}, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            if (method.getDeclaringClass() == Object.class) {
+                                if ("equals".equals(method.getName())) {
+                                    return proxy == args[0];
+                                } else if ("hashCode".equals(method.getName())) {
+                                    return System.identityHashCode(proxy);
+                                }
+                                return "Unsupported QueryObjectModelFactory";
+                            }
+                            throw new UnsupportedRepositoryOperationException(
+                                    "Query object models are not supported");
+                        }
+                    });
+
+    private final Session session;
+    private final PropertyIndex index;
+    private final FullTextIndex fullTextIndex;
+
+    /**
+     * @param session Session whose tree is queried
+     */
+    public Sql2QueryManager(Session session) {
+        this(session, null, null);
+    }
+
+    /**
+     * @param session Session whose tree is queried
+     * @param index Index of the property values of the tree, null to always walk the tree
+     */
+    public Sql2QueryManager(Session session, PropertyIndex index) {
+        this(session, index, null);
+    }
+
+    /**
+     * @param session Session whose tree is queried
+     * @param index Index of the property values of the tree, null to always walk the tree
+     * @param fullTextIndex Index of the words of the String properties of the tree, null to always walk the tree
+     */
+    public Sql2QueryManager(Session session, PropertyIndex index, FullTextIndex fullTextIndex) {
+        this.session = session;
+        this.index = index;
+        this.fullTextIndex = fullTextIndex;
+    }
+
+    @Override
+    public Query createQuery(String statement, String language) throws RepositoryException {
+        if (!Query.JCR_SQL2.equals(language)) {
+            throw new InvalidQueryException("Unsupported query language: " + language);
+        }
+        return new Sql2Query(session, index, fullTextIndex, statement, getPlan(statement));
+    }
+
+    static QueryPlan getPlan(String statement) throws InvalidQueryException {
+        QueryPlan plan = statement == null ? null : PLANS.get(statement);
+        if (plan == null) {
+            plan = QueryPlan.plan(Sql2Parser.parse(statement));
+            PLANS.put(statement, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Drops every cached plan.
+     */
+    static void clearCache() {
+        PLANS.clear();
+    }
+
+    static boolean isCached(String statement) {
+        return PLANS.containsKey(statement);
+    }
+
+    /**
+     * @return Factory whose methods throw an {@link UnsupportedRepositoryOperationException}, only JCR-SQL2
+     * statements are supported
+     */
+    @Override
+    public QueryObjectModelFactory getQOMFactory() {
+        return UNSUPPORTED_QOM_FACTORY;
+    }
+
+    @Override
+    public Query getQuery(Node node) throws RepositoryException {
+        throw new InvalidQueryException("Stored queries are not supported: " + node);
+    }
+
+    @Override
+    public String[] getSupportedQueryLanguages() {
+        return new String[]{Query.JCR_SQL2};
+    }
+}
@@ -0,0 +1,62 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import com.tacitknowledge.jcr.testing.FullTextIndex;
+import com.tacitknowledge.jcr.testing.PropertyIndex;
+import com.tacitknowledge.jcr.testing.query.ParsedQuery.Column;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.RowIterator;
+import java.util.List;
+
+/**
+ * Result of a query. Nothing is evaluated until its nodes or rows are iterated, and every call to
+ * {@link #getNodes()} or {@link #getRows()} evaluates the query again over the current tree.
+ */
+final class Sql2QueryResult implements QueryResult {
+
+    private final QueryPlan plan;
+    private final Session session;
+    private final PropertyIndex index;
+    private final FullTextIndex fullTextIndex;
+    private final long offset;
+    private final long limit;
+
+    Sql2QueryResult(QueryPlan plan, Session session, PropertyIndex index, FullTextIndex fullTextIndex, long offset,
+                    long limit) {
+        this.plan = plan;
+        this.session = session;
+        this.index = index;
+        this.fullTextIndex = fullTextIndex;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        List<Column> columns = plan.getQuery().getColumns();
+        String[] names = new String[columns.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = columns.get(i).getColumnName();
+        }
+        return names;
+    }
+
+    @Override
+    public RowIterator getRows() throws RepositoryException {
+        ParsedQuery query = plan.getQuery();
+        return new NodeRowIterator(getNodes(), query.getSelectorName(), query.getColumns());
+    }
+
+    @Override
+    public NodeIterator getNodes() throws RepositoryException {
+        return plan.execute(session, index, fullTextIndex, offset, limit);
+    }
+
+    @Override
+    public String[] getSelectorNames() {
+        return new String[]{plan.getQuery().getSelectorName()};
+    }
+}
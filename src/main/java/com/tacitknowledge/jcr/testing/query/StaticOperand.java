@@ -0,0 +1,18 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.util.Map;
+
+/**
+ * Right hand side of a comparison: a literal, or a variable bound when the query is executed.
+ */
+interface StaticOperand {
+
+    /**
+     * @param variables Values bound to the variables of the query, by name
+     * @return The value of this operand
+     * @throws RepositoryException If this is a variable without a value
+     */
+    StaticValue resolve(Map<String, Value> variables) throws RepositoryException;
+}
@@ -0,0 +1,192 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import org.apache.commons.lang3.StringUtils;
+
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Literal of a query, or the value bound to one of its variables. Values are compared in the type of the property
+ * they are compared with, so the numeric, date and LIKE pattern forms of the literal are each parsed once, the
+ * first time a property of that type is compared. Dates are read as ISO 8601, the form JCR gives them, with or
+ * without a time and an offset, in the default time zone if they have none; digits only are milliseconds since the
+ * epoch.
+ */
+final class StaticValue implements StaticOperand {
+
+    private static final DateTimeFormatter ISO_DATE = new DateTimeFormatterBuilder()
+            .append(DateTimeFormatter.ISO_LOCAL_DATE)
+            .optionalStart().appendLiteral('T').append(DateTimeFormatter.ISO_LOCAL_TIME)
+            .optionalStart().appendOffsetId()
+            .toFormatter();
+
+    private static final char LIKE_ANY = '%';
+    private static final char LIKE_ONE = '_';
+    private static final char LIKE_ESCAPE = '\\';
+
+    private final String lexicalValue;
+    private final int type;
+
+    private BigDecimal decimal;
+    private boolean decimalParsed;
+    private Long millis;
+    private boolean millisParsed;
+    private Pattern likePattern;
+
+    StaticValue(String lexicalValue, int type) {
+        this.lexicalValue = lexicalValue;
+        this.type = type;
+    }
+
+    static StaticValue of(Value value) throws RepositoryException {
+        return new StaticValue(value.getString(), value.getType());
+    }
+
+    @Override
+    public StaticValue resolve(Map<String, Value> variables) {
+        return this;
+    }
+
+    String getLexicalValue() {
+        return lexicalValue;
+    }
+
+    int getType() {
+        return type;
+    }
+
+    /**
+     * @param item Value of a property, or a String computed from the node
+     * @return Negative, zero or positive as the item is less than, equal to or greater than this value, or null if
+     *         this value can't be converted to the type of the item
+     */
+    Integer compareWith(Object item) throws RepositoryException {
+        if (item instanceof String) {
+            return ((String) item).compareTo(lexicalValue);
+        }
+        Value value = (Value) item;
+        switch (value.getType()) {
+            case PropertyType.LONG:
+            case PropertyType.DOUBLE:
+            case PropertyType.DECIMAL:
+                BigDecimal literal = getDecimal();
+                return literal == null ? null : toDecimal(value).compareTo(literal);
+            case PropertyType.DATE:
+                Long literalMillis = getMillis();
+                return literalMillis == null ? null : Long.compare(value.getDate().getTimeInMillis(), literalMillis);
+            case PropertyType.BOOLEAN:
+                return Boolean.compare(value.getBoolean(), Boolean.parseBoolean(lexicalValue));
+            default:
+                String string = value.getString();
+                return string == null ? null : string.compareTo(lexicalValue);
+        }
+    }
+
+    /**
+     * @param item Value of a property, or a String computed from the node
+     * @return true if the string form of the item matches this value as a LIKE pattern
+     */
+    boolean matchesLike(Object item) throws RepositoryException {
+        String string = item instanceof String ? (String) item : ((Value) item).getString();
+        return string != null && getLikePattern().matcher(string).matches();
+    }
+
+    static BigDecimal toDecimal(Value value) throws RepositoryException {
+        switch (value.getType()) {
+            case PropertyType.LONG:
+                return BigDecimal.valueOf(value.getLong());
+            case PropertyType.DOUBLE:
+                return BigDecimal.valueOf(value.getDouble());
+            default:
+                return value.getDecimal();
+        }
+    }
+
+    private synchronized BigDecimal getDecimal() {
+        if (!decimalParsed) {
+            decimalParsed = true;
+            try {
+                decimal = new BigDecimal(lexicalValue.trim());
+            } catch (NumberFormatException e) {
+                decimal = null;
+            }
+        }
+        return decimal;
+    }
+
+    private synchronized Long getMillis() {
+        if (!millisParsed) {
+            millisParsed = true;
+            try {
+                millis = toMillis(lexicalValue.trim());
+            } catch (NumberFormatException e) {
+                millis = null;
+            } catch (DateTimeException e) {
+                millis = null;
+            }
+        }
+        return millis;
+    }
+
+    private static long toMillis(String date) {
+        if (StringUtils.isNumeric(date)) {
+            return Long.parseLong(date);
+        }
+        TemporalAccessor parsed = ISO_DATE.parse(date);
+        if (parsed.isSupported(ChronoField.OFFSET_SECONDS)) {
+            return OffsetDateTime.from(parsed).toInstant().toEpochMilli();
+        }
+        if (parsed.isSupported(ChronoField.NANO_OF_DAY)) {
+            return LocalDateTime.from(parsed).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        return LocalDate.from(parsed).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private synchronized Pattern getLikePattern() {
+        if (likePattern == null) {
+            StringBuilder regex = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+            for (int i = 0; i < lexicalValue.length(); i++) {
+                char c = lexicalValue.charAt(i);
+                if (c == LIKE_ESCAPE && i + 1 < lexicalValue.length()) {
+                    literal.append(lexicalValue.charAt(++i));
+                } else if (c == LIKE_ANY || c == LIKE_ONE) {
+                    appendQuoted(regex, literal);
+                    regex.append(c == LIKE_ANY ? ".*" : ".");
+                } else {
+                    literal.append(c);
+                }
+            }
+            appendQuoted(regex, literal);
+            likePattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+        }
+        return likePattern;
+    }
+
+    private static void appendQuoted(StringBuilder regex, StringBuilder literal) {
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+            literal.setLength(0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        String quoted = "'" + lexicalValue.replace("'", "''") + "'";
+        return type == PropertyType.STRING ? quoted
+                : "CAST(" + quoted + " AS " + PropertyType.nameFromValue(type).toUpperCase() + ")";
+    }
+}
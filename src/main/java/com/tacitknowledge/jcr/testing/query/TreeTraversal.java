@@ -0,0 +1,103 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazy depth first walk of a subtree, in document order. Children are only read when the walk reaches their parent,
+ * so a query which stops early never reads the rest of the tree.
+ */
+final class TreeTraversal implements Iterator<Node> {
+
+    private final Deque<NodeIterator> pending = new ArrayDeque<NodeIterator>();
+    private Node next;
+
+    /**
+     * @param start Root of the subtree
+     * @param includeStart true to return the root of the subtree as well as its descendants
+     */
+    TreeTraversal(Node start, boolean includeStart) throws RepositoryException {
+        if (includeStart) {
+            next = start;
+        }
+        descend(start);
+    }
+
+    /**
+     * @param parent Parent node
+     * @return Lazy iterator over the children of the parent
+     */
+    static Iterator<Node> children(Node parent) throws RepositoryException {
+        if (!parent.hasNodes()) {
+            return Collections.<Node>emptyList().iterator();
+        }
+        final NodeIterator children = parent.getNodes();
+        if (children == null) {
+            return Collections.<Node>emptyList().iterator();
+        }
+        return new Iterator<Node>() {
+            @Override
+            public boolean hasNext() {
+                return children.hasNext();
+            }
+
+            @Override
+            public Node next() {
+                return children.nextNode();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private void descend(Node node) throws RepositoryException {
+        if (node.hasNodes()) {
+            NodeIterator children = node.getNodes();
+            if (children != null) {
+                pending.push(children);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && !pending.isEmpty()) {
+            NodeIterator children = pending.peek();
+            if (children.hasNext()) {
+                next = children.nextNode();
+                try {
+                    descend(next);
+                } catch (RepositoryException e) {
+                    throw new RuntimeException("Unable to read the children of " + next, e);
+                }
+            } else {
+                pending.pop();
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public Node next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Node node = next;
+        next = null;
+        return node;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,170 @@
+package com.tacitknowledge.jcr.testing.utils;
+
+import com.tacitknowledge.jcr.testing.NodeFactory;
+import com.tacitknowledge.jcr.testing.impl.InMemoryNodeFactory;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of parsed JSON fixtures shared by all the tests of a JVM. Each fixture is parsed once into an in memory
+ * template, keyed by classpath resource or by content hash, and every request gets its own fork of it:
+ * <ul>
+ *     <li>An {@link InMemoryNodeFactory} gets a copy-on-write fork, nodes are only copied as they are read.</li>
+ *     <li>Any other factory gets the template replayed into it, which skips parsing but still creates every
+ *     node.</li>
+ * </ul>
+ * Changes made to a fork are never seen by the template or by other forks.
+ */
+public class FixtureCache {
+
+    private static final FixtureCache INSTANCE = new FixtureCache();
+
+    private final ConcurrentMap<String, Node> templates = new ConcurrentHashMap<String, Node>();
+
+    /**
+     * @return Cache shared by the whole JVM
+     */
+    public static FixtureCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a fork of the fixture found at the given classpath location, parsing it the first time.
+     * @param resourcePath Classpath location of the JSON fixture, may be gzip or zip compressed
+     * @param nodeFactory Factory for the fork
+     * @return Root node of the fork
+     * @throws IOException If the resource can't be read
+     * @throws RepositoryException If a repository error happens
+     */
+    public Node fromResource(String resourcePath, NodeFactory nodeFactory) throws IOException, RepositoryException {
+        String key = "resource:" + resourcePath;
+        Node template = templates.get(key);
+        if (template == null) {
+            InputStream jsonStream = FixtureCache.class.getResourceAsStream(resourcePath);
+            if (jsonStream == null) {
+                throw new IllegalArgumentException("Fixture doesn't exist: " + resourcePath);
+            }
+            try {
+                template = cache(key, JcrMockingUtils.createNodesFromJsonFile(jsonStream, new InMemoryNodeFactory()));
+            } finally {
+                jsonStream.close();
+            }
+        }
+        return fork(template, nodeFactory);
+    }
+
+    /**
+     * Returns a fork of the given JSON fixture, parsing it the first time its content is seen.
+     * @param jsonNodeDefinition JSON node structure
+     * @param nodeFactory Factory for the fork
+     * @return Root node of the fork
+     * @throws RepositoryException If a repository error happens
+     */
+    public Node fromString(String jsonNodeDefinition, NodeFactory nodeFactory) throws RepositoryException {
+        String key = "sha-256:" + contentHash(jsonNodeDefinition);
+        Node template = templates.get(key);
+        if (template == null) {
+            template = cache(key, JcrMockingUtils.createNodesFromJsonString(jsonNodeDefinition,
+                    new InMemoryNodeFactory()));
+        }
+        return fork(template, nodeFactory);
+    }
+
+    /**
+     * Drops every cached template.
+     */
+    public void clear() {
+        templates.clear();
+    }
+
+    /**
+     * @return Number of cached templates
+     */
+    public int size() {
+        return templates.size();
+    }
+
+    /**
+     * Two threads may parse the same fixture at once, the first template cached wins.
+     */
+    private Node cache(String key, Node template) {
+        Node cached = templates.putIfAbsent(key, template);
+        return cached == null ? template : cached;
+    }
+
+    private Node fork(Node template, NodeFactory nodeFactory) throws RepositoryException {
+        if (nodeFactory instanceof InMemoryNodeFactory) {
+            return ((InMemoryNodeFactory) nodeFactory).createFork(template);
+        }
+        Node root = nodeFactory.createNode(StringUtils.EMPTY);
+        copyChildren(template, root, nodeFactory);
+        return root;
+    }
+
+    /**
+     * Replays the children and properties of the template into the node factory, making the same calls that
+     * parsing the JSON would.
+     */
+    private void copyChildren(Node template, Node node, NodeFactory nodeFactory) throws RepositoryException {
+        List<Node> childNodes = new ArrayList<Node>();
+        List<Property> properties = new ArrayList<Property>();
+
+        NodeIterator templateNodes = template.getNodes();
+        while (templateNodes.hasNext()) {
+            Node templateNode = templateNodes.nextNode();
+            Node childNode;
+            if (templateNode.hasProperty(NodeFactory.JCR_PRIMARY_TYPE)) {
+                String nodeType = templateNode.getProperty(NodeFactory.JCR_PRIMARY_TYPE).getString();
+                childNode = nodeFactory.createNode(node, templateNode.getName(), nodeType);
+            } else {
+                childNode = nodeFactory.createNode(node, templateNode.getName());
+            }
+            childNodes.add(childNode);
+            copyChildren(templateNode, childNode, nodeFactory);
+        }
+
+        PropertyIterator templateProperties = template.getProperties();
+        while (templateProperties.hasNext()) {
+            Property templateProperty = templateProperties.nextProperty();
+            if (templateProperty.isMultiple()) {
+                Value[] values = templateProperty.getValues();
+                String[] propertyValues = new String[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    propertyValues[i] = values[i].getString();
+                }
+                properties.add(nodeFactory.createMultiValuedProperty(node, templateProperty.getName(), propertyValues));
+            } else {
+                properties.add(nodeFactory.createProperty(node, templateProperty.getName(),
+                        templateProperty.getString(), templateProperty.getType()));
+            }
+        }
+
+        nodeFactory.createIteratorFor(node, childNodes);
+        nodeFactory.createPropertyIteratorFor(node, properties);
+    }
+
+    private static String contentHash(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return new BigInteger(1, digest.digest(content.getBytes(StandardCharsets.UTF_8))).toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -1,16 +1,29 @@
 package com.tacitknowledge.jcr.testing.utils;
 
 import com.tacitknowledge.jcr.mocking.JcrMockService;
+import com.tacitknowledge.jcr.mocking.impl.BinaryFixtureLoader;
+import com.tacitknowledge.jcr.mocking.impl.BinaryFixtureWriter;
 import com.tacitknowledge.jcr.mocking.impl.JsonMockService;
 import com.tacitknowledge.jcr.testing.NodeFactory;
+import com.tacitknowledge.jcr.testing.impl.InMemoryNodeFactory;
 import com.tacitknowledge.jcr.testing.impl.MockNodeFactory;
-import org.apache.commons.io.IOUtils;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
-import javax.jcr.nodetype.NodeTypeManager;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 /**
  * Utility class for JCR mocking
@@ -22,17 +35,195 @@ public class JcrMockingUtils
 
     public static Node createNodesFromJsonString(String jsonNodeDefinition) throws RepositoryException, IOException
     {
-        NodeFactory nodeFactory = new MockNodeFactory();
+        return createNodesFromJsonString(jsonNodeDefinition, new MockNodeFactory());
+    }
+
+    /**
+     * Creates a node structure from a JSON string using the given factory, for example an
+     * {@link InMemoryNodeFactory} for large fixtures.
+     * @param jsonNodeDefinition JSON node structure
+     * @param nodeFactory Factory used to create the nodes and properties
+     * @return Root node
+     * @throws RepositoryException If a repository error happens
+     */
+    public static Node createNodesFromJsonString(String jsonNodeDefinition, NodeFactory nodeFactory)
+            throws RepositoryException
+    {
         JcrMockService mockService = new JsonMockService(nodeFactory);
         return mockService.fromString(jsonNodeDefinition);
     }
 
     public static Node createNodesFromJsonFile(InputStream assetsJsonFile) throws IOException, RepositoryException
     {
-        String jsonFormattedString = IOUtils.toString(assetsJsonFile);
-        NodeFactory nodeFactory = new MockNodeFactory();
-        JcrMockService mockService = new JsonMockService(nodeFactory);
-        return mockService.fromString(jsonFormattedString);
+        return createNodesFromJsonFile(assetsJsonFile, new MockNodeFactory());
+    }
+
+    /**
+     * Creates a node structure from a JSON file using the given factory. The content is read as it is parsed,
+     * the file is never held in memory as a whole. Gzip and zip compressed content is detected and uncompressed
+     * on the fly, only the first entry of a zip file is read. The stream is not closed.
+     * @param assetsJsonFile JSON node structure, UTF-8 encoded
+     * @param nodeFactory Factory used to create the nodes and properties
+     * @return Root node
+     * @throws IOException If the file can't be read
+     * @throws RepositoryException If a repository error happens
+     */
+    public static Node createNodesFromJsonFile(InputStream assetsJsonFile, NodeFactory nodeFactory)
+            throws IOException, RepositoryException
+    {
+        Reader jsonReader = new InputStreamReader(uncompressed(assetsJsonFile), StandardCharsets.UTF_8);
+        return createNodesFromJsonReader(jsonReader, nodeFactory);
+    }
+
+    public static Node createNodesFromJsonFile(Path assetsJsonFile) throws IOException, RepositoryException
+    {
+        return createNodesFromJsonFile(assetsJsonFile, new MockNodeFactory());
+    }
+
+    /**
+     * Creates a node structure from a JSON file on the file system using the given factory. The file is read
+     * through a file channel as it is parsed and may be gzip or zip compressed.
+     * @param assetsJsonFile Path to the JSON node structure, UTF-8 encoded
+     * @param nodeFactory Factory used to create the nodes and properties
+     * @return Root node
+     * @throws IOException If the file can't be read
+     * @throws RepositoryException If a repository error happens
+     */
+    public static Node createNodesFromJsonFile(Path assetsJsonFile, NodeFactory nodeFactory)
+            throws IOException, RepositoryException
+    {
+        FileChannel channel = FileChannel.open(assetsJsonFile, StandardOpenOption.READ);
+        try
+        {
+            return createNodesFromJsonFile(Channels.newInputStream(channel), nodeFactory);
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    public static Node createNodesFromJsonReader(Reader jsonReader) throws IOException, RepositoryException
+    {
+        return createNodesFromJsonReader(jsonReader, new MockNodeFactory());
+    }
+
+    /**
+     * Creates a node structure from the JSON read from the given reader using the given factory. Nodes are
+     * created as the JSON is read. The reader is not closed.
+     * @param jsonReader JSON node structure
+     * @param nodeFactory Factory used to create the nodes and properties
+     * @return Root node
+     * @throws IOException If the JSON can't be read
+     * @throws RepositoryException If a repository error happens
+     */
+    public static Node createNodesFromJsonReader(Reader jsonReader, NodeFactory nodeFactory)
+            throws IOException, RepositoryException
+    {
+        JsonMockService mockService = new JsonMockService(nodeFactory);
+        mockService.setStreaming(true);
+        return mockService.fromReader(jsonReader);
+    }
+
+    public static Node createNodesFromCachedJsonResource(String resourcePath) throws IOException, RepositoryException
+    {
+        return createNodesFromCachedJsonResource(resourcePath, new MockNodeFactory());
+    }
+
+    /**
+     * Creates a node structure from a JSON classpath resource which is parsed only once per JVM, see
+     * {@link FixtureCache}. Each call returns a separate copy, changes to it never reach other callers.
+     * @param resourcePath Classpath location of the JSON node structure
+     * @param nodeFactory Factory used to create the nodes and properties, an {@link InMemoryNodeFactory} gets a
+     *                    copy-on-write fork which is nearly free to create
+     * @return Root node
+     * @throws IOException If the resource can't be read
+     * @throws RepositoryException If a repository error happens
+     */
+    public static Node createNodesFromCachedJsonResource(String resourcePath, NodeFactory nodeFactory)
+            throws IOException, RepositoryException
+    {
+        return FixtureCache.getInstance().fromResource(resourcePath, nodeFactory);
+    }
+
+    /**
+     * Creates a node structure from a JSON string which is parsed only once per JVM for a given content, see
+     * {@link FixtureCache}.
+     * @param jsonNodeDefinition JSON node structure
+     * @param nodeFactory Factory used to create the nodes and properties
+     * @return Root node
+     * @throws RepositoryException If a repository error happens
+     */
+    public static Node createNodesFromCachedJsonString(String jsonNodeDefinition, NodeFactory nodeFactory)
+            throws RepositoryException
+    {
+        return FixtureCache.getInstance().fromString(jsonNodeDefinition, nodeFactory);
+    }
+
+    public static Node createNodesFromSnapshot(InputStream snapshot) throws IOException, RepositoryException
+    {
+        return createNodesFromSnapshot(snapshot, new MockNodeFactory());
+    }
+
+    /**
+     * Creates a node structure from a binary snapshot written by {@link #writeSnapshot(Node, OutputStream)}.
+     * @param snapshot Binary snapshot. The stream is buffered, so it may be read past the end of the snapshot, and
+     *                 it is not closed
+     * @param nodeFactory Factory used to create the nodes and properties
+     * @return Root node
+     * @throws IOException If the snapshot can't be read
+     * @throws RepositoryException If a repository error happens
+     */
+    public static Node createNodesFromSnapshot(InputStream snapshot, NodeFactory nodeFactory)
+            throws IOException, RepositoryException
+    {
+        return new BinaryFixtureLoader(nodeFactory).load(new BufferedInputStream(snapshot));
+    }
+
+    /**
+     * Writes a node structure as a compact binary snapshot, which loads faster than the JSON it was built from.
+     * @param rootNode Root of the structure to write
+     * @param snapshot Destination of the snapshot, the stream is not closed
+     * @throws IOException If the snapshot can't be written
+     * @throws RepositoryException If the nodes can't be read
+     */
+    public static void writeSnapshot(Node rootNode, OutputStream snapshot) throws IOException, RepositoryException
+    {
+        new BinaryFixtureWriter().write(rootNode, snapshot);
+    }
+
+    /**
+     * Looks at the first bytes of the stream and wraps it to uncompress gzip or zip content.
+     */
+    private static InputStream uncompressed(InputStream inputStream) throws IOException
+    {
+        InputStream stream = inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream);
+        stream.mark(4);
+        int first = stream.read();
+        int second = stream.read();
+        int third = stream.read();
+        int fourth = stream.read();
+        stream.reset();
+
+        if (first == 0x1f && second == 0x8b)
+        {
+            return new BufferedInputStream(new GZIPInputStream(stream));
+        }
+        if (first == 'P' && second == 'K' && third == 3 && fourth == 4)
+        {
+            ZipInputStream zipStream = new ZipInputStream(stream);
+            ZipEntry entry = zipStream.getNextEntry();
+            while (entry != null && entry.isDirectory())
+            {
+                entry = zipStream.getNextEntry();
+            }
+            if (entry == null)
+            {
+                throw new IOException("Zip file has no entries");
+            }
+            return new BufferedInputStream(zipStream);
+        }
+        return stream;
     }
 
 }
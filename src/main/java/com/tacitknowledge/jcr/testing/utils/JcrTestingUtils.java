@@ -1,11 +1,13 @@
 package com.tacitknowledge.jcr.testing.utils;
 
+import com.tacitknowledge.jcr.testing.impl.AccessProfiler;
 import org.junit.Assert;
 
 import javax.jcr.Property;
 import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
 import java.util.Iterator;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -34,4 +36,37 @@ public class JcrTestingUtils {
         assertEquals("Expected 1 node", expectedCount, counter);
     }
 
+    /**
+     * Fails if more lookups were made from the item at the path than expected, listing them.
+     */
+    public static void assertMaxLookups(AccessProfiler profiler, String path, long maxLookups) {
+        long lookups = profiler.getLookupCount(path);
+        if (lookups > maxLookups) {
+            Assert.fail("Expected at most " + maxLookups + " lookups from " + path + " but got " + lookups + ": "
+                    + profiler.getCalls(path));
+        }
+    }
+
+    /**
+     * Fails if a method was called more times on the item at the path than expected.
+     */
+    public static void assertMaxInvocations(AccessProfiler profiler, String path, String methodName,
+                                            long maxInvocations) {
+        long invocations = profiler.getInvocationCount(path, methodName);
+        if (invocations > maxInvocations) {
+            Assert.fail("Expected at most " + maxInvocations + " calls of " + methodName + " on " + path
+                    + " but got " + invocations + ": " + profiler.getCalls(path));
+        }
+    }
+
+    /**
+     * Fails if the same lookup was made more than once from the same item, listing the repeated lookups.
+     */
+    public static void assertNoRepeatedLookups(AccessProfiler profiler) {
+        List<AccessProfiler.Access> repeated = profiler.getRepeatedLookups(2);
+        if (!repeated.isEmpty()) {
+            Assert.fail("Expected no repeated lookups but got " + repeated);
+        }
+    }
+
 }
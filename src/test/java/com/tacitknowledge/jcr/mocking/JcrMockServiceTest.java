@@ -114,6 +114,22 @@ public class JcrMockServiceTest {
         assertNotNull(ac2d113);
     }
 
+    @Test
+    public void shouldStreamFullJsonStructureFromFile() throws IOException, RepositoryException {
+        String jsonString = IOUtils.toString(getClass().getResourceAsStream("/mock-nodes.json"));
+        JsonMockService streamingService = new JsonMockService(new MockNodeFactory());
+        streamingService.setStreaming(true);
+
+        Node rootNode = streamingService.fromString(jsonString);
+
+        assertNotNull(rootNode.getNode("ac2d111"));
+        assertNotNull(rootNode.getNode("ac2d112"));
+        assertNotNull(rootNode.getNode("ac2d113"));
+        assertEquals(rootNode.getNode("ac2d111").getProperty("trustEntity").getString(),
+                mockService.fromString(jsonString).getNode("ac2d111").getProperty("trustEntity").getString());
+        JcrTestingUtils.assertIteratorCount(rootNode.getNodes(), 3);
+    }
+
     @Test
     public void testDeepHierarchies() throws RepositoryException {
 
@@ -0,0 +1,114 @@
+package com.tacitknowledge.jcr.mocking.domain;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.jcr.PropertyType;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ParsedPropertyDefinitionTest {
+
+    @After
+    public void tearDown() {
+        ParsedPropertyDefinition.clearCache();
+    }
+
+    @Test
+    public void shouldParseTypeAndValue() {
+        ParsedPropertyDefinition definition = ParsedPropertyDefinition.parse("type:Date, value:12/24/2012");
+
+        assertEquals(PropertyType.DATE, definition.getType());
+        assertEquals("Date", definition.getTypeName());
+        assertEquals("12/24/2012", definition.getValue());
+        assertFalse(definition.isRequired());
+        assertFalse(definition.isMultiple());
+        assertEquals(0, definition.getMixins().length);
+    }
+
+    @Test
+    public void shouldParseExtraAttributesBeforeValue() {
+        ParsedPropertyDefinition definition = ParsedPropertyDefinition.parse(
+                "type:String, required:true, multiple:TRUE, mixins: mix:title  mix:language , value:a, b");
+
+        assertEquals(PropertyType.STRING, definition.getType());
+        assertTrue(definition.isRequired());
+        assertTrue(definition.isMultiple());
+        assertArrayEquals(new String[]{"mix:title", "mix:language"}, definition.getMixins());
+        assertEquals("a, b", definition.getValue());
+    }
+
+    @Test
+    public void shouldTreatUntypedDefinitionsAsPlainValues() {
+        assertPlainValue("Air Jordan");
+        assertPlainValue("nt:file");
+        assertPlainValue("required:true");
+        assertPlainValue("Here's a test with a comma,");
+    }
+
+    @Test
+    public void shouldParseTypeWithoutValue() {
+        ParsedPropertyDefinition definition = ParsedPropertyDefinition.parse("type:Long");
+
+        assertEquals(PropertyType.LONG, definition.getType());
+        assertEquals("", definition.getValue());
+    }
+
+    @Test
+    public void shouldTrimValueWithoutOtherAttributes() {
+        ParsedPropertyDefinition definition = ParsedPropertyDefinition.parse("value: abc ");
+
+        assertEquals(PropertyType.STRING, definition.getType());
+        assertEquals("abc", definition.getValue());
+        assertEquals(" abc", ParsedPropertyDefinition.parse("type:String, value: abc").getValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownTypeWhenRead() {
+        ParsedPropertyDefinition definition = ParsedPropertyDefinition.parse("type:File, value:x");
+
+        assertEquals("File", definition.getTypeName());
+        definition.getType();
+    }
+
+    @Test
+    public void shouldShareTypedDefinitionsOnly() {
+        assertSame(ParsedPropertyDefinition.parse("type:Boolean, value:true"),
+                ParsedPropertyDefinition.parse("type:Boolean, value:true"));
+        assertNotSame(ParsedPropertyDefinition.parse("plain value"), ParsedPropertyDefinition.parse("plain value"));
+        assertEquals(1, ParsedPropertyDefinition.cacheSize());
+    }
+
+    @Test
+    public void shouldBoundTheCache() {
+        for (int i = 0; i < ParsedPropertyDefinition.MAX_CACHED_DEFINITIONS + 10; i++) {
+            ParsedPropertyDefinition.parse("type:Long, value:" + i);
+        }
+
+        assertEquals(ParsedPropertyDefinition.MAX_CACHED_DEFINITIONS, ParsedPropertyDefinition.cacheSize());
+        assertEquals("1100", ParsedPropertyDefinition.parse("type:Long, value:1100").getValue());
+    }
+
+    @Test
+    public void shouldKeepRepeatingDefinitionsAmongUniqueOnes() {
+        ParsedPropertyDefinition repeated = ParsedPropertyDefinition.parse("type:Boolean, value:true");
+        for (int i = 0; i < ParsedPropertyDefinition.MAX_CACHED_DEFINITIONS * 4; i++) {
+            ParsedPropertyDefinition.parse("type:Long, value:" + i);
+            assertSame(repeated, ParsedPropertyDefinition.parse("type:Boolean, value:true"));
+        }
+    }
+
+    private void assertPlainValue(String propertyDefinition) {
+        ParsedPropertyDefinition definition = ParsedPropertyDefinition.parse(propertyDefinition);
+
+        assertEquals(PropertyType.STRING, definition.getType());
+        assertNull(definition.getTypeName());
+        assertSame(propertyDefinition, definition.getValue());
+    }
+}
@@ -0,0 +1,153 @@
+package com.tacitknowledge.jcr.mocking.impl;
+
+import com.tacitknowledge.jcr.testing.NodeFactory;
+import com.tacitknowledge.jcr.testing.impl.InMemoryNodeFactory;
+import com.tacitknowledge.jcr.testing.impl.MockNodeFactory;
+import com.tacitknowledge.jcr.testing.utils.JcrMockingUtils;
+import com.tacitknowledge.jcr.testing.utils.JcrTestingUtils;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+
+import static org.junit.Assert.*;
+
+public class BinaryFixtureWriterTest {
+
+    private static final String JSON_NODE_DEFINITION =
+            "{" +
+            "    products: {" +
+            "        productA: {" +
+            "            'jcr:primaryType': 'nt:unstructured'," +
+            "            name: 'Air Jordan'," +
+            "            views: 'type:Long, value:-3'," +
+            "            price: 'type:Double, value:99.5'," +
+            "            onSale: 'type:Boolean, value:true'," +
+            "            discount: 'type:Decimal, value:1.01'," +
+            "            released: 'type:Date, value:12/24/2012'," +
+            "            tags: ['shoe', 'basketball']," +
+            "            binary: {" +
+            "                'jcr:primaryType': 'nt:file'," +
+            "                'jcr:content': 'type:Binary, value:/files/air_jordan.jpg'" +
+            "            }" +
+            "        }," +
+            "        productB: {" +
+            "            name: 'Air Max'" +
+            "        }," +
+            "        productC: {}" +
+            "    }" +
+            "}";
+
+    @Test
+    public void shouldRoundTripInMemoryTree() throws Exception {
+        Node original = JcrMockingUtils.createNodesFromJsonString(JSON_NODE_DEFINITION, new InMemoryNodeFactory());
+
+        Node loaded = JcrMockingUtils.createNodesFromSnapshot(new ByteArrayInputStream(snapshotOf(original)),
+                new InMemoryNodeFactory());
+
+        assertProductStructure(loaded);
+    }
+
+    @Test
+    public void shouldRoundTripMockTree() throws Exception {
+        Node original = JcrMockingUtils.createNodesFromJsonString(JSON_NODE_DEFINITION);
+
+        Node loaded = JcrMockingUtils.createNodesFromSnapshot(new ByteArrayInputStream(snapshotOf(original)));
+
+        assertProductStructure(loaded);
+    }
+
+    @Test
+    public void shouldStoreRepeatedNamesOnce() throws Exception {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < 100; i++) {
+            json.append(i > 0 ? "," : "").append("node").append(i).append(": {title: 'Repeated title'}");
+        }
+        json.append("}");
+        Node original = JcrMockingUtils.createNodesFromJsonString(json.toString(), new InMemoryNodeFactory());
+
+        byte[] snapshot = snapshotOf(original);
+
+        assertTrue("Expected snapshot smaller than the JSON, was " + snapshot.length,
+                snapshot.length < json.length() / 2);
+        Node loaded = new BinaryFixtureLoader(new InMemoryNodeFactory()).load(new ByteArrayInputStream(snapshot));
+        JcrTestingUtils.assertIteratorCount(loaded.getNodes(), 100);
+        assertEquals("Repeated title", loaded.getProperty("node99/title").getString());
+    }
+
+    @Test
+    public void shouldKeepTheLexicalFormOfTypedValues() throws Exception {
+        String json = "{price: 'type:Double, value:1e3', code: 'type:Long, value:007', views: 'type:Long, value:7'}";
+        for (NodeFactory nodeFactory : new NodeFactory[]{new InMemoryNodeFactory(), new MockNodeFactory()}) {
+            Node original = JcrMockingUtils.createNodesFromJsonString(json, nodeFactory);
+
+            Node loaded = new BinaryFixtureLoader(nodeFactory).load(new ByteArrayInputStream(snapshotOf(original)));
+
+            assertEquals("1e3", loaded.getProperty("price").getString());
+            assertEquals(1000, loaded.getProperty("price").getDouble(), 0);
+            assertEquals("007", loaded.getProperty("code").getString());
+            assertEquals(7L, loaded.getProperty("code").getLong());
+            assertEquals("7", loaded.getProperty("views").getString());
+        }
+    }
+
+    @Test
+    public void shouldReadUpToTheEndOfTheSnapshot() throws Exception {
+        Node original = JcrMockingUtils.createNodesFromJsonString(JSON_NODE_DEFINITION, new InMemoryNodeFactory());
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        content.write(snapshotOf(original));
+        content.write("trailer".getBytes(StandardCharsets.UTF_8));
+        InputStream stream = new ByteArrayInputStream(content.toByteArray());
+
+        assertProductStructure(new BinaryFixtureLoader(new InMemoryNodeFactory()).load(stream));
+
+        assertEquals(7, stream.available());
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectOtherContent() throws Exception {
+        new BinaryFixtureLoader(new MockNodeFactory()).load(new ByteArrayInputStream("{json: 'value'}".getBytes()));
+    }
+
+    private byte[] snapshotOf(Node root) throws IOException, RepositoryException {
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        new BinaryFixtureWriter().write(root, snapshot);
+        return snapshot.toByteArray();
+    }
+
+    private void assertProductStructure(Node root) throws RepositoryException {
+        Node productA = root.getNode("products/productA");
+        assertEquals("Air Jordan", productA.getProperty("name").getString());
+        JcrTestingUtils.assertProperty(productA.getProperty("views"), PropertyType.LONG, -3L);
+        assertEquals(99.5, productA.getProperty("price").getDouble(), 0);
+        assertTrue(productA.getProperty("onSale").getBoolean());
+        assertEquals("1.01", productA.getProperty("discount").getDecimal().toString());
+        assertEquals(2012, productA.getProperty("released").getDate().get(Calendar.YEAR));
+        assertEquals(PropertyType.DATE, productA.getProperty("released").getType());
+        assertTrue(productA.isNodeType("nt:unstructured"));
+
+        Value[] tags = productA.getProperty("tags").getValues();
+        assertEquals(2, tags.length);
+        assertEquals("basketball", tags[1].getString());
+
+        Node binary = productA.getNode("binary");
+        assertEquals("nt:file", binary.getPrimaryNodeType().getName());
+        assertNotNull(binary.getProperty("jcr:content").getBinary().getStream());
+
+        NodeIterator products = root.getNode("products").getNodes();
+        assertEquals("productA", products.nextNode().getName());
+        assertEquals("productB", products.nextNode().getName());
+        assertEquals("productC", products.nextNode().getName());
+        assertFalse(products.hasNext());
+        assertEquals("Air Max", root.getProperty("products/productB/name").getString());
+    }
+}
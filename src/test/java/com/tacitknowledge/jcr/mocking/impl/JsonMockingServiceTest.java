@@ -2,13 +2,22 @@ package com.tacitknowledge.jcr.mocking.impl;
 
 
 import com.tacitknowledge.jcr.testing.NodeFactory;
+import com.tacitknowledge.jcr.testing.impl.InMemoryNodeFactory;
+import com.tacitknowledge.jcr.testing.impl.MockNodeFactory;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
 import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
 import javax.jcr.PropertyType;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import javax.jcr.RepositoryException;
 import java.util.List;
 
@@ -88,4 +97,200 @@ public class JsonMockingServiceTest {
         assertFalse(actualList.isEmpty());
     }
 
+    @Test
+    public void shouldStreamTreeNodeFromJsonUsingPrimaryType() throws RepositoryException {
+        Node childNode = mock(Node.class);
+        when(nodeFactory.createNode(parentNode, "parentElement", "nt:folder")).thenReturn(childNode);
+        mockService.setStreaming(true);
+
+        Node actual = mockService.fromString(parentNode,
+                "{\"parentElement\":{\"title\":\"propertyValue\",\"jcr:primaryType\":\"nt:folder\"}}");
+
+        assertEquals(parentNode, actual);
+        verify(nodeFactory, never()).createNode(parentNode, "parentElement");
+        verify(nodeFactory).createProperty(childNode, "title", "propertyValue", PropertyType.STRING);
+        verify(nodeFactory).createProperty(childNode, "jcr:primaryType", "nt:folder", PropertyType.STRING);
+        ArgumentCaptor<List> listCaptor = ArgumentCaptor.forClass(List.class);
+        verify(nodeFactory).createIteratorFor(eq(parentNode), listCaptor.capture());
+        assertEquals(1, listCaptor.getValue().size());
+        assertSame(childNode, listCaptor.getValue().get(0));
+    }
+
+    @Test
+    public void shouldStreamPrimaryTypeReadAfterChildNodes() throws RepositoryException {
+        Node childNode = mock(Node.class);
+        Node grandChildNode = mock(Node.class);
+        when(nodeFactory.createNode(parentNode, "parentElement")).thenReturn(childNode);
+        when(nodeFactory.createNode(parentNode, "parentElement", "nt:folder")).thenReturn(childNode);
+        when(nodeFactory.createNode(childNode, "childElement")).thenReturn(grandChildNode);
+        mockService.setStreaming(true);
+
+        mockService.fromString(parentNode,
+                "{\"parentElement\":{\"childElement\":{},\"jcr:primaryType\":\"nt:folder\"}}");
+
+        verify(nodeFactory).createNode(parentNode, "parentElement");
+        verify(nodeFactory).createNode(parentNode, "parentElement", "nt:folder");
+        verify(nodeFactory).createNode(childNode, "childElement");
+        verify(nodeFactory).createProperty(childNode, "jcr:primaryType", "nt:folder", PropertyType.STRING);
+    }
+
+    @Test
+    public void shouldStreamMultiValuedAndNonStringProperties() throws RepositoryException {
+        mockService.setStreaming(true);
+
+        mockService.fromString(parentNode, "{skills: ['a', 'b'], count: 3, active: true, missing: null}");
+
+        verify(nodeFactory).createMultiValuedProperty(parentNode, "skills", new String[]{"a", "b"});
+        verify(nodeFactory).createProperty(parentNode, "count", "3", PropertyType.STRING);
+        verify(nodeFactory).createProperty(parentNode, "active", "true", PropertyType.STRING);
+        verify(nodeFactory, never()).createProperty(eq(parentNode), eq("missing"), anyString(), anyInt());
+    }
+
+    @Test
+    public void shouldListRepeatedKeysOnceWhenStreaming() throws RepositoryException {
+        for (boolean streaming : new boolean[]{false, true}) {
+            JsonMockService treeMockService = new JsonMockService(new MockNodeFactory());
+            treeMockService.setStreaming(streaming);
+
+            Node root = treeMockService.fromString("{a: {b: 'x'}, a: {c: 'y'}}");
+
+            NodeIterator children = root.getNodes();
+            assertEquals("a", children.nextNode().getName());
+            assertFalse(children.hasNext());
+        }
+    }
+
+    @Test
+    public void shouldMapNativeJsonValuesToPropertyTypes() throws RepositoryException {
+        String json = "{count: 3, ratio: 1.5, big: 92233720368547758070, active: true, name: 'Air Jordan'}";
+        mockService.setNativeTypes(true);
+
+        mockService.fromString(parentNode, json);
+        mockService.setStreaming(true);
+        mockService.fromString(parentNode, json);
+
+        verify(nodeFactory, times(2)).createProperty(parentNode, "count", "3", PropertyType.LONG);
+        verify(nodeFactory, times(2)).createProperty(parentNode, "ratio", "1.5", PropertyType.DOUBLE);
+        verify(nodeFactory, times(2)).createProperty(parentNode, "big", "92233720368547758070", PropertyType.DECIMAL);
+        verify(nodeFactory, times(2)).createProperty(parentNode, "active", "true", PropertyType.BOOLEAN);
+        verify(nodeFactory, times(2)).createProperty(parentNode, "name", "Air Jordan", PropertyType.STRING);
+    }
+
+    @Test
+    public void shouldReadTypedValueObjectsAsProperties() throws RepositoryException {
+        String json = "{product: {'$value': '9.99', '$type': 'Decimal'}, born: {'$type': 'Date', '$value': 0}}";
+        mockService.setNativeTypes(true);
+
+        mockService.fromString(parentNode, json);
+        mockService.setStreaming(true);
+        mockService.fromString(parentNode, json);
+
+        verify(nodeFactory, times(2)).createProperty(parentNode, "product", "9.99", PropertyType.DECIMAL);
+        verify(nodeFactory, times(2)).createProperty(parentNode, "born", "0", PropertyType.DATE);
+        verify(nodeFactory, never()).createNode(eq(parentNode), anyString());
+    }
+
+    @Test
+    public void shouldHandTypedValuesToTypedNodeFactories() throws RepositoryException {
+        String json = "{product: {'jcr:primaryType': 'nt:unstructured', views: 42, rating: 4.5, onSale: false," +
+                " price: {'$type': 'Decimal', '$value': 19.99}, launched: {'$type': 'Date', '$value': 86400000}}}";
+        for (NodeFactory typedNodeFactory : new NodeFactory[]{new InMemoryNodeFactory(), new MockNodeFactory()}) {
+            for (boolean streaming : new boolean[]{false, true}) {
+                JsonMockService typedMockService = new JsonMockService(typedNodeFactory);
+                typedMockService.setNativeTypes(true);
+                typedMockService.setStreaming(streaming);
+
+                Node product = typedMockService.fromString(json).getNode("product");
+
+                assertEquals(42L, product.getProperty("views").getLong());
+                assertEquals(PropertyType.LONG, product.getProperty("views").getType());
+                assertEquals(4.5, product.getProperty("rating").getDouble(), 0);
+                assertFalse(product.getProperty("onSale").getBoolean());
+                assertEquals(new BigDecimal("19.99"), product.getProperty("price").getDecimal());
+                assertEquals(86400000L, product.getProperty("launched").getDate().getTimeInMillis());
+            }
+        }
+    }
+
+    @Test
+    public void shouldBuildLargeSubtreesInParallel() throws RepositoryException {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < 8; i++) {
+            json.append("section").append(i).append(": {'jcr:primaryType': 'nt:folder', title: 'Section ").append(i)
+                    .append("'");
+            for (int j = 0; j < 20; j++) {
+                json.append(", page").append(j).append(": {views: 'type:Long, value:").append(j).append("'}");
+            }
+            json.append("}, ");
+        }
+        json.append("title: 'Site'}");
+        final Set<Thread> linkingThreads = Collections.synchronizedSet(new HashSet<Thread>());
+        InMemoryNodeFactory nodeFactory = new InMemoryNodeFactory() {
+            @Override
+            public void createIteratorFor(Node parent, List<Node> childNodes) throws RepositoryException {
+                linkingThreads.add(Thread.currentThread());
+                super.createIteratorFor(parent, childNodes);
+            }
+        };
+        JsonMockService parallelMockService = new JsonMockService(nodeFactory);
+        parallelMockService.setParallel(true);
+        parallelMockService.setParallelThreshold(10);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        parallelMockService.setForkJoinPool(pool);
+
+        Node root;
+        try {
+            root = parallelMockService.fromString(json.toString());
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(Collections.singleton(Thread.currentThread()), linkingThreads);
+        assertEquals("Site", root.getProperty("title").getString());
+        NodeIterator sections = root.getNodes();
+        assertEquals(8, sections.getSize());
+        for (int i = 0; i < 8; i++) {
+            Node section = sections.nextNode();
+            assertEquals("section" + i, section.getName());
+            assertTrue(section.isNodeType("nt:folder"));
+            assertEquals(20, section.getNodes().getSize());
+            Property views = section.getProperty("page19/views");
+            assertEquals(19L, views.getLong());
+            assertEquals("/section" + i + "/page19/views", views.getPath());
+        }
+    }
+
+    @Test
+    public void shouldBuildMockSubtreesInParallel() throws RepositoryException {
+        StringBuilder json = new StringBuilder("{title: 'Site'");
+        for (int i = 0; i < 8; i++) {
+            json.append(", section").append(i).append(": {");
+            for (int j = 0; j < 20; j++) {
+                json.append(j == 0 ? "" : ", ").append("page").append(j).append(": {views: '").append(j).append("'}");
+            }
+            json.append("}");
+        }
+        JsonMockService parallelMockService = new JsonMockService(new MockNodeFactory());
+        parallelMockService.setParallel(true);
+        parallelMockService.setParallelThreshold(10);
+
+        Node root = parallelMockService.fromString(json.append("}").toString());
+
+        assertEquals(8, root.getNodes().getSize());
+        for (int i = 0; i < 8; i++) {
+            Node section = root.getNode("section" + i);
+            assertEquals(20, section.getNodes().getSize());
+            assertEquals("7", root.getSession().getProperty("/section" + i + "/page7/views").getString());
+        }
+    }
+
+    @Test
+    public void shouldBuildSmallTreesSequentiallyWhenParallel() throws RepositoryException {
+        mockService.setParallel(true);
+
+        mockService.fromString(parentNode, "{childElementName: 'propertyValue'}");
+
+        verify(nodeFactory).createProperty(parentNode, "childElementName", "propertyValue", PropertyType.STRING);
+        verify(nodeFactory).createIteratorFor(eq(parentNode), anyList());
+    }
 }
@@ -0,0 +1,77 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import com.tacitknowledge.jcr.testing.utils.JcrMockingUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AccessProfilerTest {
+
+    private AccessProfiler profiler;
+    private Node root;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        MockNodeFactory nodeFactory = new MockNodeFactory();
+        profiler = new AccessProfiler();
+        nodeFactory.setAccessProfiler(profiler);
+        root = JcrMockingUtils.createNodesFromJsonString("{" +
+                "content: {" +
+                    "home: {title: 'Home', 'jcr:content': {text: 'Welcome'}}," +
+                    "news: {title: 'News'}" +
+                "}" +
+            "}", nodeFactory);
+        profiler.reset();
+    }
+
+    @Test
+    public void shouldCountCallsPerPath() throws RepositoryException {
+        Node content = root.getNode("content");
+        for (int i = 0; i < 3; i++) {
+            content.getNode("home").getProperty("title").getString();
+        }
+        content.getNode("news");
+        content.getPath();
+
+        assertEquals(4, profiler.getLookupCount("/content"));
+        assertEquals(4, profiler.getInvocationCount("/content", "getNode"));
+        assertEquals(5, profiler.getInvocationCount("/content"));
+        assertEquals(3, profiler.getInvocationCount("/content/home/title", "getString"));
+        assertEquals(0, profiler.getLookupCount("/content/news"));
+    }
+
+    @Test
+    public void shouldReportHotPathsAndRepeatedLookups() throws RepositoryException {
+        Node home = root.getNode("content/home");
+        for (int i = 0; i < 5; i++) {
+            home.getNode("jcr:content");
+            home.hasProperty("title");
+        }
+        home.getProperty("title");
+
+        List<AccessProfiler.Access> hotPaths = profiler.getHotPaths(1);
+        assertEquals(1, hotPaths.size());
+        assertEquals("/content/home", hotPaths.get(0).getPath());
+        assertEquals(11, hotPaths.get(0).getCount());
+
+        List<AccessProfiler.Access> repeated = profiler.getRepeatedLookups(2);
+        assertEquals(2, repeated.size());
+        assertEquals("/content/home getNode(jcr:content): 5", repeated.get(0).toString());
+        assertEquals("hasProperty", repeated.get(1).getMethodName());
+        assertTrue(profiler.report(10).contains("/content/home hasProperty(title): 5"));
+    }
+
+    @Test
+    public void shouldForgetCallsOnReset() throws RepositoryException {
+        root.getNode("content").getNode("home");
+        profiler.reset();
+
+        assertEquals(0, profiler.getInvocationCount("/content"));
+        assertTrue(profiler.getHotPaths(10).isEmpty());
+    }
+}
@@ -0,0 +1,209 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import com.tacitknowledge.jcr.mocking.impl.JsonMockService;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BatchingObservationManagerTest {
+
+    private static final int ALL_TYPES = Event.NODE_ADDED | Event.NODE_REMOVED | Event.PROPERTY_ADDED
+            | Event.PROPERTY_REMOVED | Event.PROPERTY_CHANGED;
+
+    private Node root;
+    private Session session;
+    private BatchingObservationManager observationManager;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        MockNodeFactory nodeFactory = new MockNodeFactory();
+        nodeFactory.setWritable(true);
+        root = new JsonMockService(nodeFactory).fromString("{" +
+                "content: {" +
+                    "'jcr:primaryType': 'cq:Page'," +
+                    "home: {title: 'Home'}," +
+                    "news: {}" +
+                "}," +
+                "apps: {}" +
+            "}");
+        session = root.getSession();
+        observationManager = (BatchingObservationManager) session.getWorkspace().getObservationManager();
+    }
+
+    @Test
+    public void shouldDeliverSavedChanges() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        observationManager.addEventListener(listener, ALL_TYPES, null, true, null, null, false);
+        observationManager.setUserData("import");
+
+        Node home = root.getNode("content/home");
+        home.setProperty("title", "Welcome");
+        home.setProperty("rank", 1L);
+        home.getProperty("rank").remove();
+        root.getNode("content/news").addNode("today");
+        root.getNode("apps").remove();
+        assertTrue(listener.events.isEmpty());
+        session.save();
+
+        assertTrue(observationManager.waitForDelivery(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(
+                Event.PROPERTY_CHANGED + " /content/home/title",
+                Event.NODE_ADDED + " /content/news/today",
+                Event.NODE_REMOVED + " /apps"), listener.events);
+        assertEquals(1, listener.batches);
+        assertEquals("import", listener.userData);
+    }
+
+    @Test
+    public void shouldDeliverTheNetEffectOfSavedChanges() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        observationManager.addEventListener(listener, ALL_TYPES, null, true, null, null, false);
+
+        Node home = root.getNode("content/home");
+        home.setProperty("rank", 1L);
+        home.setProperty("rank", 2L);
+        home.setProperty("title", "Welcome");
+        home.setProperty("title", "Hello");
+        home.getProperty("title").remove();
+        home.setProperty("title", "Home again");
+        Node today = root.getNode("content/news").addNode("today");
+        today.setProperty("title", "Today");
+        today.addNode("weather");
+        today.remove();
+        session.save();
+
+        assertTrue(observationManager.waitForDelivery(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(
+                Event.PROPERTY_ADDED + " /content/home/rank",
+                Event.PROPERTY_CHANGED + " /content/home/title"), listener.events);
+    }
+
+    @Test
+    public void shouldNotDeliverUndoneChanges() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        observationManager.addEventListener(listener, ALL_TYPES, "/", true, null, null, false);
+
+        root.getNode("content/news").addNode("today");
+        session.refresh(false);
+        session.save();
+
+        assertTrue(observationManager.waitForDelivery(5, TimeUnit.SECONDS));
+        assertTrue(listener.events.isEmpty());
+    }
+
+    @Test
+    public void shouldFilterEventsOfEachListener() throws Exception {
+        RecordingListener added = new RecordingListener();
+        RecordingListener content = new RecordingListener();
+        RecordingListener shallow = new RecordingListener();
+        RecordingListener pages = new RecordingListener();
+        RecordingListener local = new RecordingListener();
+        observationManager.addEventListener(added, Event.NODE_ADDED, null, true, null, null, false);
+        observationManager.addEventListener(content, ALL_TYPES, "/content", true, null, null, false);
+        observationManager.addEventListener(shallow, ALL_TYPES, "/content", false, null, null, false);
+        observationManager.addEventListener(pages, ALL_TYPES, "/", true, null, new String[]{"cq:Page"}, false);
+        observationManager.addEventListener(local, ALL_TYPES, null, true, null, null, true);
+
+        root.getNode("content").addNode("about");
+        root.getNode("content/home").setProperty("title", "Welcome");
+        root.getNode("apps").addNode("site");
+        session.save();
+
+        assertTrue(observationManager.waitForDelivery(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(Event.NODE_ADDED + " /content/about", Event.NODE_ADDED + " /apps/site"),
+                added.events);
+        assertEquals(Arrays.asList(Event.NODE_ADDED + " /content/about",
+                Event.PROPERTY_CHANGED + " /content/home/title"), content.events);
+        assertEquals(Arrays.asList(Event.NODE_ADDED + " /content/about"), shallow.events);
+        assertEquals(Arrays.asList(Event.NODE_ADDED + " /content/about"), pages.events);
+        assertTrue(local.events.isEmpty());
+    }
+
+    @Test
+    public void shouldSplitSavesIntoBatches() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        observationManager.addEventListener(listener, Event.PROPERTY_ADDED, "/apps", false, null, null, false);
+        observationManager.setMaxBatchSize(4);
+
+        Node apps = root.getNode("apps");
+        for (int i = 0; i < 10; i++) {
+            apps.setProperty("property" + i, "value");
+        }
+        session.save();
+
+        assertTrue(observationManager.waitForDelivery(5, TimeUnit.SECONDS));
+        assertEquals(10, listener.events.size());
+        assertEquals(3, listener.batches);
+    }
+
+    @Test
+    public void shouldNotBlockTheSavingThread() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        observationManager.addEventListener(new EventListener() {
+            @Override
+            public void onEvent(EventIterator events) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, ALL_TYPES, null, true, null, null, false);
+
+        root.getNode("apps").addNode("site");
+        session.save();
+
+        assertFalse(observationManager.waitForDelivery(10, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(observationManager.waitForDelivery(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldRemoveListeners() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        observationManager.addEventListener(listener, ALL_TYPES, null, true, null, null, false);
+        assertEquals(1, observationManager.getRegisteredEventListeners().getSize());
+
+        observationManager.removeEventListener(listener);
+        root.getNode("apps").addNode("site");
+        session.save();
+
+        assertTrue(observationManager.waitForDelivery(5, TimeUnit.SECONDS));
+        assertEquals(0, observationManager.getRegisteredEventListeners().getSize());
+        assertTrue(listener.events.isEmpty());
+    }
+
+    private static class RecordingListener implements EventListener {
+
+        private final List<String> events = new ArrayList<String>();
+        private int batches;
+        private String userData;
+
+        @Override
+        public void onEvent(EventIterator iterator) {
+            batches++;
+            while (iterator.hasNext()) {
+                Event event = iterator.nextEvent();
+                events.add(event.toString());
+                try {
+                    userData = event.getUserData();
+                } catch (RepositoryException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+}
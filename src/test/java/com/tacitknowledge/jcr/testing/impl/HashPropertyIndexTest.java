@@ -0,0 +1,131 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import com.tacitknowledge.jcr.testing.utils.JcrMockingUtils;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+public class HashPropertyIndexTest {
+
+    private static final String CONTENT = "{" +
+            "content: {" +
+                "home: {'sling:resourceType': 'site/page', title: 'Home'}," +
+                "news: {'sling:resourceType': 'site/article', tags: ['a', 'b']}," +
+                "about: {'jcr:primaryType': 'cq:Page', 'sling:resourceType': 'site/page'}" +
+            "}" +
+        "}";
+
+    @Test
+    public void shouldIndexOnlyTheGivenProperties() {
+        HashPropertyIndex index = new HashPropertyIndex("sling:resourceType");
+        Node node = mock(Node.class);
+        index.add(node, "sling:resourceType", "site/page");
+        index.add(node, "title", "Home");
+
+        assertTrue(index.isIndexed("sling:resourceType"));
+        assertFalse(index.isIndexed("title"));
+        assertEquals(Arrays.asList(node), index.getNodes("sling:resourceType", "site/page"));
+        assertTrue(index.getNodes("sling:resourceType", "other").isEmpty());
+    }
+
+    @Test
+    public void shouldIndexEachNodeOncePerValue() {
+        HashPropertyIndex index = new HashPropertyIndex();
+        Node first = mock(Node.class);
+        Node second = mock(Node.class);
+        index.add(first, "cq:template", "/apps/page");
+        index.add(second, "cq:template", "/apps/page");
+        index.add(first, "cq:template", "/apps/page");
+
+        assertEquals(Arrays.asList(first, second), index.getNodes("cq:template", "/apps/page"));
+    }
+
+    @Test
+    public void shouldForgetValuesRemovedAsManyTimesAsAdded() {
+        HashPropertyIndex index = new HashPropertyIndex();
+        Node node = mock(Node.class);
+        index.add(node, "cq:template", "/apps/page");
+        index.add(node, "cq:template", "/apps/page");
+
+        index.remove(node, "cq:template", "/apps/page");
+        assertEquals(Arrays.asList(node), index.getNodes("cq:template", "/apps/page"));
+        index.remove(node, "cq:template", "/apps/page");
+        assertTrue(index.getNodes("cq:template", "/apps/page").isEmpty());
+    }
+
+    @Test
+    public void shouldFollowChangesOfWritableMockNodes() throws Exception {
+        MockNodeFactory nodeFactory = new MockNodeFactory();
+        nodeFactory.setWritable(true);
+        HashPropertyIndex index = new HashPropertyIndex("sling:resourceType", "jcr:primaryType", "tags");
+        nodeFactory.setPropertyIndex(index);
+        Node root = JcrMockingUtils.createNodesFromJsonString(CONTENT, nodeFactory);
+        Node home = root.getNode("content/home");
+
+        for (int i = 0; i < 3; i++) {
+            home.setProperty("sling:resourceType", "site/home");
+            root.getSession().refresh(false);
+        }
+        home.setProperty("sling:resourceType", "site/home");
+        root.getNode("content/news").getProperty("tags").remove();
+        root.getNode("content/about").remove();
+
+        assertEquals(paths(root, "content/home"), index.getNodes("sling:resourceType", "site/home"));
+        assertTrue(index.getNodes("sling:resourceType", "site/page").isEmpty());
+        assertTrue(index.getNodes("tags", "a").isEmpty());
+        assertTrue(index.getNodes("jcr:primaryType", "cq:Page").isEmpty());
+
+        root.getSession().refresh(false);
+
+        assertTrue(index.getNodes("sling:resourceType", "site/home").isEmpty());
+        assertEquals(new HashSet<Node>(paths(root, "content/home", "content/about")),
+                new HashSet<Node>(index.getNodes("sling:resourceType", "site/page")));
+        assertEquals(paths(root, "content/about"), index.getNodes("jcr:primaryType", "cq:Page"));
+        assertEquals(paths(root, "content/news"), index.getNodes("tags", "a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectLookupsOfPropertiesNotIndexed() {
+        new HashPropertyIndex("sling:resourceType").getNodes("title", "Home");
+    }
+
+    @Test
+    public void shouldBeMaintainedByMockNodeFactory() throws Exception {
+        MockNodeFactory nodeFactory = new MockNodeFactory();
+        HashPropertyIndex index = new HashPropertyIndex("sling:resourceType", "jcr:primaryType", "tags");
+        nodeFactory.setPropertyIndex(index);
+
+        assertIndexed(JcrMockingUtils.createNodesFromJsonString(CONTENT, nodeFactory), index);
+    }
+
+    @Test
+    public void shouldBeMaintainedByInMemoryNodeFactory() throws Exception {
+        InMemoryNodeFactory nodeFactory = new InMemoryNodeFactory();
+        HashPropertyIndex index = new HashPropertyIndex("sling:resourceType", "jcr:primaryType", "tags");
+        nodeFactory.setPropertyIndex(index);
+
+        assertIndexed(JcrMockingUtils.createNodesFromJsonString(CONTENT, nodeFactory), index);
+    }
+
+    private static void assertIndexed(Node root, HashPropertyIndex index) throws RepositoryException {
+        assertEquals(paths(root, "content/home", "content/about"), index.getNodes("sling:resourceType", "site/page"));
+        assertEquals(paths(root, "content/about"), index.getNodes("jcr:primaryType", "cq:Page"));
+        assertEquals(paths(root, "content/news"), index.getNodes("tags", "a"));
+        assertEquals(paths(root, "content/news"), index.getNodes("tags", "b"));
+    }
+
+    private static List<Node> paths(Node root, String... relPaths) throws RepositoryException {
+        Node[] nodes = new Node[relPaths.length];
+        for (int i = 0; i < relPaths.length; i++) {
+            nodes[i] = root.getNode(relPaths[i]);
+        }
+        return Arrays.asList(nodes);
+    }
+}
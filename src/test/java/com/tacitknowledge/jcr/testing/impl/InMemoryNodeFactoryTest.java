@@ -0,0 +1,248 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import com.tacitknowledge.jcr.testing.PropertyIndex;
+import com.tacitknowledge.jcr.testing.utils.JcrMockingUtils;
+import com.tacitknowledge.jcr.testing.utils.JcrTestingUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.jcr.*;
+import javax.jcr.nodetype.PropertyDefinition;
+import javax.jcr.query.Query;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.Calendar;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+public class InMemoryNodeFactoryTest {
+
+    private InMemoryNodeFactory nodeFactory;
+    private Node rootNode;
+
+    @Before
+    public void setUp() throws Exception {
+        nodeFactory = new InMemoryNodeFactory();
+        rootNode = nodeFactory.createNode(StringUtils.EMPTY);
+    }
+
+    @Test
+    public void shouldCreateNodeHierarchyWithPaths() throws RepositoryException {
+        Node firstLevelNode = nodeFactory.createNode(rootNode, "firstLevel");
+        Node secondLevelNode = nodeFactory.createNode(firstLevelNode, "secondLevel", "nt:folder");
+        Property property = nodeFactory.createProperty(secondLevelNode, "prop", "some value", PropertyType.STRING);
+
+        assertEquals("/", rootNode.getPath());
+        assertEquals("/firstLevel", firstLevelNode.getPath());
+        assertEquals("/firstLevel/secondLevel", secondLevelNode.getPath());
+        assertEquals("/firstLevel/secondLevel/prop", property.getPath());
+        assertEquals("/firstLevel/secondLevel", secondLevelNode.toString());
+        assertEquals(2, secondLevelNode.getDepth());
+        assertSame(firstLevelNode, secondLevelNode.getParent());
+        assertSame(rootNode, secondLevelNode.getAncestor(0));
+        assertSame(secondLevelNode, property.getParent());
+        assertTrue(secondLevelNode.isNodeType("nt:folder"));
+        assertEquals("nt:folder", secondLevelNode.getPrimaryNodeType().getName());
+        assertTrue(firstLevelNode.isNodeType(InMemoryNodeFactory.DEFAULT_NODE_TYPE));
+    }
+
+    @Test
+    public void shouldNotCreateChildNodeIfAlreadyExist() throws RepositoryException {
+        Node childNode = nodeFactory.createNode(rootNode, "child");
+        assertSame(childNode, nodeFactory.createNode(rootNode, "child"));
+        assertSame(childNode, nodeFactory.createNode(rootNode, "child", "nt:file"));
+        assertTrue(childNode.isNodeType("nt:file"));
+    }
+
+    @Test
+    public void shouldResolveRelativePaths() throws RepositoryException {
+        Node a = nodeFactory.createNode(rootNode, "a");
+        Node b = nodeFactory.createNode(a, "b");
+        Node c = nodeFactory.createNode(b, "c");
+        nodeFactory.createProperty(c, "prop", "value", PropertyType.STRING);
+
+        assertSame(c, rootNode.getNode("a/b/c"));
+        assertSame(c, a.getNode("b/c"));
+        assertSame(a, c.getNode("../.."));
+        assertEquals("value", rootNode.getProperty("a/b/c/prop").getString());
+        assertTrue(rootNode.hasNode("a/b"));
+        assertFalse(rootNode.hasNode("b/c"));
+        assertTrue(a.hasProperty("b/c/prop"));
+        assertFalse(a.hasProperty("c/prop"));
+        assertTrue(a.hasNodes());
+        assertFalse(a.hasProperties());
+        assertTrue(c.hasProperties());
+    }
+
+    @Test(expected = PathNotFoundException.class)
+    public void shouldThrowPathNotFoundForMissingNode() throws RepositoryException {
+        rootNode.getNode("missing");
+    }
+
+    @Test(expected = PathNotFoundException.class)
+    public void shouldThrowPathNotFoundForMissingProperty() throws RepositoryException {
+        rootNode.getProperty("missing");
+    }
+
+    @Test
+    public void shouldIterateChildrenInCreationOrder() throws RepositoryException {
+        Node first = nodeFactory.createNode(rootNode, "first");
+        Node second = nodeFactory.createNode(rootNode, "second");
+        Node third = nodeFactory.createNode(rootNode, "third");
+        nodeFactory.createProperty(rootNode, "prop1", "1", PropertyType.STRING);
+        nodeFactory.createProperty(rootNode, "prop2", "2", PropertyType.STRING);
+
+        NodeIterator nodes = rootNode.getNodes();
+        assertSame(first, nodes.nextNode());
+        assertSame(second, nodes.nextNode());
+        assertSame(third, nodes.nextNode());
+        assertFalse(nodes.hasNext());
+
+        JcrTestingUtils.assertIteratorCount(rootNode.getNodes(), 3);
+        JcrTestingUtils.assertIteratorCount(rootNode.getNodes("f* | third"), 2);
+        JcrTestingUtils.assertIteratorCount(rootNode.getProperties(), 2);
+        JcrTestingUtils.assertIteratorCount(rootNode.getProperties("prop2"), 1);
+    }
+
+    @Test
+    public void shouldCreateTypedValues() throws RepositoryException {
+        assertTrue(nodeFactory.createProperty(rootNode, "boolean", "true", PropertyType.BOOLEAN).getBoolean());
+        assertEquals(1.5, nodeFactory.createProperty(rootNode, "double", "1.5", PropertyType.DOUBLE).getDouble(), 0);
+        assertEquals(42L, nodeFactory.createProperty(rootNode, "long", "42", PropertyType.LONG).getLong());
+        assertEquals(new BigDecimal("1.01"),
+                nodeFactory.createProperty(rootNode, "decimal", "1.01", PropertyType.DECIMAL).getDecimal());
+
+        Property date = nodeFactory.createProperty(rootNode, "date", "12/24/2012", PropertyType.DATE);
+        assertEquals(2012, date.getDate().get(Calendar.YEAR));
+        assertEquals("12/24/2012", date.getString());
+        date.getDate().set(Calendar.YEAR, 1999);
+        assertEquals("Calendar handed out should be a copy", 2012, date.getDate().get(Calendar.YEAR));
+
+        Property longProperty = rootNode.getProperty("long");
+        assertEquals(PropertyType.LONG, longProperty.getType());
+        assertEquals("42", longProperty.getString());
+        assertEquals(42.0, longProperty.getDouble(), 0);
+    }
+
+    @Test
+    public void shouldCreateBinaryValueReadableMoreThanOnce() throws Exception {
+        Property binary = nodeFactory.createProperty(rootNode, "binary", "/files/air_jordan.jpg", PropertyType.BINARY);
+
+        InputStream firstStream = binary.getBinary().getStream();
+        InputStream secondStream = binary.getBinary().getStream();
+        assertNotSame(firstStream, secondStream);
+        assertTrue(firstStream.read() >= 0);
+        assertTrue(secondStream.read() >= 0);
+        firstStream.close();
+        secondStream.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowIllegalArgumentExceptionIfBinaryDoesNotExist() throws RepositoryException {
+        nodeFactory.createProperty(rootNode, "binary", "does not exist", PropertyType.BINARY);
+    }
+
+    @Test
+    public void shouldSupportMultiValuedProperties() throws RepositoryException {
+        Property property = nodeFactory.createMultiValuedProperty(rootNode, "skills", new String[]{"a", "b"});
+
+        assertTrue(property.isMultiple());
+        Value[] values = property.getValues();
+        assertEquals(2, values.length);
+        assertEquals("a", values[0].getString());
+        assertEquals("b", values[1].getString());
+
+        PropertyDefinition definition = property.getDefinition();
+        assertTrue(definition.isMultiple());
+        assertEquals(PropertyType.STRING, definition.getRequiredType());
+    }
+
+    @Test(expected = ValueFormatException.class)
+    public void shouldNotReturnSingleValueOfMultiValuedProperty() throws RepositoryException {
+        nodeFactory.createMultiValuedProperty(rootNode, "skills", new String[]{"a", "b"}).getValue();
+    }
+
+    @Test
+    public void shouldResolveAbsolutePathsThroughSession() throws RepositoryException {
+        Node products = nodeFactory.createNode(rootNode, "products");
+        Node product = nodeFactory.createNode(products, "productA");
+        Property name = nodeFactory.createProperty(product, "name", "Air Jordan", PropertyType.STRING);
+        Session session = product.getSession();
+
+        assertSame(nodeFactory.getSession(), session);
+        assertSame(rootNode, session.getRootNode());
+        assertSame(product, session.getNode("/products/productA"));
+        assertSame(name, session.getProperty("/products/productA/name"));
+        assertSame(name, session.getItem("/products/productA/name"));
+        assertTrue(session.nodeExists("/products"));
+        assertFalse(session.nodeExists("/products/productB"));
+        assertTrue(session.propertyExists("/products/productA/name"));
+        assertTrue(session.itemExists("/products/productA"));
+    }
+
+    @Test
+    public void shouldKeepUsingIndexesOfOtherTreesWhenForking() throws RepositoryException {
+        PropertyIndex index = spy(new HashPropertyIndex("name"));
+        nodeFactory.setPropertyIndex(index);
+        Node product = nodeFactory.createNode(rootNode, "productA");
+        nodeFactory.createProperty(product, "name", "Air Jordan", PropertyType.STRING);
+        InMemoryNodeFactory templateFactory = new InMemoryNodeFactory();
+        Node template = templateFactory.createNode(StringUtils.EMPTY);
+        templateFactory.createProperty(templateFactory.createNode(template, "productB"), "name", "Air Jordan",
+                PropertyType.STRING);
+
+        Node fork = nodeFactory.createFork(template);
+        nodeFactory.createProperty(fork, "name", "Air Jordan", PropertyType.STRING);
+        String statement = "SELECT * FROM [nt:unstructured] AS n WHERE n.name = 'Air Jordan'";
+
+        NodeIterator nodes = rootNode.getSession().getWorkspace().getQueryManager()
+                .createQuery(statement, Query.JCR_SQL2).execute().getNodes();
+        assertSame(product, nodes.nextNode());
+        assertFalse(nodes.hasNext());
+        verify(index).getNodes("name", "Air Jordan");
+        NodeIterator forkNodes = fork.getSession().getWorkspace().getQueryManager()
+                .createQuery(statement, Query.JCR_SQL2).execute().getNodes();
+        assertEquals("/", forkNodes.nextNode().getPath());
+        assertEquals("/productB", forkNodes.nextNode().getPath());
+        assertFalse(forkNodes.hasNext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectParentsFromOtherFactories() throws RepositoryException {
+        nodeFactory.createNode(new MockNodeFactory().createNode(StringUtils.EMPTY), "child");
+    }
+
+    @Test
+    public void shouldBuildJsonStructure() throws Exception {
+        String jsonNodeStructure =
+                "{" +
+                "    products: {" +
+                "        productA: {" +
+                "            'jcr:primaryType': 'nt:unstructured'," +
+                "            name: 'Air Jordan'," +
+                "            views: 'type:Long, value:3'," +
+                "            tags: ['shoe', 'basketball']," +
+                "            binary: {" +
+                "                'jcr:primaryType': 'nt:file'," +
+                "                'jcr:content': 'type:Binary, value:/files/air_jordan.jpg'" +
+                "            }" +
+                "        }" +
+                "    }" +
+                "}";
+
+        Node root = JcrMockingUtils.createNodesFromJsonString(jsonNodeStructure, nodeFactory);
+        Node productA = root.getNode("products/productA");
+
+        assertEquals("Air Jordan", productA.getProperty("name").getString());
+        JcrTestingUtils.assertProperty(productA.getProperty("views"), PropertyType.LONG, 3L);
+        assertEquals(2, productA.getProperty("tags").getValues().length);
+        assertEquals("nt:file", productA.getNode("binary").getPrimaryNodeType().getName());
+        assertEquals("nt:file", productA.getProperty("binary/jcr:primaryType").getString());
+        assertNotNull(productA.getProperty("binary/jcr:content").getBinary().getStream());
+        JcrTestingUtils.assertIteratorCount(productA.getNodes(), 1);
+        JcrTestingUtils.assertIteratorCount(productA.getProperties(), 4);
+    }
+}
@@ -0,0 +1,112 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import com.tacitknowledge.jcr.testing.utils.JcrMockingUtils;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+public class InvertedFullTextIndexTest {
+
+    private static final String CONTENT = "{" +
+            "content: {" +
+                "home: {title: 'Welcome Home', rank: 'type:Long, value:42'}," +
+                "news: {title: 'Home news', tags: ['breaking', 'world']}" +
+            "}" +
+        "}";
+
+    @Test
+    public void shouldSplitTextIntoLowerCaseTerms() {
+        assertEquals(Arrays.asList("it", "s", "a", "jcr", "mock", "2"),
+                InvertedFullTextIndex.tokenize("It's a JCR-mock, 2!"));
+        assertTrue(InvertedFullTextIndex.tokenize(" -- ").isEmpty());
+    }
+
+    @Test
+    public void shouldIndexEachNodeOncePerTerm() {
+        InvertedFullTextIndex index = new InvertedFullTextIndex();
+        Node first = mock(Node.class);
+        Node second = mock(Node.class);
+        index.add(first, "title", "Home, sweet home");
+        index.add(second, "title", "home");
+        index.add(first, "description", "HOME");
+
+        assertEquals(Arrays.asList(first, second), index.getNodes("Home"));
+        assertEquals(Arrays.asList(first), index.getNodes("sweet"));
+        assertTrue(index.getNodes("away").isEmpty());
+        assertEquals(2, index.getTermCount());
+    }
+
+    @Test
+    public void shouldKeepNodesIndexedUnderTheWordsOfTheirOtherProperties() {
+        InvertedFullTextIndex index = new InvertedFullTextIndex();
+        Node node = mock(Node.class);
+        index.add(node, "title", "Home news");
+        index.add(node, "description", "News of the day");
+
+        index.remove(node, "title", "Home news");
+
+        assertTrue(index.getNodes("home").isEmpty());
+        assertEquals(Arrays.asList(node), index.getNodes("news"));
+    }
+
+    @Test
+    public void shouldFollowChangesOfWritableMockNodes() throws Exception {
+        MockNodeFactory nodeFactory = new MockNodeFactory();
+        nodeFactory.setWritable(true);
+        InvertedFullTextIndex index = new InvertedFullTextIndex();
+        nodeFactory.setFullTextIndex(index);
+        Node root = JcrMockingUtils.createNodesFromJsonString(CONTENT, nodeFactory);
+        Node home = root.getNode("content/home");
+        Node news = root.getNode("content/news");
+
+        for (int i = 0; i < 3; i++) {
+            home.setProperty("title", "Welcome back");
+            root.getSession().refresh(false);
+        }
+        home.setProperty("title", "Welcome back");
+        news.remove();
+
+        assertEquals(Arrays.asList(home), index.getNodes("welcome"));
+        assertEquals(Arrays.asList(home), index.getNodes("back"));
+        assertTrue(index.getNodes("home").isEmpty());
+        assertTrue(index.getNodes("world").isEmpty());
+
+        root.getSession().refresh(false);
+
+        assertTrue(index.getNodes("back").isEmpty());
+        assertEquals(new HashSet<Node>(Arrays.asList(home, news)), new HashSet<Node>(index.getNodes("home")));
+        assertEquals(Arrays.asList(news), index.getNodes("world"));
+    }
+
+    @Test
+    public void shouldBeMaintainedByMockNodeFactory() throws Exception {
+        MockNodeFactory nodeFactory = new MockNodeFactory();
+        InvertedFullTextIndex index = new InvertedFullTextIndex();
+        nodeFactory.setFullTextIndex(index);
+
+        assertIndexed(JcrMockingUtils.createNodesFromJsonString(CONTENT, nodeFactory), index);
+    }
+
+    @Test
+    public void shouldBeMaintainedByInMemoryNodeFactory() throws Exception {
+        InMemoryNodeFactory nodeFactory = new InMemoryNodeFactory();
+        InvertedFullTextIndex index = new InvertedFullTextIndex();
+        nodeFactory.setFullTextIndex(index);
+
+        assertIndexed(JcrMockingUtils.createNodesFromJsonString(CONTENT, nodeFactory), index);
+    }
+
+    private static void assertIndexed(Node root, InvertedFullTextIndex index) throws RepositoryException {
+        Node home = root.getNode("content/home");
+        Node news = root.getNode("content/news");
+        assertEquals(Arrays.asList(home, news), index.getNodes("home"));
+        assertEquals(Arrays.asList(news), index.getNodes("world"));
+        assertTrue("Only String properties are indexed", index.getNodes("42").isEmpty());
+    }
+}
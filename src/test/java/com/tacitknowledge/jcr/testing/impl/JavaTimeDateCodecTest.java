@@ -0,0 +1,136 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import org.junit.Test;
+
+import javax.jcr.Property;
+import javax.jcr.PropertyType;
+import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class JavaTimeDateCodecTest {
+
+    private final JavaTimeDateCodec dateCodec =
+            new JavaTimeDateCodec(ZoneOffset.UTC, JavaTimeDateCodec.DEFAULT_FORMATS);
+
+    @Test
+    public void shouldParseIsoDatesWithOffsetAndMillis() {
+        Calendar calendar = dateCodec.parse("2012-12-24T10:15:30.123+01:00");
+
+        assertEquals(1356340530123L, calendar.getTimeInMillis());
+        assertEquals(TimeZone.getTimeZone("GMT+01:00").getRawOffset(), calendar.getTimeZone().getRawOffset());
+    }
+
+    @Test
+    public void shouldParseDatesWithoutZoneInCodecZone() {
+        assertEquals(1356344130000L, dateCodec.parse("2012-12-24T10:15:30").getTimeInMillis());
+        assertEquals(1356307200000L, dateCodec.parse("2012-12-24").getTimeInMillis());
+        assertEquals(1356307200000L, dateCodec.parse("12/24/2012").getTimeInMillis());
+        assertEquals(1356307200000L, dateCodec.parse("1356307200000").getTimeInMillis());
+    }
+
+    @Test
+    public void shouldParseLegacyDatesLikeSimpleDateFormat() throws Exception {
+        SimpleDateFormat simpleDateFormat = new SimpleDateFormat("MM/dd/yyyy");
+        simpleDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        for (String value : new String[]{"01/15/2013", "1/5/2013", "13/45/2013", "02/29/2013",
+                "12/24/2012 10:15", "12/24/2012T10:15:30Z"}) {
+            Calendar expected = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+            expected.setTime(simpleDateFormat.parse(value));
+
+            Calendar calendar = dateCodec.parse(value);
+
+            assertEquals(value, expected, calendar);
+            assertEquals(value, expected.get(Calendar.WEEK_OF_YEAR), calendar.get(Calendar.WEEK_OF_YEAR));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnsupportedFormat() {
+        dateCodec.parse("24.12.2012");
+    }
+
+    @Test
+    public void shouldUseConfiguredFormats() {
+        JavaTimeDateCodec germanDateCodec =
+                new JavaTimeDateCodec(ZoneId.of("Europe/Berlin"), DateTimeFormatter.ofPattern("dd.MM.yyyy"));
+
+        Calendar calendar = germanDateCodec.parse("24.12.2012");
+
+        assertEquals(1356303600000L, calendar.getTimeInMillis());
+    }
+
+    @Test
+    public void shouldHandOutCopiesOfCachedDates() {
+        Calendar first = dateCodec.parse("2012-12-24");
+        first.set(Calendar.YEAR, 1999);
+        Calendar second = dateCodec.parse("2012-12-24");
+
+        assertNotSame(first, second);
+        assertEquals(2012, second.get(Calendar.YEAR));
+        assertEquals(1, dateCodec.cacheSize());
+    }
+
+    @Test
+    public void shouldKeepTheDatesParsedLast() {
+        for (int i = 0; i < JavaTimeDateCodec.MAX_CACHED_DATES; i++) {
+            dateCodec.parse(String.valueOf(i));
+            dateCodec.parse("2012-12-24");
+        }
+        dateCodec.parse("12/24/2012");
+
+        assertEquals(JavaTimeDateCodec.MAX_CACHED_DATES, dateCodec.cacheSize());
+        assertTrue(dateCodec.isCached("2012-12-24"));
+        assertTrue(dateCodec.isCached("12/24/2012"));
+        assertFalse(dateCodec.isCached("0"));
+    }
+
+    @Test
+    public void shouldParseConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Long>> results = new ArrayList<Future<Long>>();
+            for (int i = 0; i < 200; i++) {
+                final String value = String.format("2012-12-%02dT10:00:00Z", 1 + i % 28);
+                results.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        return dateCodec.parse(value).getTimeInMillis();
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(1354356000000L + (i % 28) * 86400000L, (long) results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldBePluggableIntoNodeFactories() throws Exception {
+        MockNodeFactory mockNodeFactory = new MockNodeFactory();
+        mockNodeFactory.setDateCodec(dateCodec);
+        Property property = mock(Property.class);
+
+        mockNodeFactory.createValueFor(property, "2012-12-24T00:00:00Z", PropertyType.DATE);
+        property.getDate().set(Calendar.YEAR, 1999);
+
+        assertEquals(1356307200000L, property.getDate().getTimeInMillis());
+    }
+}
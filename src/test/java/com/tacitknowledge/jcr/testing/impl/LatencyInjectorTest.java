@@ -0,0 +1,127 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import com.tacitknowledge.jcr.testing.NodeFactory;
+import com.tacitknowledge.jcr.testing.utils.JcrMockingUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.jcr.Binary;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LatencyInjectorTest {
+
+    private static final String CONTENT = "{" +
+            "content: {" +
+                "home: {title: 'Home'}," +
+                "news: {title: 'News'}" +
+            "}" +
+        "}";
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private LatencyInjector latencyInjector;
+
+    @Before
+    public void setUp() {
+        latencyInjector = new LatencyInjector();
+    }
+
+    @Test
+    public void shouldWrapEverythingReachedFromMockNodes() throws RepositoryException {
+        assertWrapped(new MockNodeFactory());
+    }
+
+    @Test
+    public void shouldWrapEverythingReachedFromInMemoryNodes() throws RepositoryException {
+        assertWrapped(new InMemoryNodeFactory());
+    }
+
+    private void assertWrapped(NodeFactory nodeFactory) throws RepositoryException {
+        Node unwrapped = JcrMockingUtils.createNodesFromJsonString(CONTENT, nodeFactory);
+        Node root = latencyInjector.wrap(unwrapped);
+
+        Node home = root.getNode("content/home");
+        assertTrue(Proxy.isProxyClass(home.getClass()));
+        assertSame(home, root.getNode("content").getNode("home"));
+        assertSame(home, root.getSession().getNode("/content/home"));
+        assertSame(root, latencyInjector.wrap(unwrapped));
+        assertEquals(home, home.getProperty("title").getParent());
+        assertEquals("Home", home.getProperty("title").getValue().getString());
+        assertEquals("/content/home", home.getPath());
+
+        NodeIterator children = root.getNode("content").getNodes();
+        assertSame(home, children.nextNode());
+        assertTrue(Proxy.isProxyClass(children.getClass()));
+    }
+
+    @Test
+    public void shouldWaitForTheLatencyOfEachCall() throws RepositoryException {
+        latencyInjector.setLatency("getNode", LatencyDistribution.fixed(2, TimeUnit.MILLISECONDS));
+        Node root = latencyInjector.wrap(JcrMockingUtils.createNodesFromJsonString(CONTENT, new MockNodeFactory()));
+
+        long start = System.nanoTime();
+        Node content = root.getNode("content");
+        content.getNode("home");
+        content.getNode("news").getProperty("title").getString();
+
+        assertEquals(6 * MILLIS, latencyInjector.getInjectedNanos());
+        assertTrue(System.nanoTime() - start >= 6 * MILLIS);
+    }
+
+    @Test
+    public void shouldAddColdLatencyToTheFirstCallReturningAPath() throws RepositoryException {
+        latencyInjector.setColdLatency(LatencyDistribution.fixed(1, TimeUnit.MILLISECONDS));
+        Node root = latencyInjector.wrap(JcrMockingUtils.createNodesFromJsonString(CONTENT, new MockNodeFactory()));
+        Node content = root.getNode("content");
+
+        content.getNode("home");
+        content.getNode("home");
+        assertEquals(2 * MILLIS, latencyInjector.getInjectedNanos());
+
+        latencyInjector.clearWarmPaths();
+        content.getNode("home");
+        assertEquals(3 * MILLIS, latencyInjector.getInjectedNanos());
+    }
+
+    @Test
+    public void shouldChargeStreamsPerByteRead() throws Exception {
+        latencyInjector.setNanosPerMegabyte(4 * MILLIS);
+        Binary binary = mock(Binary.class);
+        when(binary.getStream()).thenReturn(new ByteArrayInputStream(new byte[1024 * 1024]));
+
+        InputStream stream = latencyInjector.wrap(binary).getStream();
+        byte[] buffer = new byte[4096];
+        while (stream.read(buffer) >= 0) {
+            stream.read();
+        }
+        stream.close();
+
+        assertEquals(4 * MILLIS, latencyInjector.getInjectedNanos(), 1000);
+    }
+
+    @Test
+    public void shouldSampleLatenciesWithTheGivenPercentiles() {
+        LatencyDistribution latency = LatencyDistribution.percentiles(50, 2000, TimeUnit.MICROSECONDS);
+        Random random = new Random(42);
+        long[] samples = new long[20000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = latency.sample(random);
+        }
+        Arrays.sort(samples);
+
+        assertEquals(50000, samples[samples.length / 2], 5000);
+        assertEquals(2000000, samples[samples.length * 99 / 100], 400000);
+    }
+}
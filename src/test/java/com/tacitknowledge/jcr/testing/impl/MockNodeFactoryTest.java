@@ -1,19 +1,26 @@
 package com.tacitknowledge.jcr.testing.impl;
 
+import com.tacitknowledge.jcr.mocking.impl.JsonMockService;
 import com.tacitknowledge.jcr.testing.NodeFactory;
 import com.tacitknowledge.jcr.testing.utils.PropertyTypeEnum;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
 
 import javax.jcr.*;
 import javax.jcr.nodetype.NodeDefinition;
 import javax.jcr.nodetype.NodeType;
 import javax.jcr.nodetype.PropertyDefinition;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static junit.framework.Assert.*;
 import static org.mockito.Mockito.mock;
@@ -181,6 +188,19 @@ public class MockNodeFactoryTest {
         assertNotNull(property.getSession());
     }
 
+    @Test
+    public void shouldReturnNewBinaryStreamOnEveryCall() throws Exception {
+        nodeFactory.createValueFor(property, "/files/air_jordan.jpg", PropertyType.BINARY);
+
+        InputStream firstStream = property.getBinary().getStream();
+        InputStream secondStream = property.getBinary().getStream();
+
+        assertNotSame(firstStream, secondStream);
+        assertTrue(firstStream.read() >= 0);
+        assertTrue(secondStream.read() >= 0);
+        assertTrue(property.getBinary().getSize() > 0);
+    }
+
     @Test
     public void shouldCreateBooleanValue() throws RepositoryException {
         nodeFactory.createValueFor(property, "true", PropertyType.BOOLEAN);
@@ -391,4 +411,426 @@ public class MockNodeFactoryTest {
         assertTrue(firstLevelNode.hasProperties());
         		
 	}
+
+    @Test
+    public void shouldResolveAbsolutePathsThroughSession() throws RepositoryException {
+        Node rootNode = nodeFactory.createNode(StringUtils.EMPTY);
+        Node firstLevelNode = nodeFactory.createNode(rootNode, "firstLevel");
+        Node secondLevelNode = nodeFactory.createNode(firstLevelNode, "secondLevel");
+        Property rootProperty = nodeFactory.createProperty(rootNode, "rootProp", "value", PropertyType.STRING);
+        Property property = nodeFactory.createProperty(secondLevelNode, "prop", "value", PropertyType.STRING);
+        Session session = secondLevelNode.getSession();
+
+        assertSame(rootNode, session.getRootNode());
+        assertSame(rootNode, session.getNode("/"));
+        assertSame(secondLevelNode, session.getNode("/firstLevel/secondLevel"));
+        assertSame(property, session.getProperty("/firstLevel/secondLevel/prop"));
+        assertSame(property, session.getItem("/firstLevel/secondLevel/prop"));
+        assertSame(firstLevelNode, session.getItem("/firstLevel"));
+        assertSame(rootProperty, session.getProperty("/rootProp"));
+        assertEquals("/rootProp", rootProperty.getPath());
+
+        assertTrue(session.itemExists("/firstLevel/secondLevel/prop"));
+        assertTrue(session.nodeExists("/firstLevel/secondLevel"));
+        assertFalse(session.nodeExists("/firstLevel/secondLevel/prop"));
+        assertTrue(session.propertyExists("/firstLevel/secondLevel/prop"));
+        assertFalse(session.propertyExists("/firstLevel"));
+        assertFalse(session.itemExists("/missing"));
+    }
+
+    @Test(expected = PathNotFoundException.class)
+    public void shouldThrowPathNotFoundForMissingSessionNode() throws RepositoryException {
+        Node rootNode = nodeFactory.createNode(StringUtils.EMPTY);
+        nodeFactory.createNode(rootNode, "firstLevel").getSession().getNode("/secondLevel");
+    }
+
+    @Test(expected = PathNotFoundException.class)
+    public void shouldThrowPathNotFoundWhenGettingNodeAsProperty() throws RepositoryException {
+        Node rootNode = nodeFactory.createNode(StringUtils.EMPTY);
+        nodeFactory.createNode(rootNode, "firstLevel").getSession().getProperty("/firstLevel");
+    }
+
+    @Test
+    public void shouldResolveRelativePathsWithParentSegments() throws RepositoryException {
+        Node rootNode = nodeFactory.createNode(StringUtils.EMPTY);
+        Node firstLevelNode = nodeFactory.createNode(rootNode, "firstLevel");
+        Node secondLevelNode = nodeFactory.createNode(firstLevelNode, "secondLevel");
+        Node siblingNode = nodeFactory.createNode(firstLevelNode, "sibling");
+        Property property = nodeFactory.createProperty(siblingNode, "prop", "value", PropertyType.STRING);
+
+        assertSame(siblingNode, secondLevelNode.getNode("../sibling"));
+        assertSame(property, secondLevelNode.getProperty("../sibling/prop"));
+        assertSame(secondLevelNode, rootNode.getNode("./firstLevel/secondLevel"));
+        assertSame(property, secondLevelNode.getProperty("/firstLevel/sibling/prop"));
+        assertNull(rootNode.getNode("firstLevel/missing/secondLevel"));
+        assertFalse(rootNode.hasProperty("firstLevel/sibling/missing"));
+    }
+
+    @Test
+    public void shouldResolveRelativePathsFromParentNotCreatedByFactory() throws RepositoryException {
+        Node firstLevelNode = nodeFactory.createNode(parent, "firstLevel");
+        Node secondLevelNode = nodeFactory.createNode(firstLevelNode, "secondLevel");
+        Property property = nodeFactory.createProperty(secondLevelNode, "prop", "value", PropertyType.STRING);
+
+        assertSame(firstLevelNode, parent.getNode("firstLevel"));
+        assertSame(secondLevelNode, parent.getNode("firstLevel/secondLevel"));
+        assertSame(property, parent.getProperty("firstLevel/secondLevel/prop"));
+        assertTrue(parent.hasNode("firstLevel/secondLevel"));
+        assertTrue(parent.hasNodes());
+        assertFalse(parent.hasProperties());
+    }
+
+    @Test
+    public void shouldShareOneSessionByDefault() throws RepositoryException {
+        Node firstRoot = nodeFactory.createNode(StringUtils.EMPTY);
+        nodeFactory.createNode(firstRoot, "first");
+        Node secondRoot = nodeFactory.createNode(StringUtils.EMPTY);
+
+        assertSame(firstRoot.getSession(), secondRoot.getSession());
+        assertSame(secondRoot, firstRoot.getSession().getRootNode());
+        assertTrue(secondRoot.getSession().nodeExists("/first"));
+    }
+
+    @Test
+    public void shouldGiveEachRootItsOwnSession() throws RepositoryException {
+        nodeFactory.setSessionPerRoot(true);
+        Node firstRoot = nodeFactory.createNode(StringUtils.EMPTY);
+        Node firstChild = nodeFactory.createNode(firstRoot, "first");
+        Property firstProperty = nodeFactory.createProperty(firstChild, "prop", "value", PropertyType.STRING);
+        Node secondRoot = nodeFactory.createNode(StringUtils.EMPTY);
+        nodeFactory.createNode(secondRoot, "second");
+
+        Session firstSession = firstRoot.getSession();
+        assertNotSame(firstSession, secondRoot.getSession());
+        assertSame(firstSession, firstChild.getSession());
+        assertSame(firstSession, firstProperty.getSession());
+        assertSame(firstRoot, firstSession.getRootNode());
+        assertSame(secondRoot, secondRoot.getSession().getRootNode());
+        assertFalse(firstSession.nodeExists("/second"));
+        assertNull(firstChild.getNode("/second"));
+        assertSame(firstProperty, firstSession.getProperty("/first/prop"));
+        nodeFactory.createValueFor(firstProperty, "other", PropertyType.STRING);
+        assertSame(firstSession, firstProperty.getSession());
+    }
+
+    @Test
+    public void shouldBuildFixturesConcurrently() throws Exception {
+        nodeFactory.setSessionPerRoot(true);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Node>> roots = new ArrayList<Future<Node>>();
+            for (int i = 0; i < 32; i++) {
+                final int fixture = i;
+                roots.add(executor.submit(new Callable<Node>() {
+                    @Override
+                    public Node call() throws Exception {
+                        StringBuilder json = new StringBuilder("{fixture: 'type:Long, value:" + fixture + "'");
+                        for (int j = 0; j < 20; j++) {
+                            json.append(", node").append(j).append(": {index: '").append(j).append("'}");
+                        }
+                        return new JsonMockService(nodeFactory).fromString(json.append('}').toString());
+                    }
+                }));
+            }
+            for (int i = 0; i < roots.size(); i++) {
+                Node root = roots.get(i).get();
+                Session session = root.getSession();
+                assertSame(root, session.getRootNode());
+                assertEquals(i, session.getProperty("/fixture").getLong());
+                assertEquals("19", session.getProperty("/node19/index").getString());
+                assertEquals("/node19", root.getNode("node19").getPath());
+                assertEquals(20, root.getNodes().getSize());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldAddSetAndRemoveItemsOfWritableNodes() throws RepositoryException {
+        nodeFactory.setWritable(true);
+        Node root = new JsonMockService(nodeFactory).fromString("{content: {home: {title: 'Home'}}}");
+        Session session = root.getSession();
+        Node content = root.getNode("content");
+
+        Node news = content.addNode("news");
+        news.setProperty("title", "News");
+        news.setProperty("rank", 3L);
+        root.getNode("content/home").setProperty("title", "Welcome");
+
+        assertEquals("/content/news", news.getPath());
+        assertSame(news, session.getNode("/content/news"));
+        assertEquals("News", session.getProperty("/content/news/title").getString());
+        assertEquals(3L, news.getProperty("rank").getLong());
+        assertEquals(PropertyType.LONG, news.getProperty("rank").getType());
+        assertEquals("Welcome", content.getNode("home").getProperty("title").getString());
+        assertEquals(2, content.getNodes().getSize());
+        assertTrue(session.hasPendingChanges());
+
+        content.getNode("home").remove();
+        news.getProperty("rank").remove();
+        news.setProperty("title", (String) null);
+
+        assertFalse(content.hasNode("home"));
+        assertFalse(session.nodeExists("/content/home"));
+        assertFalse(session.propertyExists("/content/home/title"));
+        assertFalse(news.hasProperties());
+        assertEquals(1, content.getNodes().getSize());
+    }
+
+    @Test
+    public void shouldUndoChangesOnRefresh() throws RepositoryException {
+        nodeFactory.setWritable(true);
+        Node root = new JsonMockService(nodeFactory).fromString("{a: {title: 'A'}, b: {}, c: {}}");
+        Session session = root.getSession();
+        Property title = root.getProperty("a/title");
+
+        root.getNode("b").remove();
+        root.getNode("a").setProperty("title", "Changed");
+        root.addNode("d").addNode("e");
+        session.refresh(false);
+
+        assertFalse(session.hasPendingChanges());
+        List<String> names = new ArrayList<String>();
+        for (NodeIterator nodes = root.getNodes(); nodes.hasNext(); ) {
+            names.add(nodes.nextNode().getName());
+        }
+        assertEquals(Arrays.asList("a", "b", "c"), names);
+        assertSame(title, session.getProperty("/a/title"));
+        assertEquals("A", root.getNode("a").getProperty("title").getString());
+        assertFalse(session.nodeExists("/d"));
+        assertFalse(session.nodeExists("/d/e"));
+    }
+
+    @Test
+    public void shouldKeepTheOrderOfItemsRemovedAndAddedAgainOnRefresh() throws RepositoryException {
+        nodeFactory.setWritable(true);
+        Node root = new JsonMockService(nodeFactory).fromString("{a: {}, b: {}, c: {}, x: 'X', y: 'Y', z: 'Z'}");
+        Session session = root.getSession();
+
+        root.getNode("b").remove();
+        root.addNode("b");
+        root.getProperty("y").remove();
+        root.setProperty("y", "Changed");
+        session.refresh(false);
+
+        assertEquals(Arrays.asList("a", "b", "c"), nodeNames(root));
+        assertEquals(Arrays.asList("x", "y", "z"), propertyNames(root));
+        assertEquals("Y", root.getProperty("y").getString());
+    }
+
+    @Test
+    public void shouldKeepSavedChanges() throws RepositoryException {
+        nodeFactory.setWritable(true);
+        Node root = new JsonMockService(nodeFactory).fromString("{a: {}, b: {}}");
+        Session session = root.getSession();
+
+        root.getNode("a").remove();
+        root.addNode("c").setProperty("title", "C");
+        session.save();
+        session.refresh(false);
+
+        assertFalse(session.hasPendingChanges());
+        assertFalse(root.hasNode("a"));
+        assertEquals("C", session.getProperty("/c/title").getString());
+        assertEquals(2, root.getNodes().getSize());
+    }
+
+    @Test(expected = ItemExistsException.class)
+    public void shouldNotAddExistingNode() throws RepositoryException {
+        nodeFactory.setWritable(true);
+        new JsonMockService(nodeFactory).fromString("{a: {}}").addNode("a");
+    }
+
+    @Test
+    public void shouldNotWriteByDefault() throws RepositoryException {
+        Node root = new JsonMockService(nodeFactory).fromString("{a: {title: 'A'}}");
+
+        assertNull(root.addNode("b"));
+        root.getNode("a").remove();
+
+        assertFalse(root.hasNode("b"));
+        assertTrue(root.getSession().nodeExists("/a"));
+        assertFalse(root.getSession().hasPendingChanges());
+    }
+
+    @Test
+    public void shouldRestoreSnapshots() throws RepositoryException {
+        nodeFactory.setWritable(true);
+        Node root = new JsonMockService(nodeFactory).fromString("{a: {title: 'A'}, b: {}}");
+        Session session = root.getSession();
+        MockNodeFactory.Snapshot loaded = nodeFactory.snapshot(root);
+
+        root.getNode("a").remove();
+        session.save();
+        root.addNode("c");
+        MockNodeFactory.Snapshot step = nodeFactory.snapshot(root);
+        root.getNode("b").setProperty("title", "B");
+
+        nodeFactory.restore(step);
+        assertFalse(root.getNode("b").hasProperty("title"));
+        assertTrue(root.hasNode("c"));
+        assertFalse(root.hasNode("a"));
+
+        nodeFactory.restore(loaded);
+        assertFalse(session.hasPendingChanges());
+        assertEquals("A", session.getProperty("/a/title").getString());
+        assertFalse(session.nodeExists("/c"));
+        assertEquals("a", root.getNodes().nextNode().getName());
+
+        root.addNode("d");
+        nodeFactory.restore(loaded);
+        assertFalse(root.hasNode("d"));
+        assertEquals(2, root.getNodes().getSize());
+    }
+
+    @Test
+    public void shouldRestoreTheOrderOfNodesRemovedAndAddedAgain() throws RepositoryException {
+        nodeFactory.setWritable(true);
+        Node root = new JsonMockService(nodeFactory).fromString("{a: {}, b: {}, c: {}}");
+        Node b = root.getNode("b");
+        MockNodeFactory.Snapshot loaded = nodeFactory.snapshot(root);
+
+        b.remove();
+        root.addNode("b");
+        nodeFactory.restore(loaded);
+
+        assertEquals(Arrays.asList("a", "b", "c"), nodeNames(root));
+        assertSame(b, root.getNode("b"));
+
+        b.remove();
+        root.addNode("b");
+        root.getSession().save();
+        nodeFactory.restore(loaded);
+
+        assertEquals(Arrays.asList("a", "b", "c"), nodeNames(root));
+        assertSame(b, root.getNode("b"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotRestoreSnapshotDroppedByAnEarlierOne() throws RepositoryException {
+        nodeFactory.setWritable(true);
+        Node root = new JsonMockService(nodeFactory).fromString("{a: {}}");
+        MockNodeFactory.Snapshot loaded = nodeFactory.snapshot(root);
+        root.addNode("b");
+        MockNodeFactory.Snapshot step = nodeFactory.snapshot(root);
+
+        nodeFactory.restore(loaded);
+        root.addNode("c");
+        nodeFactory.restore(step);
+    }
+
+    @Test
+    public void shouldDropSavedChangesOnceSnapshotsAreReleased() throws RepositoryException {
+        nodeFactory.setWritable(true);
+        Node root = new JsonMockService(nodeFactory).fromString("{a: {}, b: {}}");
+        MockNodeFactory.Snapshot loaded = nodeFactory.snapshot(root);
+        root.getNode("b").remove();
+        root.getSession().save();
+        MockNodeFactory.Snapshot step = nodeFactory.snapshot(root);
+        for (int i = 0; i < 10; i++) {
+            root.setProperty("count", (long) i);
+            root.getSession().save();
+        }
+
+        assertEquals(11, nodeFactory.loggedChanges(root));
+        nodeFactory.release(loaded);
+        assertEquals(10, nodeFactory.loggedChanges(root));
+        nodeFactory.restore(step);
+        assertFalse(root.hasProperty("count"));
+        assertEquals(Arrays.asList("a"), nodeNames(root));
+        nodeFactory.release(step);
+        root.setProperty("count", 1L);
+        root.getSession().save();
+        assertEquals(0, nodeFactory.loggedChanges(root));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotRestoreReleasedSnapshot() throws RepositoryException {
+        nodeFactory.setWritable(true);
+        Node root = new JsonMockService(nodeFactory).fromString("{a: {}}");
+        MockNodeFactory.Snapshot loaded = nodeFactory.snapshot(root);
+        root.addNode("b");
+        root.getSession().save();
+
+        nodeFactory.release(loaded);
+        nodeFactory.restore(loaded);
+    }
+
+    @Test
+    public void shouldNotRecordCallsToStubOnlyMocks() throws RepositoryException {
+        nodeFactory.setStubOnly(true);
+        Node root = new JsonMockService(nodeFactory).fromString("{a: {title: 'A'}}");
+        Node node = root.getNode("a");
+        Property title = node.getProperty("title");
+        title.getValue().getString();
+        root.getSession().getNode("/a");
+
+        assertEquals("A", title.getString());
+        assertSame(node, root.getSession().getNode("/a"));
+        assertTrue(Mockito.mockingDetails(node).getInvocations().isEmpty());
+        assertTrue(Mockito.mockingDetails(title).getInvocations().isEmpty());
+        assertTrue(Mockito.mockingDetails(title.getValue()).getInvocations().isEmpty());
+        assertTrue(Mockito.mockingDetails(root.getSession()).getInvocations().isEmpty());
+    }
+
+    @Test
+    public void shouldNotGrowStubOnlyFixturesAsTheyAreTraversed() throws RepositoryException {
+        Node recording = new JsonMockService(nodeFactory).fromString("{a: {b: {title: 'B'}}}");
+        MockNodeFactory stubOnlyFactory = new MockNodeFactory();
+        stubOnlyFactory.setStubOnly(true);
+        Node stubOnly = new JsonMockService(stubOnlyFactory).fromString("{a: {b: {title: 'B'}}}");
+
+        traverse(recording);
+        traverse(stubOnly);
+        int recorded = Mockito.mockingDetails(recording.getNode("a")).getInvocations().size();
+        traverse(recording);
+        traverse(stubOnly);
+
+        assertTrue(recorded > 0);
+        assertTrue(Mockito.mockingDetails(recording.getNode("a")).getInvocations().size() > recorded);
+        assertTrue(Mockito.mockingDetails(stubOnly.getNode("a")).getInvocations().isEmpty());
+        assertTrue(Mockito.mockingDetails(stubOnly.getNode("a/b")).getInvocations().isEmpty());
+        assertTrue(Mockito.mockingDetails(stubOnly.getSession()).getInvocations().isEmpty());
+    }
+
+    @Test
+    public void shouldKeepOneFixtureWhenMadeStubOnlyAfterItsFirstNodes() throws RepositoryException {
+        Node first = nodeFactory.createNode(parent, "first");
+        nodeFactory.setStubOnly(true);
+        Node second = nodeFactory.createNode(parent, "second");
+        Node child = nodeFactory.createNode(first, "child");
+
+        assertSame(first.getSession(), second.getSession());
+        assertSame(first.getSession(), child.getSession());
+        assertSame(second, first.getSession().getNode(second.getPath()));
+        assertTrue(Mockito.mockingDetails(child).getInvocations().isEmpty());
+    }
+
+    private static List<String> nodeNames(Node node) throws RepositoryException {
+        List<String> names = new ArrayList<String>();
+        for (NodeIterator nodes = node.getNodes(); nodes.hasNext(); ) {
+            names.add(nodes.nextNode().getName());
+        }
+        return names;
+    }
+
+    private static List<String> propertyNames(Node node) throws RepositoryException {
+        List<String> names = new ArrayList<String>();
+        for (PropertyIterator properties = node.getProperties(); properties.hasNext(); ) {
+            names.add(properties.nextProperty().getName());
+        }
+        return names;
+    }
+
+    private static void traverse(Node node) throws RepositoryException {
+        if (node.hasProperty("title")) {
+            node.getProperty("title").getString();
+        }
+        for (NodeIterator children = node.getNodes(); children.hasNext(); ) {
+            Node child = children.nextNode();
+            node.getNode(child.getName());
+            traverse(child);
+        }
+    }
 }
@@ -7,8 +7,10 @@ import javax.jcr.Node;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -145,5 +147,35 @@ public class NodeIteratorAdapterTest {
 
     }
 
+    @Test
+    public void shouldIterateOverSharedSnapshotIndependently() {
+        Node[] snapshot = list.toArray(new Node[list.size()]);
+        NodeIteratorAdapter first = new NodeIteratorAdapter(snapshot);
+        NodeIteratorAdapter second = new NodeIteratorAdapter(snapshot);
+
+        first.skip(4);
+
+        assertEquals(fifthNode, first.nextNode());
+        assertFalse(first.hasNext());
+        assertEquals(node, second.nextNode());
+        assertEquals(4, second.getSize());
+    }
 
+    @Test
+    public void shouldIterateOverRange() {
+        nodeIteratorAdapter = new NodeIteratorAdapter(list.toArray(new Node[list.size()]), 1, 3);
+
+        assertEquals(2, nodeIteratorAdapter.getSize());
+        assertEquals(secondNode, nodeIteratorAdapter.nextNode());
+        assertEquals(1, nodeIteratorAdapter.getPosition());
+        assertEquals(thirdNode, nodeIteratorAdapter.nextNode());
+        assertFalse(nodeIteratorAdapter.hasNext());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void shouldNotSkipPastTheEnd() {
+        nodeIteratorAdapter = new NodeIteratorAdapter(list.iterator());
+
+        nodeIteratorAdapter.skip(6);
+    }
 }
@@ -0,0 +1,88 @@
+package com.tacitknowledge.jcr.testing.impl;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ResourceBinaryTest {
+
+    private static final String RESOURCE_PATH = "/files/air_jordan.jpg";
+
+    private byte[] expectedContent;
+
+    @Before
+    public void setUp() throws Exception {
+        InputStream stream = getClass().getResourceAsStream(RESOURCE_PATH);
+        try {
+            expectedContent = IOUtils.toByteArray(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void shouldReturnWholeContentOnEveryStream() throws Exception {
+        ResourceBinary binary = new ResourceBinary(RESOURCE_PATH);
+
+        InputStream firstStream = binary.getStream();
+        InputStream secondStream = binary.getStream();
+
+        assertNotSame(firstStream, secondStream);
+        assertArrayEquals(expectedContent, IOUtils.toByteArray(firstStream));
+        assertArrayEquals(expectedContent, IOUtils.toByteArray(secondStream));
+        assertEquals(-1, firstStream.read());
+    }
+
+    @Test
+    public void shouldReturnSize() throws Exception {
+        assertEquals(expectedContent.length, new ResourceBinary(RESOURCE_PATH).getSize());
+    }
+
+    @Test
+    public void shouldReadFromPosition() throws Exception {
+        ResourceBinary binary = new ResourceBinary(RESOURCE_PATH);
+        byte[] buffer = new byte[16];
+
+        assertEquals(16, binary.read(buffer, 100));
+        assertArrayEquals(Arrays.copyOfRange(expectedContent, 100, 116), buffer);
+
+        assertEquals(6, binary.read(buffer, expectedContent.length - 6));
+        assertArrayEquals(Arrays.copyOfRange(expectedContent, expectedContent.length - 6, expectedContent.length),
+                Arrays.copyOf(buffer, 6));
+
+        assertEquals(-1, binary.read(buffer, expectedContent.length));
+    }
+
+    @Test
+    public void shouldSupportSkipAndReset() throws Exception {
+        InputStream stream = new ResourceBinary(RESOURCE_PATH).getStream();
+
+        assertEquals(10, stream.skip(10));
+        stream.mark(100);
+        int byteAtTen = stream.read();
+        stream.reset();
+
+        assertEquals(expectedContent[10] & 0xFF, byteAtTen);
+        assertEquals(byteAtTen, stream.read());
+        assertEquals(expectedContent.length - 11, stream.available());
+    }
+
+    @Test
+    public void shouldReadAgainAfterDispose() throws Exception {
+        ResourceBinary binary = new ResourceBinary(RESOURCE_PATH);
+        binary.getSize();
+        binary.dispose();
+
+        assertArrayEquals(expectedContent, IOUtils.toByteArray(binary.getStream()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMissingResource() {
+        new ResourceBinary("/files/does_not_exist.jpg");
+    }
+}
@@ -0,0 +1,123 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import org.junit.Test;
+
+import javax.jcr.query.InvalidQueryException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class Sql2ParserTest {
+
+    @Test
+    public void shouldParseSelectorAndConstraints() throws InvalidQueryException {
+        ParsedQuery query = Sql2Parser.parse("SELECT * FROM [nt:unstructured] AS n " +
+                "WHERE ISDESCENDANTNODE(n, '/content') AND n.[sling:resourceType] = 'x'");
+
+        assertEquals("nt:unstructured", query.getNodeTypeName());
+        assertEquals("n", query.getSelectorName());
+        assertEquals("(ISDESCENDANTNODE(/content) AND [n].[sling:resourceType] = 'x')",
+                query.getConstraint().toString());
+    }
+
+    @Test
+    public void shouldDefaultSelectorToNodeType() throws InvalidQueryException {
+        ParsedQuery query = Sql2Parser.parse("select * from [nt:base] where [nt:base].title = 'x'");
+
+        assertEquals("nt:base", query.getSelectorName());
+        assertNull(Sql2Parser.parse("SELECT * FROM [nt:base]").getConstraint());
+    }
+
+    @Test
+    public void shouldGiveAndPrecedenceOverOr() throws InvalidQueryException {
+        ParsedQuery query = Sql2Parser.parse("SELECT * FROM [nt:base] AS n " +
+                "WHERE n.a = 'it''s' OR NOT n.b <> -1.5 AND n.c LIKE CAST('5' AS LONG)");
+
+        assertEquals("([n].[a] = 'it''s' OR (NOT [n].[b] <> CAST('-1.5' AS DOUBLE)" +
+                " AND [n].[c] LIKE CAST('5' AS LONG)))", query.getConstraint().toString());
+    }
+
+    @Test
+    public void shouldCollectBindVariables() throws InvalidQueryException {
+        ParsedQuery query = Sql2Parser.parse("SELECT * FROM [nt:base] AS n WHERE n.a = $first AND n.b > $second");
+
+        assertEquals(new HashSet<String>(Arrays.asList("first", "second")), query.getBindVariableNames());
+    }
+
+    @Test
+    public void shouldPlanScopeAndCheapestFiltersFirst() throws InvalidQueryException {
+        QueryPlan plan = QueryPlan.plan(Sql2Parser.parse("SELECT * FROM [nt:unstructured] AS n " +
+                "WHERE n.title LIKE 'a%' AND ISDESCENDANTNODE(n, '/content') AND n.[sling:resourceType] = 'x' " +
+                "AND ISDESCENDANTNODE(n, '/content/site')"));
+
+        assertEquals("descendants of /content/site | ISDESCENDANTNODE(/content) | [n].[sling:resourceType] = 'x'" +
+                " | [nt:unstructured] | [n].[title] LIKE 'a%'", plan.toString());
+    }
+
+    @Test
+    public void shouldParseOrderings() throws InvalidQueryException {
+        QueryPlan plan = QueryPlan.plan(Sql2Parser.parse("SELECT * FROM [nt:base] AS n " +
+                "WHERE n.title IS NOT NULL ORDER BY n.rank DESC, LOWER(n.title) ASC, NAME(n)"));
+
+        assertEquals("traverse / | [n].[title] IS NOT NULL" +
+                " | ORDER BY [n].[rank] DESC, LOWER([n].[title]), NAME([n])", plan.toString());
+        assertInvalid("SELECT * FROM [nt:base] AS n ORDER n.title");
+        assertInvalid("SELECT * FROM [nt:base] AS n ORDER BY n.title DESC ASC");
+    }
+
+    @Test
+    public void shouldNotScopeDisjunctions() throws InvalidQueryException {
+        QueryPlan plan = QueryPlan.plan(Sql2Parser.parse("SELECT * FROM [nt:base] AS n " +
+                "WHERE ISCHILDNODE(n, '/a') OR ISCHILDNODE(n, '/b')"));
+
+        assertNull(plan.getScope());
+        assertEquals(1, plan.getFilters().size());
+    }
+
+    @Test
+    public void shouldParseFullTextSearches() throws InvalidQueryException {
+        ParsedQuery query = Sql2Parser.parse("SELECT * FROM [nt:base] AS n " +
+                "WHERE CONTAINS(n.*, 'jcr -mock') OR CONTAINS(n.[jcr:title], $text) OR CONTAINS(*, '\"a b\"')");
+
+        assertEquals("((CONTAINS([n].*, 'jcr -mock') OR CONTAINS([n].[jcr:title], $text))" +
+                " OR CONTAINS([n].*, '\"a b\"'))", query.getConstraint().toString());
+        assertInvalid("SELECT * FROM [nt:base] AS n WHERE CONTAINS(n.*, '\"unclosed')");
+        assertInvalid("SELECT * FROM [nt:base] AS n WHERE CONTAINS(n.*, '- OR')");
+    }
+
+    @Test
+    public void shouldMatchFullTextExpressions() throws InvalidQueryException {
+        List<List<String>> texts = Arrays.asList(
+                FullTextTokenizer.tokenize("Content Repository for Java"),
+                FullTextTokenizer.tokenize("e-mail"));
+
+        assertTrue(FullTextExpression.parse("java repository").matches(texts));
+        assertTrue(FullTextExpression.parse("\"content repository\" E-Mail").matches(texts));
+        assertFalse(FullTextExpression.parse("\"repository content\"").matches(texts));
+        assertFalse(FullTextExpression.parse("java -mail").matches(texts));
+        assertTrue(FullTextExpression.parse("python OR java").matches(texts));
+        assertFalse(FullTextExpression.parse("python or java").matches(texts));
+    }
+
+    @Test
+    public void shouldRejectInvalidStatements() {
+        assertInvalid("SELECT * FROM [nt:base] AS n WHERE m.title = 'x'");
+        assertInvalid("SELECT * FROM [nt:base] AS n WHERE n.title = ");
+        assertInvalid("SELECT * FROM [nt:base] AS n WHERE ISDESCENDANTNODE(n, 'content')");
+        assertInvalid("SELECT * FROM [nt:base] AS n INNER JOIN [nt:base] AS m ON ISCHILDNODE(n, m)");
+        assertInvalid("SELECT * FROM [nt:base] AS n WHERE n.title = 'x");
+        assertInvalid("SELECT * FROM [nt:base] AS n WHERE n.title = 'x' garbage");
+        assertInvalid("DELETE FROM [nt:base]");
+    }
+
+    private static void assertInvalid(String statement) {
+        try {
+            Sql2Parser.parse(statement);
+            fail("Should not parse " + statement);
+        } catch (InvalidQueryException e) {
+            // expected
+        }
+    }
+}
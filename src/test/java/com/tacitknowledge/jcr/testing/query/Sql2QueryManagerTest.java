@@ -0,0 +1,421 @@
+package com.tacitknowledge.jcr.testing.query;
+
+import com.tacitknowledge.jcr.testing.FullTextIndex;
+import com.tacitknowledge.jcr.testing.NodeFactory;
+import com.tacitknowledge.jcr.testing.PropertyIndex;
+import com.tacitknowledge.jcr.testing.impl.HashPropertyIndex;
+import com.tacitknowledge.jcr.testing.impl.InMemoryNodeFactory;
+import com.tacitknowledge.jcr.testing.impl.InMemoryValue;
+import com.tacitknowledge.jcr.testing.impl.InvertedFullTextIndex;
+import com.tacitknowledge.jcr.testing.impl.MockNodeFactory;
+import com.tacitknowledge.jcr.testing.utils.JcrMockingUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.UnsupportedRepositoryOperationException;
+import javax.jcr.query.InvalidQueryException;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+public class Sql2QueryManagerTest {
+
+    private static final String CONTENT = "{" +
+            "content: {" +
+                "site: {" +
+                    "'sling:resourceType': 'site/page'," +
+                    "title: 'Home'," +
+                    "news: {" +
+                        "'sling:resourceType': 'site/article'," +
+                        "title: 'Latest News'," +
+                        "rank: 'type:Long, value:5'," +
+                        "published: 'type:Date, value:2012-12-24'" +
+                    "}," +
+                    "about: {" +
+                        "'jcr:primaryType': 'nt:unstructured'," +
+                        "'sling:resourceType': 'site/page'," +
+                        "title: 'About Us'," +
+                        "rank: 'type:Long, value:10'," +
+                        "tags: 'type:String, multiple:true, value:company'" +
+                    "}," +
+                    "assets: {" +
+                        "'jcr:primaryType': 'sling:Folder'" +
+                    "}" +
+                "}" +
+            "}," +
+            "apps: {" +
+                "component: {" +
+                    "'sling:resourceType': 'site/page'" +
+                "}" +
+            "}" +
+        "}";
+
+    private List<Node> roots;
+
+    @Before
+    public void setUp() throws Exception {
+        roots = Arrays.asList(
+                createNodes(new MockNodeFactory()),
+                createNodes(new InMemoryNodeFactory()));
+    }
+
+    private static Node createNodes(NodeFactory nodeFactory) throws Exception {
+        return JcrMockingUtils.createNodesFromJsonString(CONTENT, nodeFactory);
+    }
+
+    @Test
+    public void shouldFindDescendantsByPropertyValue() throws RepositoryException {
+        for (Node root : roots) {
+            assertEquals(Arrays.asList("/content/site", "/content/site/about"), paths(root,
+                    "SELECT * FROM [nt:unstructured] AS n " +
+                    "WHERE ISDESCENDANTNODE(n, '/content') AND n.[sling:resourceType] = 'site/page'"));
+        }
+    }
+
+    @Test
+    public void shouldWalkTheWholeTreeWithoutPathConstraint() throws RepositoryException {
+        for (Node root : roots) {
+            assertEquals(Arrays.asList("/content/site", "/content/site/about", "/apps/component"),
+                    paths(root, "SELECT * FROM [nt:base] WHERE [sling:resourceType] = 'site/page'"));
+            assertEquals("/", paths(root, "SELECT * FROM [nt:base]").get(0));
+        }
+    }
+
+    @Test
+    public void shouldScopeToChildrenAndSameNode() throws RepositoryException {
+        for (Node root : roots) {
+            assertEquals(Arrays.asList("/content/site/news", "/content/site/about", "/content/site/assets"),
+                    paths(root, "select * from [nt:base] as n where ischildnode(n, [/content/site])"));
+            assertEquals(Arrays.asList("/content/site/news"),
+                    paths(root, "SELECT * FROM [nt:base] AS n WHERE ISSAMENODE(n, '/content/site/news/')"));
+            assertTrue(paths(root, "SELECT * FROM [nt:base] AS n WHERE ISDESCENDANTNODE(n, '/missing')").isEmpty());
+        }
+    }
+
+    @Test
+    public void shouldSelectNodesOfType() throws RepositoryException {
+        for (Node root : roots) {
+            assertEquals(Arrays.asList("/content/site/assets"), paths(root,
+                    "SELECT * FROM [sling:Folder] AS n WHERE ISDESCENDANTNODE(n, '/content')"));
+        }
+    }
+
+    @Test
+    public void shouldCompareValuesInThePropertyType() throws RepositoryException {
+        for (Node root : roots) {
+            assertEquals(Arrays.asList("/content/site/about"),
+                    paths(root, "SELECT * FROM [nt:base] AS n WHERE n.rank > 6"));
+            assertEquals(Arrays.asList("/content/site/news", "/content/site/about"),
+                    paths(root, "SELECT * FROM [nt:base] AS n WHERE n.rank >= 5 AND n.rank <= 10"));
+            assertEquals(Arrays.asList("/content/site/news"), paths(root,
+                    "SELECT * FROM [nt:base] AS n WHERE n.published < CAST('2013-01-01T00:00:00.000Z' AS DATE)"));
+            assertEquals(Arrays.asList("/content/site/news"),
+                    paths(root, "SELECT * FROM [nt:base] AS n WHERE n.published = '2012-12-24'"));
+            assertEquals(Arrays.asList("/content/site/news"),
+                    paths(root, "SELECT * FROM [nt:base] AS n WHERE n.published = '2012-12-24T00:00:00'"));
+            assertEquals(Arrays.asList("/content/site/about"),
+                    paths(root, "SELECT * FROM [nt:base] AS n WHERE n.tags = 'company'"));
+        }
+    }
+
+    @Test
+    public void shouldSupportLikeFunctionsAndBooleanOperators() throws RepositoryException {
+        for (Node root : roots) {
+            assertEquals(Arrays.asList("/content/site/about"),
+                    paths(root, "SELECT * FROM [nt:base] AS n WHERE LOWER(n.title) LIKE 'about%'"));
+            assertEquals(Arrays.asList("/content/site/news"),
+                    paths(root, "SELECT * FROM [nt:base] AS n WHERE NAME(n) = 'news'"));
+            assertEquals(Arrays.asList("/content/site", "/content/site/news"), paths(root,
+                    "SELECT * FROM [nt:base] AS n WHERE n.title IS NOT NULL AND NOT n.title LIKE '%Us'"));
+            assertEquals(Arrays.asList("/content/site/news", "/apps/component"), paths(root,
+                    "SELECT * FROM [nt:base] AS n WHERE (n.rank = 5 OR n.title IS NULL) AND n.[sling:resourceType] IS NOT NULL"));
+        }
+    }
+
+    @Test
+    public void shouldBindVariables() throws RepositoryException {
+        for (Node root : roots) {
+            Query query = queryManager(root).createQuery(
+                    "SELECT * FROM [nt:base] AS n WHERE n.[sling:resourceType] = $type", Query.JCR_SQL2);
+            assertArrayEquals(new String[]{"type"}, query.getBindVariableNames());
+            query.bindValue("type", new InMemoryValue(PropertyType.STRING, "site/article", "site/article"));
+            assertEquals(Arrays.asList("/content/site/news"), paths(query.execute().getNodes()));
+            try {
+                query.bindValue("other", new InMemoryValue(PropertyType.STRING, "x", "x"));
+                fail("Unknown variables should be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = InvalidQueryException.class)
+    public void shouldFailToExecuteWithUnboundVariables() throws RepositoryException {
+        queryManager(roots.get(0)).createQuery(
+                "SELECT * FROM [nt:base] AS n WHERE n.title = $title", Query.JCR_SQL2).execute();
+    }
+
+    @Test
+    public void shouldApplyOffsetAndLimitLazily() throws RepositoryException {
+        for (Node root : roots) {
+            Query query = queryManager(root).createQuery(
+                    "SELECT * FROM [nt:base] AS n WHERE ISDESCENDANTNODE(n, '/content')", Query.JCR_SQL2);
+            query.setOffset(1);
+            query.setLimit(2);
+            NodeIterator nodes = query.execute().getNodes();
+            assertEquals(-1, nodes.getSize());
+            assertEquals(Arrays.asList("/content/site/news", "/content/site/about"), paths(nodes));
+            assertEquals(2, nodes.getPosition());
+        }
+    }
+
+    @Test
+    public void shouldOrderResultsByValuesInTheirType() throws RepositoryException {
+        for (Node root : roots) {
+            assertEquals(Arrays.asList("/content/site/about", "/content/site", "/content/site/news"),
+                    paths(root, "SELECT * FROM [nt:base] AS n WHERE n.title IS NOT NULL ORDER BY n.title"));
+            assertEquals(Arrays.asList("/content/site/about", "/content/site/news", "/content/site/assets"),
+                    paths(root, "SELECT * FROM [nt:base] AS n WHERE ISCHILDNODE(n, '/content/site') " +
+                            "ORDER BY n.rank DESC"));
+            assertEquals(Arrays.asList("/apps/component", "/content/site/about", "/content/site"),
+                    paths(root, "SELECT * FROM [nt:base] AS n WHERE [sling:resourceType] = 'site/page' " +
+                            "ORDER BY n.title ASC, NAME(n) DESC"));
+        }
+    }
+
+    @Test
+    public void shouldPageThroughOrderedResults() throws RepositoryException {
+        String statement = "SELECT * FROM [nt:base] AS n ORDER BY LOWER(NAME(n)) DESC";
+        for (Node root : roots) {
+            List<String> all = paths(root, statement);
+            assertEquals(Arrays.asList("/content/site", "/content/site/news", "/content", "/apps/component",
+                    "/content/site/assets", "/apps", "/content/site/about", "/"), all);
+
+            List<String> paged = new ArrayList<String>();
+            for (int offset = 0; offset < all.size(); offset += 3) {
+                Query query = queryManager(root).createQuery(statement, Query.JCR_SQL2);
+                query.setOffset(offset);
+                query.setLimit(3);
+                NodeIterator page = query.execute().getNodes();
+                assertEquals(Math.min(3, all.size() - offset), page.getSize());
+                paged.addAll(paths(page));
+            }
+            assertEquals(all, paged);
+        }
+    }
+
+    @Test
+    public void shouldReturnRowsWithColumns() throws RepositoryException {
+        for (Node root : roots) {
+            QueryResult result = queryManager(root).createQuery(
+                    "SELECT n.title AS heading, n.rank FROM [nt:base] AS n WHERE ISCHILDNODE(n, '/content/site')",
+                    Query.JCR_SQL2).execute();
+            assertArrayEquals(new String[]{"heading", "rank"}, result.getColumnNames());
+            assertArrayEquals(new String[]{"n"}, result.getSelectorNames());
+
+            RowIterator rows = result.getRows();
+            Row row = rows.nextRow();
+            assertEquals("/content/site/news", row.getPath("n"));
+            assertEquals("Latest News", row.getValue("heading").getString());
+            assertEquals(5L, row.getValues()[1].getLong());
+            rows.skip(1);
+            assertNull(rows.nextRow().getValue("heading"));
+            assertFalse(rows.hasNext());
+        }
+    }
+
+    @Test
+    public void shouldReturnPathColumnsForSelectAll() throws RepositoryException {
+        QueryResult result = queryManager(roots.get(1)).createQuery(
+                "SELECT * FROM [nt:base] AS n WHERE ISSAMENODE(n, '/apps')", Query.JCR_SQL2).execute();
+        assertArrayEquals(new String[]{"jcr:path", "jcr:score"}, result.getColumnNames());
+        assertEquals("/apps", result.getRows().nextRow().getValue("jcr:path").getString());
+    }
+
+    @Test
+    public void shouldLookUpIndexedEqualities() throws Exception {
+        MockNodeFactory mockNodeFactory = new MockNodeFactory();
+        InMemoryNodeFactory inMemoryNodeFactory = new InMemoryNodeFactory();
+        mockNodeFactory.setPropertyIndex(spy(new HashPropertyIndex("sling:resourceType")));
+        inMemoryNodeFactory.setPropertyIndex(spy(new HashPropertyIndex("sling:resourceType")));
+
+        for (NodeFactory nodeFactory : Arrays.<NodeFactory>asList(mockNodeFactory, inMemoryNodeFactory)) {
+            Node root = createNodes(nodeFactory);
+            PropertyIndex index = nodeFactory == mockNodeFactory
+                    ? mockNodeFactory.getPropertyIndex() : inMemoryNodeFactory.getPropertyIndex();
+            reset(index);
+            assertEquals(Arrays.asList("/content/site", "/content/site/about"), paths(root,
+                    "SELECT * FROM [nt:unstructured] AS n " +
+                    "WHERE ISDESCENDANTNODE(n, '/content') AND n.[sling:resourceType] = 'site/page'"));
+            assertEquals(Arrays.asList("/content/site/news"), paths(root,
+                    "SELECT * FROM [nt:base] AS n WHERE n.title = 'Latest News' AND [sling:resourceType] = $type",
+                    "type", "site/article"));
+            verify(index).getNodes("sling:resourceType", "site/page");
+            verify(index).getNodes("sling:resourceType", "site/article");
+
+            reset(index);
+            assertEquals(Arrays.asList("/content/site/news"),
+                    paths(root, "SELECT * FROM [nt:base] AS n WHERE ISSAMENODE(n, '/content/site/news')"
+                            + " AND [sling:resourceType] = 'site/article'"));
+            verify(index, never()).getNodes(anyString(), anyString());
+        }
+    }
+
+    @Test
+    public void shouldSearchTheWordsOfStringProperties() throws RepositoryException {
+        for (Node root : roots) {
+            assertEquals(Arrays.asList("/content/site/news"),
+                    paths(root, "SELECT * FROM [nt:base] AS n WHERE CONTAINS(n.*, 'NEWS')"));
+            assertEquals(Arrays.asList("/content/site/about"),
+                    paths(root, "SELECT * FROM [nt:base] AS n WHERE CONTAINS(n.title, '\"about us\"')"));
+            assertTrue(paths(root, "SELECT * FROM [nt:base] AS n WHERE CONTAINS(n.*, '\"us about\"')").isEmpty());
+            assertEquals(Arrays.asList("/content/site", "/content/site/about"),
+                    paths(root, "SELECT * FROM [nt:base] AS n WHERE CONTAINS(*, 'home OR company')"));
+            assertEquals(Arrays.asList("/content/site/news"),
+                    paths(root, "SELECT * FROM [nt:base] AS n WHERE CONTAINS(n.*, 'site -page')"));
+            assertTrue(paths(root, "SELECT * FROM [nt:base] AS n WHERE CONTAINS(n.*, '5')").isEmpty());
+        }
+    }
+
+    @Test
+    public void shouldLookUpIndexedWords() throws Exception {
+        MockNodeFactory mockNodeFactory = new MockNodeFactory();
+        InMemoryNodeFactory inMemoryNodeFactory = new InMemoryNodeFactory();
+        mockNodeFactory.setFullTextIndex(spy(new InvertedFullTextIndex()));
+        inMemoryNodeFactory.setFullTextIndex(spy(new InvertedFullTextIndex()));
+
+        for (NodeFactory nodeFactory : Arrays.<NodeFactory>asList(mockNodeFactory, inMemoryNodeFactory)) {
+            Node root = createNodes(nodeFactory);
+            FullTextIndex index = nodeFactory == mockNodeFactory
+                    ? mockNodeFactory.getFullTextIndex() : inMemoryNodeFactory.getFullTextIndex();
+            reset(index);
+            assertEquals(Arrays.asList("/content/site/about"), paths(root,
+                    "SELECT * FROM [nt:base] AS n WHERE ISDESCENDANTNODE(n, '/content') AND CONTAINS(n.*, 'site us')"));
+            verify(index).getNodes("site");
+            verify(index).getNodes("us");
+
+            assertEquals(Arrays.asList("/content/site", "/content/site/about", "/apps/component"), paths(root,
+                    "SELECT * FROM [nt:base] AS n WHERE CONTAINS(n.*, $text)", "text", "home OR -news page"));
+            verify(index).getNodes("home");
+            verify(index).getNodes("page");
+            verify(index, never()).getNodes("news");
+        }
+    }
+
+    @Test
+    public void shouldReturnIndexedNodesInDocumentOrder() throws Exception {
+        MockNodeFactory indexedMockNodeFactory = new MockNodeFactory();
+        indexedMockNodeFactory.setPropertyIndex(new HashPropertyIndex("flag"));
+        InMemoryNodeFactory indexedInMemoryNodeFactory = new InMemoryNodeFactory();
+        indexedInMemoryNodeFactory.setPropertyIndex(new HashPropertyIndex("flag"));
+        String statement = "SELECT * FROM [nt:base] AS n WHERE n.flag = 'x'";
+
+        for (NodeFactory nodeFactory : Arrays.<NodeFactory>asList(indexedMockNodeFactory, new MockNodeFactory(),
+                indexedInMemoryNodeFactory, new InMemoryNodeFactory())) {
+            Node root = createNodes(nodeFactory);
+            for (String path : new String[]{"apps/component", "content/site/about", "content/site"}) {
+                nodeFactory.createProperty(root.getNode(path), "flag", "x", PropertyType.STRING);
+            }
+
+            assertEquals(Arrays.asList("/content/site", "/content/site/about", "/apps/component"),
+                    paths(root, statement));
+        }
+    }
+
+    @Test
+    public void shouldOnlyReturnIndexedNodesOfTheQueriedSession() throws Exception {
+        MockNodeFactory nodeFactory = new MockNodeFactory();
+        nodeFactory.setSessionPerRoot(true);
+        nodeFactory.setPropertyIndex(new HashPropertyIndex());
+        Node first = createNodes(nodeFactory);
+        Node second = createNodes(nodeFactory);
+
+        for (Node root : Arrays.asList(first, second)) {
+            List<Node> nodes = new ArrayList<Node>();
+            NodeIterator iterator = queryManager(root).createQuery(
+                    "SELECT * FROM [nt:base] WHERE [sling:resourceType] = 'site/article'", Query.JCR_SQL2)
+                    .execute().getNodes();
+            while (iterator.hasNext()) {
+                nodes.add(iterator.nextNode());
+            }
+            assertEquals(Arrays.asList(root.getNode("content/site/news")), nodes);
+        }
+    }
+
+    @Test
+    public void shouldSeeWritesToWritableNodes() throws Exception {
+        MockNodeFactory nodeFactory = new MockNodeFactory();
+        nodeFactory.setWritable(true);
+        nodeFactory.setPropertyIndex(new HashPropertyIndex());
+        Node root = createNodes(nodeFactory);
+        String statement = "SELECT * FROM [nt:base] WHERE [sling:resourceType] = 'site/article'";
+
+        root.getNode("content/site/news").remove();
+        root.getNode("content/site").addNode("blog").setProperty("sling:resourceType", "site/article");
+        assertEquals(Arrays.asList("/content/site/blog"), paths(root, statement));
+
+        root.getSession().refresh(false);
+        assertEquals(Arrays.asList("/content/site/news"), paths(root, statement));
+    }
+
+    @Test
+    public void shouldKeepThePlansOfStatementsRunLast() throws RepositoryException {
+        String repeated = "SELECT * FROM [nt:base] AS n WHERE n.title = 'repeated'";
+        for (int i = 0; i < Sql2QueryManager.MAX_CACHED_PLANS * 2; i++) {
+            Sql2QueryManager.getPlan("SELECT * FROM [nt:base] AS n WHERE n.title = '" + i + "'");
+            Sql2QueryManager.getPlan(repeated);
+        }
+
+        assertTrue(Sql2QueryManager.isCached(repeated));
+        assertFalse(Sql2QueryManager.isCached("SELECT * FROM [nt:base] AS n WHERE n.title = '0'"));
+    }
+
+    @Test(expected = UnsupportedRepositoryOperationException.class)
+    public void shouldNotSupportQueryObjectModels() throws RepositoryException {
+        queryManager(roots.get(0)).getQOMFactory().selector("nt:base", "n");
+    }
+
+    @Test(expected = InvalidQueryException.class)
+    public void shouldRejectOtherLanguages() throws RepositoryException {
+        queryManager(roots.get(0)).createQuery("//element(*, nt:base)", Query.XPATH);
+    }
+
+    private static QueryManager queryManager(Node root) throws RepositoryException {
+        return root.getSession().getWorkspace().getQueryManager();
+    }
+
+    private static List<String> paths(Node root, String statement) throws RepositoryException {
+        return paths(queryManager(root).createQuery(statement, Query.JCR_SQL2).execute().getNodes());
+    }
+
+    private static List<String> paths(Node root, String statement, String variable, String value)
+            throws RepositoryException {
+        Query query = queryManager(root).createQuery(statement, Query.JCR_SQL2);
+        query.bindValue(variable, new InMemoryValue(PropertyType.STRING, value, value));
+        return paths(query.execute().getNodes());
+    }
+
+    private static List<String> paths(NodeIterator nodes) throws RepositoryException {
+        List<String> paths = new ArrayList<String>();
+        while (nodes.hasNext()) {
+            paths.add(nodes.nextNode().getPath());
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,111 @@
+package com.tacitknowledge.jcr.testing.utils;
+
+import com.tacitknowledge.jcr.testing.impl.InMemoryNodeFactory;
+import com.tacitknowledge.jcr.testing.impl.MockNodeFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.PropertyType;
+
+import static org.junit.Assert.*;
+
+public class FixtureCacheTest {
+
+    private static final String JSON_NODE_DEFINITION =
+            "{" +
+            "    products: {" +
+            "        productA: {" +
+            "            'jcr:primaryType': 'nt:unstructured'," +
+            "            name: 'Air Jordan'," +
+            "            views: 'type:Long, value:3'," +
+            "            tags: ['shoe', 'basketball']" +
+            "        }" +
+            "    }" +
+            "}";
+
+    private FixtureCache fixtureCache;
+
+    @Before
+    public void setUp() {
+        fixtureCache = FixtureCache.getInstance();
+        fixtureCache.clear();
+    }
+
+    @After
+    public void tearDown() {
+        fixtureCache.clear();
+    }
+
+    @Test
+    public void shouldParseSameContentOnce() throws Exception {
+        Node firstRoot = fixtureCache.fromString(JSON_NODE_DEFINITION, new InMemoryNodeFactory());
+        Node secondRoot = fixtureCache.fromString(JSON_NODE_DEFINITION, new InMemoryNodeFactory());
+
+        assertEquals(1, fixtureCache.size());
+        assertNotSame(firstRoot, secondRoot);
+        assertNotSame(firstRoot.getNode("products/productA"), secondRoot.getNode("products/productA"));
+        assertEquals("Air Jordan", secondRoot.getProperty("products/productA/name").getString());
+        assertEquals(3L, secondRoot.getProperty("products/productA/views").getLong());
+        assertEquals(2, secondRoot.getProperty("products/productA/tags").getValues().length);
+        assertEquals("nt:unstructured", secondRoot.getNode("products/productA").getPrimaryNodeType().getName());
+        assertEquals("/products/productA", secondRoot.getNode("products/productA").getPath());
+    }
+
+    @Test
+    public void shouldNotLeakChangesBetweenForks() throws Exception {
+        InMemoryNodeFactory firstFactory = new InMemoryNodeFactory();
+        Node firstRoot = fixtureCache.fromString(JSON_NODE_DEFINITION, firstFactory);
+        Node productA = firstRoot.getNode("products/productA");
+        firstFactory.createNode(productA, "added");
+        firstFactory.createProperty(productA, "addedProperty", "value", PropertyType.STRING);
+
+        Node secondRoot = fixtureCache.fromString(JSON_NODE_DEFINITION, new InMemoryNodeFactory());
+
+        assertTrue(firstRoot.hasNode("products/productA/added"));
+        assertFalse(secondRoot.hasNode("products/productA/added"));
+        assertFalse(secondRoot.hasProperty("products/productA/addedProperty"));
+    }
+
+    @Test
+    public void shouldResolveForkPathsThroughItsOwnSession() throws Exception {
+        InMemoryNodeFactory nodeFactory = new InMemoryNodeFactory();
+        Node root = fixtureCache.fromString(JSON_NODE_DEFINITION, nodeFactory);
+
+        Node productA = root.getSession().getNode("/products/productA");
+
+        assertSame(root.getNode("products/productA"), productA);
+        assertSame(root.getSession(), productA.getSession());
+        assertSame(root.getSession(), nodeFactory.createNode(productA, "added").getSession());
+        assertNotSame(nodeFactory.getSession(), root.getSession());
+    }
+
+    @Test
+    public void shouldReplayTemplateIntoMockNodeFactory() throws Exception {
+        Node root = fixtureCache.fromString(JSON_NODE_DEFINITION, new MockNodeFactory());
+
+        Node productA = root.getNode("products/productA");
+        assertEquals("Air Jordan", productA.getProperty("name").getString());
+        assertEquals(3L, productA.getProperty("views").getLong());
+        assertTrue(productA.isNodeType("nt:unstructured"));
+        assertEquals("basketball", productA.getProperty("tags").getValues()[1].getString());
+        JcrTestingUtils.assertIteratorCount(productA.getProperties(), 4);
+    }
+
+    @Test
+    public void shouldCacheClasspathResources() throws Exception {
+        Node firstRoot = JcrMockingUtils.createNodesFromCachedJsonResource("/assets.json", new InMemoryNodeFactory());
+        Node secondRoot = JcrMockingUtils.createNodesFromCachedJsonResource("/assets.json");
+
+        assertEquals(1, fixtureCache.size());
+        assertEquals("jpg", firstRoot.getProperty("digitalAsset/mimeType").getString());
+        assertEquals("jpg", secondRoot.getProperty("digitalAsset/mimeType").getString());
+        assertNotNull(secondRoot.getProperty("digitalAsset/binary/jcr:content").getBinary());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMissingResource() throws Exception {
+        fixtureCache.fromResource("/does-not-exist.json", new InMemoryNodeFactory());
+    }
+}
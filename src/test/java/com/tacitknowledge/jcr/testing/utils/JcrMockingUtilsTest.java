@@ -1,14 +1,25 @@
 package com.tacitknowledge.jcr.testing.utils;
 
+import com.tacitknowledge.jcr.testing.impl.InMemoryNodeFactory;
+import org.apache.commons.io.IOUtils;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import javax.jcr.Binary;
 import javax.jcr.Node;
 import javax.jcr.Property;
 import javax.jcr.RepositoryException;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -18,6 +29,9 @@ import static org.junit.Assert.assertNotNull;
  */
 public class JcrMockingUtilsTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private InputStream assetsJsonFile;
 
     private String jsonNodeHierarchy =
@@ -65,6 +79,63 @@ public class JcrMockingUtilsTest {
         assertFileNodeHierarchy(rootNode);
     }
 
+    @Test
+    public void shouldCreateNodesFromReader() throws Exception {
+        Node rootNode = JcrMockingUtils.createNodesFromJsonReader(new StringReader(jsonNodeHierarchy));
+        assertNodeHierarchy(rootNode);
+    }
+
+    @Test
+    public void shouldCreateNodeStructureFromJsonFilePath() throws Exception {
+        File jsonFile = copyAssetsJson(temporaryFolder.newFile("assets.json"));
+        Node rootNode = JcrMockingUtils.createNodesFromJsonFile(jsonFile.toPath());
+        assertFileNodeHierarchy(rootNode);
+    }
+
+    @Test
+    public void shouldCreateNodeStructureFromGzipFile() throws Exception {
+        File jsonFile = temporaryFolder.newFile("assets.json.gz");
+        GZIPOutputStream gzipStream = new GZIPOutputStream(new FileOutputStream(jsonFile));
+        copyAssetsJson(gzipStream);
+        gzipStream.close();
+
+        Node rootNode = JcrMockingUtils.createNodesFromJsonFile(jsonFile.toPath(), new InMemoryNodeFactory());
+        assertFileNodeHierarchy(rootNode);
+    }
+
+    @Test
+    public void shouldCreateNodeStructureFromZipFile() throws Exception {
+        File jsonFile = temporaryFolder.newFile("assets.zip");
+        ZipOutputStream zipStream = new ZipOutputStream(new FileOutputStream(jsonFile));
+        zipStream.putNextEntry(new ZipEntry("assets/"));
+        zipStream.closeEntry();
+        zipStream.putNextEntry(new ZipEntry("assets/assets.json"));
+        copyAssetsJson(zipStream);
+        zipStream.closeEntry();
+        zipStream.close();
+
+        Node rootNode = JcrMockingUtils.createNodesFromJsonFile(jsonFile.toPath());
+        assertFileNodeHierarchy(rootNode);
+    }
+
+    private File copyAssetsJson(File file) throws IOException {
+        OutputStream outputStream = new FileOutputStream(file);
+        try {
+            copyAssetsJson(outputStream);
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+
+    private void copyAssetsJson(OutputStream outputStream) throws IOException {
+        InputStream inputStream = getClass().getResourceAsStream("/assets.json");
+        try {
+            IOUtils.copy(inputStream, outputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
 
     private void assertFileNodeHierarchy(Node rootNode) throws RepositoryException {
         assertNotNull(rootNode);
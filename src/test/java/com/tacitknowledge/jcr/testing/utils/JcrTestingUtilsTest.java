@@ -1,5 +1,7 @@
 package com.tacitknowledge.jcr.testing.utils;
 
+import com.tacitknowledge.jcr.testing.impl.AccessProfiler;
+import com.tacitknowledge.jcr.testing.impl.MockNodeFactory;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -68,4 +70,37 @@ public class JcrTestingUtilsTest {
         JcrTestingUtils.assertProperty(property, 1, "value");
     }
 
+    @Test
+    public void shouldAssertMaxLookups() throws RepositoryException {
+        AccessProfiler profiler = profiledLookups();
+
+        JcrTestingUtils.assertMaxLookups(profiler, "/content", 3);
+        JcrTestingUtils.assertMaxInvocations(profiler, "/content", "getNode", 3);
+        try {
+            JcrTestingUtils.assertMaxLookups(profiler, "/content", 2);
+            fail("Should have thrown AssertionError since three lookups were made.");
+        } catch (AssertionError error) {
+            assertEquals("Expected at most 2 lookups from /content but got 3: [/content getNode(home): 3]",
+                    error.getMessage());
+        }
+    }
+
+    @Test(expected = AssertionError.class)
+    public void shouldAssertNoRepeatedLookups() throws RepositoryException {
+        JcrTestingUtils.assertNoRepeatedLookups(profiledLookups());
+    }
+
+    private static AccessProfiler profiledLookups() throws RepositoryException {
+        MockNodeFactory nodeFactory = new MockNodeFactory();
+        AccessProfiler profiler = new AccessProfiler();
+        nodeFactory.setAccessProfiler(profiler);
+        Node root = JcrMockingUtils.createNodesFromJsonString("{content: {home: {}}}", nodeFactory);
+        profiler.reset();
+        Node content = root.getNode("content");
+        for (int i = 0; i < 3; i++) {
+            content.getNode("home");
+        }
+        return profiler;
+    }
+
 }